@@ -0,0 +1,33 @@
+package paint.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Paint benchmarks and writes the results as JSON, so that runs of different
+ * releases can be compared by scripts.
+ *
+ * Usage: BenchmarkRunner [include-regex] [results-file]
+ *   include-regex  benchmarks to run (default: all Paint benchmarks)
+ *   results-file   JSON output file (default: jmh-results.json)
+ */
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "paint\\.benchmarks\\..*";
+        String resultsFile = args.length > 1 ? args[1] : "jmh-results.json";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultsFile)
+                .build();
+
+        new Runner(options).run();
+        System.out.println("Results written to " + resultsFile);
+    }
+}
@@ -0,0 +1,94 @@
+package paint.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import paint.calculations.CalculateTau;
+import paint.calculations.CalculateTauResult;
+import paint.generateSquares.GenerateSquareCalcs;
+import paint.loaders.ProjectDataLoader;
+import paint.objects.Context;
+import paint.objects.Recording;
+import paint.objects.Square;
+import tech.tablesaw.api.Table;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-recording steps of square generation on synthetic recordings.
+ *
+ * The full parameter matrix is large; select a subset on the command line, e.g.
+ *   java -jar benchmarks.jar SquareGeneration -p nrOfTracks=100000 -p nrOfSquaresInRow=20
+ * filterTracksInSquare scans all tracks for every square, so it is slow for the largest inputs.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class SquareGenerationBenchmark {
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int nrOfTracks;
+
+    @Param({"5", "20", "50"})
+    public int nrOfSquaresInRow;
+
+    private Context context;
+    private Recording recording;
+    private Table tracksTable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = SyntheticTracks.createContext(nrOfSquaresInRow);
+        tracksTable = SyntheticTracks.createTracksTable(nrOfTracks, 42L);
+        recording = SyntheticTracks.createRecording(tracksTable);
+        recording.setSquares(GenerateSquareCalcs.generateSquaresForRecording(context, recording));
+
+        // The attribute benchmarks need the squares to be populated
+        GenerateSquareCalcs.assignTracksToSquares(recording, context);
+    }
+
+    @Benchmark
+    public void filterTracksInSquare(Blackhole blackhole) {
+        int lastRowColumn = nrOfSquaresInRow - 1;
+        for (Square square : recording.getSquares()) {
+            blackhole.consume(ProjectDataLoader.filterTracksInSquare(tracksTable, square, lastRowColumn));
+        }
+    }
+
+    @Benchmark
+    public Recording assignTracksToSquares() {
+        GenerateSquareCalcs.assignTracksToSquares(recording, context);
+        return recording;
+    }
+
+    @Benchmark
+    public Recording calculateSquareAttributes() {
+        GenerateSquareCalcs.calculateSquareAttributes(recording, context);
+        return recording;
+    }
+
+    @Benchmark
+    public CalculateTauResult calculateTauOfRecording() {
+        return CalculateTau.calculateTau(recording.getTracks(), context.getMinTracksForTau(), context.getMinRequiredRSquared());
+    }
+
+    @Benchmark
+    public void calculateTauOfSquares(Blackhole blackhole) {
+        for (Square square : recording.getSquares()) {
+            blackhole.consume(CalculateTau.calculateTau(square.getTracks(), context.getMinTracksForTau(), context.getMinRequiredRSquared()));
+        }
+    }
+
+    @Benchmark
+    public double calculateMedianLongTrack() {
+        return GenerateSquareCalcs.calculateMedianLongTrack(tracksTable, 0.1);
+    }
+
+    @Benchmark
+    public double calculateMedianShortTrack() {
+        return GenerateSquareCalcs.calculateMedianShortTrack(tracksTable, 0.1);
+    }
+}
@@ -0,0 +1,100 @@
+package paint.benchmarks;
+
+import paint.io.TrackTableIO;
+import paint.objects.Context;
+import paint.objects.Recording;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Random;
+
+import static paint.constants.PaintConstants.IMAGE_HEIGHT;
+import static paint.constants.PaintConstants.IMAGE_WIDTH;
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Generates reproducible synthetic track tables in the All Tracks schema.
+ *
+ * Locations are uniform over the image, durations are exponentially distributed and rounded to
+ * a 50 ms frame time, as in real recordings, so tau fits behave realistically.
+ */
+
+public final class SyntheticTracks {
+
+    public static final String RECORDING_NAME = "Synthetic-Exp-1-A1-1";
+
+    private static final double FRAME_TIME = 0.05;
+    private static final double TAU_SECONDS = 0.5;
+
+    private SyntheticTracks() {}
+
+    public static Table createTracksTable(int nrOfTracks, long seed) {
+        Random random = new Random(seed);
+        Table table = new TrackTableIO().emptyTable();
+
+        StringColumn uniqueKey   = table.stringColumn(TRACK_COLS[0]);
+        StringColumn recording   = table.stringColumn(TRACK_COLS[1]);
+        IntColumn    trackId     = table.intColumn(TRACK_COLS[2]);
+        StringColumn trackLabel  = table.stringColumn(TRACK_COLS[3]);
+        IntColumn    nrSpots     = table.intColumn(TRACK_COLS[4]);
+        IntColumn    nrGaps      = table.intColumn(TRACK_COLS[5]);
+        IntColumn    longestGap  = table.intColumn(TRACK_COLS[6]);
+        DoubleColumn duration    = table.doubleColumn(TRACK_COLS[7]);
+        DoubleColumn x           = table.doubleColumn(TRACK_COLS[8]);
+        DoubleColumn y           = table.doubleColumn(TRACK_COLS[9]);
+
+        for (int i = 0; i < nrOfTracks; i++) {
+            int spots = 3 + random.nextInt(40);
+            double trackDuration = Math.max(1, Math.round(-TAU_SECONDS * Math.log(1.0 - random.nextDouble()) / FRAME_TIME)) * FRAME_TIME;
+
+            uniqueKey.append(RECORDING_NAME + '-' + i);
+            recording.append(RECORDING_NAME);
+            trackId.append(i);
+            trackLabel.append("Track_" + i);
+            nrSpots.append(spots);
+            nrGaps.append(random.nextInt(3));
+            longestGap.append(random.nextInt(2));
+            duration.append(trackDuration);
+            x.append(random.nextDouble() * IMAGE_WIDTH);
+            y.append(random.nextDouble() * IMAGE_HEIGHT);
+
+            // Displacement, speeds, diffusion coefficients, total distance and confinement ratio
+            double displacement = random.nextDouble() * 2.0;
+            double totalDistance = displacement * (1.0 + random.nextDouble() * 3.0);
+            table.doubleColumn(TRACK_COLS[10]).append(displacement);
+            table.doubleColumn(TRACK_COLS[11]).append(random.nextDouble() * 5.0);
+            table.doubleColumn(TRACK_COLS[12]).append(random.nextDouble() * 2.0);
+            table.doubleColumn(TRACK_COLS[13]).append(random.nextDouble() * 2.0);
+            table.doubleColumn(TRACK_COLS[14]).append(random.nextDouble() * 5.0);
+            table.doubleColumn(TRACK_COLS[15]).append(random.nextDouble() * 2.0);
+            table.doubleColumn(TRACK_COLS[16]).append(random.nextDouble() * 2.0);
+            table.doubleColumn(TRACK_COLS[17]).append(random.nextDouble());
+            table.doubleColumn(TRACK_COLS[18]).append(random.nextDouble());
+            table.doubleColumn(TRACK_COLS[19]).append(totalDistance);
+            table.doubleColumn(TRACK_COLS[20]).append(displacement / totalDistance);
+            table.intColumn(TRACK_COLS[21]).append(-1);
+            table.intColumn(TRACK_COLS[22]).append(-1);
+        }
+        return table;
+    }
+
+    public static Context createContext(int nrOfSquaresInRow) {
+        Context context = new Context(nrOfSquaresInRow * nrOfSquaresInRow);
+        context.setMinTracksForTau(20);
+        context.setMinRequiredRSquared(0.1);
+        context.setMinRequiredDensityRatio(2.0);
+        context.setMaxAllowableVariability(10.0);
+        return context;
+    }
+
+    /** A recording with its tracks in a track store, but without squares. */
+    public static Recording createRecording(Table tracksTable) {
+        Recording recording = new Recording();
+        recording.setRecordingName(RECORDING_NAME);
+        recording.setTracksTable(tracksTable);
+        recording.setNumberOfTracks(tracksTable.rowCount());
+        return recording;
+    }
+}
@@ -0,0 +1,93 @@
+package paint.benchmarks;
+
+import trackMatePaint.HeadlessTrackMateRunner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Runs the headless TrackMate runner on the same image many times in one JVM and reports, per run, the time
+ * taken and the heap in use after a full collection.
+ *
+ * This is the counterpart of TrackMateLauncher.main, which shows runs that start well but end slowly. With the
+ * headless runner the last runs must take the same time and leave the same heap as the first ones: the
+ * benchmark compares the median of the first and the last runs and exits with 1 when time or heap has grown
+ * beyond the tolerance.
+ *
+ * It is a plain main rather than a JMH benchmark: it needs a real image and Fiji on the class path, and judges
+ * the trend over the runs rather than the time of one.
+ *
+ * Usage: TrackMateSoakBenchmark <image> [runs (100)] [threshold (20.0)]
+ */
+
+public class TrackMateSoakBenchmark {
+
+    static {
+        net.imagej.patcher.LegacyInjector.preinit();
+    }
+
+    private static final int WINDOW = 5;
+    private static final double TIME_TOLERANCE = 1.2;
+    private static final double HEAP_TOLERANCE = 1.2;
+    private static final long HEAP_SLACK = 64L * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java TrackMateSoakBenchmark <image> [runs] [threshold]");
+            System.exit(2);
+        }
+        Path imagePath = Paths.get(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 20.0;
+        if (!Files.isRegularFile(imagePath) || runs < 2 * WINDOW) {
+            System.err.printf("🚫 Need an existing image and at least %d runs.%n", 2 * WINDOW);
+            System.exit(2);
+        }
+
+        HeadlessTrackMateRunner runner = new HeadlessTrackMateRunner(Collections.emptyMap(),
+                                                                     Runtime.getRuntime().availableProcessors());
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        double[] seconds = new double[runs];
+        double[] heapMB = new double[runs];
+
+        System.out.printf("%5s %10s %10s %10s %10s%n", "Run", "Seconds", "Heap MB", "Spots", "Tracks");
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            HeadlessTrackMateRunner.Result result = runner.run(imagePath, threshold, null);
+            seconds[i] = (System.nanoTime() - start) / 1e9;
+            if (!result.succeeded) {
+                System.err.printf("🚫 Run %d failed: %s%n", i + 1, result.error);
+                System.exit(1);
+            }
+
+            System.gc();
+            System.gc();
+            heapMB[i] = memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+            System.out.printf("%5d %10.2f %10.1f %10d %10d%n", i + 1, seconds[i], heapMB[i], result.numberOfSpots, result.numberOfTracks);
+        }
+
+        double firstSeconds = median(seconds, 0);
+        double lastSeconds = median(seconds, runs - WINDOW);
+        double firstHeap = median(heapMB, 0);
+        double lastHeap = median(heapMB, runs - WINDOW);
+        System.out.printf("%nFirst %d runs: %.2f s, %.1f MB. Last %d runs: %.2f s, %.1f MB.%n",
+                WINDOW, firstSeconds, firstHeap, WINDOW, lastSeconds, lastHeap);
+
+        boolean timeStable = lastSeconds <= firstSeconds * TIME_TOLERANCE;
+        boolean heapStable = lastHeap <= Math.max(firstHeap * HEAP_TOLERANCE, firstHeap + HEAP_SLACK / (1024.0 * 1024.0));
+        System.out.println(timeStable && heapStable ? "✅ No slowdown and no heap growth."
+                                                    : "🚫 The runs slowed down or the heap grew.");
+        System.exit(timeStable && heapStable ? 0 : 1);
+    }
+
+    private static double median(double[] values, int from) {
+        double[] window = Arrays.copyOfRange(values, from, from + WINDOW);
+        Arrays.sort(window);
+        return window[WINDOW / 2];
+    }
+}
@@ -0,0 +1,96 @@
+package paint.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import paint.io.ColumnarCache;
+import paint.io.FastTrackCsvReader;
+import paint.io.TrackTableIO;
+import paint.objects.Track;
+import paint.objects.TrackStore;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading an All Tracks CSV and converting the table into Track objects.
+ * The CSV is written once per trial to a temporary directory, with the columnar cache switched off, so readCsv
+ * and parseCsv always parse the CSV. readCache reads the columnar cache, which WarmCache writes for its trial.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx12g"})
+public class TrackTableIOBenchmark {
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int nrOfTracks;
+
+    private final TrackTableIO trackTableIO = new TrackTableIO();
+    private final int nrOfThreads = Runtime.getRuntime().availableProcessors();
+    private boolean cacheEnabled;
+    private Path directory;
+    private Path csvPath;
+    private Table tracksTable;
+
+    /** Switches the columnar cache on and writes it, for the trial of readCache only. */
+    @State(Scope.Benchmark)
+    public static class WarmCache {
+
+        @Setup(Level.Trial)
+        public void setUp(TrackTableIOBenchmark benchmark) throws IOException {
+            ColumnarCache.setEnabled(true);
+            TrackStore store = FastTrackCsvReader.parse(benchmark.csvPath, benchmark.nrOfThreads);
+            ColumnarCache.Stamp stamp = ColumnarCache.Stamp.of(benchmark.csvPath);
+            ColumnarCache.writeTrackStore(store, benchmark.csvPath, stamp);
+            if (ColumnarCache.readTrackStore(benchmark.csvPath, stamp) == null) {
+                throw new IllegalStateException("No usable columnar cache for " + benchmark.csvPath);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cacheEnabled = ColumnarCache.isEnabled();
+        ColumnarCache.setEnabled(false);
+        tracksTable = SyntheticTracks.createTracksTable(nrOfTracks, 42L);
+        directory = Files.createTempDirectory("paint-benchmark");
+        csvPath = directory.resolve("All Tracks.csv");
+        trackTableIO.writeCsv(tracksTable, csvPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ColumnarCache.setEnabled(cacheEnabled);
+        Files.deleteIfExists(ColumnarCache.cachePathFor(csvPath));
+        Files.deleteIfExists(csvPath);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Table readCsv() throws IOException {
+        return trackTableIO.readCsv(csvPath);
+    }
+
+    /** Cold load: the CSV parsed by the memory-mapped parallel reader. */
+    @Benchmark
+    public TrackStore parseCsv() throws IOException {
+        return FastTrackCsvReader.parse(csvPath, nrOfThreads);
+    }
+
+    /** Warm load: the same tracks read from the columnar cache next to the CSV. */
+    @Benchmark
+    public TrackStore readCache(WarmCache warmCache) throws IOException {
+        return FastTrackCsvReader.read(csvPath, nrOfThreads);
+    }
+
+    @Benchmark
+    public List<Track> toEntities() {
+        return trackTableIO.toEntities(tracksTable);
+    }
+}
@@ -5,8 +5,6 @@ import paint.objects.Track;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
@@ -23,12 +21,39 @@ import static paint.calculations.CalculateTauResult.Status.*;
 
 public class CalculateTau {
 
+    /** The curve fitter used for tau. FAST is the default, COMMONS_MATH is kept as reference. */
+    public enum Fitter {
+        FAST,
+        COMMONS_MATH
+    }
+
+    /** Per-thread buffers, grown when needed, so that repeated calls do not allocate. */
+    private static final class Workspace {
+        double[] durations = new double[0];
+        double[] x = new double[0];
+        double[] y = new double[0];
+
+        double[] durations(int n) {
+            if (durations.length < n) durations = new double[Math.max(n, 2 * durations.length)];
+            return durations;
+        }
+
+        void ensureHistogramCapacity(int n) {
+            if (x.length < n) {
+                x = new double[Math.max(n, 2 * x.length)];
+                y = new double[x.length];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
     /**
      * Calculates tau by fitting a mono-exponential decay to a frequency
      * distribution of track durations. Returns a TauCalcResult with status.
      *
      * Flow:
-     *   tracks -> durations[] -> TreeMap<Double, Integer> freq -> x[], y[] -> fit() -> TauCalcResult
+     *   tracks -> durations[] -> sort + run-length count -> x[], y[] -> fit() -> TauCalcResult
      *
      * @param tracks               input tracks
      * @param minTracksForTau      minimum number of tracks required to attempt a fit
@@ -37,44 +62,62 @@ public class CalculateTau {
     public static CalculateTauResult calculateTau(List<Track> tracks,
                                                   int minTracksForTau,
                                                   double minRequiredRSquared) {
+        return calculateTau(tracks, minTracksForTau, minRequiredRSquared, Fitter.FAST);
+    }
+
+    public static CalculateTauResult calculateTau(List<Track> tracks,
+                                                  int minTracksForTau,
+                                                  double minRequiredRSquared,
+                                                  Fitter fitter) {
         if (tracks == null || tracks.size() < minTracksForTau) {
             return new CalculateTauResult(0.0, 0.0, TAU_INSUFFICIENT_POINTS);
         }
 
         // 1) Extract durations
         final int n = tracks.size();
-        double[] durations = new double[n];
+        double[] durations = WORKSPACE.get().durations(n);
         for (int i = 0; i < n; i++) {
             durations[i] = tracks.get(i).getTrackDuration();
         }
+        return calculateTau(durations, n, minTracksForTau, minRequiredRSquared, fitter);
+    }
+
+    /**
+     * Calculates tau from the first n entries of a durations array.
+     * Note that these entries are sorted in place.
+     */
+    public static CalculateTauResult calculateTau(double[] durations,
+                                                  int n,
+                                                  int minTracksForTau,
+                                                  double minRequiredRSquared,
+                                                  Fitter fitter) {
+        if (durations == null || n < minTracksForTau) {
+            return new CalculateTauResult(0.0, 0.0, TAU_INSUFFICIENT_POINTS);
+        }
 
-        // 2) Build frequency distribution (sorted by duration)
-        Map<Double, Integer> freq = createFrequencyDistribution(durations);
+        // 2) Build frequency distribution (sorted by duration) in the workspace
+        Workspace ws = WORKSPACE.get();
+        int distinct = createFrequencyDistribution(durations, n, ws);
 
         // Need at least 2 distinct x-values to fit
-        if (freq.size() < 2) {
+        if (distinct < 2) {
             return new CalculateTauResult(0.0, 0.0, TAU_NO_FIT);
         }
 
-        // 3) Convert to arrays for fitting
-        double[] x = new double[freq.size()];
-        double[] y = new double[freq.size()];
-        int k = 0;
-        for (Map.Entry<Double, Integer> e : freq.entrySet()) {
-            x[k] = e.getKey();
-            y[k] = e.getValue();
-            k++;
+        // 3) Fit and evaluate quality
+        CalculateTauExpDecayFitterNew.FitResult fr;
+        if (fitter == Fitter.COMMONS_MATH) {
+            fr = CalculateTauExpDecayFitterNew.fit(Arrays.copyOf(ws.x, distinct), Arrays.copyOf(ws.y, distinct));
+        } else {
+            fr = CalculateTauExpDecayFitterFast.fit(ws.x, ws.y, distinct);
         }
 
-        // 4) Fit and evaluate quality
-        CalculateTauExpDecayFitterNew.FitResult fr = CalculateTauExpDecayFitterNew.fit(x, y);
-
-        // 5) Reject non-finite results
+        // 4) Reject non-finite results
         if (!Double.isFinite(fr.rSquared) || !Double.isFinite(fr.tauMs)) {
             return new CalculateTauResult(fr.tauMs, fr.rSquared, CalculateTauResult.Status.TAU_NO_FIT);
         }
 
-        // 6) Apply threshold
+        // 5) Apply threshold
         if (fr.rSquared < minRequiredRSquared) {
             return new CalculateTauResult(fr.tauMs, fr.rSquared, CalculateTauResult.Status.TAU_RSQUARED_TOO_LOW);
         }
@@ -82,16 +125,29 @@ public class CalculateTau {
         return new CalculateTauResult(fr.tauMs, fr.rSquared, CalculateTauResult.Status.TAU_SUCCESS);
     }
 
-    /** Build frequency distribution: key = duration, value = count. */
-    private static Map<Double, Integer> createFrequencyDistribution(double[] trackDurations) {
-        Map<Double, Integer> frequencyDistribution = new TreeMap<>();
-        if (trackDurations == null) return frequencyDistribution;
-
-        for (double duration : trackDurations) {
-            Integer prev = frequencyDistribution.get(duration);
-            frequencyDistribution.put(duration, (prev == null ? 1 : prev + 1));
+    /**
+     * Build frequency distribution: x = distinct duration (ascending), y = count.
+     * Sorts the durations and counts runs of equal values, the result is left in ws.x and ws.y.
+     * @return the number of distinct durations
+     */
+    private static int createFrequencyDistribution(double[] trackDurations, int n, Workspace ws) {
+        Arrays.sort(trackDurations, 0, n);
+        ws.ensureHistogramCapacity(n);
+
+        int distinct = 0;
+        int i = 0;
+        while (i < n) {
+            double duration = trackDurations[i];
+            int j = i + 1;
+            while (j < n && Double.compare(trackDurations[j], duration) == 0) {
+                j++;
+            }
+            ws.x[distinct] = duration;
+            ws.y[distinct] = j - i;
+            distinct++;
+            i = j;
         }
-        return frequencyDistribution;
+        return distinct;
     }
 }
 
@@ -153,7 +209,7 @@ class CalculateTauExpDecayFitterNew {
         };
 
         // Initial guess [m, t, b]
-        final double[] p0 = initialGuess(x, y);
+        final double[] p0 = initialGuess(x, y, x.length);
 
         // Weights: identity (you can inject real weights here if desired)
         final double[] w = new double[y.length];
@@ -185,17 +241,17 @@ class CalculateTauExpDecayFitterNew {
         final double tauMs = (t > 0.0) ? (1000.0 / t) : Double.NaN;
 
         // R^2 on original data
-        final double r2 = computeRSquared(x, y, m, t, b);
+        final double r2 = computeRSquared(x, y, x.length, m, t, b);
 
         return new FitResult(tauMs, r2);
     }
 
-    /** Heuristic initial guess for [m, t, b]. */
-    private static double[] initialGuess(double[] x, double[] y) {
+    /** Heuristic initial guess for [m, t, b] from the first n points. */
+    static double[] initialGuess(double[] x, double[] y, int n) {
         double minY = Double.POSITIVE_INFINITY;
         double maxY = Double.NEGATIVE_INFINITY;
         double maxX = Double.NEGATIVE_INFINITY;
-        for (int i = 0; i < y.length; i++) {
+        for (int i = 0; i < n; i++) {
             if (y[i] < minY) minY = y[i];
             if (y[i] > maxY) maxY = y[i];
             if (x[i] > maxX) maxX = x[i];
@@ -210,8 +266,8 @@ class CalculateTauExpDecayFitterNew {
         // Rough t from a linearized tail: ln(y - b) ≈ ln(m) - t x
         double eps = Math.max(1e-6, 0.01 * m);
         double sumX = 0, sumXX = 0, sumY = 0, sumXY = 0;
-        int n = 0;
-        for (int i = 0; i < x.length; i++) {
+        int used = 0;
+        for (int i = 0; i < n; i++) {
             double yiAdj = y[i] - b;
             if (yiAdj > eps) {
                 double lx = x[i];
@@ -220,13 +276,13 @@ class CalculateTauExpDecayFitterNew {
                 sumXX += lx * lx;
                 sumY += ly;
                 sumXY += lx * ly;
-                n++;
+                used++;
             }
         }
         double t;
-        if (n >= 2) {
-            double denom = (n * sumXX - sumX * sumX);
-            double slope = (denom == 0.0) ? -1.0 : (n * sumXY - sumX * sumY) / denom;
+        if (used >= 2) {
+            double denom = (used * sumXX - sumX * sumX);
+            double slope = (denom == 0.0) ? -1.0 : (used * sumXY - sumX * sumY) / denom;
             t = Math.max(1e-9, -slope); // slope ≈ -t
         } else {
             t = 1.0 / Math.max(1e-3, maxX); // fallback
@@ -240,13 +296,13 @@ class CalculateTauExpDecayFitterNew {
         return new double[] { m, t, b };
     }
 
-    private static double computeRSquared(double[] x, double[] y, double m, double t, double b) {
+    static double computeRSquared(double[] x, double[] y, int n, double m, double t, double b) {
         double meanY = 0.0;
-        for (double v : y) meanY += v;
-        meanY /= y.length;
+        for (int i = 0; i < n; i++) meanY += y[i];
+        meanY /= n;
 
         double ssRes = 0.0, ssTot = 0.0;
-        for (int i = 0; i < y.length; i++) {
+        for (int i = 0; i < n; i++) {
             double predicted = m * FastMath.exp(-t * x[i]) + b;
             double diff = y[i] - predicted;
             ssRes += diff * diff;
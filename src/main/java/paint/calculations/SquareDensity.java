@@ -0,0 +1,225 @@
+package paint.calculations;
+
+import paint.objects.Context;
+import paint.objects.Recording;
+import paint.objects.Square;
+import paint.objects.TrackStore;
+
+/**
+ * Density, density ratio and variability of all squares of a recording.
+ *
+ * Every square is divided into granularity x granularity cells, and the tracks of the recording are counted per
+ * cell in a single pass into one int[] count grid. The track count of a square is the sum of its cells, and its
+ * variability is the coefficient of variation (population standard deviation over mean) of its cell counts.
+ *
+ * The density of a square is its number of tracks per unit of area, time and concentration, scaled as in the
+ * Python version of Paint. The density ratio relates the track count of a square to the background of the
+ * recording: the average count of its least populated squares that have tracks at all. The background is
+ * found by partial selection on the counts, not by sorting them.
+ */
+
+public final class SquareDensity {
+
+    /** The number of cells in a row of a square used for the variability. */
+    public static final int DEFAULT_GRANULARITY = 10;
+
+    /** The number of least populated squares that make up the background. */
+    public static final int NUMBER_OF_BACKGROUND_SQUARES = 60;
+
+    /** The time and magnification factors of the density. */
+    public static final double DENSITY_TIME = 100.0;
+    public static final double DENSITY_MAGNIFICATION = 1000.0;
+
+    private final SquareGrid grid;
+    private final int granularity;
+    private final int cellsInRow;
+
+    public SquareDensity(Context context) {
+        this(new SquareGrid(context), DEFAULT_GRANULARITY);
+    }
+
+    public SquareDensity(SquareGrid grid, int granularity) {
+        if (granularity <= 0) {
+            throw new IllegalArgumentException("Granularity must be positive: " + granularity);
+        }
+        this.grid = grid;
+        this.granularity = granularity;
+        this.cellsInRow = grid.getNumberOfSquaresInRow() * granularity;
+    }
+
+    /** Calculate the density, density ratio and variability of the squares of a recording. */
+    public static void calculate(Recording recording, Context context) {
+        new SquareDensity(context).apply(recording);
+    }
+
+    public void apply(Recording recording) {
+        TrackStore trackStore = recording.getTrackStore();
+        int[] cellCounts = countCells(trackStore.doubleColumn(TrackStore.TRACK_X_LOCATION),
+                                      trackStore.doubleColumn(TrackStore.TRACK_Y_LOCATION),
+                                      recording.getTrackRows());
+        int[] squareCounts = squareCounts(cellCounts);
+        double background = averageOfBackground(squareCounts, NUMBER_OF_BACKGROUND_SQUARES);
+        double area = grid.getSquareWidth() * grid.getSquareHeight();
+
+        for (Square square : recording.getSquares()) {
+            int squareNumber = square.getSquareNumber();
+            if (squareNumber < 0 || squareNumber >= squareCounts.length) {
+                continue;
+            }
+            int count = squareCounts[squareNumber];
+            square.setVariability(variability(cellCounts, squareNumber));
+            square.setDensity(density(count, area, recording.getConcentration()));
+            square.setDensityRatio(background > 0.0 ? count / background : 0.0);
+        }
+    }
+
+    /**
+     * Count the tracks per cell in one pass over their locations. Cell (row, column) of the grid of all cells is at
+     * index row * cellsInRow + column, so the cells of a square form a granularity x granularity block.
+     * @param rows the rows to count, or null for all rows of x and y
+     */
+    public int[] countCells(double[] x, double[] y, int[] rows) {
+        int[] counts = new int[cellsInRow * cellsInRow];
+        int nrOfSquaresInRow = grid.getNumberOfSquaresInRow();
+        double cellWidth = grid.getSquareWidth() / granularity;
+        double cellHeight = grid.getSquareHeight() / granularity;
+        int nrOfRows = (rows == null) ? x.length : rows.length;
+
+        for (int i = 0; i < nrOfRows; i++) {
+            int row = (rows == null) ? i : rows[i];
+            int squareNumber = grid.squareNumberOf(x[row], y[row]);
+            if (squareNumber < 0) {
+                continue;
+            }
+
+            // The square decides the borders, the cell within the square is taken relative to its corner
+            int squareRow = squareNumber / nrOfSquaresInRow;
+            int squareColumn = squareNumber % nrOfSquaresInRow;
+            int cellColumn = cellWithin(x[row] - squareColumn * grid.getSquareWidth(), cellWidth);
+            int cellRow = cellWithin(y[row] - squareRow * grid.getSquareHeight(), cellHeight);
+            counts[(squareRow * granularity + cellRow) * cellsInRow + squareColumn * granularity + cellColumn]++;
+        }
+        return counts;
+    }
+
+    /** The track count of every square, summed from its cells. */
+    public int[] squareCounts(int[] cellCounts) {
+        int nrOfSquaresInRow = grid.getNumberOfSquaresInRow();
+        int[] counts = new int[nrOfSquaresInRow * nrOfSquaresInRow];
+        for (int cellRow = 0; cellRow < cellsInRow; cellRow++) {
+            int squareBase = (cellRow / granularity) * nrOfSquaresInRow;
+            int cellBase = cellRow * cellsInRow;
+            for (int cellColumn = 0; cellColumn < cellsInRow; cellColumn++) {
+                counts[squareBase + cellColumn / granularity] += cellCounts[cellBase + cellColumn];
+            }
+        }
+        return counts;
+    }
+
+    /** The standard deviation of the cell counts of a square divided by their mean, 0 for an empty square. */
+    public double variability(int[] cellCounts, int squareNumber) {
+        int nrOfSquaresInRow = grid.getNumberOfSquaresInRow();
+        int firstCell = (squareNumber / nrOfSquaresInRow) * granularity * cellsInRow
+                + (squareNumber % nrOfSquaresInRow) * granularity;
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int cellRow = 0; cellRow < granularity; cellRow++) {
+            int base = firstCell + cellRow * cellsInRow;
+            for (int cellColumn = 0; cellColumn < granularity; cellColumn++) {
+                long count = cellCounts[base + cellColumn];
+                sum += count;
+                sumOfSquares += count * count;
+            }
+        }
+        if (sum == 0) {
+            return 0.0;
+        }
+        double nrOfCells = (double) granularity * granularity;
+        double mean = sum / nrOfCells;
+        double variance = Math.max(0.0, sumOfSquares / nrOfCells - mean * mean);
+        return Math.sqrt(variance) / mean;
+    }
+
+    /** Tracks per unit of area, time and concentration; NaN when the concentration is not known. */
+    public static double density(int numberOfTracks, double area, double concentration) {
+        if (!(concentration > 0.0) || !(area > 0.0)) {
+            return Double.NaN;
+        }
+        return numberOfTracks / area / DENSITY_TIME / concentration * DENSITY_MAGNIFICATION;
+    }
+
+    /**
+     * The average of the smallest non-zero counts, at most nrOfBackgroundSquares of them; 0 when all counts are 0.
+     * The counts are not changed.
+     */
+    public static double averageOfBackground(int[] counts, int nrOfBackgroundSquares) {
+        int[] nonZero = new int[counts.length];
+        int n = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                nonZero[n++] = count;
+            }
+        }
+        if (n == 0 || nrOfBackgroundSquares <= 0) {
+            return 0.0;
+        }
+
+        // After selecting the k-th smallest, the k smallest counts are in front, in no particular order
+        int k = Math.min(n, nrOfBackgroundSquares);
+        if (k < n) {
+            select(nonZero, 0, n - 1, k - 1);
+        }
+        long total = 0;
+        for (int i = 0; i < k; i++) {
+            total += nonZero[i];
+        }
+        return (double) total / k;
+    }
+
+    /* The cell of an offset within a square; offsets on or beyond the far border belong to the last cell. */
+
+    private int cellWithin(double offset, double size) {
+        int cell = (int) Math.floor(offset / size);
+        return Math.max(0, Math.min(cell, granularity - 1));
+    }
+
+    /*
+     * Quickselect on ints, as SquareStatistics.select does on doubles: leaves the k-th smallest value of
+     * a[left..right] at a[k], with no larger values before it and no smaller values after it.
+     */
+
+    static void select(int[] a, int left, int right, int k) {
+        while (right > left) {
+            int middle = (left + right) >>> 1;
+            if (a[middle] < a[left]) swap(a, left, middle);
+            if (a[right] < a[left]) swap(a, left, right);
+            if (a[right] < a[middle]) swap(a, middle, right);
+            int pivot = a[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
@@ -0,0 +1,146 @@
+package paint.calculations;
+
+import paint.objects.Context;
+import tech.tablesaw.api.DoubleColumn;
+
+/**
+ * The regular grid of squares laid over a recording.
+ *
+ * The grid assigns every track to a square in a single pass over the track locations, instead of
+ * selecting the tracks of each square separately. The boundaries are the same as those used by
+ * generateSquaresForRecording and filterTracksInSquare: a square includes its left and top border and
+ * excludes its right and bottom border, except for squares in the last column or row, which include
+ * the right or bottom border of the image as well. Tracks outside the grid are not assigned.
+ */
+
+public class SquareGrid {
+
+    private final int numberOfSquaresInRow;
+    private final double squareWidth;
+    private final double squareHeight;
+
+    public SquareGrid(Context context) {
+        this(context.getNumberOfSquaresInRow(), context.getImageWidth(), context.getImageHeight());
+    }
+
+    public SquareGrid(int numberOfSquaresInRow, double imageWidth, double imageHeight) {
+        if (numberOfSquaresInRow <= 0) {
+            throw new IllegalArgumentException("Number of squares in row must be positive: " + numberOfSquaresInRow);
+        }
+        this.numberOfSquaresInRow = numberOfSquaresInRow;
+        this.squareWidth = imageWidth / numberOfSquaresInRow;
+        this.squareHeight = imageHeight / numberOfSquaresInRow;
+    }
+
+    public int getNumberOfSquaresInRow() {
+        return numberOfSquaresInRow;
+    }
+
+    public int getNumberOfSquares() {
+        return numberOfSquaresInRow * numberOfSquaresInRow;
+    }
+
+    public double getSquareWidth() {
+        return squareWidth;
+    }
+
+    public double getSquareHeight() {
+        return squareHeight;
+    }
+
+    /**
+     * Determine the square that contains a location.
+     * @param x the x location of the track
+     * @param y the y location of the track
+     * @return the square number (rowNumber * numberOfSquaresInRow + colNumber), or -1 if the location is outside the grid
+     */
+    public int squareNumberOf(double x, double y) {
+        int colNumber = cellOf(x, squareWidth);
+        if (colNumber < 0) {
+            return -1;
+        }
+        int rowNumber = cellOf(y, squareHeight);
+        if (rowNumber < 0) {
+            return -1;
+        }
+        return rowNumber * numberOfSquaresInRow + colNumber;
+    }
+
+    /**
+     * Assign each row to a square in one sweep over the locations.
+     * @param x the track x locations
+     * @param y the track y locations
+     * @return for every square number, the ascending row indices of the tracks in that square
+     */
+    public int[][] assignRows(double[] x, double[] y) {
+        return assignRows(x, y, null);
+    }
+
+    /**
+     * Assign a subset of the rows to the squares in one sweep over their locations.
+     * @param x the track x locations, indexed by row
+     * @param y the track y locations, indexed by row
+     * @param rows the rows to assign, in ascending order, or null for all rows of x and y
+     * @return for every square number, the ascending row indices of the tracks in that square
+     */
+    public int[][] assignRows(double[] x, double[] y, int[] rows) {
+        int nrOfRows = (rows == null) ? x.length : rows.length;
+        int[] squareOfRow = new int[nrOfRows];
+        int[] counts = new int[getNumberOfSquares()];
+
+        // First pass: determine the square of every row and count the rows per square
+        for (int i = 0; i < nrOfRows; i++) {
+            int row = (rows == null) ? i : rows[i];
+            int squareNumber = squareNumberOf(x[row], y[row]);
+            squareOfRow[i] = squareNumber;
+            if (squareNumber >= 0) {
+                counts[squareNumber]++;
+            }
+        }
+
+        // Second pass: fill the row indices, which keeps them in ascending order within a square
+        int[][] rowsPerSquare = new int[counts.length][];
+        for (int squareNumber = 0; squareNumber < counts.length; squareNumber++) {
+            rowsPerSquare[squareNumber] = new int[counts[squareNumber]];
+        }
+        int[] fill = new int[counts.length];
+        for (int i = 0; i < nrOfRows; i++) {
+            int squareNumber = squareOfRow[i];
+            if (squareNumber >= 0) {
+                rowsPerSquare[squareNumber][fill[squareNumber]++] = (rows == null) ? i : rows[i];
+            }
+        }
+        return rowsPerSquare;
+    }
+
+    public int[][] assignRows(DoubleColumn x, DoubleColumn y) {
+        return assignRows(x.asDoubleArray(), y.asDoubleArray());
+    }
+
+    /*
+     * Find the cell for a coordinate. The boundaries are computed exactly as the square corners are,
+     * (cell * size), so that a coordinate on a border ends up in the same square as with filterTracksInSquare.
+     */
+
+    private int cellOf(double value, double size) {
+        if (!(value >= 0.0)) {        // Also rejects NaN
+            return -1;
+        }
+        int last = numberOfSquaresInRow - 1;
+        int cell = (int) Math.min(Math.floor(value / size), last);
+
+        // Correct for rounding in the division
+        if (cell > 0 && cell * size > value) {
+            cell--;
+        }
+        else if (cell < last && (cell + 1) * size <= value) {
+            cell++;
+        }
+
+        // The last cell includes its far border, anything beyond that is outside the grid
+        if (cell == last && value > (cell + 1) * size) {
+            return -1;
+        }
+        return cell;
+    }
+}
@@ -0,0 +1,171 @@
+package paint.calculations;
+
+import paint.objects.Context;
+import paint.objects.Recording;
+import paint.objects.Square;
+import paint.utilities.AppLogger;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the squares of a recording in two passes over its grid.
+ *
+ * The first pass applies the thresholds: a square is a candidate when it is not excluded, its density ratio is at
+ * least the minimum, its variability at most the maximum and its R squared at least the minimum. The candidates
+ * are kept in a BitSet indexed by square number; SquareFeatureMatrix holds the features this pass reads. The
+ * second pass applies the neighbour rule, as the Python version of Paint did: in 'Free' mode every candidate is
+ * selected, in 'Relaxed' mode a candidate needs another candidate among its eight neighbours and in 'Strict' mode
+ * among its four edge neighbours. The neighbours are found with a union-find over the candidates, and a candidate
+ * is selected when its component has more than one square.
+ *
+ * The buffers are kept between calls, so an instance can cheaply re-run the selection when the thresholds change.
+ * An instance is not thread safe, use one per thread.
+ */
+
+public final class SquareSelection {
+
+    public enum NeighbourMode {
+        FREE, RELAXED, STRICT;
+
+        private static final Set<String> WARNED = ConcurrentHashMap.newKeySet();
+
+        /**
+         * The mode for a configuration value such as 'Free', 'Relaxed' or 'Strict'; null or empty means FREE, and an
+         * unknown value also falls back to FREE, with a warning.
+         */
+        public static NeighbourMode of(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return FREE;
+            }
+            for (NeighbourMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+            // The mode is looked up for every recording; warn only once per value
+            if (WARNED.add(value)) {
+                AppLogger.warningf("Unknown neighbour mode '%s', using %s.", value, FREE);
+            }
+            return FREE;
+        }
+    }
+
+    private final int numberOfSquaresInRow;
+    private final BitSet selected;
+    private final int[] parent;
+    private final int[] size;
+
+    public SquareSelection(int numberOfSquaresInRow) {
+        if (numberOfSquaresInRow <= 0) {
+            throw new IllegalArgumentException("Number of squares in row must be positive: " + numberOfSquaresInRow);
+        }
+        int numberOfSquares = numberOfSquaresInRow * numberOfSquaresInRow;
+        this.numberOfSquaresInRow = numberOfSquaresInRow;
+        this.selected = new BitSet(numberOfSquares);
+        this.parent = new int[numberOfSquares];
+        this.size = new int[numberOfSquares];
+    }
+
+    /** Select the squares of a recording with the thresholds and neighbour mode of the context. */
+    public static int select(Recording recording, Context context) {
+        return new SquareSelection(context.getNumberOfSquaresInRow()).apply(recording.getSquares(),
+                context.getMinRequiredDensityRatio(), context.getMaxAllowableVariability(),
+                context.getMinRequiredRSquared(), NeighbourMode.of(context.getNeighbourMode()));
+    }
+
+    /**
+     * Set Square.selected for the squares of one recording.
+     * @return the number of selected squares
+     */
+    public int apply(List<Square> squares, double minRequiredDensityRatio, double maxAllowableVariability,
+                     double minRequiredRSquared, NeighbourMode mode) {
+        SquareFeatureMatrix matrix = SquareFeatureMatrix.of("", squares, numberOfSquaresInRow);
+        SquareFeatureMatrix.Evaluation evaluation = matrix.evaluate(minRequiredRSquared, minRequiredDensityRatio,
+                                                                    maxAllowableVariability, mode, this);
+        matrix.applyTo(squares, evaluation.selected);
+        return evaluation.selectedSquares;
+    }
+
+    public int getNumberOfSquaresInRow() {
+        return numberOfSquaresInRow;
+    }
+
+    /**
+     * The candidates that satisfy the neighbour rule. The returned set is reused by the next call.
+     * @param candidates the squares that pass the thresholds, by square number
+     */
+    public BitSet applyNeighbourRule(BitSet candidates, NeighbourMode mode) {
+        selected.clear();
+        if (mode == NeighbourMode.FREE) {
+            selected.or(candidates);
+            return selected;
+        }
+
+        for (int square = candidates.nextSetBit(0); square >= 0; square = candidates.nextSetBit(square + 1)) {
+            parent[square] = square;
+            size[square] = 1;
+        }
+
+        // Join every candidate with the candidates after it: right, below, and for RELAXED the two lower diagonals
+        int n = numberOfSquaresInRow;
+        for (int square = candidates.nextSetBit(0); square >= 0; square = candidates.nextSetBit(square + 1)) {
+            int row = square / n;
+            int column = square % n;
+            if (column + 1 < n && candidates.get(square + 1)) {
+                union(square, square + 1);
+            }
+            if (row + 1 < n) {
+                int below = square + n;
+                if (candidates.get(below)) {
+                    union(square, below);
+                }
+                if (mode == NeighbourMode.RELAXED) {
+                    if (column > 0 && candidates.get(below - 1)) {
+                        union(square, below - 1);
+                    }
+                    if (column + 1 < n && candidates.get(below + 1)) {
+                        union(square, below + 1);
+                    }
+                }
+            }
+        }
+
+        for (int square = candidates.nextSetBit(0); square >= 0; square = candidates.nextSetBit(square + 1)) {
+            if (size[find(square)] > 1) {
+                selected.set(square);
+            }
+        }
+        return selected;
+    }
+
+    private int find(int square) {
+        int root = square;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (parent[square] != root) {            // Path compression
+            int next = parent[square];
+            parent[square] = root;
+            square = next;
+        }
+        return root;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (size[rootA] < size[rootB]) {
+            int t = rootA;
+            rootA = rootB;
+            rootB = t;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+    }
+}
@@ -0,0 +1,176 @@
+package paint.calculations;
+
+import java.util.Arrays;
+
+/**
+ * Column statistics for the tracks of a square, computed on a reusable primitive buffer.
+ *
+ * A column is read once for the rows of the square, and count, min, max and sum are computed in the
+ * same loop. Medians use quickselect, so no sort is needed unless the caller asks for one. Missing
+ * values (NaN) are skipped, as the Tablesaw aggregate functions do; without values every statistic is NaN.
+ *
+ * An instance is not thread safe, use one per thread.
+ */
+
+public final class SquareStatistics {
+
+    private double[] values = new double[64];
+    private int count;
+    private double min;
+    private double max;
+    private double sum;
+    private boolean sorted;
+
+    /** Read the values of a column for the given rows, skipping missing values. */
+    public SquareStatistics load(double[] column, int[] rows) {
+        if (values.length < rows.length) {
+            values = new double[Math.max(rows.length, 2 * values.length)];
+        }
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        double total = 0.0;
+        int n = 0;
+        for (int row : rows) {
+            double value = column[row];
+            if (value != value) {       // NaN
+                continue;
+            }
+            values[n++] = value;
+            if (value < lo) lo = value;
+            if (value > hi) hi = value;
+            total += value;
+        }
+        count = n;
+        min = lo;
+        max = hi;
+        sum = total;
+        sorted = false;
+        return this;
+    }
+
+    /** Sort the loaded values in ascending order. */
+    public SquareStatistics sort() {
+        Arrays.sort(values, 0, count);
+        sorted = true;
+        return this;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double sum() {
+        return count == 0 ? Double.NaN : sum;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * The loaded values; only the first count() entries are valid. They are in ascending order after sort(),
+     * otherwise in an unspecified order (median() reorders them).
+     */
+    public double[] values() {
+        return values;
+    }
+
+    /** The median of the loaded values. Uses quickselect unless the values are sorted. */
+    public double median() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (sorted) {
+            return medianOfSorted(values, 0, count);
+        }
+        int upper = count / 2;
+        double upperValue = select(values, 0, count - 1, upper);
+        if (count % 2 == 1) {
+            return upperValue;
+        }
+
+        // After selection, all values left of 'upper' are not larger, so the lower middle is their maximum
+        double lowerValue = values[0];
+        for (int i = 1; i < upper; i++) {
+            if (values[i] > lowerValue) lowerValue = values[i];
+        }
+        return (lowerValue + upperValue) / 2.0;
+    }
+
+    /** The median of the largest fraction of n sorted values (at least one value), 0 when there are no values. */
+    public static double medianOfLongest(double[] sortedValues, int n, double fraction) {
+        if (n == 0) {
+            return 0.0;
+        }
+        int nrToUse = Math.max((int) Math.round(fraction * n), 1);
+        return medianOfSorted(sortedValues, n - nrToUse, n);
+    }
+
+    /** The median of the smallest fraction of n sorted values (at least one value), 0 when there are no values. */
+    public static double medianOfShortest(double[] sortedValues, int n, double fraction) {
+        if (n == 0) {
+            return 0.0;
+        }
+        int nrToUse = Math.max((int) Math.round(fraction * n), 1);
+        return medianOfSorted(sortedValues, 0, nrToUse);
+    }
+
+    /** Median of sortedValues[from, to). */
+    static double medianOfSorted(double[] sortedValues, int from, int to) {
+        int size = to - from;
+        int middle = from + size / 2;
+        if (size % 2 == 1) {
+            return sortedValues[middle];
+        }
+        return (sortedValues[middle - 1] + sortedValues[middle]) / 2.0;
+    }
+
+    /*
+     * Quickselect (Hoare partitioning, median-of-three pivot): returns the k-th smallest value of a[left..right]
+     * and leaves a[k] in its sorted position, with no larger values before it and no smaller values after it.
+     */
+
+    static double select(double[] a, int left, int right, int k) {
+        while (right > left) {
+            int middle = (left + right) >>> 1;
+            if (a[middle] < a[left]) swap(a, left, middle);
+            if (a[right] < a[left]) swap(a, left, right);
+            if (a[right] < a[middle]) swap(a, middle, right);
+            double pivot = a[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
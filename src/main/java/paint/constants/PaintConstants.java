@@ -9,6 +9,7 @@ public final class PaintConstants {
     public static final String RECORDINGS_CSV = "All Recordings.csv";
     public static final String TRACKS_CSV = "All Tracks.csv";
     public static final String SQUARES_CSV = "All Squares.csv";
+    public static final String SQUARES_FINGERPRINTS_CSV = "Squares Fingerprints.csv";
     public static final String EXPERIMENT_INFO_CSV = "Experiment Info.csv";
     public static final String PAINT_JSON = "Paint Configuration.json";
 
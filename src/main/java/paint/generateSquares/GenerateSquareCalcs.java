@@ -1,25 +1,51 @@
 package paint.generateSquares;
 
+import paint.calculations.CalculateTau;
 import paint.calculations.CalculateTauResult;
+import paint.calculations.SquareDensity;
+import paint.calculations.SquareGrid;
+import paint.calculations.SquareSelection;
+import paint.calculations.SquareStatistics;
+import paint.io.EntityCsvWriter;
 import paint.io.RecordingTableIO;
 import paint.io.SquareTableIO;
 import paint.io.TrackTableIO;
+import paint.loaders.RecordingNameIndex;
 import paint.objects.*;
 import paint.utilities.AppLogger;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.Table;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static paint.calculations.CalculateTau.calculateTau;
+import static paint.constants.PaintConstants.SQUARES_CSV;
 import static paint.loaders.ProjectDataLoader.*;
+import static paint.utilities.Miscellaneous.friendlyMessage;
 
 public class GenerateSquareCalcs {
 
+    // Statistics buffers are reused per thread, squares can be calculated concurrently
+    private static final ThreadLocal<SquareStatistics> SQUARE_STATISTICS = ThreadLocal.withInitial(SquareStatistics::new);
+
     public static void main(String[] args) {
         Path projectPath = Paths.get("/Users/hans/Paint Test Project");
         String experimentName = "221012";
@@ -29,62 +55,404 @@ public class GenerateSquareCalcs {
         Project project = loadBareProject(projectPath);
         Context context = project.getContext();
 
-        calculateSquaresForExperiment(project, experimentName, context);
+        // Stream the squares recording by recording; the calculation releases them once they are written
+        SquareTableIO squaresTableIO = new SquareTableIO();
+        List<Recording> recordings = new ArrayList<>();
+        try (EntityCsvWriter<Square> writer = squaresTableIO.openCsvWriter(Paths.get("/Users/hans/Downloads/Squares-221022.csv"))) {
+            calculateSquaresForExperiment(project, experimentName, context, new RecordingMonitor() {
+
+                public void recordingDone(Recording recording, int recordingsDone, int recordingsTotal) {
+                }
+
+                public void squaresCalculated(Recording recording) {
+                    try {
+                        writer.write(recording.getSquares());
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    recordings.add(recording);
+                }
+
+                public boolean isCancelled() {
+                    return false;
+                }
+            });
+        } catch (Exception e) {
+            AppLogger.error(e.getMessage());
+        }
 
         RecordingTableIO recordingsTableIO = new RecordingTableIO();
-        table = recordingsTableIO.toTable(project.getExperiment(experimentName).getRecordings());
+        table = recordingsTableIO.toTable(recordings);
         try {
             recordingsTableIO.writeCsv(table, "/Users/hans/Downloads/Recordings-221022.csv");
         }
         catch ( Exception e) {
         }
+    }
 
-        SquareTableIO squaresTableIO = new SquareTableIO();
-        Table allSquaresTable = squaresTableIO.emptyTable();
-
-        List<Recording> recordings = project.getExperiment(experimentName).getRecordings();
-        for (Recording recording : recordings) {
-            table = squaresTableIO.toTable(recording.getSquares());
-            squaresTableIO.appendInPlace(allSquaresTable, table);
-
-        }
-        try {
-            squaresTableIO.writeCsv(allSquaresTable, "/Users/hans/Downloads/Squares-221022.csv");
-        } catch (Exception e) {
-            AppLogger.error(e.getMessage());
+    /**
+     * Receives progress from calculateSquaresForExperiment. When recordings are processed in parallel,
+     * recordingDone is called from the worker threads.
+     */
+    interface RecordingMonitor {
+
+        /** Called after each recording has been processed. */
+        void recordingDone(Recording recording, int recordingsDone, int recordingsTotal);
+
+        /**
+         * Called for each recording in experiment order, as soon as it and the recordings before it are done, with
+         * the squares as they are saved. The squares are released right after, so this is where a caller takes
+         * what it needs from the results. Calls may come from different worker threads, but never concurrently.
+         */
+        default void squaresCalculated(Recording recording) {
         }
+
+        /** Recordings that have not started yet are skipped once this returns true. */
+        boolean isCancelled();
     }
 
     static boolean calculateSquaresForExperiment(Project project, String experimentName, Context context) {
+        return calculateSquaresForExperiment(project, experimentName, context, null);
+    }
+
+    /** Load an experiment and calculate the squares of all its recordings. */
+
+    static boolean calculateSquaresForExperiment(Project project, String experimentName, Context context, RecordingMonitor monitor) {
+        return calculateSquaresForExperiment(project, experimentName, context, monitor, false);
+    }
+
+    /**
+     * Load an experiment, calculate the squares of its recordings and write them to 'All Squares.csv'.
+     * @param incremental when true, recordings whose fingerprint matches that of the last incremental calculation take
+     *                    their squares from 'All Squares.csv' and only the other recordings are calculated; the squares
+     *                    of all recordings are then written back to 'All Squares.csv' with the new fingerprints
+     * @return true if all recordings were processed, false if the experiment could not be loaded or saved, or the run was cancelled
+     */
+
+    static boolean calculateSquaresForExperiment(Project project, String experimentName, Context context,
+                                                 RecordingMonitor monitor, boolean incremental) {
 
+        Path experimentPath = project.getProjectPath().resolve(experimentName);
         Experiment experiment = loadExperimentForSquaresCalc(project.getProjectPath(), experimentName);
         if (experiment != null) {
             AppLogger.infof("Experiment loaded: %s", experimentName);
 
-            for (Recording recording : experiment.getRecordings()) {
-                AppLogger.infof("Recording loaded: %s", recording.getRecordingName());
-                AppLogger.info(recording.toString());
+            List<Recording> allRecordings = experiment.getRecordings();
+            List<Recording> recordings = allRecordings;
+            Map<String, String> fingerprints = null;
+            if (incremental) {
+                fingerprints = new LinkedHashMap<>();
+                for (Recording recording : allRecordings) {
+                    fingerprints.put(recording.getRecordingName(), SquareFingerprints.of(recording, context));
+                }
+                recordings = restoreUnchangedRecordings(experimentPath, allRecordings, fingerprints, context);
+                AppLogger.infof("Experiment %s: recalculating %d of %d recordings.", experimentName, recordings.size(), allRecordings.size());
+            }
+
+            int numberOfThreads = context.getEffectiveNumberOfThreads();
+            try (SquaresStream stream = new SquaresStream(experimentPath, allRecordings, monitor, 2 * numberOfThreads)) {
+
+                // Restored recordings are written as soon as the recordings before them are
+                Set<Recording> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+                changed.addAll(recordings);
+                for (Recording recording : allRecordings) {
+                    if (!changed.contains(recording)) {
+                        stream.done(recording);
+                    }
+                }
+
+                boolean completed;
+                if (numberOfThreads <= 1) {
+                    completed = true;
+                    for (int i = 0; i < recordings.size(); i++) {
+                        if (monitor != null && monitor.isCancelled()) {
+                            completed = false;
+                            break;
+                        }
+                        calculateSquaresForRecording(recordings.get(i), context, false);
+                        if (monitor != null) {
+                            monitor.recordingDone(recordings.get(i), i + 1, recordings.size());
+                        }
+                        stream.done(recordings.get(i));
+                    }
+                }
+                else {
+                    completed = calculateSquaresForRecordingsInParallel(recordings, context, numberOfThreads, monitor, stream);
+                }
+
+                if (!completed) {
+                    AppLogger.warningf("Calculation of experiment %s was cancelled.", experimentName);
+                    return false;
+                }
+                stream.commit(fingerprints);
+                return true;
+            }
+            catch (IOException | UncheckedIOException e) {
+                AppLogger.errorf("Failed to save squares in %s: %s", experimentPath, friendlyMessage(e));
+                return false;
+            }
+        }
+        else {
+            AppLogger.errorf("Failed to load experiment: %s", experimentName);
+            return false;
+        }
+    }
+
+    /**
+     * Run the square pipeline for one recording: generate the squares, assign the tracks, and calculate the
+     * recording and square attributes.
+     * @param parallelSquares when true, and running in a ForkJoinPool, the square attributes are calculated concurrently
+     */
 
-                // Create the squares with basic geometric information
-                List<Square> squares = generateSquaresForRecording(context, recording);
-                recording.setSquares(squares);
+    static void calculateSquaresForRecording(Recording recording, Context context, boolean parallelSquares) {
+        AppLogger.infof("Recording loaded: %s", recording.getRecordingName());
+        AppLogger.info(recording.toString());
 
-                // Assign the recording tracks to the squares
-                assignTracksToSquares(recording, context);
+        // Create the squares with basic geometric information
+        List<Square> squares = generateSquaresForRecording(context, recording);
+        recording.setSquares(squares);
 
-                // Calculate recording attributes
-                calculateRecordingAttributes(recording, context);
+        // Assign the recording tracks to the squares
+        assignTracksToSquares(recording, context);
 
-                // Calculate squares attributes
-                calculateSquareAttributes(recording, context);
-                int i = 1;
+        // Calculate recording attributes
+        calculateRecordingAttributes(recording, context);
+
+        // Calculate squares attributes, the density metrics of all squares are calculated together
+        if (parallelSquares && ForkJoinTask.inForkJoinPool()) {
+            SquareDensity.calculate(recording, context);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(squares.size());
+            for (Square square : squares) {
+                tasks.add(ForkJoinTask.adapt(() -> calculateSquareAttributes(square, context)));
             }
-            project.addExperiment(experiment);
+            ForkJoinTask.invokeAll(tasks);
         }
         else {
-            AppLogger.errorf("Failed to load experiment: %s", experimentName);
+            calculateSquareAttributes(recording, context);
+        }
+
+        // Select the squares with the thresholds and neighbour mode of the context
+        SquareSelection.select(recording, context);
+    }
+
+    /*
+     * Give the recordings whose fingerprint is unchanged their squares from the previous 'All Squares.csv', and
+     * return the recordings that still have to be calculated. Without usable previous results, that is all of them.
+     */
+
+    private static List<Recording> restoreUnchangedRecordings(Path experimentPath, List<Recording> recordings,
+                                                              Map<String, String> fingerprints, Context context) {
+        Map<String, String> previousFingerprints;
+        Table previousSquares;
+        try {
+            previousFingerprints = SquareFingerprints.read(experimentPath);
+            if (previousFingerprints.isEmpty() || !Files.isRegularFile(experimentPath.resolve(SQUARES_CSV))) {
+                return recordings;
+            }
+            previousSquares = new SquareTableIO().readCsv(experimentPath.resolve(SQUARES_CSV));
+        }
+        catch (Exception e) {
+            AppLogger.warningf("Previous squares in %s can not be used, all recordings are recalculated: %s",
+                               experimentPath, friendlyMessage(e));
+            return recordings;
+        }
+
+        SquareTableIO squareTableIO = new SquareTableIO();
+        RecordingNameIndex squaresIndex = RecordingNameIndex.of(previousSquares);
+        List<Recording> changed = new ArrayList<>();
+        for (Recording recording : recordings) {
+            String recordingName = recording.getRecordingName();
+            boolean restored = false;
+            if (fingerprints.get(recordingName).equals(previousFingerprints.get(recordingName))) {
+                List<Square> squares = squareTableIO.toEntities(squaresIndex.tableOf(previousSquares, recordingName));
+                restored = restoreSquares(recording, squares, context);
+            }
+            if (!restored) {
+                changed.add(recording);
+            }
+        }
+        return changed;
+    }
+
+    /* Use previously calculated squares if they are exactly one full grid for this recording. */
+
+    private static boolean restoreSquares(Recording recording, List<Square> squares, Context context) {
+        int numberOfSquares = context.getNumberOfSquaresInRow() * context.getNumberOfSquaresInRow();
+        if (squares.size() != numberOfSquares) {
+            return false;
+        }
+        boolean[] present = new boolean[numberOfSquares];
+        for (Square square : squares) {
+            int squareNumber = square.getSquareNumber();
+            if (squareNumber < 0 || squareNumber >= numberOfSquares || present[squareNumber]
+                    || !recording.getRecordingName().equals(square.getRecordingName())) {
+                return false;
+            }
+            present[squareNumber] = true;
+        }
+
+        // The squares keep their calculated attributes, only the track references and recording attributes are set
+        recording.setSquares(squares);
+        assignTracksToSquares(recording, context);
+        calculateRecordingAttributes(recording, context);
+
+        // The thresholds are not part of the fingerprint, so the selection is always redone
+        SquareSelection.select(recording, context);
+        return true;
+    }
+
+    /*
+     * Writes the squares of an experiment to 'All Squares.csv' in experiment order while the recordings are being
+     * calculated: a recording is handed to the monitor, written and has its squares released as soon as it and all
+     * recordings before it are done. Calculation may run at most 'window' recordings ahead of the first recording
+     * that is not written yet, which bounds the squares held when recordings finish out of order.
+     */
+
+    private static final class SquaresStream implements Closeable {
+
+        private final Path experimentPath;
+        private final List<Recording> recordings;
+        private final Map<Recording, Integer> positions = new IdentityHashMap<>();
+        private final boolean[] done;
+        private final RecordingMonitor monitor;
+        private final int window;
+        private final SquaresFileWriter writer;
+        private int written = 0;
+        private boolean aborted = false;
+
+        SquaresStream(Path experimentPath, List<Recording> recordings, RecordingMonitor monitor, int window) throws IOException {
+            this.experimentPath = experimentPath;
+            this.recordings = recordings;
+            for (int i = 0; i < recordings.size(); i++) {
+                positions.put(recordings.get(i), i);
+            }
+            this.done = new boolean[recordings.size()];
+            this.monitor = monitor;
+            this.window = Math.max(1, window);
+            this.writer = new SquaresFileWriter(experimentPath);
+        }
+
+        /** Wait until the recording is inside the window; false if the stream was aborted meanwhile. */
+        synchronized boolean awaitTurn(Recording recording) {
+            int position = positions.get(recording);
+            try {
+                while (!aborted && position >= written + window) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+            }
+            return !aborted;
+        }
+
+        /** Mark a recording as done, and write it and the done recordings after it if it is the next one due. */
+        synchronized void done(Recording recording) throws IOException {
+            done[positions.get(recording)] = true;
+            while (written < recordings.size() && done[written]) {
+                Recording next = recordings.get(written);
+                if (monitor != null) {
+                    monitor.squaresCalculated(next);
+                }
+                writer.write(next.getSquares());
+                next.setSquares(new ArrayList<>());
+                written++;
+            }
+            notifyAll();
+        }
+
+        /** Stop waiting calculations, after a cancel or a failure. */
+        synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+
+        /*
+         * Replace 'All Squares.csv' and, for an incremental run, write the fingerprints the squares were calculated
+         * for. The old fingerprints are removed first, so that an interrupted save leads to a full recalculation
+         * next time; a full run leaves no fingerprints, as it did not calculate them.
+         */
+
+        synchronized void commit(Map<String, String> fingerprints) throws IOException {
+            if (written != recordings.size()) {
+                throw new IllegalStateException(String.format("Only %d of %d recordings were written", written, recordings.size()));
+            }
+            SquareFingerprints.delete(experimentPath);
+            writer.commit();
+            if (fingerprints != null) {
+                SquareFingerprints.write(experimentPath, fingerprints);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /*
+     * Process the recordings concurrently in a dedicated pool. Every recording (and every square) only writes to
+     * its own objects, and the stream writes the recordings in their experiment order, so the output is the same
+     * as that of the sequential path. Each task takes the next recording in experiment order, so recordings finish
+     * roughly in that order and few wait in the stream to be written.
+     */
+
+    private static boolean calculateSquaresForRecordingsInParallel(List<Recording> recordings, Context context,
+                                                                   int numberOfThreads, RecordingMonitor monitor,
+                                                                   SquaresStream stream) {
+        AtomicInteger nextRecording = new AtomicInteger();
+        AtomicInteger recordingsDone = new AtomicInteger();
+        AtomicBoolean skipped = new AtomicBoolean(false);
+        ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+        try {
+            pool.submit(() -> {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(numberOfThreads);
+                for (int t = 0; t < Math.min(numberOfThreads, recordings.size()); t++) {
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        try {
+                            for (int i = nextRecording.getAndIncrement(); i < recordings.size(); i = nextRecording.getAndIncrement()) {
+                                Recording recording = recordings.get(i);
+                                if ((monitor != null && monitor.isCancelled()) || !stream.awaitTurn(recording)) {
+                                    skipped.set(true);
+                                    stream.abort();
+                                    return;
+                                }
+                                calculateSquaresForRecording(recording, context, true);
+                                if (monitor != null) {
+                                    monitor.recordingDone(recording, recordingsDone.incrementAndGet(), recordings.size());
+                                }
+                                stream.done(recording);
+                            }
+                        }
+                        catch (IOException e) {
+                            stream.abort();
+                            throw new UncheckedIOException(e);
+                        }
+                        catch (RuntimeException | Error e) {
+                            stream.abort();
+                            throw e;
+                        }
+                    }));
+                }
+                ForkJoinTask.invokeAll(tasks);
+            }).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calculating squares", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
-       return false;
+        finally {
+            pool.shutdown();
+        }
+        return !skipped.get();
     }
 
 
@@ -125,19 +493,26 @@ public class GenerateSquareCalcs {
     }
 
 
+    /**
+     * Assign the tracks of a recording to its squares. The tracks are bucketed in a single pass over the
+     * track locations, so the cost is proportional to the number of tracks, not to tracks times squares.
+     * The squares refer to rows of the track store of the recording, no tracks are copied.
+     */
+
     public static void assignTracksToSquares(Recording recording, Context context) {
 
-        Table tracksOfRecording = recording.getTracksTable();
-        TrackTableIO trackTableIO = new TrackTableIO();
+        TrackStore trackStore = recording.getTrackStore();
 
-        int lastRowCol = context.getNumberOfSquaresInRow() - 1;
+        SquareGrid grid = new SquareGrid(context);
+        int[][] rowsPerSquare = grid.assignRows(
+                trackStore.doubleColumn(TrackStore.TRACK_X_LOCATION),
+                trackStore.doubleColumn(TrackStore.TRACK_Y_LOCATION),
+                recording.getTrackRows());
 
         for (Square square : recording.getSquares()) {
-            Table squareTracksTable = filterTracksInSquare(tracksOfRecording, square, lastRowCol);
-            List<Track> tracks = trackTableIO.toEntities(squareTracksTable);
-            square.setTracks(tracks);
-            square.setTracksTable(squareTracksTable);
-            square.setNumberOfTracks(tracks.size());
+            int[] rows = rowsPerSquare[square.getSquareNumber()];
+            square.setTrackStore(trackStore, rows);
+            square.setNumberOfTracks(rows.length);
         }
     }
 
@@ -145,7 +520,8 @@ public class GenerateSquareCalcs {
 
         double minRequiredRSquared = context.getMinRequiredRSquared();
         int minTracksForTau = context.getMinTracksForTau();
-        CalculateTauResult results = calculateTau(recording.getTracks(), minTracksForTau,  minRequiredRSquared);
+        double[] durations = recording.getTrackStore().gather(TrackStore.TRACK_DURATION, recording.getTrackRows());
+        CalculateTauResult results = calculateTau(durations, durations.length, minTracksForTau,  minRequiredRSquared, CalculateTau.Fitter.FAST);
         if (results.getStatus() == CalculateTauResult.Status.TAU_SUCCESS) {
             recording.setTau(results.getTau());
             recording.setRSquared(results.getRSquared());
@@ -158,53 +534,63 @@ public class GenerateSquareCalcs {
 
     public static void calculateSquareAttributes(Recording recording, Context context) {
 
-        double minRequiredRSquared = context.getMinRequiredRSquared();
-        int minTracksForTau = context.getMinTracksForTau();
-
+        SquareDensity.calculate(recording, context);
         for (Square square : recording.getSquares()) {
+            calculateSquareAttributes(square, context);
+        }
+    }
 
-            List<Track> tracksInSquare = square.getTracks();
-            Table tracksInSquareTable = square.getTracksTable();
+    public static void calculateSquareAttributes(Square square, Context context) {
 
-            if (tracksInSquare == null || tracksInSquare.size() == 0) {
-                continue;
-            }
+        double minRequiredRSquared = context.getMinRequiredRSquared();
+        int minTracksForTau = context.getMinTracksForTau();
 
-            // Calculate Tau
-            CalculateTauResult results = calculateTau(tracksInSquare, minTracksForTau,  minRequiredRSquared);
-            if (results.getStatus() == CalculateTauResult.Status.TAU_SUCCESS) {
-                square.setTau(results.getTau());
-                square.setRSquared(results.getRSquared());
-            }
-            else {
-                square.setTau(Double.NaN);
-                square.setRSquared(Double.NaN);
-            }
+        int[] trackRows = square.getTrackRows();
+        if (trackRows.length == 0) {
+            return;
+        }
+        TrackStore trackStore = square.getTrackStore();
+        SquareStatistics stats = SQUARE_STATISTICS.get();
 
-            square.setMedianDiffusionCoefficient(tracksInSquareTable.doubleColumn("Diffusion Coefficient").median());
-            square.setMedianDiffusionCoefficientExt(tracksInSquareTable.doubleColumn("Diffusion Coefficient Ext").median());
+        // The durations are sorted once, for tau, the long and short track medians and the duration statistics
+        stats.load(trackStore.doubleColumn(TrackStore.TRACK_DURATION), trackRows).sort();
 
-            square.setMedianLongTrackDuration(calculateMedianLongTrack(tracksInSquareTable, 0.1));
-            square.setMedianShortTrackDuration(calculateMedianShortTrack(tracksInSquareTable, 0.1));
+        // Calculate Tau
+        CalculateTauResult results = calculateTau(stats.values(), stats.count(), minTracksForTau,  minRequiredRSquared, CalculateTau.Fitter.FAST);
+        if (results.getStatus() == CalculateTauResult.Status.TAU_SUCCESS) {
+            square.setTau(results.getTau());
+            square.setRSquared(results.getRSquared());
+        }
+        else {
+            square.setTau(Double.NaN);
+            square.setRSquared(Double.NaN);
+        }
 
-            square.setMedianDisplacement(tracksInSquareTable.doubleColumn("Track Displacement").mean());
-            square.setMaxDisplacement(tracksInSquareTable.doubleColumn("Track Displacement").max());
-            square.setTotalDisplacement(tracksInSquareTable.doubleColumn("Track Displacement").sum());
+        square.setMedianLongTrackDuration(SquareStatistics.medianOfLongest(stats.values(), stats.count(), 0.1));
+        square.setMedianShortTrackDuration(SquareStatistics.medianOfShortest(stats.values(), stats.count(), 0.1));
 
-            square.setMedianMaxSpeed(tracksInSquareTable.doubleColumn("Track Max Speed").median());
-            square.setMaxMaxSpeed(tracksInSquareTable.doubleColumn("Track Max Speed").max());
+        square.setMaxTrackDuration(stats.max());
+        square.setTotalTrackDuration(stats.sum());
+        square.setMedianTrackDuration(stats.median());
 
-            square.setMedianMeanSpeed(tracksInSquareTable.doubleColumn("Track Mean Speed").median());
-            square.setMaxMeanSpeed(tracksInSquareTable.doubleColumn("Track Mean Speed").max());
+        // The other columns are read once each, medians use quickselect
+        stats.load(trackStore.doubleColumn(TrackStore.DIFFUSION_COEFFICIENT), trackRows);
+        square.setMedianDiffusionCoefficient(stats.median());
+        stats.load(trackStore.doubleColumn(TrackStore.DIFFUSION_COEFFICIENT_EXT), trackRows);
+        square.setMedianDiffusionCoefficientExt(stats.median());
 
-            square.setMaxTrackDuration(tracksInSquareTable.doubleColumn("Track Duration").max());
-            square.setTotalTrackDuration(tracksInSquareTable.doubleColumn("Track Duration").sum());
-            square.setMedianTrackDuration(tracksInSquareTable.doubleColumn("Track Duration").median());
+        stats.load(trackStore.doubleColumn(TrackStore.TRACK_DISPLACEMENT), trackRows);
+        square.setMedianDisplacement(stats.mean());
+        square.setMaxDisplacement(stats.max());
+        square.setTotalDisplacement(stats.sum());
 
+        stats.load(trackStore.doubleColumn(TrackStore.TRACK_MAX_SPEED), trackRows);
+        square.setMaxMaxSpeed(stats.max());
+        square.setMedianMaxSpeed(stats.median());
 
-            int i =1;
-        }
-        int i = 1;
+        stats.load(trackStore.doubleColumn(TrackStore.TRACK_MEAN_SPEED), trackRows);
+        square.setMaxMeanSpeed(stats.max());
+        square.setMedianMeanSpeed(stats.median());
     }
 
     public static double calculateMedianLongTrack(Table tracks, double fraction) {
@@ -213,15 +599,10 @@ public class GenerateSquareCalcs {
             return 0.0;
         }
 
-        Table sorted = tracks.sortAscendingOn("Track Duration");
-        int nrTracksToAverage = Math.max((int) Math.round(fraction * nrOfTracks), 1);
-
-        // Get the last nrTracksToAverage durations
-        DoubleColumn durations = sorted.doubleColumn("Track Duration");
-        List<Double> tail = durations.asList()
-                .subList(nrOfTracks - nrTracksToAverage, nrOfTracks);
-
-        return median(tail);
+        // Sort the durations, not the table, and take the median of the last part
+        double[] durations = tracks.doubleColumn("Track Duration").asDoubleArray();
+        Arrays.sort(durations);
+        return SquareStatistics.medianOfLongest(durations, nrOfTracks, fraction);
     }
 
     public static double calculateMedianShortTrack(Table tracks, double fraction) {
@@ -230,28 +611,10 @@ public class GenerateSquareCalcs {
             return 0.0;
         }
 
-        Table sorted = tracks.sortAscendingOn("Track Duration");
-        int nrTracksToAverage = Math.max((int) Math.round(fraction * nrOfTracks), 1);
-
-        // Get the first nrTracksToAverage durations
-        DoubleColumn durations = sorted.doubleColumn("Track Duration");
-        List<Double> head = durations.asList().subList(0, nrTracksToAverage);
-
-        return median(head);
-    }
-
-    // Utility function to calculate the median of a list of doubles
-    private static double median(List<Double> values) {
-        values.sort(Comparator.naturalOrder());
-        int size = values.size();
-        if (size == 0) {
-            return 0.0;
-        }
-        if (size % 2 == 1) {
-            return values.get(size / 2);
-        } else {
-            return (values.get(size / 2 - 1) + values.get(size / 2)) / 2.0;
-        }
+        // Sort the durations, not the table, and take the median of the first part
+        double[] durations = tracks.doubleColumn("Track Duration").asDoubleArray();
+        Arrays.sort(durations);
+        return SquareStatistics.medianOfShortest(durations, nrOfTracks, fraction);
     }
 
 }
@@ -16,14 +16,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import paint.calculations.SquareFeatureMatrix;
+import paint.calculations.SquareSelection.NeighbourMode;
 import paint.objects.Context;
 import paint.objects.Project;
 import paint.utilities.AppLogger;
 import paint.utilities.DirectoryClassifier;
 import paint.utilities.JsonConfig;
 
-import static paint.generateSquares.GenerateSquareCalcs.calculateSquaresForExperiment;
+import static paint.loaders.ProjectDataLoader.loadBareProject;
+import static paint.utilities.Miscellaneous.friendlyMessage;
 
 class ProjectDirectoryDialog {
 
@@ -104,11 +109,22 @@ class GenerateSquareDialog {
     private JTextField minRSquaredField;
     private JTextField minDensityRatioField;
     private JTextField maxVariabilityField;
+    private JCheckBox incrementalCheckBox;
 
     private JPanel checkboxPanel;
     private List<JCheckBox> checkBoxes = new ArrayList<>();
     private boolean userChangedInput = false;
 
+    private JButton okButton;
+    private JButton applyButton;
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private GenerateSquaresBatch runningBatch = null;
+
+    // The features of the calculated squares, re-evaluated live when a threshold changes
+    private final SquareThresholdPreview preview = new SquareThresholdPreview();
+    private NeighbourMode neighbourMode = NeighbourMode.FREE;
+
     public GenerateSquareDialog(Path projectPath) {
         this.projectPath = projectPath;
         this.project = new Project(projectPath);
@@ -124,8 +140,9 @@ class GenerateSquareDialog {
         double minRSquared = config.getDouble("Generate Squares", "Min Required R Squared", 0.1);
         double minDensityRatio = config.getDouble("Generate Squares", "Min Required Density Ratio", 2.0);
         double maxVariability = config.getDouble("Generate Squares", "Max Allowable Variability", 10.0);
+        boolean incremental = config.getBoolean("Generate Squares", "Only Changed Recordings", false);
 
-        JPanel formPanel = new JPanel(new GridLayout(5, 2, 5, 8));
+        JPanel formPanel = new JPanel(new GridLayout(6, 2, 5, 8));
         formPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         nrSquaresField = createTightTextField(String.valueOf(nrSquares), new IntegerDocumentFilter());
@@ -145,6 +162,12 @@ class GenerateSquareDialog {
         formPanel.add(new JLabel("Max Allowed Variability"));
         formPanel.add(maxVariabilityField);
 
+        // Only recalculate recordings whose tracks or square parameters changed since the last incremental run
+        incrementalCheckBox = new JCheckBox("", incremental);
+        incrementalCheckBox.addActionListener(e -> userChangedInput = true);
+        formPanel.add(new JLabel("Only Recalculate Changed Recordings"));
+        formPanel.add(incrementalCheckBox);
+
         DocumentListener changeListener = new SimpleChangeListener(() -> userChangedInput = true);
         nrSquaresField.getDocument().addDocumentListener(changeListener);
         minTracksField.getDocument().addDocumentListener(changeListener);
@@ -152,6 +175,11 @@ class GenerateSquareDialog {
         minDensityRatioField.getDocument().addDocumentListener(changeListener);
         maxVariabilityField.getDocument().addDocumentListener(changeListener);
 
+        DocumentListener thresholdListener = new SimpleChangeListener(this::previewThresholds);
+        minRSquaredField.getDocument().addDocumentListener(thresholdListener);
+        minDensityRatioField.getDocument().addDocumentListener(thresholdListener);
+        maxVariabilityField.getDocument().addDocumentListener(thresholdListener);
+
         frame.add(formPanel, BorderLayout.NORTH);
 
         // === Checkbox Panel ===
@@ -195,16 +223,44 @@ class GenerateSquareDialog {
 
         // === Button Panel ===
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        JButton okButton = new JButton("OK");
+        okButton = new JButton("OK");
+        applyButton = new JButton("Apply Thresholds");
+        applyButton.setToolTipText("Save the selection for the current thresholds to the calculated experiments");
+        applyButton.setEnabled(false);
         JButton cancelButton = new JButton("Cancel");
 
         okButton.addActionListener(e -> handleOkToCalculate(config));
-        cancelButton.addActionListener(e -> frame.dispose());
+        applyButton.addActionListener(e -> handleApplyThresholds(config));
+        cancelButton.addActionListener(e -> {
+            // While calculating, Cancel stops the run; otherwise it closes the dialog
+            if (runningBatch != null) {
+                runningBatch.cancel();
+                statusLabel.setText("Cancelling...");
+            } else {
+                frame.dispose();
+            }
+        });
 
+        buttonPanel.add(applyButton);
         buttonPanel.add(okButton);
         buttonPanel.add(cancelButton);
 
-        frame.add(buttonPanel, BorderLayout.SOUTH);
+        // === Progress Panel ===
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        statusLabel = new JLabel(" ");
+
+        JPanel progressPanel = new JPanel(new BorderLayout(5, 5));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 0, 10));
+        progressPanel.add(progressBar, BorderLayout.NORTH);
+        progressPanel.add(statusLabel, BorderLayout.CENTER);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(progressPanel, BorderLayout.CENTER);
+        southPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        frame.add(southPanel, BorderLayout.SOUTH);
     }
 
     private void handleOkToCalculate(JsonConfig config) {
@@ -222,7 +278,15 @@ class GenerateSquareDialog {
             System.out.println("Max Allowed Variability: " + maxVariabilityVal);
             System.out.println("Selected Directory: " + projectPath);
 
-            Context context = new Context();
+            // Start from the project configuration and apply the values entered in the dialog
+            Context context = new Context(loadBareProject(projectPath).getContext());
+            context.setNumberOfSquaresInRecording(nrSquaresVal * nrSquaresVal);
+            context.setMinTracksForTau(minTracksVal);
+            context.setMinRequiredRSquared(minRSquaredVal);
+            context.setMinRequiredDensityRatio(minDensityRatioVal);
+            context.setMaxAllowableVariability(maxVariabilityVal);
+
+            List<String> experimentNames = new ArrayList<>();
             for (JCheckBox cb : checkBoxes) {
                 if (cb.isSelected()) {
                     String experimentName = cb.getText();
@@ -235,13 +299,19 @@ class GenerateSquareDialog {
                         AppLogger.infof("Skipping non-experiment directory: %s", expDir);
                     }
                     else {
-                        calculateSquaresForExperiment(project, experimentName, context);
+                        experimentNames.add(experimentName);
                     }
                 }
             }
-            System.out.println("\n\nFinished calculating");
-            // Save config
-            saveConfig(config);
+
+            // Run the calculation off the Event Dispatch Thread, so that the dialog stays responsive
+            BatchWorker worker = new BatchWorker(context, experimentNames, config, incrementalCheckBox.isSelected());
+            runningBatch = worker.batch;
+            okButton.setEnabled(false);
+            applyButton.setEnabled(false);
+            progressBar.setValue(0);
+            statusLabel.setText("Calculating...");
+            worker.execute();
 
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(frame,
@@ -250,6 +320,139 @@ class GenerateSquareDialog {
         }
     }
 
+    /*
+     * Runs a GenerateSquaresBatch in the background and shows its progress events in the dialog.
+     */
+
+    private class BatchWorker extends SwingWorker<List<String>, GenerateSquaresBatch.ProgressEvent> {
+
+        private final GenerateSquaresBatch batch;
+        private final Context context;
+        private final List<String> experimentNames;
+        private final JsonConfig config;
+
+        // Only the features of the squares are kept; each experiment's list is filled by the worker calculating it
+        private final Map<String, List<SquareFeatureMatrix>> matrices = new ConcurrentHashMap<>();
+
+        BatchWorker(Context context, List<String> experimentNames, JsonConfig config, boolean incremental) {
+            this.context = context;
+            // The listener is called on the worker threads, publish hands the events over to the EDT
+            this.batch = new GenerateSquaresBatch(project, context, context.getNumberOfWorkers(), event -> publish(event));
+            this.batch.setIncremental(incremental);
+            this.batch.setSquaresListener((experimentName, recording) ->
+                    matrices.computeIfAbsent(experimentName, name -> new ArrayList<>())
+                            .add(SquareFeatureMatrix.of(recording, context.getNumberOfSquaresInRow())));
+            this.experimentNames = experimentNames;
+            this.config = config;
+        }
+
+        @Override
+        protected List<String> doInBackground() {
+            return batch.run(experimentNames);
+        }
+
+        @Override
+        protected void process(List<GenerateSquaresBatch.ProgressEvent> events) {
+            GenerateSquaresBatch.ProgressEvent event = events.get(events.size() - 1);
+            double progress = event.experimentsTotal == 0 ? 1.0 : (double) event.experimentsDone / event.experimentsTotal;
+            if (event.type == GenerateSquaresBatch.EventType.RECORDING_DONE && event.recordingsTotal > 0 && event.experimentsTotal > 0) {
+                progress += (double) event.recordingsDone / event.recordingsTotal / event.experimentsTotal;
+            }
+            progressBar.setValue((int) Math.round(Math.min(1.0, progress) * progressBar.getMaximum()));
+            progressBar.setString(String.format("%d of %d experiments", event.experimentsDone, event.experimentsTotal));
+            statusLabel.setText(event.toString());
+        }
+
+        @Override
+        protected void done() {
+            runningBatch = null;
+            okButton.setEnabled(true);
+            try {
+                List<String> completed = get();
+                statusLabel.setText(batch.isCancelled()
+                        ? String.format("Cancelled - %d of %d experiments completed.", completed.size(), experimentNames.size())
+                        : String.format("Finished - %d of %d experiments completed.", completed.size(), experimentNames.size()));
+                AppLogger.info("Finished calculating");
+                updatePreview(context, completed, matrices);
+            } catch (Exception e) {
+                statusLabel.setText("Calculation failed: " + friendlyMessage(e));
+                AppLogger.error("Calculation failed", e);
+            }
+
+            // Save config
+            saveConfig(config);
+        }
+    }
+
+    /* Keep the square features of the experiments that were calculated, so that threshold changes can be previewed. */
+
+    private void updatePreview(Context context, List<String> completed, Map<String, List<SquareFeatureMatrix>> matrices) {
+        neighbourMode = NeighbourMode.of(context.getNeighbourMode());
+        for (String experimentName : completed) {
+            preview.removeExperiment(experimentName);
+            for (SquareFeatureMatrix matrix : matrices.getOrDefault(experimentName, new ArrayList<>())) {
+                preview.addRecording(experimentName, matrix);
+            }
+        }
+        applyButton.setEnabled(false);
+    }
+
+    /*
+     * Evaluate the selection of the calculated squares for the thresholds in the fields, and show the result.
+     * Only the selection is redone, which takes milliseconds, so this runs on every edit; nothing is saved
+     * until Apply Thresholds is pressed.
+     */
+
+    private void previewThresholds() {
+        if (preview.isEmpty() || runningBatch != null) {
+            return;
+        }
+        try {
+            double minRSquaredVal = Double.parseDouble(minRSquaredField.getText());
+            double minDensityRatioVal = Double.parseDouble(minDensityRatioField.getText());
+            double maxVariabilityVal = Double.parseDouble(maxVariabilityField.getText());
+            SquareThresholdPreview.Summary summary = preview.evaluate(minRSquaredVal, minDensityRatioVal, maxVariabilityVal, neighbourMode);
+            statusLabel.setText(summary.toString());
+            applyButton.setEnabled(okButton.isEnabled());
+        } catch (NumberFormatException ex) {
+            // Incomplete input while typing, the preview waits for a valid value
+            applyButton.setEnabled(false);
+        }
+    }
+
+    /* Write the previewed selection to 'All Squares.csv' of the calculated experiments, off the EDT. */
+
+    private void handleApplyThresholds(JsonConfig config) {
+        if (preview.getLastSummary() == null) {
+            return;
+        }
+        okButton.setEnabled(false);
+        applyButton.setEnabled(false);
+        statusLabel.setText("Saving selection...");
+        new SwingWorker<Integer, Void>() {
+
+            @Override
+            protected Integer doInBackground() throws IOException {
+                return preview.save(projectPath);
+            }
+
+            @Override
+            protected void done() {
+                okButton.setEnabled(true);
+                try {
+                    int saved = get();
+                    statusLabel.setText(String.format("Selection saved to %d experiment%s.", saved, saved == 1 ? "" : "s"));
+                    AppLogger.infof("Saved the selection for the previewed thresholds to %d experiments", saved);
+                    saveConfig(config);
+                } catch (Exception e) {
+                    applyButton.setEnabled(true);
+                    statusLabel.setText("Saving the selection failed: " + friendlyMessage(e));
+                    AppLogger.error("Saving the selection failed", e);
+                }
+            }
+        }.execute();
+    }
+
     private void populateCheckboxes(JsonConfig config) {
         checkboxPanel.removeAll();
         checkBoxes.clear();
@@ -289,6 +492,7 @@ class GenerateSquareDialog {
             config.setDouble("Generate Squares", "Min Required Density Ratio", minDensityRatioVal);
             config.setDouble("Generate Squares", "Max Allowable Variability", maxVariabilityVal);
             config.setString("Generate Squares", "Last Used Directory", project.getProjectPath().toString());
+            config.setBoolean("Generate Squares", "Only Changed Recordings", incrementalCheckBox.isSelected());
 
             config.removeWithPrefix("Generate Squares", "Checkbox");
             for (JCheckBox cb : checkBoxes) {
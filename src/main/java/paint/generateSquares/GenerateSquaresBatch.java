@@ -0,0 +1,296 @@
+package paint.generateSquares;
+
+import paint.objects.Context;
+import paint.objects.Project;
+import paint.objects.Recording;
+import paint.utilities.AppLogger;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static paint.generateSquares.GenerateSquareCalcs.calculateSquaresForExperiment;
+import static paint.loaders.ProjectDataLoader.loadBareProject;
+import static paint.utilities.Miscellaneous.formatDuration;
+import static paint.utilities.Miscellaneous.friendlyMessage;
+
+/**
+ * Headless driver that calculates the squares for a set of experiments.
+ *
+ * The experiments are scheduled over a pool of workers. Each experiment still uses the 'Number of Threads'
+ * of the context for its own recordings, so the total number of threads is at most workers x threads.
+ * Progress is reported through a ProgressListener, which is called from the worker threads.
+ * A run can be cancelled: experiments that have not started are skipped and running experiments stop
+ * after the recordings that are in progress.
+ * The squares are saved to 'All Squares.csv' of each experiment and are not kept; a SquaresListener can take
+ * what it needs from them first. In incremental mode only recordings that changed since the last incremental run
+ * are calculated.
+ */
+
+public class GenerateSquaresBatch {
+
+    public enum EventType {
+        EXPERIMENT_STARTED,
+        RECORDING_DONE,
+        EXPERIMENT_DONE,
+        EXPERIMENT_FAILED,
+        BATCH_DONE
+    }
+
+    /** Immutable progress event. The ETA is null as long as there is no progress to extrapolate from. */
+    public static final class ProgressEvent {
+        public final EventType type;
+        public final String experimentName;
+        public final String recordingName;
+        public final int experimentsDone;
+        public final int experimentsTotal;
+        public final int recordingsDone;
+        public final int recordingsTotal;
+        public final Duration elapsed;
+        public final Duration eta;
+
+        ProgressEvent(EventType type, String experimentName, String recordingName,
+                      int experimentsDone, int experimentsTotal, int recordingsDone, int recordingsTotal,
+                      Duration elapsed, Duration eta) {
+            this.type = type;
+            this.experimentName = experimentName;
+            this.recordingName = recordingName;
+            this.experimentsDone = experimentsDone;
+            this.experimentsTotal = experimentsTotal;
+            this.recordingsDone = recordingsDone;
+            this.recordingsTotal = recordingsTotal;
+            this.elapsed = elapsed;
+            this.eta = eta;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d/%d experiments", experimentsDone, experimentsTotal));
+            if (experimentName != null) {
+                sb.append(" - ").append(experimentName);
+            }
+            if (type == EventType.RECORDING_DONE) {
+                sb.append(String.format(" - recording %d/%d (%s)", recordingsDone, recordingsTotal, recordingName));
+            }
+            else if (type == EventType.EXPERIMENT_FAILED) {
+                sb.append(" - failed");
+            }
+            sb.append(" - elapsed ").append(formatDuration(elapsed));
+            if (eta != null) {
+                sb.append(", remaining ").append(formatDuration(eta));
+            }
+            return sb.toString();
+        }
+    }
+
+    public interface ProgressListener {
+        void onProgress(ProgressEvent event);
+    }
+
+    /** Receives each recording with its calculated squares before they are saved, from the worker threads. */
+    public interface SquaresListener {
+        void squaresCalculated(String experimentName, Recording recording);
+    }
+
+    private final Project project;
+    private final Context context;
+    private final int numberOfWorkers;
+    private final ProgressListener listener;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile boolean incremental = false;
+    private volatile SquaresListener squaresListener = null;
+
+    // Run state, used to estimate the remaining time
+    private final Map<String, Double> experimentFractions = new ConcurrentHashMap<>();
+    private final AtomicInteger experimentsDone = new AtomicInteger();
+    private int experimentsTotal;
+    private long startNanos;
+
+    public GenerateSquaresBatch(Project project, Context context, int numberOfWorkers, ProgressListener listener) {
+        this.project = project;
+        this.context = context;
+        this.numberOfWorkers = Math.max(1, numberOfWorkers);
+        this.listener = listener;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setSquaresListener(SquaresListener squaresListener) {
+        this.squaresListener = squaresListener;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Calculate the squares for the experiments and block until all are done or the run is cancelled.
+     * @return the names of the experiments that were completed, in the order in which they were given
+     */
+
+    public List<String> run(List<String> experimentNames) {
+        experimentsTotal = experimentNames.size();
+        experimentsDone.set(0);
+        experimentFractions.clear();
+        startNanos = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (String experimentName : experimentNames) {
+                futures.add(executor.submit(() -> processExperiment(experimentName)));
+            }
+
+            List<String> completed = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        completed.add(experimentNames.get(i));
+                    }
+                }
+                catch (ExecutionException e) {
+                    AppLogger.errorf("Failed to calculate squares for %s: %s", experimentNames.get(i), friendlyMessage(e.getCause()));
+                }
+            }
+            fire(EventType.BATCH_DONE, null, null, 0, 0);
+            return completed;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            return Collections.emptyList();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private boolean processExperiment(String experimentName) {
+        if (isCancelled()) {
+            return false;
+        }
+        fire(EventType.EXPERIMENT_STARTED, experimentName, null, 0, 0);
+        experimentFractions.put(experimentName, 0.0);
+
+        boolean completed = false;
+        try {
+            completed = calculateSquaresForExperiment(project, experimentName, context, new GenerateSquareCalcs.RecordingMonitor() {
+
+                public void recordingDone(Recording recording, int recordingsDone, int recordingsTotal) {
+                    experimentFractions.put(experimentName, (double) recordingsDone / recordingsTotal);
+                    fire(EventType.RECORDING_DONE, experimentName, recording.getRecordingName(), recordingsDone, recordingsTotal);
+                }
+
+                public void squaresCalculated(Recording recording) {
+                    SquaresListener squares = squaresListener;
+                    if (squares != null) {
+                        squares.squaresCalculated(experimentName, recording);
+                    }
+                }
+
+                public boolean isCancelled() {
+                    return GenerateSquaresBatch.this.isCancelled();
+                }
+            }, incremental);
+        }
+        finally {
+            experimentFractions.remove(experimentName);
+            experimentsDone.incrementAndGet();
+            fire(completed ? EventType.EXPERIMENT_DONE : EventType.EXPERIMENT_FAILED, experimentName, null, 0, 0);
+        }
+        return completed;
+    }
+
+    private void fire(EventType type, String experimentName, String recordingName, int recordingsDone, int recordingsTotal) {
+        if (listener == null) {
+            return;
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        // Progress counts finished experiments fully and running experiments by their fraction of recordings done
+        double progress = experimentsDone.get();
+        for (double fraction : experimentFractions.values()) {
+            progress += fraction;
+        }
+        Duration eta = null;
+        if (progress > 0 && experimentsTotal > 0) {
+            double remaining = Math.max(0.0, experimentsTotal - progress);
+            eta = Duration.ofNanos((long) (elapsed.toNanos() * remaining / progress));
+        }
+
+        listener.onProgress(new ProgressEvent(type, experimentName, recordingName,
+                experimentsDone.get(), experimentsTotal, recordingsDone, recordingsTotal, elapsed, eta));
+    }
+
+    /**
+     * Command line entry point:
+     *   GenerateSquaresBatch project-root-path [experiments...] [--workers N] [--incremental]
+     * Without experiment names, all experiments in the project directory are processed. Without --workers, the
+     * 'Number of Workers' of the project configuration is used.
+     */
+
+    public static void main(String[] args) {
+        if (args == null || args.length == 0) {
+            System.out.println("Usage: java -cp <jar> paint.generateSquares.GenerateSquaresBatch <project-root-path> [experiments...] [--workers N] [--incremental]");
+            return;
+        }
+
+        AppLogger.init("GenerateSquares.log");
+        Path projectPath = Paths.get(args[0]);
+        List<String> experimentNames = new ArrayList<>();
+        int numberOfWorkers = 0;
+        boolean incremental = false;
+
+        for (int i = 1; i < args.length; i++) {
+            if ("--workers".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                numberOfWorkers = Integer.parseInt(args[++i]);
+            } else if ("--incremental".equalsIgnoreCase(args[i])) {
+                incremental = true;
+            } else {
+                experimentNames.add(args[i]);
+            }
+        }
+
+        if (experimentNames.isEmpty()) {
+            java.io.File[] subs = projectPath.toFile().listFiles(java.io.File::isDirectory);
+            if (subs != null) {
+                for (java.io.File sub : subs) {
+                    experimentNames.add(sub.getName());
+                }
+            }
+            experimentNames.sort(String::compareToIgnoreCase);
+        }
+
+        Project project = loadBareProject(projectPath);
+        if (numberOfWorkers <= 0) {
+            numberOfWorkers = project.getContext().getNumberOfWorkers();
+        }
+        GenerateSquaresBatch batch = new GenerateSquaresBatch(project, project.getContext(), numberOfWorkers,
+                event -> AppLogger.info(event.toString()));
+        batch.setIncremental(incremental);
+
+        List<String> completed = batch.run(experimentNames);
+        AppLogger.infof("Completed %d of %d experiments.", completed.size(), experimentNames.size());
+    }
+}
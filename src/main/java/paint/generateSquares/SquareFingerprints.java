@@ -0,0 +1,116 @@
+package paint.generateSquares;
+
+import paint.objects.Context;
+import paint.objects.Recording;
+import paint.objects.TrackStore;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.io.csv.CsvReadOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static paint.constants.PaintConstants.SQUARES_FINGERPRINTS_CSV;
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Fingerprints of the inputs of the square calculation of a recording, used to recalculate only the
+ * recordings that changed.
+ *
+ * A fingerprint is a 64-bit hash of the recording name and concentration, its rows in 'All Tracks' (all columns,
+ * in order) and the context parameters the squares depend on: the grid size, the image size, the minimum number
+ * of tracks for tau and the minimum R squared. The fingerprints of the last calculation are kept per experiment in
+ * 'Squares Fingerprints.csv', next to the 'All Squares.csv' they belong to.
+ */
+
+public final class SquareFingerprints {
+
+    private static final String COL_RECORDING_NAME = "Recording Name";
+    private static final String COL_FINGERPRINT = "Fingerprint";
+
+    // Changing what goes into a fingerprint must change this, so that old fingerprints no longer match
+    private static final long FORMAT_VERSION = 2;
+
+    private SquareFingerprints() {}
+
+    public static String of(Recording recording, Context context) {
+        long hash = 0x6A09E667F3BCC908L;
+        hash = mix(hash, FORMAT_VERSION);
+        hash = mix(hash, recording.getRecordingName().hashCode());
+        hash = mix(hash, Double.doubleToLongBits(recording.getConcentration()));
+        hash = mix(hash, context.getNumberOfSquaresInRow());
+        hash = mix(hash, Double.doubleToLongBits(context.getImageWidth()));
+        hash = mix(hash, Double.doubleToLongBits(context.getImageHeight()));
+        hash = mix(hash, context.getMinTracksForTau());
+        hash = mix(hash, Double.doubleToLongBits(context.getMinRequiredRSquared()));
+
+        TrackStore trackStore = recording.getTrackStore();
+        int[] rows = recording.getTrackRows();
+        hash = mix(hash, rows.length);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            if (TrackStore.isDoubleColumn(column)) {
+                double[] values = trackStore.doubleColumn(column);
+                for (int row : rows) {
+                    hash = mix(hash, Double.doubleToLongBits(values[row]));
+                }
+            } else if (TrackStore.isIntColumn(column)) {
+                int[] values = trackStore.intColumn(column);
+                for (int row : rows) {
+                    hash = mix(hash, values[row]);
+                }
+            } else {
+                for (int row : rows) {
+                    hash = mix(hash, trackStore.getString(column, row).hashCode());
+                }
+            }
+        }
+        return String.format("%016x", hash);
+    }
+
+    /** The fingerprints of the last calculation of the experiment, by recording name; empty if there are none. */
+    public static Map<String, String> read(Path experimentPath) throws IOException {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        Path filePath = experimentPath.resolve(SQUARES_FINGERPRINTS_CSV);
+        if (!Files.isRegularFile(filePath)) {
+            return fingerprints;
+        }
+        CsvReadOptions options = CsvReadOptions.builder(filePath.toFile())
+                .header(true)
+                .columnTypes(new ColumnType[] {ColumnType.STRING, ColumnType.STRING})
+                .build();
+        Table table = Table.read().usingOptions(options);
+        StringColumn names = table.stringColumn(COL_RECORDING_NAME);
+        StringColumn values = table.stringColumn(COL_FINGERPRINT);
+        for (int row = 0; row < table.rowCount(); row++) {
+            fingerprints.put(names.get(row), values.get(row));
+        }
+        return fingerprints;
+    }
+
+    public static void write(Path experimentPath, Map<String, String> fingerprints) throws IOException {
+        StringColumn names = StringColumn.create(COL_RECORDING_NAME);
+        StringColumn values = StringColumn.create(COL_FINGERPRINT);
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            names.append(entry.getKey());
+            values.append(entry.getValue());
+        }
+        Table.create("Squares Fingerprints", names, values).write().csv(experimentPath.resolve(SQUARES_FINGERPRINTS_CSV).toString());
+    }
+
+    public static void delete(Path experimentPath) throws IOException {
+        Files.deleteIfExists(experimentPath.resolve(SQUARES_FINGERPRINTS_CSV));
+    }
+
+    /* Combine a value into the hash, with the SplitMix64 finalizer so that every input bit affects every output bit. */
+
+    private static long mix(long hash, long value) {
+        long z = hash ^ (value + 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,174 @@
+package paint.generateSquares;
+
+import paint.calculations.SquareFeatureMatrix;
+import paint.calculations.SquareSelection;
+import paint.calculations.SquareSelection.NeighbourMode;
+import paint.io.SquareTableIO;
+import paint.objects.Experiment;
+import paint.objects.Recording;
+import paint.objects.Square;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static paint.constants.PaintConstants.SQUARES_CSV;
+
+/**
+ * Re-evaluates the square selection of calculated experiments for new thresholds, without calculating squares.
+ *
+ * The preview keeps only a SquareFeatureMatrix for every recording added to it, not the recordings themselves.
+ * evaluate applies a set of thresholds to all of them and returns the selection per recording with totals, quickly
+ * enough to be called from the Event Dispatch Thread whenever a threshold field is edited. save writes the last
+ * evaluated selection into 'All Squares.csv' of the experiments. The preview is not thread safe, except that save
+ * may run in the background while evaluate is called: it works from the evaluation that was last when it started.
+ */
+
+public class SquareThresholdPreview {
+
+    /** The selection of all recordings for one set of thresholds. */
+    public static final class Summary {
+        public final Map<String, SquareFeatureMatrix.Evaluation> recordings;
+        public final int recordingsWithSelection;
+        public final int selectedSquares;
+        public final int totalSquares;
+        public final long selectedTracks;
+
+        Summary(Map<String, SquareFeatureMatrix.Evaluation> recordings, int totalSquares) {
+            int withSelection = 0;
+            int squares = 0;
+            long tracks = 0;
+            for (SquareFeatureMatrix.Evaluation evaluation : recordings.values()) {
+                if (evaluation.selectedSquares > 0) {
+                    withSelection++;
+                }
+                squares += evaluation.selectedSquares;
+                tracks += evaluation.selectedTracks;
+            }
+            this.recordings = recordings;
+            this.recordingsWithSelection = withSelection;
+            this.selectedSquares = squares;
+            this.totalSquares = totalSquares;
+            this.selectedTracks = tracks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d squares selected (%d tracks), %d of %d recordings with a selection",
+                                 selectedSquares, totalSquares, selectedTracks, recordingsWithSelection, recordings.size());
+        }
+    }
+
+    // Keyed by experiment name and recording name, recordings keep the order in which they were added
+    private final Map<String, SquareFeatureMatrix> matrices = new LinkedHashMap<>();
+    private final Map<String, String> experimentNames = new HashMap<>();
+    private final Map<Integer, SquareSelection> selections = new HashMap<>();
+    private volatile Summary lastSummary = null;
+
+    /** Add or replace the matrix of a calculated recording. */
+    public void addRecording(String experimentName, SquareFeatureMatrix matrix) {
+        String key = keyOf(experimentName, matrix.getRecordingName());
+        matrices.put(key, matrix);
+        experimentNames.put(key, experimentName);
+        lastSummary = null;
+    }
+
+    /** Add or replace the recordings of a calculated experiment. */
+    public void addExperiment(Experiment experiment, int numberOfSquaresInRow) {
+        for (Recording recording : experiment.getRecordings()) {
+            addRecording(experiment.getExperimentName(), SquareFeatureMatrix.of(recording, numberOfSquaresInRow));
+        }
+    }
+
+    /** Remove the recordings of an experiment, before it is added again after a new calculation. */
+    public void removeExperiment(String experimentName) {
+        matrices.keySet().removeIf(key -> experimentName.equals(experimentNames.get(key)));
+        experimentNames.values().removeIf(experimentName::equals);
+        lastSummary = null;
+    }
+
+    public boolean isEmpty() {
+        return matrices.isEmpty();
+    }
+
+    public void clear() {
+        matrices.clear();
+        experimentNames.clear();
+        lastSummary = null;
+    }
+
+    /** Select the squares of all recordings for a set of thresholds; the squares themselves are not changed. */
+    public Summary evaluate(double minRequiredRSquared, double minRequiredDensityRatio, double maxAllowableVariability,
+                            NeighbourMode mode) {
+        Map<String, SquareFeatureMatrix.Evaluation> evaluations = new LinkedHashMap<>();
+        int totalSquares = 0;
+        for (Map.Entry<String, SquareFeatureMatrix> entry : matrices.entrySet()) {
+            SquareFeatureMatrix matrix = entry.getValue();
+            SquareSelection selection = selections.computeIfAbsent(matrix.getNumberOfSquaresInRow(), SquareSelection::new);
+            evaluations.put(entry.getKey(), matrix.evaluate(minRequiredRSquared, minRequiredDensityRatio,
+                                                            maxAllowableVariability, mode, selection));
+            totalSquares += matrix.getNumberOfSquares();
+        }
+        lastSummary = new Summary(evaluations, totalSquares);
+        return lastSummary;
+    }
+
+    /** The last evaluation, or null if there was none since the recordings last changed. */
+    public Summary getLastSummary() {
+        return lastSummary;
+    }
+
+    /**
+     * Write the selection of the last evaluation into the Selected column of 'All Squares.csv' of each experiment in
+     * the preview. The experiments are read and rewritten one at a time; squares of recordings that are not in the
+     * preview keep their selection.
+     * @return the number of experiments written, 0 if there was no evaluation
+     */
+    public int save(Path projectPath) throws IOException {
+        Summary summary = lastSummary;
+        if (summary == null) {
+            return 0;
+        }
+        // Per experiment, the key of each recording in the preview by recording name
+        Map<String, Map<String, String>> byExperiment = new LinkedHashMap<>();
+        for (String key : summary.recordings.keySet()) {
+            byExperiment.computeIfAbsent(experimentNames.get(key), name -> new HashMap<>())
+                        .put(matrices.get(key).getRecordingName(), key);
+        }
+
+        SquareTableIO squareTableIO = new SquareTableIO();
+        for (Map.Entry<String, Map<String, String>> experiment : byExperiment.entrySet()) {
+            Path experimentPath = projectPath.resolve(experiment.getKey());
+            List<Square> squares = squareTableIO.toEntities(squareTableIO.readCsv(experimentPath.resolve(SQUARES_CSV)));
+            Map<String, List<Square>> squaresByRecording = new HashMap<>();
+            for (Square square : squares) {
+                squaresByRecording.computeIfAbsent(square.getRecordingName(), name -> new ArrayList<>()).add(square);
+            }
+            for (Map.Entry<String, String> recording : experiment.getValue().entrySet()) {
+                List<Square> recordingSquares = squaresByRecording.get(recording.getKey());
+                if (recordingSquares != null) {
+                    String key = recording.getValue();
+                    matrices.get(key).applyTo(recordingSquares, summary.recordings.get(key).selected);
+                }
+            }
+            try (SquaresFileWriter writer = new SquaresFileWriter(experimentPath)) {
+                writer.write(squares);
+                writer.commit();
+            }
+        }
+        return byExperiment.size();
+    }
+
+    /** The recordings in the preview, as 'experiment/recording'. */
+    public List<String> getRecordingKeys() {
+        return new ArrayList<>(matrices.keySet());
+    }
+
+    static String keyOf(String experimentName, String recordingName) {
+        return experimentName + "/" + recordingName;
+    }
+}
@@ -0,0 +1,75 @@
+package paint.generateSquares;
+
+import paint.io.ColumnarCache;
+import paint.io.EntityCsvWriter;
+import paint.io.SquareTableIO;
+import paint.loaders.ExperimentCache;
+import paint.objects.Square;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static paint.constants.PaintConstants.SQUARES_CSV;
+
+/**
+ * Writes 'All Squares.csv' of an experiment recording by recording, through a temporary file in the experiment
+ * directory. The temporary file replaces 'All Squares.csv' only on commit; closing without a commit removes it,
+ * so a failed or cancelled write leaves the previous file as it was.
+ */
+
+final class SquaresFileWriter implements Closeable {
+
+    private final Path experimentPath;
+    private final Path squaresPath;
+    private final Path tempPath;
+    private final EntityCsvWriter<Square> writer;
+    private boolean committed = false;
+
+    SquaresFileWriter(Path experimentPath) throws IOException {
+        this.experimentPath = experimentPath;
+        this.squaresPath = experimentPath.resolve(SQUARES_CSV);
+        this.tempPath = Files.createTempFile(experimentPath, SQUARES_CSV, ".tmp");
+        try {
+            this.writer = new SquareTableIO().openCsvWriter(tempPath);
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+    }
+
+    void write(List<Square> squares) throws IOException {
+        writer.write(squares);
+    }
+
+    /** Close the temporary file and move it over 'All Squares.csv'; a loaded copy of the experiment is forgotten. */
+    void commit() throws IOException {
+        writer.close();
+        try {
+            Files.move(tempPath, squaresPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, squaresPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        ColumnarCache.invalidate(squaresPath);
+        ExperimentCache.invalidateShared(experimentPath);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            writer.close();
+        }
+        finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
@@ -6,9 +6,14 @@ import tech.tablesaw.io.csv.CsvReadOptions;
 import tech.tablesaw.columns.Column;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /** Per-entity adapter: defines schema + row mapping. (package-private on purpose) */
 interface EntityTableAdapter<E> {
@@ -19,17 +24,29 @@ interface EntityTableAdapter<E> {
     /** Create empty typed columns in the same order as columns()/columnTypes(). */
     List<Column<?>> newEmptyColumns();
 
-    /** Append one entity into the provided columns (same order as columns()). */
-    void appendEntity(E entity, List<Column<?>> cols);
+    /** Fill rows [from, to) of the arrays from the entities at the same index, column by column. */
+    void writeEntities(List<E> entities, int from, int to, ColumnArrays values);
 
-    /** Reconstruct one entity from a table row (0-based index). */
-    E readEntity(Table table, int rowIndex);
+    /** Reconstruct the entities of rows [from, to) of the arrays, column by column. */
+    List<E> readEntities(ColumnArrays values, int from, int to);
 }
 
-/** Reusable base for CSV/Table I/O across entities (Java 8 / Tablesaw 0.44.x). */
+/**
+ * Reusable base for CSV/Table I/O across entities (Java 8 / Tablesaw 0.44.x).
+ *
+ * Tables and entities are converted column by column through primitive arrays. From the parallel threshold on
+ * (system property paint.parallelThreshold, default 100000 rows) the rows are split into ranges that are
+ * converted concurrently in the fork/join pool.
+ */
 public class BaseTableIO<E> {
 
+    public static final int DEFAULT_PARALLEL_THRESHOLD = Integer.getInteger("paint.parallelThreshold", 100_000);
+
+    // Rows per parallel task, so that small tables above the threshold are not split too finely
+    private static final int MIN_ROWS_PER_TASK = 16_384;
+
     private final EntityTableAdapter<E> adapter;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 
     public BaseTableIO(EntityTableAdapter<E> adapter) {
         this.adapter = adapter;
@@ -41,46 +58,143 @@ public class BaseTableIO<E> {
         return Table.create(adapter.tableName(), cols.toArray(new Column<?>[cols.size()]));
     }
 
+    /** Tables with at least this many rows are converted in parallel. */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be at least 1, found " + parallelThreshold);
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
     /** Convert a list of entities to a typed Tablesaw Table. */
     public Table toTable(List<E> list) {
-        List<Column<?>> cols = adapter.newEmptyColumns();
-        for (int i = 0; i < list.size(); i++) {
-            adapter.appendEntity(list.get(i), cols);
+        List<E> entities = list instanceof RandomAccess ? list : new ArrayList<E>(list);
+        ColumnArrays values = ColumnArrays.allocate(adapter.columnTypes(), entities.size());
+        int[] bounds = rangeBounds(entities.size());
+        if (bounds.length == 2) {
+            adapter.writeEntities(entities, 0, entities.size(), values);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(bounds.length - 1);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                tasks.add(ForkJoinTask.adapt(() -> adapter.writeEntities(entities, from, to, values)));
+            }
+            ForkJoinTask.invokeAll(tasks);
         }
-        return Table.create(adapter.tableName(), cols.toArray(new Column<?>[cols.size()]));
+        return Table.create(adapter.tableName(), values.toColumns(adapter.columns()));
     }
 
     /** Convert a Table (with matching schema) back to a list of entities. */
     public List<E> toEntities(Table table) {
         validateHeader(table, adapter.columns());
-        List<E> out = new ArrayList<E>(table.rowCount());
-        for (int r = 0; r < table.rowCount(); r++) {
-            out.add(adapter.readEntity(table, r));
+        ColumnArrays values = ColumnArrays.of(table, adapter.columnTypes());
+        int[] bounds = rangeBounds(values.size());
+        if (bounds.length == 2) {
+            return adapter.readEntities(values, 0, values.size());
+        }
+
+        List<ForkJoinTask<List<E>>> tasks = new ArrayList<ForkJoinTask<List<E>>>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            tasks.add(ForkJoinTask.adapt(() -> adapter.readEntities(values, from, to)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        List<E> out = new ArrayList<E>(values.size());
+        for (ForkJoinTask<List<E>> task : tasks) {
+            out.addAll(task.join());
         }
         return out;
     }
 
+    /* Boundaries of the row ranges to convert: {0, rows} below the parallel threshold, otherwise one range per task. */
+
+    private int[] rangeBounds(int rows) {
+        if (rows < parallelThreshold) {
+            return new int[] {0, rows};
+        }
+        int parallelism = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism()
+                                                        : ForkJoinPool.getCommonPoolParallelism();
+        int ranges = Math.max(1, Math.min(4 * parallelism, rows / MIN_ROWS_PER_TASK));
+        int[] bounds = new int[ranges + 1];
+        for (int i = 0; i <= ranges; i++) {
+            bounds[i] = (int) ((long) rows * i / ranges);
+        }
+        return bounds;
+    }
+
     /** Write to CSV after reordering/validating columns. */
     public void writeCsv(Table table, String filePath) throws IOException {
-        // adapter.columns() is String[] -> OK for varargs
-        Table normalized = table.copy().retainColumns(adapter.columns());
-        normalized.write().csv(filePath);
+        writeCsv(table, Paths.get(filePath));
     }
 
+    /** Write to CSV after reordering/validating columns, and refresh the columnar cache next to it. */
     public void writeCsv(Table table, Path filePath) throws IOException {
-        // adapter.columns() is String[] -> OK for varargs
-        Table normalized = table.copy().retainColumns(adapter.columns());
+        Table normalized = inAdapterOrder(table);
         normalized.write().csv(filePath.toString());
+        ColumnarCache.writeTable(normalized, filePath, ColumnarCache.Stamp.of(filePath));
+    }
+
+    /** Open a CSV file to write entities batch by batch, without building a table for the whole file. */
+    public EntityCsvWriter<E> openCsvWriter(Path filePath) throws IOException {
+        return new EntityCsvWriter<E>(adapter, filePath);
+    }
+
+    /* A view with the adapter's columns in the adapter's order; the columns are shared, not copied. */
+
+    private Table inAdapterOrder(Table table) {
+        String[] names = adapter.columns();
+        Column<?>[] columns = new Column<?>[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = table.column(names[i]);
+        }
+        return Table.create(table.name(), columns);
     }
 
-    /** Read CSV forcing the adapter’s column types; validates header order. */
+    /**
+     * Read CSV forcing the adapter’s column types; validates header order.
+     * A valid columnar cache next to the CSV is used instead of the CSV, otherwise one is written after parsing.
+     */
     public Table readCsv(Path filePath) throws IOException {
+        ColumnarCache.Stamp stamp = ColumnarCache.Stamp.of(filePath);
+        Table cached = readCache(filePath, stamp);
+        if (cached != null) {
+            return cached;
+        }
+
         CsvReadOptions opts = CsvReadOptions.builder(filePath.toFile())
                 .header(true)
                 .columnTypes(adapter.columnTypes())
                 .build();
         Table t = Table.read().usingOptions(opts);
         validateHeader(t, adapter.columns());
+        ColumnarCache.writeTable(t, filePath, stamp);
+        return t;
+    }
+
+    /** The table from the columnar cache next to the CSV, or null when there is no valid one. */
+    public Table readCache(Path filePath, ColumnarCache.Stamp stamp) {
+        return ColumnarCache.readTable(filePath, stamp, adapter.columns(), adapter.columnTypes());
+    }
+
+    /**
+     * Read CSV content that has already been read from filePath, like readCsv(Path) does after a cache miss.
+     * The stamp is the one of the file before it was read.
+     */
+    public Table readCsv(InputStream in, Path filePath, ColumnarCache.Stamp stamp) throws IOException {
+        CsvReadOptions opts = CsvReadOptions.builder(in)
+                .tableName(filePath.getFileName().toString())
+                .header(true)
+                .columnTypes(adapter.columnTypes())
+                .build();
+        Table t = Table.read().usingOptions(opts);
+        validateHeader(t, adapter.columns());
+        ColumnarCache.writeTable(t, filePath, stamp);
         return t;
     }
 
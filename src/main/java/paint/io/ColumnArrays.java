@@ -0,0 +1,193 @@
+package paint.io;
+
+import tech.tablesaw.api.BooleanColumn;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.LongColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * The values of a table as one array per column, used to convert between tables and entities column by column
+ * instead of looking up and casting every column for every row.
+ *
+ * Integer, double and long columns are int[], double[] and long[] holding Tablesaw's missing values, string columns
+ * are String[] and boolean columns boolean[], with missing booleans read as false. Distinct row ranges can be
+ * filled from different threads.
+ */
+
+final class ColumnArrays {
+
+    private final ColumnType[] types;
+    private final Object[] values;
+    private final int size;
+
+    private ColumnArrays(ColumnType[] types, Object[] values, int size) {
+        this.types = types;
+        this.values = values;
+        this.size = size;
+    }
+
+    /** Pull the values out of a table whose columns have the given types, in the same order. */
+    static ColumnArrays of(Table table, ColumnType[] types) {
+        int size = table.rowCount();
+        Object[] values = new Object[types.length];
+        for (int c = 0; c < types.length; c++) {
+            Column<?> column = table.column(c);
+            if (types[c] == ColumnType.INTEGER) {
+                values[c] = ((IntColumn) column).asIntArray();
+            } else if (types[c] == ColumnType.DOUBLE) {
+                values[c] = ((DoubleColumn) column).asDoubleArray();
+            } else if (types[c] == ColumnType.LONG) {
+                values[c] = ((LongColumn) column).asLongArray();
+            } else if (types[c] == ColumnType.BOOLEAN) {
+                BooleanColumn booleans = (BooleanColumn) column;
+                boolean[] array = new boolean[size];
+                for (int r = 0; r < size; r++) {
+                    array[r] = Boolean.TRUE.equals(booleans.get(r));
+                }
+                values[c] = array;
+            } else if (types[c] == ColumnType.STRING) {
+                values[c] = ((StringColumn) column).asObjectArray();
+            } else {
+                throw new IllegalArgumentException("Column type " + types[c] + " is not supported");
+            }
+        }
+        return new ColumnArrays(types, values, size);
+    }
+
+    /** Empty arrays for 'size' rows, to be filled and turned into columns. */
+    static ColumnArrays allocate(ColumnType[] types, int size) {
+        Object[] values = new Object[types.length];
+        for (int c = 0; c < types.length; c++) {
+            if (types[c] == ColumnType.INTEGER) {
+                values[c] = new int[size];
+            } else if (types[c] == ColumnType.DOUBLE) {
+                values[c] = new double[size];
+            } else if (types[c] == ColumnType.LONG) {
+                values[c] = new long[size];
+            } else if (types[c] == ColumnType.BOOLEAN) {
+                values[c] = new boolean[size];
+            } else if (types[c] == ColumnType.STRING) {
+                values[c] = new String[size];
+            } else {
+                throw new IllegalArgumentException("Column type " + types[c] + " is not supported");
+            }
+        }
+        return new ColumnArrays(types, values, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Typed columns with the given names, in column order. */
+    Column<?>[] toColumns(String[] names) {
+        Column<?>[] columns = new Column<?>[types.length];
+        for (int c = 0; c < types.length; c++) {
+            if (types[c] == ColumnType.INTEGER) {
+                columns[c] = IntColumn.create(names[c], (int[]) values[c]);
+            } else if (types[c] == ColumnType.DOUBLE) {
+                columns[c] = DoubleColumn.create(names[c], (double[]) values[c]);
+            } else if (types[c] == ColumnType.LONG) {
+                columns[c] = LongColumn.create(names[c], (long[]) values[c]);
+            } else if (types[c] == ColumnType.BOOLEAN) {
+                columns[c] = BooleanColumn.create(names[c], (boolean[]) values[c]);
+            } else {
+                columns[c] = StringColumn.create(names[c], (String[]) values[c]);
+            }
+        }
+        return columns;
+    }
+
+    //
+    // Entities to arrays: rows [from, to) are taken from the entities at the same index
+    //
+
+    <E> void putStrings(int column, List<E> entities, int from, int to, Function<E, String> getter) {
+        String[] array = (String[]) values[column];
+        for (int r = from; r < to; r++) {
+            array[r] = getter.apply(entities.get(r));
+        }
+    }
+
+    <E> void putInts(int column, List<E> entities, int from, int to, ToIntFunction<E> getter) {
+        int[] array = (int[]) values[column];
+        for (int r = from; r < to; r++) {
+            array[r] = getter.applyAsInt(entities.get(r));
+        }
+    }
+
+    <E> void putLongs(int column, List<E> entities, int from, int to, ToLongFunction<E> getter) {
+        long[] array = (long[]) values[column];
+        for (int r = from; r < to; r++) {
+            array[r] = getter.applyAsLong(entities.get(r));
+        }
+    }
+
+    <E> void putDoubles(int column, List<E> entities, int from, int to, ToDoubleFunction<E> getter) {
+        double[] array = (double[]) values[column];
+        for (int r = from; r < to; r++) {
+            array[r] = getter.applyAsDouble(entities.get(r));
+        }
+    }
+
+    <E> void putBooleans(int column, List<E> entities, int from, int to, Predicate<E> getter) {
+        boolean[] array = (boolean[]) values[column];
+        for (int r = from; r < to; r++) {
+            array[r] = getter.test(entities.get(r));
+        }
+    }
+
+    //
+    // Arrays to entities: entity i of the list receives row from + i
+    //
+
+    <E> void getStrings(int column, List<E> entities, int from, BiConsumer<E, String> setter) {
+        String[] array = (String[]) values[column];
+        for (int i = 0; i < entities.size(); i++) {
+            setter.accept(entities.get(i), array[from + i]);
+        }
+    }
+
+    <E> void getInts(int column, List<E> entities, int from, ObjIntConsumer<E> setter) {
+        int[] array = (int[]) values[column];
+        for (int i = 0; i < entities.size(); i++) {
+            setter.accept(entities.get(i), array[from + i]);
+        }
+    }
+
+    <E> void getLongs(int column, List<E> entities, int from, ObjLongConsumer<E> setter) {
+        long[] array = (long[]) values[column];
+        for (int i = 0; i < entities.size(); i++) {
+            setter.accept(entities.get(i), array[from + i]);
+        }
+    }
+
+    <E> void getDoubles(int column, List<E> entities, int from, ObjDoubleConsumer<E> setter) {
+        double[] array = (double[]) values[column];
+        for (int i = 0; i < entities.size(); i++) {
+            setter.accept(entities.get(i), array[from + i]);
+        }
+    }
+
+    <E> void getBooleans(int column, List<E> entities, int from, BiConsumer<E, Boolean> setter) {
+        boolean[] array = (boolean[]) values[column];
+        for (int i = 0; i < entities.size(); i++) {
+            setter.accept(entities.get(i), array[from + i]);
+        }
+    }
+}
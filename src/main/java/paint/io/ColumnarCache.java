@@ -0,0 +1,669 @@
+package paint.io;
+
+import paint.objects.TrackStore;
+import paint.utilities.AppLogger;
+import tech.tablesaw.api.BooleanColumn;
+import tech.tablesaw.api.ColumnType;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.LongColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Binary columnar sidecar for the 'All Tracks', 'All Squares' and 'All Recordings' CSV files.
+ *
+ * The sidecar ('All Tracks.csv.cache' next to 'All Tracks.csv') holds the same table as the CSV, column by
+ * column: ints, longs and doubles as raw big-endian arrays, booleans as bytes and strings as a dictionary
+ * plus codes, or one by one for the track columns that differ on every row. It records the size and
+ * modification time of the CSV it was made from and is only used while both still match, so editing or
+ * replacing the CSV simply makes the sidecar stale.
+ *
+ * Sidecars are written after a CSV is written or parsed. Failing to read or write a sidecar is never an
+ * error, the CSV remains the source of truth. Caching can be switched off with setEnabled(false) or with
+ * the system property 'paint.columnarCache=false'.
+ */
+
+public final class ColumnarCache {
+
+    public static final String CACHE_EXTENSION = ".cache";
+
+    private static final int MAGIC = 0x50435643;        // "PCVC"
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final byte KIND_STRING = 'S';
+    private static final byte KIND_TEXT = 'T';
+    private static final byte KIND_INT = 'I';
+    private static final byte KIND_DOUBLE = 'D';
+    private static final byte KIND_LONG = 'L';
+    private static final byte KIND_BOOLEAN = 'B';
+
+    private static final byte BOOLEAN_FALSE = 0;
+    private static final byte BOOLEAN_TRUE = 1;
+    private static final byte BOOLEAN_MISSING = -1;
+
+    private static volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("paint.columnarCache"));
+
+    private ColumnarCache() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ColumnarCache.enabled = enabled;
+    }
+
+    public static Path cachePathFor(Path csvPath) {
+        return csvPath.resolveSibling(csvPath.getFileName().toString() + CACHE_EXTENSION);
+    }
+
+    /** Size and modification time of a CSV file; a sidecar is valid only for the stamp it was written with. */
+    public static final class Stamp {
+        final long size;
+        final long modified;
+
+        private Stamp(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /** The current stamp of the file, or null when it cannot be determined. */
+        public static Stamp of(Path csvPath) {
+            try {
+                return new Stamp(Files.size(csvPath), Files.getLastModifiedTime(csvPath).toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+
+    //
+    // Tables
+    //
+
+    /**
+     * Read the sidecar of a CSV as a table with the given columns and types.
+     * Returns null when caching is disabled or the sidecar is missing, stale or does not have this schema.
+     */
+    public static Table readTable(Path csvPath, Stamp stamp, String[] columns, ColumnType[] types) {
+        for (ColumnType type : types) {
+            if (!isSupported(type)) {
+                return null;
+            }
+        }
+        Columns data = read(csvPath, stamp, kindsOf(types), columns);
+        if (data == null) {
+            return null;
+        }
+        Column<?>[] tableColumns = new Column<?>[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            tableColumns[c] = toTableColumn(columns[c], data.kinds[c], data.values[c], data.dictionaries[c], data.rows);
+        }
+        return Table.create(csvPath.getFileName().toString(), tableColumns);
+    }
+
+    /** Write the sidecar for a CSV that has just been written or read. Failures are logged and ignored. */
+    public static void writeTable(Table table, Path csvPath, Stamp stamp) {
+        if (!enabled || stamp == null) {
+            return;
+        }
+        int nrOfColumns = table.columnCount();
+        Columns data = new Columns(nrOfColumns, table.rowCount());
+        for (int c = 0; c < nrOfColumns; c++) {
+            Column<?> column = table.column(c);
+            if (!isSupported(column.type())) {
+                return;
+            }
+            data.names[c] = column.name();
+            data.kinds[c] = kindOf(column.type());
+            fromTableColumn(column, data, c);
+        }
+        write(csvPath, stamp, data);
+    }
+
+    //
+    // Track stores
+    //
+
+    /** Read the sidecar of an 'All Tracks' CSV as a TrackStore, or null when it is not usable. */
+    public static TrackStore readTrackStore(Path csvPath, Stamp stamp) {
+        Columns data = read(csvPath, stamp, trackKinds(), TRACK_COLS);
+        if (data == null) {
+            return null;
+        }
+        int[][] ints = new int[TRACK_COLS.length][];
+        double[][] doubles = new double[TRACK_COLS.length][];
+        String[][] texts = new String[TRACK_COLS.length][];
+        for (int c = 0; c < TRACK_COLS.length; c++) {
+            if (data.kinds[c] == KIND_DOUBLE) {
+                doubles[c] = (double[]) data.values[c];
+            } else if (data.kinds[c] == KIND_TEXT) {
+                texts[c] = (String[]) data.values[c];
+            } else {
+                ints[c] = (int[]) data.values[c];
+            }
+        }
+        return TrackStore.fromColumns(data.rows, ints, doubles, data.dictionaries, texts);
+    }
+
+    /** Write the sidecar of an 'All Tracks' CSV from a TrackStore. Failures are logged and ignored. */
+    public static void writeTrackStore(TrackStore store, Path csvPath, Stamp stamp) {
+        if (!enabled || stamp == null) {
+            return;
+        }
+        Columns data = new Columns(TRACK_COLS.length, store.size());
+        byte[] kinds = trackKinds();
+        for (int c = 0; c < TRACK_COLS.length; c++) {
+            data.names[c] = TRACK_COLS[c];
+            data.kinds[c] = kinds[c];
+            if (kinds[c] == KIND_DOUBLE) {
+                data.values[c] = store.doubleColumn(c);
+            } else if (kinds[c] == KIND_INT) {
+                data.values[c] = store.intColumn(c);
+            } else if (kinds[c] == KIND_TEXT) {
+                data.values[c] = store.textColumn(c);
+            } else {
+                data.values[c] = store.codeColumn(c);
+                data.dictionaries[c] = store.dictionaryValues(c);
+            }
+        }
+        write(csvPath, stamp, data);
+    }
+
+    /** Remove the sidecar of a CSV, if there is one. */
+    public static void invalidate(Path csvPath) {
+        try {
+            Files.deleteIfExists(cachePathFor(csvPath));
+        } catch (IOException e) {
+            AppLogger.warningf("Could not remove %s: %s", cachePathFor(csvPath), e.getMessage());
+        }
+    }
+
+    //
+    // Conversion between Tablesaw columns and arrays
+    //
+
+    private static boolean isSupported(ColumnType type) {
+        return type == ColumnType.STRING || type == ColumnType.INTEGER || type == ColumnType.DOUBLE
+                || type == ColumnType.LONG || type == ColumnType.BOOLEAN;
+    }
+
+    private static byte kindOf(ColumnType type) {
+        if (type == ColumnType.STRING)  return KIND_STRING;
+        if (type == ColumnType.INTEGER) return KIND_INT;
+        if (type == ColumnType.DOUBLE)  return KIND_DOUBLE;
+        if (type == ColumnType.LONG)    return KIND_LONG;
+        if (type == ColumnType.BOOLEAN) return KIND_BOOLEAN;
+        throw new IllegalArgumentException("Column type " + type + " is not supported by the columnar cache");
+    }
+
+    private static byte[] kindsOf(ColumnType[] types) {
+        byte[] kinds = new byte[types.length];
+        for (int i = 0; i < types.length; i++) {
+            kinds[i] = kindOf(types[i]);
+        }
+        return kinds;
+    }
+
+    private static byte[] trackKinds() {
+        byte[] kinds = new byte[TRACK_COLS.length];
+        for (int c = 0; c < kinds.length; c++) {
+            kinds[c] = TrackStore.isDoubleColumn(c) ? KIND_DOUBLE : TrackStore.isIntColumn(c) ? KIND_INT
+                     : TrackStore.isTextColumn(c) ? KIND_TEXT : KIND_STRING;
+        }
+        return kinds;
+    }
+
+    private static void fromTableColumn(Column<?> column, Columns data, int c) {
+        int rows = data.rows;
+        switch (data.kinds[c]) {
+            case KIND_INT:
+                data.values[c] = ((IntColumn) column).asIntArray();
+                break;
+            case KIND_DOUBLE:
+                data.values[c] = ((DoubleColumn) column).asDoubleArray();
+                break;
+            case KIND_LONG:
+                data.values[c] = ((LongColumn) column).asLongArray();
+                break;
+            case KIND_BOOLEAN: {
+                BooleanColumn booleans = (BooleanColumn) column;
+                byte[] values = new byte[rows];
+                for (int r = 0; r < rows; r++) {
+                    Boolean value = booleans.get(r);
+                    values[r] = value == null ? BOOLEAN_MISSING : value ? BOOLEAN_TRUE : BOOLEAN_FALSE;
+                }
+                data.values[c] = values;
+                break;
+            }
+            default: {
+                StringColumn strings = (StringColumn) column;
+                Map<String, Integer> codes = new HashMap<>();
+                int[] values = new int[rows];
+                for (int r = 0; r < rows; r++) {
+                    String value = strings.get(r);
+                    Integer code = codes.get(value);
+                    if (code == null) {
+                        code = codes.size();
+                        codes.put(value, code);
+                    }
+                    values[r] = code;
+                }
+                String[] dictionary = new String[codes.size()];
+                for (Map.Entry<String, Integer> entry : codes.entrySet()) {
+                    dictionary[entry.getValue()] = entry.getKey();
+                }
+                data.values[c] = values;
+                data.dictionaries[c] = dictionary;
+                break;
+            }
+        }
+    }
+
+    private static Column<?> toTableColumn(String name, byte kind, Object values, String[] dictionary, int rows) {
+        switch (kind) {
+            case KIND_INT:
+                return IntColumn.create(name, (int[]) values);
+            case KIND_DOUBLE:
+                return DoubleColumn.create(name, (double[]) values);
+            case KIND_LONG:
+                return LongColumn.create(name, (long[]) values);
+            case KIND_BOOLEAN: {
+                byte[] bytes = (byte[]) values;
+                BooleanColumn column = BooleanColumn.create(name);
+                for (int r = 0; r < rows; r++) {
+                    if (bytes[r] == BOOLEAN_MISSING) {
+                        column.appendMissing();
+                    } else {
+                        column.append(bytes[r] == BOOLEAN_TRUE);
+                    }
+                }
+                return column;
+            }
+            default: {
+                int[] codes = (int[]) values;
+                String[] strings = new String[rows];
+                for (int r = 0; r < rows; r++) {
+                    strings[r] = dictionary[codes[r]];
+                }
+                return StringColumn.create(name, strings);
+            }
+        }
+    }
+
+    //
+    // File format
+    //
+
+    /**
+     * Column arrays of one table. Values are int[], double[], long[], byte[] (booleans), int[] codes (strings)
+     * or String[] (texts).
+     */
+    private static final class Columns {
+        final String[] names;
+        final byte[] kinds;
+        final Object[] values;
+        final String[][] dictionaries;
+        final int rows;
+
+        Columns(int nrOfColumns, int rows) {
+            this.names = new String[nrOfColumns];
+            this.kinds = new byte[nrOfColumns];
+            this.values = new Object[nrOfColumns];
+            this.dictionaries = new String[nrOfColumns][];
+            this.rows = rows;
+        }
+    }
+
+    private static Columns read(Path csvPath, Stamp stamp, byte[] expectedKinds, String[] expectedNames) {
+        if (!enabled || stamp == null) {
+            return null;
+        }
+        Path cachePath = cachePathFor(csvPath);
+        if (!Files.isRegularFile(cachePath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long csvSize = in.readLong();
+            long csvModified = in.readLong();
+            if (!stamp.matches(csvSize, csvModified)) {
+                return null;
+            }
+            int nrOfColumns = in.readInt();
+            int rows = in.readInt();
+            if (nrOfColumns != expectedNames.length || rows < 0) {
+                return null;
+            }
+            Columns data = new Columns(nrOfColumns, rows);
+            for (int c = 0; c < nrOfColumns; c++) {
+                data.names[c] = in.readString();
+                data.kinds[c] = in.readByte();
+                if (!expectedNames[c].equals(data.names[c]) || expectedKinds[c] != data.kinds[c]) {
+                    return null;
+                }
+            }
+            for (int c = 0; c < nrOfColumns; c++) {
+                switch (data.kinds[c]) {
+                    case KIND_INT:
+                        data.values[c] = in.readInts(rows);
+                        break;
+                    case KIND_DOUBLE:
+                        data.values[c] = in.readDoubles(rows);
+                        break;
+                    case KIND_LONG:
+                        data.values[c] = in.readLongs(rows);
+                        break;
+                    case KIND_BOOLEAN:
+                        data.values[c] = in.readBytes(rows);
+                        break;
+                    case KIND_TEXT: {
+                        String[] texts = new String[rows];
+                        for (int r = 0; r < rows; r++) {
+                            texts[r] = in.readString();
+                        }
+                        data.values[c] = texts;
+                        break;
+                    }
+                    default: {
+                        String[] dictionary = new String[in.readInt()];
+                        for (int i = 0; i < dictionary.length; i++) {
+                            dictionary[i] = in.readString();
+                        }
+                        int[] codes = in.readInts(rows);
+                        for (int code : codes) {
+                            if (code < 0 || code >= dictionary.length) {
+                                throw new IOException("Invalid string code " + code);
+                            }
+                        }
+                        data.dictionaries[c] = dictionary;
+                        data.values[c] = codes;
+                        break;
+                    }
+                }
+            }
+            return data;
+        }
+        catch (IOException | RuntimeException e) {
+            AppLogger.warningf("Ignoring unreadable cache %s: %s", cachePath, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void write(Path csvPath, Stamp stamp, Columns data) {
+        Path cachePath = cachePathFor(csvPath);
+        Path tempPath = null;
+        try {
+            // A temporary file of its own, so that concurrent writers of the same sidecar cannot mix their data
+            tempPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(), cachePath.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                Output out = new Output(channel);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp.size);
+                out.writeLong(stamp.modified);
+                out.writeInt(data.names.length);
+                out.writeInt(data.rows);
+                for (int c = 0; c < data.names.length; c++) {
+                    out.writeString(data.names[c]);
+                    out.writeByte(data.kinds[c]);
+                }
+                for (int c = 0; c < data.names.length; c++) {
+                    switch (data.kinds[c]) {
+                        case KIND_INT:
+                            out.writeInts((int[]) data.values[c], data.rows);
+                            break;
+                        case KIND_DOUBLE:
+                            out.writeDoubles((double[]) data.values[c], data.rows);
+                            break;
+                        case KIND_LONG:
+                            out.writeLongs((long[]) data.values[c], data.rows);
+                            break;
+                        case KIND_BOOLEAN:
+                            out.writeBytes((byte[]) data.values[c], data.rows);
+                            break;
+                        case KIND_TEXT: {
+                            String[] texts = (String[]) data.values[c];
+                            for (int r = 0; r < data.rows; r++) {
+                                out.writeString(texts[r]);
+                            }
+                            break;
+                        }
+                        default:
+                            out.writeInt(data.dictionaries[c].length);
+                            for (String value : data.dictionaries[c]) {
+                                out.writeString(value);
+                            }
+                            out.writeInts((int[]) data.values[c], data.rows);
+                            break;
+                    }
+                }
+                out.flush();
+            }
+            copyPermissions(csvPath, tempPath);
+            try {
+                Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            AppLogger.warningf("Could not write cache %s: %s", cachePath, e.getMessage());
+            try {
+                if (tempPath != null) {
+                    Files.deleteIfExists(tempPath);
+                }
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /* Temporary files are private to their owner; give the sidecar the permissions of its CSV instead. */
+
+    private static void copyPermissions(Path csvPath, Path tempPath) {
+        try {
+            Files.setPosixFilePermissions(tempPath, Files.getPosixFilePermissions(csvPath));
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not a POSIX file system, the default permissions apply
+        }
+    }
+
+    /* Buffer methods are called through java.nio.Buffer, so that the class also runs on Java 8 when built on a newer JDK. */
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        ((Buffer) buffer).position(buffer.position() + bytes);
+    }
+
+    /** Buffered reader of big-endian primitives and arrays from a channel. */
+    private static final class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            ((Buffer) buffer).limit(0);
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of cache file");
+                }
+            }
+            ((Buffer) buffer).flip();
+        }
+
+        byte readByte() throws IOException   { require(1); return buffer.get(); }
+        int readInt() throws IOException     { require(4); return buffer.getInt(); }
+        long readLong() throws IOException   { require(8); return buffer.getLong(); }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length);
+            }
+            byte[] bytes = readBytes(length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            byte[] values = new byte[n];
+            int done = 0;
+            while (done < n) {
+                require(1);
+                int count = Math.min(n - done, buffer.remaining());
+                buffer.get(values, done, count);
+                done += count;
+            }
+            return values;
+        }
+
+        int[] readInts(int n) throws IOException {
+            int[] values = new int[n];
+            int done = 0;
+            while (done < n) {
+                require(4);
+                int count = Math.min(n - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, done, count);
+                skip(buffer, 4 * count);
+                done += count;
+            }
+            return values;
+        }
+
+        long[] readLongs(int n) throws IOException {
+            long[] values = new long[n];
+            int done = 0;
+            while (done < n) {
+                require(8);
+                int count = Math.min(n - done, buffer.remaining() / 8);
+                buffer.asLongBuffer().get(values, done, count);
+                skip(buffer, 8 * count);
+                done += count;
+            }
+            return values;
+        }
+
+        double[] readDoubles(int n) throws IOException {
+            double[] values = new double[n];
+            int done = 0;
+            while (done < n) {
+                require(8);
+                int count = Math.min(n - done, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().get(values, done, count);
+                skip(buffer, 8 * count);
+                done += count;
+            }
+            return values;
+        }
+    }
+
+    /** Buffered writer of big-endian primitives and arrays to a channel. */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        void writeByte(byte value) throws IOException  { ensure(1); buffer.put(value); }
+        void writeInt(int value) throws IOException    { ensure(4); buffer.putInt(value); }
+        void writeLong(long value) throws IOException  { ensure(8); buffer.putLong(value); }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        void writeBytes(byte[] values, int n) throws IOException {
+            int done = 0;
+            while (done < n) {
+                ensure(1);
+                int count = Math.min(n - done, buffer.remaining());
+                buffer.put(values, done, count);
+                done += count;
+            }
+        }
+
+        void writeInts(int[] values, int n) throws IOException {
+            int done = 0;
+            while (done < n) {
+                ensure(4);
+                int count = Math.min(n - done, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, done, count);
+                skip(buffer, 4 * count);
+                done += count;
+            }
+        }
+
+        void writeLongs(long[] values, int n) throws IOException {
+            int done = 0;
+            while (done < n) {
+                ensure(8);
+                int count = Math.min(n - done, buffer.remaining() / 8);
+                buffer.asLongBuffer().put(values, done, count);
+                skip(buffer, 8 * count);
+                done += count;
+            }
+        }
+
+        void writeDoubles(double[] values, int n) throws IOException {
+            int done = 0;
+            while (done < n) {
+                ensure(8);
+                int count = Math.min(n - done, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(values, done, count);
+                skip(buffer, 8 * count);
+                done += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package paint.io;
+
+import tech.tablesaw.columns.Column;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Writes entities to a CSV file batch by batch, without building a table for the whole file.
+ *
+ * Each batch (typically the squares of one recording) is converted to typed columns with the entity adapter
+ * and written straight away, so memory use is bounded by the largest batch. Values are rendered as the
+ * Tablesaw CSV writer renders them: missing values as empty fields, fields quoted only when they contain
+ * a separator, quote or line break, and lines ended with the platform line separator.
+ *
+ * Obtain a writer from BaseTableIO.openCsvWriter and close it to flush the file.
+ */
+
+public final class EntityCsvWriter<E> implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LINE_END = System.lineSeparator();     // The default of Tablesaw's CsvWriteOptions
+
+    private final EntityTableAdapter<E> adapter;
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(512);
+    private long rowsWritten = 0;
+
+    EntityCsvWriter(EntityTableAdapter<E> adapter, Path filePath) throws IOException {
+        this.adapter = adapter;
+
+        // A streamed file has no columnar cache; remove an old one rather than leave it to go stale
+        ColumnarCache.invalidate(filePath);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(filePath), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        String[] columns = adapter.columns();
+        for (int c = 0; c < columns.length; c++) {
+            if (c > 0) {
+                line.append(',');
+            }
+            appendField(columns[c]);
+        }
+        writeLine();
+    }
+
+    /** Write one batch of entities. */
+    public void write(List<E> entities) throws IOException {
+        if (entities.isEmpty()) {
+            return;
+        }
+        List<E> batch = entities instanceof RandomAccess ? entities : new ArrayList<E>(entities);
+        ColumnArrays values = ColumnArrays.allocate(adapter.columnTypes(), batch.size());
+        adapter.writeEntities(batch, 0, batch.size(), values);
+        Column<?>[] columns = values.toColumns(adapter.columns());
+        for (int row = 0; row < batch.size(); row++) {
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) {
+                    line.append(',');
+                }
+                appendField(columns[c].getUnformattedString(row));
+            }
+            writeLine();
+            rowsWritten++;
+        }
+    }
+
+    public void write(E entity) throws IOException {
+        write(Collections.singletonList(entity));
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeLine() throws IOException {
+        line.append(LINE_END);
+        writer.append(line);
+        line.setLength(0);
+    }
+
+    private void appendField(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = (ch == ',' || ch == '"' || ch == '\n' || ch == '\r');
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                line.append('"');
+            }
+            line.append(ch);
+        }
+        line.append('"');
+    }
+}
@@ -38,14 +38,17 @@ public class ExperimentTableIO extends BaseTableIO<Experiment> {
             return c;
         }
 
-        public void appendEntity(Experiment e, List<Column<?>> c) {
-            ((StringColumn) c.get(0)).append(e.getExperimentName());
+        public void writeEntities(List<Experiment> experiments, int from, int to, ColumnArrays values) {
+            values.putStrings(0, experiments, from, to, Experiment::getExperimentName);
         }
 
-        public Experiment readEntity(Table t, int r) {
-            Experiment e = new Experiment();
-            e.setExperimentName(t.stringColumn(EXPERIMENT_COLS[0]).get(r));
-            return e;
+        public List<Experiment> readEntities(ColumnArrays values, int from, int to) {
+            List<Experiment> experiments = new ArrayList<Experiment>(to - from);
+            for (int r = from; r < to; r++) {
+                experiments.add(new Experiment());
+            }
+            values.getStrings(0, experiments, from, Experiment::setExperimentName);
+            return experiments;
         }
     }
 }
\ No newline at end of file
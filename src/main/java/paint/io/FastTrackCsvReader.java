@@ -0,0 +1,730 @@
+package paint.io;
+
+import paint.objects.TrackStore;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * High-throughput reader for 'All Tracks' CSV files, producing a TrackStore.
+ *
+ * The header is validated against TRACK_COLS before any data is read. The data is memory-mapped and split
+ * at line boundaries into chunks, which are parsed in parallel. Numbers are parsed directly from the bytes
+ * of a chunk; only string cells create Strings, and a string cell that repeats the value of the previous row
+ * (typically the Recording Name) does not.
+ *
+ * Empty numeric cells become missing values (NaN or Integer.MIN_VALUE); any other cell that is not a number
+ * fails the read with the line and column. Quoted fields are supported, but not quoted fields that contain
+ * line breaks.
+ */
+
+public final class FastTrackCsvReader {
+
+    private static final int  NR_OF_COLUMNS = TRACK_COLS.length;
+    private static final long MIN_CHUNK_SIZE = 1L << 20;        // 1 MB
+    private static final long MAX_CHUNK_SIZE = 64L << 20;       // 64 MB
+    private static final int  HEADER_WINDOW = 64 * 1024;
+
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+    // Powers of ten that are exact doubles, for the fast path of the number parser
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private FastTrackCsvReader() {}
+
+    public static TrackStore read(Path filePath) throws IOException {
+        return read(filePath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Read the tracks, from the columnar cache next to the file when it is valid; otherwise parse and cache them. */
+    public static TrackStore read(Path filePath, int numberOfThreads) throws IOException {
+        ColumnarCache.Stamp stamp = ColumnarCache.Stamp.of(filePath);
+        TrackStore cached = ColumnarCache.readTrackStore(filePath, stamp);
+        if (cached != null) {
+            return cached;
+        }
+        TrackStore store = parse(filePath, numberOfThreads);
+        ColumnarCache.writeTrackStore(store, filePath, stamp);
+        return store;
+    }
+
+    /** Parse the CSV file, ignoring any cache. */
+    public static TrackStore parse(Path filePath, int numberOfThreads) throws IOException {
+        numberOfThreads = Math.max(1, numberOfThreads);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long dataStart = readAndValidateHeader(channel, fileSize, filePath);
+            List<long[]> chunks = splitIntoChunks(channel, dataStart, fileSize, numberOfThreads);
+
+            List<ChunkParser> parsers = new ArrayList<>(chunks.size());
+            for (long[] chunk : chunks) {
+                parsers.add(new ChunkParser(channel, chunk[0], chunk[1], filePath));
+            }
+
+            if (numberOfThreads == 1 || parsers.size() <= 1) {
+                for (ChunkParser parser : parsers) {
+                    parser.call();
+                }
+            }
+            else {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, parsers.size()));
+                try {
+                    List<Future<ChunkParser>> futures = new ArrayList<>(parsers.size());
+                    for (ChunkParser parser : parsers) {
+                        futures.add(executor.submit(parser));
+                    }
+                    for (Future<ChunkParser> future : futures) {
+                        future.get();
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading " + filePath, e);
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException("Failed to read " + filePath, cause);
+                }
+                finally {
+                    executor.shutdownNow();
+                }
+            }
+            return merge(parsers);
+        }
+    }
+
+    //
+    // Header
+    //
+
+    /** Validate the header and return the position of the first data byte. */
+    private static long readAndValidateHeader(FileChannel channel, long fileSize, Path filePath) throws IOException {
+        int windowSize = (int) Math.min(fileSize, HEADER_WINDOW);
+        ByteBuffer window = ByteBuffer.allocate(windowSize);
+        while (window.hasRemaining() && channel.read(window, window.position()) > 0) {
+            // Keep reading until the window is full
+        }
+        byte[] bytes = window.array();
+
+        int end = 0;
+        while (end < windowSize && bytes[end] != '\n') {
+            end++;
+        }
+        if (end == windowSize && windowSize < fileSize) {
+            throw new IOException("Header line of " + filePath + " is too long");
+        }
+        String header = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        if (header.endsWith("\r")) {
+            header = header.substring(0, header.length() - 1);
+        }
+
+        List<String> names = splitHeader(header);
+        if (names.size() != NR_OF_COLUMNS) {
+            throw new IllegalArgumentException("Unexpected column count: found=" + names.size()
+                    + " expectedColumns=" + NR_OF_COLUMNS + " -> " + names);
+        }
+        for (int i = 0; i < NR_OF_COLUMNS; i++) {
+            if (!TRACK_COLS[i].equals(names.get(i))) {
+                throw new IllegalArgumentException("Unexpected column at index " + i
+                        + ": found '" + names.get(i) + "', expectedColumns '" + TRACK_COLS[i] + "'");
+            }
+        }
+        return Math.min(fileSize, end + 1L);
+    }
+
+    private static List<String> splitHeader(String header) {
+        List<String> names = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < header.length() && header.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                names.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        names.add(sb.toString());
+        return names;
+    }
+
+    //
+    // Chunks
+    //
+
+    /** Split [dataStart, fileSize) into chunks that end just after a line feed (or at the end of the file). */
+    private static List<long[]> splitIntoChunks(FileChannel channel, long dataStart, long fileSize, int numberOfThreads) throws IOException {
+        long dataSize = fileSize - dataStart;
+        long targetSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, dataSize / (4L * numberOfThreads) + 1));
+
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long start = dataStart;
+        while (start < fileSize) {
+            long end = Math.min(start + targetSize, fileSize);
+
+            // Move the end forward to just after the next line feed
+            boolean found = end >= fileSize;
+            while (!found) {
+                ((Buffer) probe).clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = fileSize;
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        end += i + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    end += read;
+                    if (end >= fileSize) {
+                        end = fileSize;
+                        found = true;
+                    }
+                }
+            }
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    //
+    // Merging
+    //
+
+    private static TrackStore merge(List<ChunkParser> parsers) {
+        int totalRows = 0;
+        for (ChunkParser parser : parsers) {
+            totalRows += parser.rows;
+        }
+
+        int[][] ints = new int[NR_OF_COLUMNS][];
+        double[][] doubles = new double[NR_OF_COLUMNS][];
+        String[][] dictionaryValues = new String[NR_OF_COLUMNS][];
+        String[][] texts = new String[NR_OF_COLUMNS][];
+
+        for (int column = 0; column < NR_OF_COLUMNS; column++) {
+            if (TrackStore.isDoubleColumn(column)) {
+                double[] values = new double[totalRows];
+                int offset = 0;
+                for (ChunkParser parser : parsers) {
+                    System.arraycopy(parser.doubles[column], 0, values, offset, parser.rows);
+                    offset += parser.rows;
+                }
+                doubles[column] = values;
+            }
+            else if (TrackStore.isIntColumn(column)) {
+                int[] values = new int[totalRows];
+                int offset = 0;
+                for (ChunkParser parser : parsers) {
+                    System.arraycopy(parser.ints[column], 0, values, offset, parser.rows);
+                    offset += parser.rows;
+                }
+                ints[column] = values;
+            }
+            else if (TrackStore.isTextColumn(column)) {
+                String[] values = new String[totalRows];
+                int offset = 0;
+                for (ChunkParser parser : parsers) {
+                    System.arraycopy(parser.texts[column], 0, values, offset, parser.rows);
+                    offset += parser.rows;
+                }
+                texts[column] = values;
+            }
+            else {
+                // Combine the chunk dictionaries and translate the chunk codes to the combined codes
+                Map<String, Integer> codes = new HashMap<>();
+                List<String> values = new ArrayList<>();
+                int[] combined = new int[totalRows];
+                int offset = 0;
+                for (ChunkParser parser : parsers) {
+                    List<String> local = parser.dictionaryValues[column];
+                    int[] remap = new int[local.size()];
+                    for (int code = 0; code < remap.length; code++) {
+                        String value = local.get(code);
+                        Integer global = codes.get(value);
+                        if (global == null) {
+                            global = values.size();
+                            values.add(value);
+                            codes.put(value, global);
+                        }
+                        remap[code] = global;
+                    }
+                    int[] localCodes = parser.ints[column];
+                    for (int row = 0; row < parser.rows; row++) {
+                        combined[offset + row] = remap[localCodes[row]];
+                    }
+                    offset += parser.rows;
+                }
+                ints[column] = combined;
+                dictionaryValues[column] = values.toArray(new String[0]);
+            }
+        }
+        return TrackStore.fromColumns(totalRows, ints, doubles, dictionaryValues, texts);
+    }
+
+    //
+    // Parsing
+    //
+
+    private static final class ChunkParser implements Callable<ChunkParser> {
+
+        private final FileChannel channel;
+        private final long chunkStart;
+        private final long chunkEnd;
+        private final Path filePath;
+
+        // Results
+        private int rows = 0;
+        private final int[][] ints = new int[NR_OF_COLUMNS][];
+        private final double[][] doubles = new double[NR_OF_COLUMNS][];
+        private final String[][] texts = new String[NR_OF_COLUMNS][];
+        @SuppressWarnings("unchecked")
+        private final List<String>[] dictionaryValues = new List[NR_OF_COLUMNS];
+        @SuppressWarnings("unchecked")
+        private final Map<String, Integer>[] dictionaryCodes = new Map[NR_OF_COLUMNS];
+
+        // The previous string cell per column, to reuse its code when the next row has the same value
+        private final int[] previousStart = new int[NR_OF_COLUMNS];
+        private final int[] previousEnd = new int[NR_OF_COLUMNS];
+        private final int[] previousCode = new int[NR_OF_COLUMNS];
+
+        private byte[] data;
+
+        ChunkParser(FileChannel channel, long chunkStart, long chunkEnd, Path filePath) {
+            this.channel = channel;
+            this.chunkStart = chunkStart;
+            this.chunkEnd = chunkEnd;
+            this.filePath = filePath;
+        }
+
+        public ChunkParser call() throws IOException {
+            int length = (int) (chunkEnd - chunkStart);
+            // Copy the mapped chunk once; parsing from an array is considerably faster than from the buffer
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, length);
+            data = new byte[length];
+            mapped.get(data);
+
+            int capacity = Math.max(16, length / 150);      // A track line is roughly 150-250 bytes
+            for (int column = 0; column < NR_OF_COLUMNS; column++) {
+                if (TrackStore.isDoubleColumn(column)) {
+                    doubles[column] = new double[capacity];
+                } else if (TrackStore.isTextColumn(column)) {
+                    texts[column] = new String[capacity];
+                } else {
+                    ints[column] = new int[capacity];
+                }
+                if (TrackStore.isDictionaryColumn(column)) {
+                    dictionaryValues[column] = new ArrayList<>();
+                    dictionaryCodes[column] = new HashMap<>();
+                    previousCode[column] = -1;
+                }
+            }
+
+            int pos = 0;
+            while (pos < length) {
+                byte b = data[pos];
+                if (b == '\n' || b == '\r') {       // Skip empty lines
+                    pos++;
+                    continue;
+                }
+                if (rows == capacityOf()) {
+                    grow();
+                }
+                pos = parseLine(pos, length);
+                rows++;
+            }
+            data = null;
+            return this;
+        }
+
+        private int capacityOf() {
+            return doubles[TrackStore.TRACK_DURATION].length;
+        }
+
+        private void grow() {
+            int newCapacity = capacityOf() * 3 / 2 + 16;
+            for (int column = 0; column < NR_OF_COLUMNS; column++) {
+                if (doubles[column] != null) {
+                    doubles[column] = Arrays.copyOf(doubles[column], newCapacity);
+                } else if (texts[column] != null) {
+                    texts[column] = Arrays.copyOf(texts[column], newCapacity);
+                } else {
+                    ints[column] = Arrays.copyOf(ints[column], newCapacity);
+                }
+            }
+        }
+
+        /** Parse one line starting at pos and return the position after its line feed. */
+        private int parseLine(int pos, int length) throws IOException {
+            int lineStart = pos;
+            for (int column = 0; column < NR_OF_COLUMNS; column++) {
+                int fieldStart = pos;
+                int fieldEnd;
+                String quotedValue = null;
+
+                if (pos < length && data[pos] == '"') {
+                    StringBuilder sb = new StringBuilder();
+                    pos = readQuoted(pos + 1, length, sb);
+                    quotedValue = sb.toString();
+                    fieldEnd = pos;
+                }
+                else {
+                    while (pos < length) {
+                        byte b = data[pos];
+                        if (b == ',' || b == '\n' || b == '\r') {
+                            break;
+                        }
+                        pos++;
+                    }
+                    fieldEnd = pos;
+                }
+
+                try {
+                    if (quotedValue != null) {
+                        storeString(column, quotedValue);
+                    } else if (TrackStore.isDoubleColumn(column)) {
+                        doubles[column][rows] = parseDouble(fieldStart, fieldEnd);
+                    } else if (TrackStore.isIntColumn(column)) {
+                        ints[column][rows] = parseInt(fieldStart, fieldEnd);
+                    } else {
+                        storeString(column, fieldStart, fieldEnd);
+                    }
+                } catch (NumberFormatException e) {
+                    String value = quotedValue != null ? quotedValue : decode(fieldStart, fieldEnd);
+                    throw malformed(lineStart, String.format("column '%s' has the value '%s', which is not %s",
+                            TRACK_COLS[column], value, TrackStore.isIntColumn(column) ? "an integer" : "a number"));
+                }
+
+                // Expect a separator after every field except the last, and the end of the line after the last
+                byte next = pos < length ? data[pos] : (byte) '\n';
+                if (column < NR_OF_COLUMNS - 1) {
+                    if (next != ',') {
+                        throw malformed(lineStart, "expected " + NR_OF_COLUMNS + " fields, found " + (column + 1));
+                    }
+                    pos++;
+                }
+                else if (next != '\n' && next != '\r') {
+                    throw malformed(lineStart, "more than " + NR_OF_COLUMNS + " fields");
+                }
+            }
+
+            // Skip the line ending
+            while (pos < length && data[pos] != '\n') {
+                pos++;
+            }
+            return pos + 1;
+        }
+
+        private int readQuoted(int pos, int length, StringBuilder sb) throws IOException {
+            int start = pos;
+            int segmentStart = pos;
+            while (pos < length) {
+                byte b = data[pos];
+                if (b == '"') {
+                    sb.append(decode(segmentStart, pos));
+                    if (pos + 1 < length && data[pos + 1] == '"') {
+                        sb.append('"');
+                        pos += 2;
+                        segmentStart = pos;
+                        continue;
+                    }
+                    return pos + 1;
+                }
+                if (b == '\n') {
+                    break;
+                }
+                pos++;
+            }
+            throw malformed(start - 1, "unterminated quoted field");
+        }
+
+        private void storeString(int column, int from, int to) {
+            if (TrackStore.isTextColumn(column)) {
+                texts[column][rows] = decode(from, to);
+                return;
+            }
+            int previous = previousCode[column];
+            if (previous >= 0 && sameBytes(previousStart[column], previousEnd[column], from, to)) {
+                ints[column][rows] = previous;
+                return;
+            }
+            int code = encode(column, decode(from, to));
+            ints[column][rows] = code;
+            previousStart[column] = from;
+            previousEnd[column] = to;
+            previousCode[column] = code;
+        }
+
+        private void storeString(int column, String value) {
+            if (!TrackStore.isStringColumn(column)) {
+                // A quoted number
+                if (TrackStore.isDoubleColumn(column)) {
+                    doubles[column][rows] = parseDoubleSlow(value);
+                } else {
+                    double d = parseDoubleSlow(value);
+                    ints[column][rows] = toInt(d);
+                }
+                return;
+            }
+            if (TrackStore.isTextColumn(column)) {
+                texts[column][rows] = value;
+                return;
+            }
+            ints[column][rows] = encode(column, value);
+            previousCode[column] = -1;
+        }
+
+        private int encode(int column, String value) {
+            Map<String, Integer> codes = dictionaryCodes[column];
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionaryValues[column].size();
+                dictionaryValues[column].add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        private boolean sameBytes(int aFrom, int aTo, int bFrom, int bTo) {
+            int n = aTo - aFrom;
+            if (n != bTo - bFrom) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (data[aFrom + i] != data[bFrom + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decode(int from, int to) {
+            int n = to - from;
+            for (int i = from; i < to; i++) {
+                if (data[i] < 0) {
+                    return new String(data, from, n, StandardCharsets.UTF_8);
+                }
+            }
+            return new String(data, from, n, StandardCharsets.ISO_8859_1);
+        }
+
+        //
+        // Numbers
+        //
+
+        /**
+         * Parse a decimal number without creating a String. When the significand is at most 2^53 and the
+         * decimal exponent is at most 22 in magnitude, both are exactly representable doubles and a single
+         * multiplication or division gives the correctly rounded result. Other forms use Double.parseDouble.
+         */
+        private double parseDouble(int from, int to) {
+            if (from == to) {
+                return Double.NaN;
+            }
+            int i = from;
+            boolean negative = false;
+            byte c = data[i];
+            if (c == '-' || c == '+') {
+                negative = (c == '-');
+                i++;
+            }
+
+            long significand = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+
+            while (i < to && (c = data[i]) >= '0' && c <= '9') {
+                anyDigit = true;
+                if (significand != 0 || c != '0') {
+                    if (++significantDigits > 18) return parseDoubleSlow(from, to);
+                    significand = significand * 10 + (c - '0');
+                }
+                i++;
+            }
+            if (i < to && data[i] == '.') {
+                i++;
+                while (i < to && (c = data[i]) >= '0' && c <= '9') {
+                    anyDigit = true;
+                    if (significand != 0 || c != '0') {
+                        if (++significantDigits > 18) return parseDoubleSlow(from, to);
+                        significand = significand * 10 + (c - '0');
+                    }
+                    exponent--;
+                    i++;
+                }
+            }
+            if (!anyDigit) {
+                return parseDoubleSlow(from, to);     // NaN, Infinity, missing value markers
+            }
+            if (i < to && ((c = data[i]) == 'e' || c == 'E')) {
+                i++;
+                boolean negativeExponent = false;
+                if (i < to && ((c = data[i]) == '-' || c == '+')) {
+                    negativeExponent = (c == '-');
+                    i++;
+                }
+                int explicitExponent = 0;
+                boolean anyExponentDigit = false;
+                while (i < to && (c = data[i]) >= '0' && c <= '9') {
+                    anyExponentDigit = true;
+                    if (explicitExponent < 10000) {
+                        explicitExponent = explicitExponent * 10 + (c - '0');
+                    }
+                    i++;
+                }
+                if (!anyExponentDigit) {
+                    return parseDoubleSlow(from, to);
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+            if (i != to) {
+                return parseDoubleSlow(from, to);
+            }
+
+            if (significand > MAX_EXACT_SIGNIFICAND) {
+                return parseDoubleSlow(from, to);
+            }
+
+            double value;
+            if (significand == 0) {
+                value = 0.0;
+            } else if (exponent >= 0 && exponent <= 22) {
+                value = significand * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && exponent >= -22) {
+                value = significand / POWERS_OF_TEN[-exponent];
+            } else {
+                return parseDoubleSlow(from, to);
+            }
+            return negative ? -value : value;
+        }
+
+        private int parseInt(int from, int to) {
+            if (from == to) {
+                return Integer.MIN_VALUE;
+            }
+            int i = from;
+            boolean negative = false;
+            byte c = data[i];
+            if (c == '-' || c == '+') {
+                negative = (c == '-');
+                i++;
+            }
+            if (i == to) {
+                throw new NumberFormatException();
+            }
+            long value = 0;
+            while (i < to && (c = data[i]) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) {
+                    return toInt(parseDouble(from, to));
+                }
+                i++;
+            }
+            if (i != to) {
+                return toInt(parseDouble(from, to));      // e.g. "12.0"
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        private double parseDoubleSlow(int from, int to) {
+            return parseDoubleSlow(decode(from, to));
+        }
+
+        /** An empty cell is a missing value; any other text that is not a number throws NumberFormatException. */
+        private double parseDoubleSlow(String value) {
+            String trimmed = value.trim();
+            return trimmed.isEmpty() ? Double.NaN : Double.parseDouble(trimmed);
+        }
+
+        private static int toInt(double value) {
+            if (Double.isNaN(value)) {
+                return Integer.MIN_VALUE;
+            }
+            if (value != Math.rint(value) || value > Integer.MAX_VALUE || value <= Integer.MIN_VALUE) {
+                throw new NumberFormatException();
+            }
+            return (int) value;
+        }
+
+        private IOException malformed(int position, String reason) {
+            return new IOException(String.format("Malformed line %s in %s: %s",
+                    lineNumber(chunkStart + position), filePath.getFileName(), reason));
+        }
+
+        /* The 1-based line number of a byte offset, found by counting line feeds; only used to report errors. */
+
+        private String lineNumber(long offset) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            long lines = 1;
+            long position = 0;
+            try {
+                while (position < offset) {
+                    ((Buffer) buffer).clear();
+                    ((Buffer) buffer).limit((int) Math.min(buffer.capacity(), offset - position));
+                    int n = channel.read(buffer, position);
+                    if (n <= 0) {
+                        break;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        if (buffer.get(i) == '\n') {
+                            lines++;
+                        }
+                    }
+                    position += n;
+                }
+                return String.valueOf(lines);
+            } catch (IOException e) {
+                return "at byte offset " + offset;
+            }
+        }
+    }
+}
@@ -3,7 +3,6 @@ package paint.io;
 import paint.objects.Recording;
 
 import tech.tablesaw.api.ColumnType;
-import tech.tablesaw.api.Table;
 import tech.tablesaw.columns.Column;
 import tech.tablesaw.api.*;
 
@@ -79,54 +78,55 @@ public class RecordingTableIO extends BaseTableIO<Recording> {
             return c;
         }
 
-        @SuppressWarnings("unchecked")
-        public void appendEntity(Recording r, List<Column<?>> c) {
-            ((StringColumn ) c.get(0)).append(r.getRecordingName());
-            ((IntColumn    ) c.get(1)).append(r.getConditionNumber());
-            ((IntColumn    ) c.get(2)).append(r.getReplicateNumber());
-            ((StringColumn ) c.get(3)).append(r.getProbeName());
-            ((StringColumn ) c.get(4)).append(r.getProbeType());
-            ((StringColumn ) c.get(5)).append(r.getCellType());
-            ((StringColumn ) c.get(6)).append(r.getAdjuvant());
-            ((DoubleColumn ) c.get(7)).append(r.getConcentration());
-            ((BooleanColumn) c.get(8)).append(r.isDoProcess());
-            ((DoubleColumn ) c.get(9)).append(r.getThreshold());
-            ((IntColumn    ) c.get(10)).append(r.getNumberOfSpots());
-            ((IntColumn    ) c.get(11)).append(r.getNumberOfTracks());
-            ((DoubleColumn ) c.get(12)).append(r.getRunTime());
-            ((LongColumn   ) c.get(13)).append(r.getRecordingSize());
-            ((StringColumn ) c.get(14)).append(r.getTimeStamp());
-            ((IntColumn    ) c.get(15)).append(r.getNumberOfSpotsInAllTracks());
-            ((BooleanColumn) c.get(16)).append(r.isExclude());
-            ((DoubleColumn ) c.get(17)).append(r.getTau());
-            ((DoubleColumn ) c.get(18)).append(r.getRSquared());
-            ((DoubleColumn ) c.get(19)).append(r.getDensity());
+        public void writeEntities(List<Recording> recordings, int from, int to, ColumnArrays values) {
+            values.putStrings(0, recordings, from, to, Recording::getRecordingName);
+            values.putInts(1, recordings, from, to, Recording::getConditionNumber);
+            values.putInts(2, recordings, from, to, Recording::getReplicateNumber);
+            values.putStrings(3, recordings, from, to, Recording::getProbeName);
+            values.putStrings(4, recordings, from, to, Recording::getProbeType);
+            values.putStrings(5, recordings, from, to, Recording::getCellType);
+            values.putStrings(6, recordings, from, to, Recording::getAdjuvant);
+            values.putDoubles(7, recordings, from, to, Recording::getConcentration);
+            values.putBooleans(8, recordings, from, to, Recording::isDoProcess);
+            values.putDoubles(9, recordings, from, to, Recording::getThreshold);
+            values.putInts(10, recordings, from, to, Recording::getNumberOfSpots);
+            values.putInts(11, recordings, from, to, Recording::getNumberOfTracks);
+            values.putDoubles(12, recordings, from, to, Recording::getRunTime);
+            values.putLongs(13, recordings, from, to, Recording::getRecordingSize);
+            values.putStrings(14, recordings, from, to, Recording::getTimeStamp);
+            values.putInts(15, recordings, from, to, Recording::getNumberOfSpotsInAllTracks);
+            values.putBooleans(16, recordings, from, to, Recording::isExclude);
+            values.putDoubles(17, recordings, from, to, Recording::getTau);
+            values.putDoubles(18, recordings, from, to, Recording::getRSquared);
+            values.putDoubles(19, recordings, from, to, Recording::getDensity);
         }
 
-        public Recording readEntity(Table t, int r) {
-            Recording rec = new Recording();
-            rec.setRecordingName(t.stringColumn(RECORDING_COLS[0]).get(r));
-            rec.setConditionNumber(t.intColumn(RECORDING_COLS[1]).getInt(r));
-            rec.setReplicateNumber(t.intColumn(RECORDING_COLS[2]).getInt(r));
-            rec.setProbeName(t.stringColumn(RECORDING_COLS[3]).get(r));
-            rec.setProbeType(t.stringColumn(RECORDING_COLS[4]).get(r));
-            rec.setCellType(t.stringColumn(RECORDING_COLS[5]).get(r));
-            rec.setAdjuvant(t.stringColumn(RECORDING_COLS[6]).get(r));
-            rec.setConcentration(t.doubleColumn(RECORDING_COLS[7]).getDouble(r));
-            rec.setDoProcess(t.booleanColumn(RECORDING_COLS[8]).get(r));
-            rec.setThreshold(t.doubleColumn(RECORDING_COLS[9]).getDouble(r));
-
-            rec.setNumberOfSpots(t.intColumn(RECORDING_COLS[10]).getInt(r));
-            rec.setNumberOfTracks(t.intColumn(RECORDING_COLS[11]).getInt(r));
-            rec.setRunTime(t.doubleColumn(RECORDING_COLS[12]).getDouble(r));
-            rec.setRecordingSize(t.longColumn(RECORDING_COLS[13]).getLong(r));
-            rec.setTimeStamp(t.stringColumn(RECORDING_COLS[14]).get(r));
-            rec.setNumberOfSpotsInAllTracks(t.intColumn(RECORDING_COLS[15]).getInt(r));
-            rec.setExclude(t.booleanColumn(RECORDING_COLS[16]).get(r));
-            rec.setTau(t.doubleColumn(RECORDING_COLS[17]).getDouble(r));
-            rec.setRSquared(t.doubleColumn(RECORDING_COLS[18]).getDouble(r));
-            rec.setDensity(t.doubleColumn(RECORDING_COLS[19]).getDouble(r));
-            return rec;
+        public List<Recording> readEntities(ColumnArrays values, int from, int to) {
+            List<Recording> recordings = new ArrayList<Recording>(to - from);
+            for (int r = from; r < to; r++) {
+                recordings.add(new Recording());
+            }
+            values.getStrings(0, recordings, from, Recording::setRecordingName);
+            values.getInts(1, recordings, from, Recording::setConditionNumber);
+            values.getInts(2, recordings, from, Recording::setReplicateNumber);
+            values.getStrings(3, recordings, from, Recording::setProbeName);
+            values.getStrings(4, recordings, from, Recording::setProbeType);
+            values.getStrings(5, recordings, from, Recording::setCellType);
+            values.getStrings(6, recordings, from, Recording::setAdjuvant);
+            values.getDoubles(7, recordings, from, Recording::setConcentration);
+            values.getBooleans(8, recordings, from, Recording::setDoProcess);
+            values.getDoubles(9, recordings, from, Recording::setThreshold);
+            values.getInts(10, recordings, from, Recording::setNumberOfSpots);
+            values.getInts(11, recordings, from, Recording::setNumberOfTracks);
+            values.getDoubles(12, recordings, from, Recording::setRunTime);
+            values.getLongs(13, recordings, from, Recording::setRecordingSize);
+            values.getStrings(14, recordings, from, Recording::setTimeStamp);
+            values.getInts(15, recordings, from, Recording::setNumberOfSpotsInAllTracks);
+            values.getBooleans(16, recordings, from, Recording::setExclude);
+            values.getDoubles(17, recordings, from, Recording::setTau);
+            values.getDoubles(18, recordings, from, Recording::setRSquared);
+            values.getDoubles(19, recordings, from, Recording::setDensity);
+            return recordings;
         }
     }
 }
\ No newline at end of file
@@ -2,7 +2,6 @@ package paint.io;
 
 import paint.objects.Square;
 import tech.tablesaw.api.ColumnType;
-import tech.tablesaw.api.Table;
 import tech.tablesaw.columns.Column;
 import tech.tablesaw.api.*;
 
@@ -119,97 +118,83 @@ public class SquareTableIO extends BaseTableIO<Square> {
             return c;
         }
 
-        @SuppressWarnings("unchecked")
-        public void appendEntity(Square s, List<Column<?>> c) {
-            ((StringColumn ) c.get(0)).append(s.getUniqueKey());
-            ((StringColumn ) c.get(1)).append(s.getRecordingName());
-            ((IntColumn    ) c.get(2)).append(s.getSquareNumber());
-            ((IntColumn    ) c.get(3)).append(s.getRowNumber());
-            ((IntColumn    ) c.get(4)).append(s.getColNumber());
-            ((IntColumn    ) c.get(5)).append(s.getLabelNumber());
-            ((IntColumn    ) c.get(6)).append(s.getCellId());
-
-            ((BooleanColumn) c.get(7)).append(s.isSelected());
-            ((BooleanColumn) c.get(8)).append(s.isSquareManuallyExcluded());
-            ((BooleanColumn) c.get(9)).append(s.isImageExcluded());
-
-            ((DoubleColumn ) c.get(10)).append(s.getX0());
-            ((DoubleColumn ) c.get(11)).append(s.getY0());
-            ((DoubleColumn ) c.get(12)).append(s.getX1());
-            ((DoubleColumn ) c.get(13)).append(s.getY1());
-
-            ((IntColumn    ) c.get(14)).append(s.getNumberOfTracks());
-            ((DoubleColumn ) c.get(15)).append(s.getVariability());
-            ((DoubleColumn ) c.get(16)).append(s.getDensity());
-            ((DoubleColumn ) c.get(17)).append(s.getDensityRatio());
-            ((DoubleColumn ) c.get(18)).append(s.getTau());
-            ((DoubleColumn ) c.get(19)).append(s.getRSquared());
-
-            ((DoubleColumn ) c.get(20)).append(s.getMedianDiffusionCoefficient());
-            ((DoubleColumn ) c.get(21)).append(s.getMedianDiffusionCoefficientExt());
-            ((DoubleColumn ) c.get(22)).append(s.getMedianLongTrackDuration());
-            ((DoubleColumn ) c.get(23)).append(s.getMedianShortTrackDuration());
-
-            ((DoubleColumn ) c.get(24)).append(s.getMedianDisplacement());
-            ((DoubleColumn ) c.get(25)).append(s.getMaxDisplacement());
-            ((DoubleColumn ) c.get(26)).append(s.getTotalDisplacement());
-
-            ((DoubleColumn ) c.get(27)).append(s.getMedianMaxSpeed());
-            ((DoubleColumn ) c.get(28)).append(s.getMaxMaxSpeed());
-
-            ((DoubleColumn ) c.get(29)).append(s.getMedianMeanSpeed());
-            ((DoubleColumn ) c.get(30)).append(s.getMaxMeanSpeed());
-
-            ((DoubleColumn ) c.get(31)).append(s.getMaxTrackDuration());
-            ((DoubleColumn ) c.get(32)).append(s.getTotalTrackDuration());
-            ((DoubleColumn ) c.get(33)).append(s.getMedianTrackDuration());
+        public void writeEntities(List<Square> squares, int from, int to, ColumnArrays values) {
+            values.putStrings(0, squares, from, to, Square::getUniqueKey);
+            values.putStrings(1, squares, from, to, Square::getRecordingName);
+            values.putInts(2, squares, from, to, Square::getSquareNumber);
+            values.putInts(3, squares, from, to, Square::getRowNumber);
+            values.putInts(4, squares, from, to, Square::getColNumber);
+            values.putInts(5, squares, from, to, Square::getLabelNumber);
+            values.putInts(6, squares, from, to, Square::getCellId);
+            values.putBooleans(7, squares, from, to, Square::isSelected);
+            values.putBooleans(8, squares, from, to, Square::isSquareManuallyExcluded);
+            values.putBooleans(9, squares, from, to, Square::isImageExcluded);
+            values.putDoubles(10, squares, from, to, Square::getX0);
+            values.putDoubles(11, squares, from, to, Square::getY0);
+            values.putDoubles(12, squares, from, to, Square::getX1);
+            values.putDoubles(13, squares, from, to, Square::getY1);
+            values.putInts(14, squares, from, to, Square::getNumberOfTracks);
+            values.putDoubles(15, squares, from, to, Square::getVariability);
+            values.putDoubles(16, squares, from, to, Square::getDensity);
+            values.putDoubles(17, squares, from, to, Square::getDensityRatio);
+            values.putDoubles(18, squares, from, to, Square::getTau);
+            values.putDoubles(19, squares, from, to, Square::getRSquared);
+            values.putDoubles(20, squares, from, to, Square::getMedianDiffusionCoefficient);
+            values.putDoubles(21, squares, from, to, Square::getMedianDiffusionCoefficientExt);
+            values.putDoubles(22, squares, from, to, Square::getMedianLongTrackDuration);
+            values.putDoubles(23, squares, from, to, Square::getMedianShortTrackDuration);
+            values.putDoubles(24, squares, from, to, Square::getMedianDisplacement);
+            values.putDoubles(25, squares, from, to, Square::getMaxDisplacement);
+            values.putDoubles(26, squares, from, to, Square::getTotalDisplacement);
+            values.putDoubles(27, squares, from, to, Square::getMedianMaxSpeed);
+            values.putDoubles(28, squares, from, to, Square::getMaxMaxSpeed);
+            values.putDoubles(29, squares, from, to, Square::getMedianMeanSpeed);
+            values.putDoubles(30, squares, from, to, Square::getMaxMeanSpeed);
+            values.putDoubles(31, squares, from, to, Square::getMaxTrackDuration);
+            values.putDoubles(32, squares, from, to, Square::getTotalTrackDuration);
+            values.putDoubles(33, squares, from, to, Square::getMedianTrackDuration);
         }
 
-        public Square readEntity(Table t, int r) {
-            Square s = new Square();
-            s.setUniqueKey(t.stringColumn(SQUARE_COLS[0]).get(r));
-            s.setRecordingName(t.stringColumn(SQUARE_COLS[1]).get(r));
-            s.setSquareNumber(t.intColumn(SQUARE_COLS[2]).getInt(r));
-            s.setRowNumber(t.intColumn(SQUARE_COLS[3]).getInt(r));
-            s.setColNumber(t.intColumn(SQUARE_COLS[4]).getInt(r));
-            s.setLabelNumber(t.intColumn(SQUARE_COLS[5]).getInt(r));
-            s.setCellId(t.intColumn(SQUARE_COLS[6]).getInt(r));
-
-            s.setSelected(t.booleanColumn(SQUARE_COLS[7]).get(r));
-            s.setSquareManuallyExcluded(t.booleanColumn(SQUARE_COLS[8]).get(r));
-            s.setImageExcluded(t.booleanColumn(SQUARE_COLS[9]).get(r));
-
-            s.setX0(t.doubleColumn(SQUARE_COLS[10]).getDouble(r));
-            s.setY0(t.doubleColumn(SQUARE_COLS[11]).getDouble(r));
-            s.setX1(t.doubleColumn(SQUARE_COLS[12]).getDouble(r));
-            s.setY1(t.doubleColumn(SQUARE_COLS[13]).getDouble(r));
-
-            s.setNumberOfTracks(t.intColumn(SQUARE_COLS[14]).getInt(r));
-            s.setVariability(t.doubleColumn(SQUARE_COLS[15]).getDouble(r));
-            s.setDensity(t.doubleColumn(SQUARE_COLS[16]).getDouble(r));
-            s.setDensityRatio(t.doubleColumn(SQUARE_COLS[17]).getDouble(r));
-            s.setTau(t.doubleColumn(SQUARE_COLS[18]).getDouble(r));
-            s.setRSquared(t.doubleColumn(SQUARE_COLS[19]).getDouble(r));
-
-            s.setMedianDiffusionCoefficient(t.doubleColumn(SQUARE_COLS[20]).getDouble(r));
-            s.setMedianDiffusionCoefficientExt(t.doubleColumn(SQUARE_COLS[21]).getDouble(r));
-            s.setMedianLongTrackDuration(t.doubleColumn(SQUARE_COLS[22]).getDouble(r));
-            s.setMedianShortTrackDuration(t.doubleColumn(SQUARE_COLS[23]).getDouble(r));
-
-            s.setMedianDisplacement(t.doubleColumn(SQUARE_COLS[24]).getDouble(r));
-            s.setMaxDisplacement(t.doubleColumn(SQUARE_COLS[25]).getDouble(r));
-            s.setTotalDisplacement(t.doubleColumn(SQUARE_COLS[26]).getDouble(r));
-
-            s.setMedianMaxSpeed(t.doubleColumn(SQUARE_COLS[27]).getDouble(r));
-            s.setMaxMaxSpeed(t.doubleColumn(SQUARE_COLS[28]).getDouble(r));
-
-            s.setMedianMeanSpeed(t.doubleColumn(SQUARE_COLS[29]).getDouble(r));
-            s.setMaxMeanSpeed(t.doubleColumn(SQUARE_COLS[30]).getDouble(r));
-
-            s.setMaxTrackDuration(t.doubleColumn(SQUARE_COLS[31]).getDouble(r));
-            s.setTotalTrackDuration(t.doubleColumn(SQUARE_COLS[32]).getDouble(r));
-            s.setMedianTrackDuration(t.doubleColumn(SQUARE_COLS[33]).getDouble(r));
-            return s;
+        public List<Square> readEntities(ColumnArrays values, int from, int to) {
+            List<Square> squares = new ArrayList<Square>(to - from);
+            for (int r = from; r < to; r++) {
+                squares.add(new Square());
+            }
+            values.getStrings(0, squares, from, Square::setUniqueKey);
+            values.getStrings(1, squares, from, Square::setRecordingName);
+            values.getInts(2, squares, from, Square::setSquareNumber);
+            values.getInts(3, squares, from, Square::setRowNumber);
+            values.getInts(4, squares, from, Square::setColNumber);
+            values.getInts(5, squares, from, Square::setLabelNumber);
+            values.getInts(6, squares, from, Square::setCellId);
+            values.getBooleans(7, squares, from, Square::setSelected);
+            values.getBooleans(8, squares, from, Square::setSquareManuallyExcluded);
+            values.getBooleans(9, squares, from, Square::setImageExcluded);
+            values.getDoubles(10, squares, from, Square::setX0);
+            values.getDoubles(11, squares, from, Square::setY0);
+            values.getDoubles(12, squares, from, Square::setX1);
+            values.getDoubles(13, squares, from, Square::setY1);
+            values.getInts(14, squares, from, Square::setNumberOfTracks);
+            values.getDoubles(15, squares, from, Square::setVariability);
+            values.getDoubles(16, squares, from, Square::setDensity);
+            values.getDoubles(17, squares, from, Square::setDensityRatio);
+            values.getDoubles(18, squares, from, Square::setTau);
+            values.getDoubles(19, squares, from, Square::setRSquared);
+            values.getDoubles(20, squares, from, Square::setMedianDiffusionCoefficient);
+            values.getDoubles(21, squares, from, Square::setMedianDiffusionCoefficientExt);
+            values.getDoubles(22, squares, from, Square::setMedianLongTrackDuration);
+            values.getDoubles(23, squares, from, Square::setMedianShortTrackDuration);
+            values.getDoubles(24, squares, from, Square::setMedianDisplacement);
+            values.getDoubles(25, squares, from, Square::setMaxDisplacement);
+            values.getDoubles(26, squares, from, Square::setTotalDisplacement);
+            values.getDoubles(27, squares, from, Square::setMedianMaxSpeed);
+            values.getDoubles(28, squares, from, Square::setMaxMaxSpeed);
+            values.getDoubles(29, squares, from, Square::setMedianMeanSpeed);
+            values.getDoubles(30, squares, from, Square::setMaxMeanSpeed);
+            values.getDoubles(31, squares, from, Square::setMaxTrackDuration);
+            values.getDoubles(32, squares, from, Square::setTotalTrackDuration);
+            values.getDoubles(33, squares, from, Square::setMedianTrackDuration);
+            return squares;
         }
     }
 }
\ No newline at end of file
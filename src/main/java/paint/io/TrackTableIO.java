@@ -84,59 +84,61 @@ public class TrackTableIO extends BaseTableIO<Track> {
             return cols;
         }
 
-        @SuppressWarnings("unchecked")
-        public void appendEntity(Track t, List<Column<?>> cols) {
-            ((StringColumn) cols.get(0)).append(t.getUniqueKey());
-            ((StringColumn) cols.get(1)).append(t.getRecordingName());
-            ((IntColumn)    cols.get(2)).append(t.getTrackId());
-            ((StringColumn) cols.get(3)).append(t.getTrackLabel());
-            ((IntColumn)    cols.get(4)).append(t.getNumberOfSpots());
-            ((IntColumn)    cols.get(5)).append(t.getNumberOfGaps());
-            ((IntColumn)    cols.get(6)).append(t.getLongestGap());
-            ((DoubleColumn) cols.get(7)).append(t.getTrackDuration());
-            ((DoubleColumn) cols.get(8)).append(t.getTrackXLocation());
-            ((DoubleColumn) cols.get(9)).append(t.getTrackYLocation());
-            ((DoubleColumn) cols.get(10)).append(t.getTrackDisplacement());
-            ((DoubleColumn) cols.get(11)).append(t.getTrackMaxSpeed());
-            ((DoubleColumn) cols.get(12)).append(t.getTrackMedianSpeed());
-            ((DoubleColumn) cols.get(13)).append(t.getTrackMeanSpeed());
-            ((DoubleColumn) cols.get(14)).append(t.getTrackMaxSpeedCalc());
-            ((DoubleColumn) cols.get(15)).append(t.getTrackMedianSpeedCalc());
-            ((DoubleColumn) cols.get(16)).append(t.getTrackMeanSpeedCalc());
-            ((DoubleColumn) cols.get(17)).append(t.getDiffusionCoefficient());
-            ((DoubleColumn) cols.get(18)).append(t.getDiffusionCoefficientExt());
-            ((DoubleColumn) cols.get(19)).append(t.getTotalDistance());
-            ((DoubleColumn) cols.get(20)).append(t.getConfinementRatio());
-            ((IntColumn)    cols.get(21)).append(t.getSquareNumber());
-            ((IntColumn)    cols.get(22)).append(t.getLabelNumber());
+        public void writeEntities(List<Track> tracks, int from, int to, ColumnArrays values) {
+            values.putStrings(0, tracks, from, to, Track::getUniqueKey);
+            values.putStrings(1, tracks, from, to, Track::getRecordingName);
+            values.putInts(2, tracks, from, to, Track::getTrackId);
+            values.putStrings(3, tracks, from, to, Track::getTrackLabel);
+            values.putInts(4, tracks, from, to, Track::getNumberOfSpots);
+            values.putInts(5, tracks, from, to, Track::getNumberOfGaps);
+            values.putInts(6, tracks, from, to, Track::getLongestGap);
+            values.putDoubles(7, tracks, from, to, Track::getTrackDuration);
+            values.putDoubles(8, tracks, from, to, Track::getTrackXLocation);
+            values.putDoubles(9, tracks, from, to, Track::getTrackYLocation);
+            values.putDoubles(10, tracks, from, to, Track::getTrackDisplacement);
+            values.putDoubles(11, tracks, from, to, Track::getTrackMaxSpeed);
+            values.putDoubles(12, tracks, from, to, Track::getTrackMedianSpeed);
+            values.putDoubles(13, tracks, from, to, Track::getTrackMeanSpeed);
+            values.putDoubles(14, tracks, from, to, Track::getTrackMaxSpeedCalc);
+            values.putDoubles(15, tracks, from, to, Track::getTrackMedianSpeedCalc);
+            values.putDoubles(16, tracks, from, to, Track::getTrackMeanSpeedCalc);
+            values.putDoubles(17, tracks, from, to, Track::getDiffusionCoefficient);
+            values.putDoubles(18, tracks, from, to, Track::getDiffusionCoefficientExt);
+            values.putDoubles(19, tracks, from, to, Track::getTotalDistance);
+            values.putDoubles(20, tracks, from, to, Track::getConfinementRatio);
+            values.putInts(21, tracks, from, to, Track::getSquareNumber);
+            values.putInts(22, tracks, from, to, Track::getLabelNumber);
         }
 
-        public Track readEntity(Table table, int r) {
-            Track t = new Track();
-            t.setUniqueKey(table.stringColumn(TRACK_COLS[0]).get(r));
-            t.setRecordingName(table.stringColumn(TRACK_COLS[1]).get(r));
-            t.setTrackId(table.intColumn(TRACK_COLS[2]).getInt(r));
-            t.setTrackLabel(table.stringColumn(TRACK_COLS[3]).get(r));
-            t.setNumberOfSpots(table.intColumn(TRACK_COLS[4]).getInt(r));
-            t.setNumberOfGaps(table.intColumn(TRACK_COLS[5]).getInt(r));
-            t.setLongestGap(table.intColumn(TRACK_COLS[6]).getInt(r));
-            t.setTrackDuration(table.doubleColumn(TRACK_COLS[7]).getDouble(r));
-            t.setTrackXLocation(table.doubleColumn(TRACK_COLS[8]).getDouble(r));
-            t.setTrackYLocation(table.doubleColumn(TRACK_COLS[9]).getDouble(r));
-            t.setTrackDisplacement(table.doubleColumn(TRACK_COLS[10]).getDouble(r));
-            t.setTrackMaxSpeed(table.doubleColumn(TRACK_COLS[11]).getDouble(r));
-            t.setTrackMedianSpeed(table.doubleColumn(TRACK_COLS[12]).getDouble(r));
-            t.setTrackMeanSpeed(table.doubleColumn(TRACK_COLS[13]).getDouble(r));
-            t.setTrackMaxSpeedCalc(table.doubleColumn(TRACK_COLS[14]).getDouble(r));
-            t.setTrackMedianSpeedCalc(table.doubleColumn(TRACK_COLS[15]).getDouble(r));
-            t.setTrackMeanSpeedCalc(table.doubleColumn(TRACK_COLS[16]).getDouble(r));
-            t.setDiffusionCoefficient(table.doubleColumn(TRACK_COLS[17]).getDouble(r));
-            t.setDiffusionCoefficientExt(table.doubleColumn(TRACK_COLS[18]).getDouble(r));
-            t.setTotalDistance(table.doubleColumn(TRACK_COLS[19]).getDouble(r));
-            t.setConfinementRatio(table.doubleColumn(TRACK_COLS[20]).getDouble(r));
-            t.setSquareNumber(table.intColumn(TRACK_COLS[21]).getInt(r));
-            t.setLabelNumber(table.intColumn(TRACK_COLS[22]).getInt(r));
-            return t;
+        public List<Track> readEntities(ColumnArrays values, int from, int to) {
+            List<Track> tracks = new ArrayList<Track>(to - from);
+            for (int r = from; r < to; r++) {
+                tracks.add(new Track());
+            }
+            values.getStrings(0, tracks, from, Track::setUniqueKey);
+            values.getStrings(1, tracks, from, Track::setRecordingName);
+            values.getInts(2, tracks, from, Track::setTrackId);
+            values.getStrings(3, tracks, from, Track::setTrackLabel);
+            values.getInts(4, tracks, from, Track::setNumberOfSpots);
+            values.getInts(5, tracks, from, Track::setNumberOfGaps);
+            values.getInts(6, tracks, from, Track::setLongestGap);
+            values.getDoubles(7, tracks, from, Track::setTrackDuration);
+            values.getDoubles(8, tracks, from, Track::setTrackXLocation);
+            values.getDoubles(9, tracks, from, Track::setTrackYLocation);
+            values.getDoubles(10, tracks, from, Track::setTrackDisplacement);
+            values.getDoubles(11, tracks, from, Track::setTrackMaxSpeed);
+            values.getDoubles(12, tracks, from, Track::setTrackMedianSpeed);
+            values.getDoubles(13, tracks, from, Track::setTrackMeanSpeed);
+            values.getDoubles(14, tracks, from, Track::setTrackMaxSpeedCalc);
+            values.getDoubles(15, tracks, from, Track::setTrackMedianSpeedCalc);
+            values.getDoubles(16, tracks, from, Track::setTrackMeanSpeedCalc);
+            values.getDoubles(17, tracks, from, Track::setDiffusionCoefficient);
+            values.getDoubles(18, tracks, from, Track::setDiffusionCoefficientExt);
+            values.getDoubles(19, tracks, from, Track::setTotalDistance);
+            values.getDoubles(20, tracks, from, Track::setConfinementRatio);
+            values.getInts(21, tracks, from, Track::setSquareNumber);
+            values.getInts(22, tracks, from, Track::setLabelNumber);
+            return tracks;
         }
     }
 }
\ No newline at end of file
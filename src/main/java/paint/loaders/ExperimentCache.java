@@ -0,0 +1,223 @@
+package paint.loaders;
+
+import paint.objects.Recording;
+import paint.objects.Square;
+import paint.objects.TrackStore;
+import paint.utilities.AppLogger;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A least recently used cache of loaded experiments, bounded by their estimated size in bytes.
+ *
+ * LazyExperiment keeps only the metadata of its recordings; the recordings with their tracks and squares live
+ * here, and are loaded again when they have been evicted. The size of an experiment is estimated from its track
+ * store, which dominates, plus its squares and track references. An experiment that alone exceeds the budget is
+ * returned without being cached. An experiment that a caller still holds is returned again without loading it,
+ * also when it was evicted or too large to be cached.
+ *
+ * Different experiments can be loaded concurrently; concurrent requests for the same experiment load it once.
+ * The writers of the files of an experiment invalidate it in the shared cache.
+ */
+
+public final class ExperimentCache {
+
+    private static final long MB = 1024L * 1024L;
+
+    // Rough per-object sizes, in line with TrackStore.estimatedBytes
+    private static final long RECORDING_BYTES = 512;
+    private static final long SQUARE_BYTES = 320;
+
+    /** A loader for the recordings of one experiment, with their tracks and squares. */
+    public interface Loader {
+        List<Recording> load() throws Exception;
+    }
+
+    private static volatile ExperimentCache shared = null;
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, WeakReference<List<Recording>>> held = new HashMap<>();
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static final class Entry {
+        final List<Recording> recordings;
+        final long bytes;
+
+        Entry(List<Recording> recordings, long bytes) {
+            this.recordings = recordings;
+            this.bytes = bytes;
+        }
+    }
+
+    public ExperimentCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache shared by the projects of this JVM. Its size is paint.experimentCacheMB, or a quarter of the
+     * maximum heap when that property is not set.
+     */
+    public static ExperimentCache shared() {
+        ExperimentCache cache = shared;
+        if (cache == null) {
+            synchronized (ExperimentCache.class) {
+                if (shared == null) {
+                    long defaultMB = Math.max(64, Runtime.getRuntime().maxMemory() / 4 / MB);
+                    shared = new ExperimentCache(Long.getLong("paint.experimentCacheMB", defaultMB) * MB);
+                }
+                cache = shared;
+            }
+        }
+        return cache;
+    }
+
+    /** The key of the experiment in a directory. */
+    public static String keyOf(Path experimentPath) {
+        return experimentPath.toAbsolutePath().normalize().toString();
+    }
+
+    /** Forget an experiment in the shared cache, if there is one, after its files have been rewritten. */
+    public static void invalidateShared(Path experimentPath) {
+        ExperimentCache cache = shared;
+        if (cache != null) {
+            cache.invalidate(keyOf(experimentPath));
+        }
+    }
+
+    /** The recordings of an experiment, from the cache or loaded with the loader. */
+    public List<Recording> get(String key, Loader loader) throws Exception {
+        List<Recording> recordings = lookup(key);
+        if (recordings != null) {
+            return recordings;
+        }
+        synchronized (loadLocks.computeIfAbsent(key, k -> new Object())) {
+            try {
+                recordings = peek(key);       // Loaded by another thread meanwhile
+                if (recordings != null) {
+                    return recordings;
+                }
+                recordings = Collections.unmodifiableList(loader.load());
+                put(key, recordings, estimateBytes(recordings));
+                return recordings;
+            } finally {
+                loadLocks.remove(key);
+            }
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /** Forget an experiment, for example after its files have been rewritten. */
+    public synchronized void invalidate(String key) {
+        held.remove(key);
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        held.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized String statistics() {
+        return String.format("%d experiments, %d of %d MB, %d hits, %d misses, %d evictions",
+                             entries.size(), bytes / MB, maxBytes / MB, hits, misses, evictions);
+    }
+
+    /** The estimated heap size of loaded recordings; a track store shared by recordings is counted once. */
+    public static long estimateBytes(List<Recording> recordings) {
+        Set<TrackStore> trackStores = Collections.newSetFromMap(new IdentityHashMap<>());
+        long total = 0;
+        for (Recording recording : recordings) {
+            total += RECORDING_BYTES + 4L * recording.getTrackRows().length;
+            trackStores.add(recording.getTrackStore());
+            for (Square square : recording.getSquares()) {
+                total += SQUARE_BYTES + 4L * square.getTrackRows().length;
+                trackStores.add(square.getTrackStore());
+            }
+        }
+        for (TrackStore trackStore : trackStores) {
+            total += trackStore.estimatedBytes();
+        }
+        return total;
+    }
+
+    private synchronized List<Recording> lookup(String key) {
+        List<Recording> recordings = peek(key);
+        if (recordings == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return recordings;
+    }
+
+    private synchronized List<Recording> peek(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.recordings;
+        }
+        WeakReference<List<Recording>> reference = held.get(key);
+        List<Recording> recordings = reference == null ? null : reference.get();
+        if (reference != null && recordings == null) {
+            held.remove(key);
+        }
+        return recordings;
+    }
+
+    private synchronized void put(String key, List<Recording> recordings, long size) {
+        invalidate(key);
+        held.put(key, new WeakReference<>(recordings));
+        if (size > maxBytes) {
+            AppLogger.warningf("Experiment %s (%.1f MB) is larger than the experiment cache (%.1f MB) and is not cached.",
+                               key, (double) size / MB, (double) maxBytes / MB);
+            return;
+        }
+
+        // Evict the least recently used experiments until the new one fits
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes + size > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.bytes;
+            evictions++;
+        }
+        entries.put(key, new Entry(recordings, size));
+        bytes += size;
+    }
+}
@@ -0,0 +1,73 @@
+package paint.loaders;
+
+import paint.objects.Recording;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A handle on an experiment of a project that loads its tracks and squares when they are asked for.
+ *
+ * The handle is created with the recordings of 'All Recordings.csv' only, which getRecordingInfo returns.
+ * loadRecordings returns the recordings with their tracks and squares; they are kept in an ExperimentCache, which
+ * may evict them again. A caller loads them once and holds on to the list while it works with them: while the list
+ * is held it is not loaded again, also when it is too large to be cached.
+ */
+
+public final class LazyExperiment {
+
+    private final String experimentName;
+    private final Path experimentPath;
+    private final List<Recording> recordingInfo;
+    private final ExperimentCache cache;
+    private final ExperimentCache.Loader loader;
+
+    public LazyExperiment(String experimentName, Path experimentPath, List<Recording> recordingInfo,
+                          ExperimentCache cache, ExperimentCache.Loader loader) {
+        this.experimentName = experimentName;
+        this.experimentPath = experimentPath;
+        this.recordingInfo = Collections.unmodifiableList(new ArrayList<>(recordingInfo));
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    public String getExperimentName() {
+        return experimentName;
+    }
+
+    public Path getExperimentPath() {
+        return experimentPath;
+    }
+
+    /** The recordings as listed in 'All Recordings.csv', without tracks or squares. */
+    public List<Recording> getRecordingInfo() {
+        return recordingInfo;
+    }
+
+    /** The recordings with their tracks and squares, loaded if they are not in the cache. */
+    public List<Recording> loadRecordings() {
+        try {
+            return cache.get(ExperimentCache.keyOf(experimentPath), loader);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load experiment " + experimentName + ": " + e.getMessage(), e);
+        }
+    }
+
+    public boolean isLoaded() {
+        return cache.contains(ExperimentCache.keyOf(experimentPath));
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nExperiment %s has %d recordings%s%n", experimentName, recordingInfo.size(),
+                                isLoaded() ? "" : " (not loaded)"));
+        for (Recording recording : recordingInfo) {
+            sb.append(String.format("\t%s%n", recording.getRecordingName()));
+        }
+        return sb.toString();
+    }
+}
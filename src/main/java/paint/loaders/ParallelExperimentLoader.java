@@ -0,0 +1,291 @@
+package paint.loaders;
+
+import paint.io.ColumnarCache;
+import paint.io.FastTrackCsvReader;
+import paint.io.RecordingTableIO;
+import paint.io.SquareTableIO;
+import paint.objects.Context;
+import paint.objects.Experiment;
+import paint.objects.Recording;
+import paint.objects.TrackStore;
+import paint.utilities.AppLogger;
+import tech.tablesaw.api.Table;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static paint.constants.PaintConstants.RECORDINGS_CSV;
+import static paint.constants.PaintConstants.SQUARES_CSV;
+import static paint.constants.PaintConstants.TRACKS_CSV;
+import static paint.utilities.Miscellaneous.friendlyMessage;
+
+/**
+ * Loads experiments concurrently, and the three files of an experiment concurrently, with separate limits for
+ * I/O and for parsing.
+ *
+ * On network storage the latency of a file dominates, so many files should be in flight at once, while parsing
+ * should not use more threads than there are cores. The columnar cache of every file is therefore read on the
+ * I/O pool when there is a valid one. Otherwise the small recordings and squares files are read into memory on
+ * the I/O pool and parsed on the parse pool, while 'All Tracks', which can be several GB, is memory-mapped and
+ * parsed in parallel chunks on the parse pool; the parse pool writes the columnar cache. An experiment is
+ * assembled on the parse pool as soon as its three files are parsed.
+ *
+ * A failure only affects its own experiment: loadAll collects the errors per experiment and returns the
+ * experiments that did load.
+ */
+
+public final class ParallelExperimentLoader implements AutoCloseable {
+
+    /** The number of files read at the same time, from paint.loader.ioThreads. */
+    public static final int DEFAULT_IO_THREADS = Integer.getInteger("paint.loader.ioThreads", 8);
+
+    /** The number of files parsed at the same time, from paint.loader.parseThreads. */
+    public static final int DEFAULT_PARSE_THREADS = Integer.getInteger("paint.loader.parseThreads",
+                                                                       Runtime.getRuntime().availableProcessors());
+
+    private static volatile ParallelExperimentLoader shared = null;
+
+    /** The experiments that loaded and the errors of those that did not, both in the order they were requested. */
+    public static final class Result<E> {
+        public final Map<String, E> experiments;
+        public final Map<String, Exception> errors;
+
+        Result(Map<String, E> experiments, Map<String, Exception> errors) {
+            this.experiments = Collections.unmodifiableMap(experiments);
+            this.errors = Collections.unmodifiableMap(errors);
+        }
+
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+    }
+
+    private final ExecutorService ioPool;
+    private final ExecutorService parsePool;
+    private final FileReader<TrackStore> tracksReader;
+
+    public ParallelExperimentLoader(int ioThreads, int parseThreads) {
+        if (ioThreads < 1 || parseThreads < 1) {
+            throw new IllegalArgumentException(String.format("Thread counts must be positive: %d I/O, %d parse", ioThreads, parseThreads));
+        }
+        this.ioPool = Executors.newFixedThreadPool(ioThreads, daemonThreads("paint-load-io"));
+        this.parsePool = Executors.newFixedThreadPool(parseThreads, daemonThreads("paint-load-parse"));
+        this.tracksReader = tracksReader(parseThreads);
+    }
+
+    /** A loader with the default limits, shared by this JVM. Its threads do not keep the JVM alive. */
+    public static ParallelExperimentLoader shared() {
+        ParallelExperimentLoader loader = shared;
+        if (loader == null) {
+            synchronized (ParallelExperimentLoader.class) {
+                if (shared == null) {
+                    shared = new ParallelExperimentLoader(Math.max(1, DEFAULT_IO_THREADS), Math.max(1, DEFAULT_PARSE_THREADS));
+                }
+                loader = shared;
+            }
+        }
+        return loader;
+    }
+
+    /** Load the experiments concurrently; an experiment that fails is reported in the result, not thrown. */
+    public Result<Experiment> loadAll(Path projectPath, List<String> experimentNames, Context context) {
+        Map<String, CompletableFuture<Experiment>> futures = new LinkedHashMap<>();
+        for (String experimentName : experimentNames) {
+            futures.put(experimentName, loadAsync(projectPath, experimentName, context));
+        }
+        return collect(futures, "load");
+    }
+
+    /**
+     * Open lazily loaded experiments, reading their 'All Recordings.csv' concurrently on the I/O pool and parsing
+     * it on the parse pool. An experiment that fails to open is reported in the result, not thrown.
+     */
+    public Result<LazyExperiment> openAll(Path projectPath, List<String> experimentNames, Context context,
+                                          ExperimentCache cache) {
+        Map<String, CompletableFuture<LazyExperiment>> futures = new LinkedHashMap<>();
+        for (String experimentName : experimentNames) {
+            futures.put(experimentName, readThenParse(projectPath.resolve(experimentName).resolve(RECORDINGS_CSV),
+                                                      experimentName, RECORDINGS)
+                    .thenApply(recordingInfo -> ProjectDataLoader.openExperiment(projectPath, experimentName,
+                                                                                 recordingInfo, context, cache)));
+        }
+        return collect(futures, "open");
+    }
+
+    /** Load one experiment, reading its three files concurrently. */
+    public Experiment load(Path projectPath, String experimentName, Context context) throws IOException {
+        return await(loadAsync(projectPath, experimentName, context));
+    }
+
+    public CompletableFuture<Experiment> loadAsync(Path projectPath, String experimentName, Context context) {
+        Path experimentPath = projectPath.resolve(experimentName);
+        Context experimentContext = new Context(context);
+
+        CompletableFuture<List<Recording>> recordings = readThenParse(experimentPath.resolve(RECORDINGS_CSV), experimentName, RECORDINGS);
+        CompletableFuture<TrackStore> tracks = readThenParse(experimentPath.resolve(TRACKS_CSV), experimentName, tracksReader);
+        CompletableFuture<Table> squares = readThenParse(experimentPath.resolve(SQUARES_CSV), experimentName, SQUARES);
+
+        return CompletableFuture.allOf(recordings, tracks, squares).thenApplyAsync(ignored ->
+                ProjectDataLoader.assembleExperiment(experimentName, recordings.join(), tracks.join(), squares.join(),
+                                                     experimentContext), parsePool);
+    }
+
+    @Override
+    public void close() {
+        ioPool.shutdownNow();
+        parsePool.shutdownNow();
+    }
+
+    /*
+     * A reader of one kind of file: the columnar cache is read on the I/O pool, the CSV is parsed on the parse pool.
+     * The content of a small CSV is read on the I/O pool too; a large one is parsed from the file, and content is null.
+     */
+
+    private interface FileReader<T> {
+        T readCache(Path path, ColumnarCache.Stamp stamp) throws Exception;
+
+        boolean readsContent();
+
+        T parse(byte[] content, Path path, ColumnarCache.Stamp stamp) throws Exception;
+    }
+
+    private static final FileReader<List<Recording>> RECORDINGS = new FileReader<List<Recording>>() {
+        public List<Recording> readCache(Path path, ColumnarCache.Stamp stamp) {
+            RecordingTableIO recordingTableIO = new RecordingTableIO();
+            Table table = recordingTableIO.readCache(path, stamp);
+            return table == null ? null : recordingTableIO.toEntities(table);
+        }
+
+        public boolean readsContent() {
+            return true;
+        }
+
+        public List<Recording> parse(byte[] content, Path path, ColumnarCache.Stamp stamp) throws Exception {
+            RecordingTableIO recordingTableIO = new RecordingTableIO();
+            return recordingTableIO.toEntities(recordingTableIO.readCsv(new ByteArrayInputStream(content), path, stamp));
+        }
+    };
+
+    /* 'All Tracks' can be several GB: it is memory-mapped and parsed in parallel chunks, never read into one array. */
+
+    private static FileReader<TrackStore> tracksReader(int numberOfThreads) {
+        return new FileReader<TrackStore>() {
+            public TrackStore readCache(Path path, ColumnarCache.Stamp stamp) {
+                return ColumnarCache.readTrackStore(path, stamp);
+            }
+
+            public boolean readsContent() {
+                return false;
+            }
+
+            public TrackStore parse(byte[] content, Path path, ColumnarCache.Stamp stamp) throws Exception {
+                TrackStore store = FastTrackCsvReader.parse(path, numberOfThreads);
+                ColumnarCache.writeTrackStore(store, path, stamp);
+                return store;
+            }
+        };
+    }
+
+    private static final FileReader<Table> SQUARES = new FileReader<Table>() {
+        public Table readCache(Path path, ColumnarCache.Stamp stamp) {
+            return new SquareTableIO().readCache(path, stamp);
+        }
+
+        public boolean readsContent() {
+            return true;
+        }
+
+        public Table parse(byte[] content, Path path, ColumnarCache.Stamp stamp) throws Exception {
+            return new SquareTableIO().readCsv(new ByteArrayInputStream(content), path, stamp);
+        }
+    };
+
+    /* What the I/O pool hands to the parse pool: the value from the columnar cache, or the content of a small CSV. */
+
+    private static final class FileContent<T> {
+        final ColumnarCache.Stamp stamp;
+        final T cached;
+        final byte[] content;
+
+        FileContent(ColumnarCache.Stamp stamp, T cached, byte[] content) {
+            this.stamp = stamp;
+            this.cached = cached;
+            this.content = content;
+        }
+    }
+
+    private interface Step<T> {
+        T run() throws Exception;
+    }
+
+    private <T> CompletableFuture<T> readThenParse(Path path, String experimentName, FileReader<T> reader) {
+        return CompletableFuture
+                .supplyAsync(() -> step(path, experimentName, () -> {
+                    ColumnarCache.Stamp stamp = ColumnarCache.Stamp.of(path);
+                    T cached = reader.readCache(path, stamp);
+                    return new FileContent<>(stamp, cached, cached == null && reader.readsContent() ? Files.readAllBytes(path) : null);
+                }), ioPool)
+                .thenApplyAsync(file -> file.cached != null ? file.cached
+                        : step(path, experimentName, () -> reader.parse(file.content, path, file.stamp)), parsePool);
+    }
+
+    private static <T> T step(Path path, String experimentName, Step<T> step) {
+        try {
+            return step.run();
+        } catch (Exception e) {
+            throw new CompletionException(new IOException(String.format("Failed to read %s in %s: %s",
+                    path.getFileName(), experimentName, friendlyMessage(e)), e));
+        }
+    }
+
+    private static <E> Result<E> collect(Map<String, CompletableFuture<E>> futures, String action) {
+        Map<String, E> experiments = new LinkedHashMap<>();
+        Map<String, Exception> errors = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<E>> entry : futures.entrySet()) {
+            try {
+                experiments.put(entry.getKey(), await(entry.getValue()));
+            } catch (IOException e) {
+                AppLogger.errorf("Failed to %s experiment %s: %s", action, entry.getKey(), friendlyMessage(e));
+                errors.put(entry.getKey(), e);
+            }
+        }
+        return new Result<>(experiments, errors);
+    }
+
+    private static <E> E await(CompletableFuture<E> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading experiments", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(friendlyMessage(cause), cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,9 +1,10 @@
 package paint.loaders;
 
 import paint.io.RecordingTableIO;
-import paint.io.TrackTableIO;
+import paint.io.FastTrackCsvReader;
 
 import paint.io.SquareTableIO;
+import paint.calculations.SquareGrid;
 import paint.objects.*;
 
 import paint.utilities.AppLogger;
@@ -78,21 +79,24 @@ public final class ProjectDataLoader {
 
         System.out.printf("Project: %s has the following context:\n",project.getProjectName());
         System.out.println(project.getContext());
-        System.out.printf("Project %s has %d experiments:\n", project.getProjectName(), project.getExperiments().size());
+        System.out.printf("Project %s has %d experiments:\n", project.getProjectName(), project.getLazyExperiments().size());
 
-        for (Experiment exp : project.getExperiments()) {
+        for (LazyExperiment exp : project.getLazyExperiments()) {
             System.out.printf("\t%s\n", exp.getExperimentName());
         }
         System.out.println();
 
-        for (Experiment exp : project.getExperiments()) {
+        for (LazyExperiment exp : project.getLazyExperiments()) {
             numberOfTracksInExperiment = 0;
-            System.out.printf("\n\nExperiment: %s has %d recordings.\n", exp.getExperimentName(), exp.getRecordings().size());
-            for (Recording rec : exp.getRecordings()) {
+
+            // Load the experiment once and hold on to it for all passes over its recordings
+            List<Recording> recordings = exp.loadRecordings();
+            System.out.printf("\n\nExperiment: %s has %d recordings.\n", exp.getExperimentName(), recordings.size());
+            for (Recording rec : recordings) {
                 System.out.printf("\t%s\n", rec.getRecordingName());
             }
 
-            for (Recording rec : exp.getRecordings()) {
+            for (Recording rec : recordings) {
                 System.out.println();
                 System.out.printf("Recording: %s\n", rec.getRecordingName());
                 System.out.println(rec);
@@ -122,8 +126,6 @@ public final class ProjectDataLoader {
 
 
     public static Project loadProject(Path projectPath, List<String> experimentNames, boolean matureProject) {
-        List<Experiment> experiments = new ArrayList<>();
-
         // Read the context information from the Paint Configuration.json file
         Context context = loadContextFromJsonConfig(projectPath);
 
@@ -141,20 +143,13 @@ public final class ProjectDataLoader {
             }
         }
 
-        // Load each experiment if it seems valid and add it to the project
+        // Add a handle for each experiment that seems valid; tracks and squares are loaded when first used
+        List<String> validExperimentNames = new ArrayList<>();
         for (String experimentName : experimentNames) {
             Path expDir = projectPath.resolve(experimentName);
             if (experimentSeemsValid(expDir, matureProject)) {
-                AppLogger.info("Loading experiment: " + experimentName);
-                try {
-                    Experiment experiment = loadExperiment(projectPath, experimentName, context, matureProject);
-                            // Don't store @@@@
-//                    if (experiment != null) {
-//                        experiments.add(experiment);
-//                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
+                AppLogger.info("Adding experiment: " + experimentName);
+                validExperimentNames.add(experimentName);
             }
             else {
                 AppLogger.error("Experiment '" + experimentName + "' does not seem valid.");
@@ -162,8 +157,15 @@ public final class ProjectDataLoader {
             }
         }
 
+        // The handles are opened concurrently; an experiment that fails to open is logged and kept in the load errors
+        ParallelExperimentLoader.Result<LazyExperiment> result = ParallelExperimentLoader.shared().openAll(
+                projectPath, validExperimentNames, context, ExperimentCache.shared());
+
         // Create and return the Project object
-        return new Project(projectPath, context, experiments);
+        Project project = new Project(projectPath, context);
+        project.setLazyExperiments(new ArrayList<>(result.experiments.values()));
+        project.setLoadErrors(result.errors);
+        return project;
     }
 
 
@@ -182,10 +184,31 @@ public final class ProjectDataLoader {
 
 
 
+    /**
+     * Open an experiment lazily from the recordings of its 'All Recordings.csv': the tracks and squares are loaded
+     * by ParallelExperimentLoader when the recordings are first asked for, and kept in the cache.
+     */
+
+    public static LazyExperiment openExperiment(Path projectPath, String experimentName, List<Recording> recordingInfo,
+                                                Context context, ExperimentCache cache) {
+        Path experimentPath = projectPath.resolve(experimentName);
+        Context experimentContext = new Context(context);
+        return new LazyExperiment(experimentName, experimentPath, recordingInfo, cache, () -> {
+            AppLogger.info("Loading experiment: " + experimentName);
+            try {
+                return ParallelExperimentLoader.shared().load(projectPath, experimentName, experimentContext).getRecordings();
+            } catch (IOException e) {
+                AppLogger.errorf("Failed to load experiment %s: %s", experimentName, friendlyMessage(e));
+                throw e;
+            }
+        });
+    }
+
+
     public static Experiment loadExperimentForSquaresCalc(Path projectPath, String experimentName) {
         Path experimentPath = projectPath.resolve(experimentName);
 
-        Table tracksTable = null;
+        TrackStore trackStore = null;
         List<Recording> recordings = null;
         Experiment experiment = new Experiment(experimentName);
 
@@ -203,9 +226,8 @@ public final class ProjectDataLoader {
         }
 
         // Read the experiment 'All Tracks' file
-        TrackTableIO trackTableIO = new TrackTableIO();
         try {
-            tracksTable = trackTableIO.readCsv(experimentPath.resolve(TRACKS_CSV));
+            trackStore = FastTrackCsvReader.read(experimentPath.resolve(TRACKS_CSV));
         }
         catch (Exception e) {
             AppLogger.errorf("Failed to read %s in %s: %s", TRACKS_CSV, experimentName, friendlyMessage(e));
@@ -213,17 +235,12 @@ public final class ProjectDataLoader {
         }
 
         try {
+            // Index the tracks by recording in a single pass over the track store
+            RecordingNameIndex tracksIndex = RecordingNameIndex.of(trackStore);
             for (Recording recording : recordings) {
 
-                // Find the track records for this recording
-                Table tracksOfRecording = tracksTable.where(
-                        tracksTable.stringColumn(COL_RECORDING_NAME)
-                                .matchesRegex("^" + recording.getRecordingName() + "(?:-threshold-\\d{1,3})?$"));
-
-                // Create the Tracks objects for this recording and add the Tracks objects to the recording
-                List<Track> tracks = trackTableIO.toEntities(tracksOfRecording);
-                recording.setTracks(tracks);  // ToDo - be consistent, use the same call as for squares above
-                recording.setTracksTable(tracksOfRecording);
+                // The recording refers to its rows in the track store of the experiment
+                recording.setTrackStore(trackStore, tracksIndex.rowsOf(recording.getRecordingName()));
             }
         }
         catch (Exception e) {
@@ -250,28 +267,23 @@ public final class ProjectDataLoader {
     public static Experiment loadExperiment(Path projectPath, String experimentName, Context context, boolean matureProject) throws Exception {
         Path experimentPath = projectPath.resolve(experimentName);
 
-        Table tracksTable = null;
+        TrackStore trackStore = null;
         Table squaresTable = null;
         List<Recording> recordings = null;
-        Experiment experiment = new Experiment(experimentName);
 
         // Load recordings, but do not bother with squares and tracks yet.
         RecordingTableIO recordingsTableIO = new RecordingTableIO();
         try {
             Table recordingsTable = recordingsTableIO.readCsv(experimentPath.resolve(RECORDINGS_CSV));
             recordings = recordingsTableIO.toEntities(recordingsTable);
-            for (Recording rec : recordings) {
-                experiment.addRecording(rec);
-            }
         } catch (Exception e) {
             AppLogger.errorf("Failed to read %s in %s : %s", RECORDINGS_CSV, experimentName, friendlyMessage(e));
             return null;
         }
 
         // Read the experiment 'All Tracks' file
-        TrackTableIO trackTableIO = new TrackTableIO();
         try {
-            tracksTable = trackTableIO.readCsv(experimentPath.resolve(TRACKS_CSV));
+            trackStore = FastTrackCsvReader.read(experimentPath.resolve(TRACKS_CSV));
         }
         catch (Exception e) {
             AppLogger.errorf("Failed to read %s in %s: %s", TRACKS_CSV, experimentName, friendlyMessage(e));
@@ -293,42 +305,45 @@ public final class ProjectDataLoader {
             return null;
         }
 
-        // Assign the squares to each recording.
+        // Assign the squares and tracks to each recording.
         try {
-            for (Recording recording : recordings) {
+            return assembleExperiment(experimentName, recordings, trackStore, squaresTable, context);
+        }
+        catch (Exception e) {
+            AppLogger.errorf("In %s failed to assign tracks squares: %s", experimentName, friendlyMessage(e));
+            return null;
+        }
+    }
 
-                // Find the square records for this recording
-                Table squaresOfRecording = squaresTable.where(
-                        squaresTable.stringColumn(COL_RECORDING_NAME)
-                                .matchesRegex("^" + recording.getRecordingName() + "(?:-threshold-\\d{1,3})?$"));
 
-                // Create the Square objects for this recording and add the Square objects to the recording
-                List<Square> squares = squareTableIO.toEntities(squaresOfRecording);
-                recording.addSquares(squares);
+    /**
+     * Build an experiment from its parsed files: the squares of 'All Squares' are added to their recordings, the
+     * recordings refer to their rows in the track store, and the tracks are assigned to the squares.
+     */
 
-                // Find the track records for this recording
-                Table tracksOfRecording = tracksTable.where(
-                        tracksTable.stringColumn(COL_RECORDING_NAME)
-                                .matchesRegex("^" + recording.getRecordingName() + "(?:-threshold-\\d{1,3})?$"));
+    static Experiment assembleExperiment(String experimentName, List<Recording> recordings, TrackStore trackStore,
+                                         Table squaresTable, Context context) {
+        Experiment experiment = new Experiment(experimentName);
+        SquareTableIO squareTableIO = new SquareTableIO();
 
-                // Create the Tracks objects for this recording and add the Tracks objects to the recording
-                List<Track> tracks = trackTableIO.toEntities(tracksOfRecording);
-                recording.setTracks(tracks);  // ToDo - be consistent, use the same call as for squares above
-                recording.setTracksTable(tracksOfRecording);
+        // Index the squares and tracks by recording in a single pass over each table
+        RecordingNameIndex squaresIndex = RecordingNameIndex.of(squaresTable);
+        RecordingNameIndex tracksIndex = RecordingNameIndex.of(trackStore);
+        for (Recording recording : recordings) {
+            experiment.addRecording(recording);
 
-                // Assign the Tracks to specific squares in each recording
-                int lastRowCol = context.getNumberOfSquaresInRow() - 1;
+            // Find the square records for this recording
+            Table squaresOfRecording = squaresIndex.tableOf(squaresTable, recording.getRecordingName());
 
-                for (Square square : recording.getSquares()) {
-                    Table squareTracksTable = filterTracksInSquare(tracksOfRecording, square, lastRowCol);
-                    tracks = trackTableIO.toEntities(squareTracksTable);
-                    square.setTracks(tracks);
-                }
-            }
-        }
-        catch (Exception e) {
-            AppLogger.errorf("In %s failed to assign tracks squares: %s", experimentName, friendlyMessage(e));
-            return null;
+            // Create the Square objects for this recording and add the Square objects to the recording
+            List<Square> squares = squareTableIO.toEntities(squaresOfRecording);
+            recording.addSquares(squares);
+
+            // The recording refers to its rows in the track store of the experiment
+            recording.setTrackStore(trackStore, tracksIndex.rowsOf(recording.getRecordingName()));
+
+            // Assign the Tracks to specific squares in each recording
+            assignTracksToLoadedSquares(recording, context);
         }
 
         // Return with a valid mature experiment
@@ -387,6 +402,47 @@ public final class ProjectDataLoader {
                 || s.equals("1");
     }
 
+    /*
+    Assign the tracks of a recording to squares that were read from the 'All Squares' file.
+    When the squares form the grid described by the context, all tracks are bucketed in one pass.
+    Otherwise, each square selects its own tracks with filterTracksInSquare.
+     */
+
+    private static void assignTracksToLoadedSquares(Recording recording, Context context) {
+
+        TrackStore trackStore = recording.getTrackStore();
+        List<Square> squares = recording.getSquares();
+
+        SquareGrid grid = new SquareGrid(context);
+        boolean squaresMatchGrid = squares.size() == grid.getNumberOfSquares();
+        for (Square square : squares) {
+            int squareNumber = square.getSquareNumber();
+            if (squareNumber < 0 || squareNumber >= grid.getNumberOfSquares()) {
+                squaresMatchGrid = false;
+                break;
+            }
+        }
+
+        if (!squaresMatchGrid) {
+            Table tracksOfRecording = recording.getTracksTable();
+            int lastRowCol = context.getNumberOfSquaresInRow() - 1;
+            for (Square square : squares) {
+                square.setTracksTable(filterTracksInSquare(tracksOfRecording, square, lastRowCol));
+            }
+            return;
+        }
+
+        int[][] rowsPerSquare = grid.assignRows(
+                trackStore.doubleColumn(TrackStore.TRACK_X_LOCATION),
+                trackStore.doubleColumn(TrackStore.TRACK_Y_LOCATION),
+                recording.getTrackRows());
+
+        for (Square square : squares) {
+            square.setTrackStore(trackStore, rowsPerSquare[square.getSquareNumber()]);
+        }
+    }
+
+
     /*
     Select the tracks that are within the square's bounding box.
      */
@@ -457,7 +513,11 @@ public final class ProjectDataLoader {
         double linkingMaxDistance = 0.6;
         boolean medianFiltering = false;
         int minNumberOfSpotsInTrack = 3;
+        int maxNumberOfSpotsInImage = 2000000;
+        boolean adaptiveThreshold = false;
         String neighbourMode = "Free";
+        int numberOfThreads = 1;
+        int numberOfWorkers = 1;
 
         // Create the config reader and fetch the values
         JsonConfig config = new JsonConfig(projectPath.resolve(PAINT_JSON));
@@ -473,7 +533,12 @@ public final class ProjectDataLoader {
             linkingMaxDistance = config.getDouble("TrackMate", "LINKING_MAX_DISTANCE", linkingMaxDistance);
             medianFiltering = config.getBoolean("TrackMate", "DO_MEDIAN_FILTERING", medianFiltering);
             minNumberOfSpotsInTrack = config.getInt("TrackMate", "MIN_NR_SPOTS_IN_TRACK", minNumberOfSpotsInTrack);
-            neighbourMode = config.getString("Generate Squares", "NEIGHBOUR_MODE", neighbourMode);
+            maxNumberOfSpotsInImage = config.getInt("TrackMate", "MAX_NR_SPOTS_IN_IMAGE", maxNumberOfSpotsInImage);
+            adaptiveThreshold = config.getBoolean("TrackMate", "ADAPTIVE_THRESHOLD", adaptiveThreshold);
+            neighbourMode = config.getString("Generate Squares", "Neighbour Mode",
+                    config.getString("Generate Squares", "NEIGHBOUR_MODE", neighbourMode));
+            numberOfThreads = config.getInt("Generate Squares", "Number of Threads", numberOfThreads);
+            numberOfWorkers = config.getInt("Generate Squares", "Number of Workers", numberOfWorkers);
 
         }
         catch (Exception e) {
@@ -492,7 +557,11 @@ public final class ProjectDataLoader {
             context.setLinkingMaxDistance(linkingMaxDistance);
             context.setMedianFiltering(medianFiltering);
             context.setMinNumberOfSpotsInTrack(minNumberOfSpotsInTrack);
+            context.setMaxNumberOfSpotsInImage(maxNumberOfSpotsInImage);
+            context.setAdaptiveThreshold(adaptiveThreshold);
             context.setNeighbourMode(neighbourMode);
+            context.setNumberOfThreads(numberOfThreads);
+            context.setNumberOfWorkers(numberOfWorkers);
         }
         catch (Exception e) {
             System.err.println("Failed to set context values: " + e.getMessage());
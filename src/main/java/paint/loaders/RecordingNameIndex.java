@@ -0,0 +1,139 @@
+package paint.loaders;
+
+import paint.objects.TrackStore;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.selection.Selection;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static paint.constants.PaintConstants.COL_RECORDING_NAME;
+
+/**
+ * Index from recording name to the rows of a tracks or squares table, built in one pass over the table.
+ *
+ * A row belongs to a recording when its Recording Name is the recording name, optionally followed by a
+ * '-threshold-NNN' suffix (1 to 3 digits). This is the same rule as the regular expression
+ * "^name(?:-threshold-\d{1,3})?$" that was previously evaluated over the whole table for every recording,
+ * except that the name is matched literally rather than as a pattern.
+ */
+
+public final class RecordingNameIndex {
+
+    private static final String THRESHOLD_SUFFIX = "-threshold-";
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Map<String, int[]> rowsByRecording;
+
+    private RecordingNameIndex(Map<String, int[]> rowsByRecording) {
+        this.rowsByRecording = rowsByRecording;
+    }
+
+    public static RecordingNameIndex of(Table table) {
+        return of(table.stringColumn(COL_RECORDING_NAME));
+    }
+
+    public static RecordingNameIndex of(StringColumn recordingNames) {
+        return of(recordingNames.size(), recordingNames::get);
+    }
+
+    public static RecordingNameIndex of(TrackStore trackStore) {
+        return of(trackStore.size(), trackStore::getRecordingName);
+    }
+
+    private static RecordingNameIndex of(int nrOfRows, IntFunction<String> recordingNameOfRow) {
+
+        // Single scan: collect the rows per distinct name as it appears in the table
+        Map<String, RowList> rowsByName = new HashMap<>();
+        for (int row = 0; row < nrOfRows; row++) {
+            String name = recordingNameOfRow.apply(row);
+            RowList rows = rowsByName.get(name);
+            if (rows == null) {
+                rows = new RowList();
+                rowsByName.put(name, rows);
+            }
+            rows.add(row);
+        }
+
+        // A name with a threshold suffix belongs both to itself and to the name without the suffix
+        Map<String, int[]> rowsByRecording = new HashMap<>();
+        for (Map.Entry<String, RowList> entry : rowsByName.entrySet()) {
+            int[] rows = entry.getValue().toArray();
+            String name = entry.getKey();
+            rowsByRecording.merge(name, rows, RecordingNameIndex::mergeAscending);
+            String normalized = normalize(name);
+            if (!normalized.equals(name)) {
+                rowsByRecording.merge(normalized, rows, RecordingNameIndex::mergeAscending);
+            }
+        }
+        return new RecordingNameIndex(rowsByRecording);
+    }
+
+    /**
+     * Strip a trailing '-threshold-NNN' suffix (1 to 3 digits) from a recording name.
+     * Names without such a suffix are returned unchanged.
+     */
+    public static String normalize(String recordingName) {
+        if (recordingName == null) {
+            return "";
+        }
+        int suffixStart = recordingName.lastIndexOf(THRESHOLD_SUFFIX);
+        if (suffixStart < 0) {
+            return recordingName;
+        }
+        int digitsStart = suffixStart + THRESHOLD_SUFFIX.length();
+        int nrOfDigits = recordingName.length() - digitsStart;
+        if (nrOfDigits < 1 || nrOfDigits > 3) {
+            return recordingName;
+        }
+        for (int i = digitsStart; i < recordingName.length(); i++) {
+            char c = recordingName.charAt(i);
+            if (c < '0' || c > '9') {
+                return recordingName;
+            }
+        }
+        return recordingName.substring(0, suffixStart);
+    }
+
+    /** The ascending row indices of the recording, empty if the recording does not occur. */
+    public int[] rowsOf(String recordingName) {
+        int[] rows = rowsByRecording.get(recordingName);
+        return rows == null ? NO_ROWS : rows;
+    }
+
+    /** The rows of the recording as a sub-table of the table the index was built from. */
+    public Table tableOf(Table table, String recordingName) {
+        return table.where(Selection.with(rowsOf(recordingName)));
+    }
+
+    private static int[] mergeAscending(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            merged[k++] = (a[i] <= b[j]) ? a[i++] : b[j++];
+        }
+        while (i < a.length) merged[k++] = a[i++];
+        while (j < b.length) merged[k++] = b[j++];
+        return merged;
+    }
+
+    /** Minimal growable int list, to avoid boxing the row numbers. */
+    private static final class RowList {
+        private int[] rows = new int[16];
+        private int size = 0;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
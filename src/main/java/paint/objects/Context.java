@@ -23,7 +23,11 @@ public class Context {
     private double linkingMaxDistance;
     private boolean medianFiltering;
     private int minNumberOfSpotsInTrack;
+    private int maxNumberOfSpotsInImage = 2000000;
+    private boolean adaptiveThreshold;
     private String neighbourMode;
+    private int numberOfThreads = 1;
+    private int numberOfWorkers = 1;
 
 
     // Constructors
@@ -46,7 +50,11 @@ public class Context {
         this.linkingMaxDistance = other.linkingMaxDistance;
         this.medianFiltering = other.medianFiltering;
         this.minNumberOfSpotsInTrack = other.minNumberOfSpotsInTrack;
+        this.maxNumberOfSpotsInImage = other.maxNumberOfSpotsInImage;
+        this.adaptiveThreshold = other.adaptiveThreshold;
         this.neighbourMode = other.neighbourMode;
+        this.numberOfThreads = other.numberOfThreads;
+        this.numberOfWorkers = other.numberOfWorkers;
     }
 
 
@@ -86,20 +94,30 @@ public class Context {
     public void setMaxFrameGap(int maxFrameGap) {
         this.maxFrameGap = maxFrameGap;
     }
+    public int getMaxFrameGap() { return maxFrameGap; }
 
     public void setGapClosingMaxDistance(double gapClosingMaxDistance) { this.gapClosingMaxDistance = gapClosingMaxDistance; }
+    public double getGapClosingMaxDistance() { return gapClosingMaxDistance; }
 
     public void setLinkingMaxDistance(double linkingMaxDistance) {
         this.linkingMaxDistance = linkingMaxDistance;
     }
+    public double getLinkingMaxDistance() { return linkingMaxDistance; }
 
     public void setMedianFiltering(boolean medianFiltering) {
         this.medianFiltering = medianFiltering;
     }
+    public boolean isMedianFiltering() { return medianFiltering; }
 
     public void setMinNumberOfSpotsInTrack(int minNumberOfSpotsInTrack) { this.minNumberOfSpotsInTrack = minNumberOfSpotsInTrack; }
     public int getMinNumberOfSpotsInTrack() { return minNumberOfSpotsInTrack; }
 
+    public void setMaxNumberOfSpotsInImage(int maxNumberOfSpotsInImage) { this.maxNumberOfSpotsInImage = maxNumberOfSpotsInImage; }
+    public int getMaxNumberOfSpotsInImage() { return maxNumberOfSpotsInImage; }
+
+    public void setAdaptiveThreshold(boolean adaptiveThreshold) { this.adaptiveThreshold = adaptiveThreshold; }
+    public boolean isAdaptiveThreshold() { return adaptiveThreshold; }
+
     public void setMinTracksForTau(int minTracksForTau) {
         this.minTracksForTau = minTracksForTau;
     }
@@ -108,8 +126,24 @@ public class Context {
     public void setNeighbourMode(String neighbourMode) {
         this.neighbourMode = neighbourMode;
     }
+    public String getNeighbourMode() { return neighbourMode; }
+
+    public void setNumberOfThreads(int numberOfThreads) { this.numberOfThreads = numberOfThreads; }
+    public int getNumberOfThreads() { return numberOfThreads; }
+
+    /**
+     * The number of threads to use for calculations. A configured value of 0 or less means: use all available processors.
+     */
+    public int getEffectiveNumberOfThreads() {
+        return numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** The number of experiments that are calculated at the same time. */
+    public void setNumberOfWorkers(int numberOfWorkers) { this.numberOfWorkers = numberOfWorkers; }
+    public int getNumberOfWorkers() { return Math.max(1, numberOfWorkers); }
 
     public void setMaxAllowableVariability(double maxAllowableVariability) { this.maxAllowableVariability = maxAllowableVariability; }
+    public double getMaxAllowableVariability() { return maxAllowableVariability; }
 
     public void setMinRequiredDensityRatio(double minRequiredDensityRatio) { this.minRequiredDensityRatio = minRequiredDensityRatio; }
     public double getMinRequiredDensityRatio() { return minRequiredDensityRatio; }
@@ -144,7 +178,11 @@ public class Context {
         sb.append(String.format("\tLinking Max Distance         : %.2f%n", linkingMaxDistance));
         sb.append(String.format("\tMedian Filtering             : %b%n", medianFiltering));
         sb.append(String.format("\tMin Number of Spots in Track : %d%n", minNumberOfSpotsInTrack));
+        sb.append(String.format("\tMax Number of Spots in Image : %d%n", maxNumberOfSpotsInImage));
+        sb.append(String.format("\tAdaptive Threshold           : %b%n", adaptiveThreshold));
         sb.append(String.format("\tNeighbour Mode               : %s%n", neighbourMode));
+        sb.append(String.format("\tNumber of Threads            : %d%n", numberOfThreads));
+        sb.append(String.format("\tNumber of Workers            : %d%n", numberOfWorkers));
 
         return sb.toString();
     }
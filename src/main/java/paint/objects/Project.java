@@ -1,8 +1,13 @@
 package paint.objects;
 
+import paint.loaders.LazyExperiment;
+
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Project {
 
@@ -14,6 +19,8 @@ public class Project {
     private Path projectPath;
     private Context context;
     private List<Experiment> experiments;
+    private List<LazyExperiment> lazyExperiments = new ArrayList<>();
+    private Map<String, Exception> loadErrors = new LinkedHashMap<>();
 
     //
     // Constructors
@@ -77,7 +84,34 @@ public class Project {
         this.experiments = experiments;
     }
 
-    public void addExperiment(Experiment experiment) { // ToDo Should maybe make a deep copy
+    /** The experiments opened by ProjectDataLoader.loadProject, whose tracks and squares are loaded on request. */
+    public List<LazyExperiment> getLazyExperiments() {
+        return lazyExperiments;
+    }
+
+    public LazyExperiment getLazyExperiment(String experimentName) {
+        for (LazyExperiment experiment : lazyExperiments) {
+            if (experiment.getExperimentName().equals(experimentName)) {
+                return experiment;
+            }
+        }
+        return null;
+    }
+
+    public void setLazyExperiments(List<LazyExperiment> lazyExperiments) {
+        this.lazyExperiments = new ArrayList<>(lazyExperiments);
+    }
+
+    /** The experiments that ProjectDataLoader.loadProject could not open, with the reason, in the order requested. */
+    public Map<String, Exception> getLoadErrors() {
+        return Collections.unmodifiableMap(loadErrors);
+    }
+
+    public void setLoadErrors(Map<String, Exception> loadErrors) {
+        this.loadErrors = new LinkedHashMap<>(loadErrors);
+    }
+
+    public synchronized void addExperiment(Experiment experiment) { // ToDo Should maybe make a deep copy
         this.experiments.add(experiment);
     }
 
@@ -104,10 +138,13 @@ public class Project {
             sb.append(context);
         }
         sb.append("\n");
-        sb.append(String.format("%nExperiment %s has %d experiment%n",  projectName,  experiments.size()));
+        sb.append(String.format("%nExperiment %s has %d experiment%n",  projectName,  experiments.size() + lazyExperiments.size()));
         for (Experiment experiment : experiments) {
             sb.append(String.format("\t%s%n", experiment.getExperimentName()));
         }
+        for (LazyExperiment experiment : lazyExperiments) {
+            sb.append(String.format("\t%s%n", experiment.getExperimentName()));
+        }
 
         for (Experiment experiment : experiments) {
             sb.append("\n");
@@ -118,6 +155,16 @@ public class Project {
                 sb.append(rec);
             }
         }
+
+        // Printing a project does not load the tracks and squares of its lazy experiments
+        for (LazyExperiment experiment : lazyExperiments) {
+            sb.append("\n");
+            sb.append(experiment);
+            for (Recording rec : experiment.getRecordingInfo()) {
+                sb.append("\n");
+                sb.append(rec);
+            }
+        }
         return sb.toString();
     }
 
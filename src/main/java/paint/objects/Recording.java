@@ -33,9 +33,11 @@ public class Recording {
     private double density;
 
     private List<Square> squares = new ArrayList<>();
-    private List<Track> tracks = new ArrayList<>();
 
-    private Table tracksTable;
+    // The tracks of the recording are the trackRows of a (possibly shared) TrackStore
+    private TrackStore trackStore = TrackStore.EMPTY;
+    private int[] trackRows = new int[0];
+    private boolean ownsTrackStore = false;                // Whether addTrack may append to the track store
 
     //
     // Constructors
@@ -139,6 +141,7 @@ public class Recording {
                     case "Median Filtering":
                     case "Neighbour Mode":
                     case "Case":
+                    case "Peak Memory":
                     case "Max Frame Gap":
                     case "Nr of Squares in Row":
                     case "Min Spots in Track":
@@ -177,7 +180,6 @@ public class Recording {
         this.doProcess = doProcess;
         this.threshold = threshold;
         this.squares = new ArrayList<>();
-        this.tracks = new ArrayList<>();
     }
 
     //
@@ -245,12 +247,13 @@ public class Recording {
     public void setDensity(double density) { this.density = density; }
 
 
+    /** The tracks of the recording, as Track objects created on demand from the track store. */
     public List<Track> getTracks() {
-        return tracks;
+        return trackStore.tracksOf(trackRows);
     }
 
     public void setTracks(List<Track> tracks) {
-        this.tracks = tracks;
+        setOwnTrackStore(TrackStore.fromTracks(tracks));
     }
 
     public List<Square> getSquares() {
@@ -261,11 +264,36 @@ public class Recording {
         this.squares = squares;
     }
 
+    /** A table with the tracks of the recording. It is built on every call, so callers should keep the result. */
     public Table getTracksTable() {
-        return tracksTable;
+        return trackStore.toTable(trackRows);
     }
+
     public void setTracksTable(Table tracksTable) {
-        this.tracksTable = tracksTable;
+        setOwnTrackStore(TrackStore.fromTable(tracksTable));
+    }
+
+    public TrackStore getTrackStore() {
+        return trackStore;
+    }
+
+    public int[] getTrackRows() {
+        return trackRows;
+    }
+
+    /**
+     * Let the recording refer to rows of a track store.
+     * @param trackRows the rows of the tracks of this recording, or null for all rows of the store
+     */
+    public void setTrackStore(TrackStore trackStore, int[] trackRows) {
+        this.trackStore = trackStore;
+        this.trackRows = (trackRows == null) ? trackStore.allRows() : trackRows;
+        this.ownsTrackStore = false;
+    }
+
+    private void setOwnTrackStore(TrackStore trackStore) {
+        setTrackStore(trackStore, null);
+        this.ownsTrackStore = true;
     }
 
     public void addSquares(List <Square> squares) {
@@ -277,7 +305,13 @@ public class Recording {
     }
 
     public void addTrack(Track track) {
-        this.tracks.add(track);
+        // A shared or empty store is copied first, so that other objects do not see the new track
+        if (!ownsTrackStore) {
+            setOwnTrackStore(trackStore.copyOf(trackRows));
+        }
+        int row = trackStore.addTrack(track);
+        trackRows = Arrays.copyOf(trackRows, trackRows.length + 1);
+        trackRows[trackRows.length - 1] = row;
     }
 
     private static Boolean checkBooleanValue(String string) {
@@ -308,16 +342,14 @@ public class Recording {
         sb.append(String.format("\tR Squared                     : %.2f%n", rSquared));
         sb.append(String.format("\tDensity                       : %.2f%n", density));
 
-        if (tracks != null) {
-            sb.append(String.format("\tNumber of tracks              : %d%n", tracks.size()));
-        }
+        sb.append(String.format("\tNumber of tracks              : %d%n", trackRows.length));
         if (squares != null) {
             sb.append(String.format("\tNumber of square              : %d%n", squares.size()));
         }
 
         int numberOfSquaresWithTracks = 0;
         for (Square square : squares) {
-            if (square.getTracks() != null && square.getTracks().size() > 0) {
+            if (square.getTrackRows().length > 0) {
                 numberOfSquaresWithTracks += 1;
             }
         }
@@ -4,6 +4,7 @@ import paint.utilities.ColumnValue;
 import tech.tablesaw.api.Table;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static paint.constants.PaintConstants.*;
@@ -55,8 +56,9 @@ public class Square {
     private double totalTrackDuration;              // 32
     private double medianTrackDuration;             // 33
 
-    private List<Track> tracks = new ArrayList<>();
-    private Table tracksTable = null;
+    private TrackStore trackStore = TrackStore.EMPTY;  // Usually the track store of the recording
+    private int[] trackRows = new int[0];               // Rows of the tracks of the square in the track store
+    private boolean ownsTrackStore = false;             // Whether addTrack may append to the track store
 
 
     // Constructors
@@ -353,19 +355,44 @@ public class Square {
     public double getTotalDisplacement() { return totalDisplacement; }
     public void setTotalDisplacement(double totalDisplacement) { this.totalDisplacement = totalDisplacement;  }
 
-    public List<Track> getTracks() { return tracks; }
-    public void setTracks(List<Track> tracks) { this.tracks = tracks;  }
+    /** The tracks in the square, as Track objects created on demand from the track store. */
+    public List<Track> getTracks() { return trackStore.tracksOf(trackRows); }
+    public void setTracks(List<Track> tracks) { setOwnTrackStore(TrackStore.fromTracks(tracks)); }
 
+    /** A table with the tracks in the square. It is built on every call, so callers should keep the result. */
     public Table getTracksTable() {
-        return tracksTable;
+        return trackStore.toTable(trackRows);
     }
     public void setTracksTable(Table tracksTable) {
-        this.tracksTable = tracksTable;
+        setOwnTrackStore(TrackStore.fromTable(tracksTable));
     }
-    public void setTracksTable(Track[] tracks) {
+
+    public TrackStore getTrackStore() { return trackStore; }
+    public int[] getTrackRows() { return trackRows; }
+
+    /**
+     * Let the square refer to rows of a track store.
+     * @param trackRows the rows of the tracks in this square, or null for all rows of the store
+     */
+    public void setTrackStore(TrackStore trackStore, int[] trackRows) {
+        this.trackStore = trackStore;
+        this.trackRows = (trackRows == null) ? trackStore.allRows() : trackRows;
+        this.ownsTrackStore = false;
     }
+
+    private void setOwnTrackStore(TrackStore trackStore) {
+        setTrackStore(trackStore, null);
+        this.ownsTrackStore = true;
+    }
+
     public void addTrack(Track track) {
-        this.tracks.add(track);
+        // A shared or empty store is copied first, so that other objects do not see the new track
+        if (!ownsTrackStore) {
+            setOwnTrackStore(trackStore.copyOf(trackRows));
+        }
+        int row = trackStore.addTrack(track);
+        trackRows = Arrays.copyOf(trackRows, trackRows.length + 1);
+        trackRows[trackRows.length - 1] = row;
     }
 
 
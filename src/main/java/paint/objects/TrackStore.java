@@ -0,0 +1,581 @@
+package paint.objects;
+
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Columnar, primitive storage for tracks, one array per column of the All Tracks schema (TRACK_COLS).
+ *
+ * The recording name, which repeats for all tracks of a recording, is dictionary encoded: each row stores an
+ * int code and every distinct string is kept once. The unique key and track label differ on every row and are
+ * kept as plain string arrays. Recordings and squares do not copy tracks, they hold the row numbers of their
+ * tracks in a shared store; EMPTY is the store of objects that have no tracks yet.
+ * Track objects and Tablesaw tables are created only on demand, from a set of rows.
+ *
+ * Missing values follow the Tablesaw conventions: NaN for doubles, Integer.MIN_VALUE for integers and
+ * an empty string for strings.
+ */
+
+public final class TrackStore {
+
+    // Column indices, same order as TRACK_COLS
+    public static final int UNIQUE_KEY                 = 0;
+    public static final int RECORDING_NAME             = 1;
+    public static final int TRACK_ID                   = 2;
+    public static final int TRACK_LABEL                = 3;
+    public static final int NUMBER_OF_SPOTS            = 4;
+    public static final int NUMBER_OF_GAPS             = 5;
+    public static final int LONGEST_GAP                = 6;
+    public static final int TRACK_DURATION             = 7;
+    public static final int TRACK_X_LOCATION           = 8;
+    public static final int TRACK_Y_LOCATION           = 9;
+    public static final int TRACK_DISPLACEMENT         = 10;
+    public static final int TRACK_MAX_SPEED            = 11;
+    public static final int TRACK_MEDIAN_SPEED         = 12;
+    public static final int TRACK_MEAN_SPEED           = 13;
+    public static final int TRACK_MAX_SPEED_CALC       = 14;
+    public static final int TRACK_MEDIAN_SPEED_CALC    = 15;
+    public static final int TRACK_MEAN_SPEED_CALC      = 16;
+    public static final int DIFFUSION_COEFFICIENT      = 17;
+    public static final int DIFFUSION_COEFFICIENT_EXT  = 18;
+    public static final int TOTAL_DISTANCE             = 19;
+    public static final int CONFINEMENT_RATIO          = 20;
+    public static final int SQUARE_NUMBER              = 21;
+    public static final int LABEL_NUMBER               = 22;
+
+    // Storage kind per column: S = dictionary encoded string, T = string per row, I = int, D = double
+    private static final String KINDS = "TSITIIIDDDDDDDDDDDDDDII";
+
+    private static final int MISSING_INT = Integer.MIN_VALUE;
+
+    private final int[][] ints = new int[TRACK_COLS.length][];          // int columns and string codes
+    private final double[][] doubles = new double[TRACK_COLS.length][];
+    private final String[][] texts = new String[TRACK_COLS.length][];
+    private final Dictionary[] dictionaries = new Dictionary[TRACK_COLS.length];
+    private final boolean immutable;
+    private int size = 0;
+
+    /** A store without tracks that cannot be added to, shared by all recordings and squares without tracks. */
+    public static final TrackStore EMPTY = new TrackStore(0, true);
+
+    public TrackStore() {
+        this(16);
+    }
+
+    public TrackStore(int capacity) {
+        this(capacity, false);
+    }
+
+    private TrackStore(int capacity, boolean immutable) {
+        this.immutable = immutable;
+        capacity = Math.max(capacity, immutable ? 0 : 1);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S':
+                    dictionaries[column] = new Dictionary();
+                    ints[column] = new int[capacity];
+                    break;
+                case 'T':
+                    texts[column] = new String[capacity];
+                    break;
+                case 'I':
+                    ints[column] = new int[capacity];
+                    break;
+                default:
+                    doubles[column] = new double[capacity];
+                    break;
+            }
+        }
+    }
+
+    /** Build a store from a table with the All Tracks schema. */
+    public static TrackStore fromTable(Table table) {
+        int nrOfRows = table.rowCount();
+        TrackStore store = new TrackStore(nrOfRows);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S': {
+                    StringColumn stringColumn = table.stringColumn(TRACK_COLS[column]);
+                    Dictionary dictionary = store.dictionaries[column];
+                    int[] codes = store.ints[column];
+                    for (int row = 0; row < nrOfRows; row++) {
+                        codes[row] = dictionary.encode(stringColumn.get(row));
+                    }
+                    break;
+                }
+                case 'T': {
+                    StringColumn stringColumn = table.stringColumn(TRACK_COLS[column]);
+                    String[] values = store.texts[column];
+                    for (int row = 0; row < nrOfRows; row++) {
+                        values[row] = stringColumn.get(row);
+                    }
+                    break;
+                }
+                case 'I':
+                    store.ints[column] = table.intColumn(TRACK_COLS[column]).asIntArray();
+                    break;
+                default:
+                    store.doubles[column] = table.doubleColumn(TRACK_COLS[column]).asDoubleArray();
+                    break;
+            }
+        }
+        store.size = nrOfRows;
+        return store;
+    }
+
+    /**
+     * Build a store from complete column arrays, e.g. from a bulk reader.
+     * @param size the number of rows
+     * @param intColumns for int columns the values, for dictionary columns the codes (null for the other columns)
+     * @param doubleColumns for double columns the values (null for the other columns)
+     * @param dictionaryValues for dictionary columns the string of each code (null for the other columns)
+     * @param textColumns for the other string columns the values (null for the other columns)
+     */
+    public static TrackStore fromColumns(int size, int[][] intColumns, double[][] doubleColumns, String[][] dictionaryValues,
+                                         String[][] textColumns) {
+        TrackStore store = new TrackStore(0);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S':
+                    for (String value : dictionaryValues[column]) {
+                        store.dictionaries[column].encode(value);
+                    }
+                    store.ints[column] = checkLength(intColumns[column], size, column);
+                    break;
+                case 'T':
+                    store.texts[column] = checkLength(textColumns[column], size, column);
+                    break;
+                case 'I':
+                    store.ints[column] = checkLength(intColumns[column], size, column);
+                    break;
+                default:
+                    store.doubles[column] = checkLength(doubleColumns[column], size, column);
+                    break;
+            }
+        }
+        store.size = size;
+        return store;
+    }
+
+    public static boolean isStringColumn(int column) { return KINDS.charAt(column) == 'S' || KINDS.charAt(column) == 'T'; }
+    public static boolean isDictionaryColumn(int column) { return KINDS.charAt(column) == 'S'; }
+    public static boolean isTextColumn(int column) { return KINDS.charAt(column) == 'T'; }
+    public static boolean isIntColumn(int column)    { return KINDS.charAt(column) == 'I'; }
+    public static boolean isDoubleColumn(int column) { return KINDS.charAt(column) == 'D'; }
+
+    private static int[] checkLength(int[] values, int size, int column) {
+        if (values == null || values.length < size) {
+            throw new IllegalArgumentException("Column '" + TRACK_COLS[column] + "' has fewer than " + size + " values");
+        }
+        return values;
+    }
+
+    private static String[] checkLength(String[] values, int size, int column) {
+        if (values == null || values.length < size) {
+            throw new IllegalArgumentException("Column '" + TRACK_COLS[column] + "' has fewer than " + size + " values");
+        }
+        return values;
+    }
+
+    private static double[] checkLength(double[] values, int size, int column) {
+        if (values == null || values.length < size) {
+            throw new IllegalArgumentException("Column '" + TRACK_COLS[column] + "' has fewer than " + size + " values");
+        }
+        return values;
+    }
+
+    public static TrackStore fromTracks(List<Track> tracks) {
+        TrackStore store = new TrackStore(tracks.size());
+        for (Track track : tracks) {
+            store.addTrack(track);
+        }
+        return store;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** A new store with only the given rows, renumbered from 0. */
+    public TrackStore copyOf(int[] rows) {
+        TrackStore copy = new TrackStore(rows.length);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S': {
+                    Dictionary dictionary = dictionaries[column];
+                    for (int i = 0; i < rows.length; i++) {
+                        copy.ints[column][i] = copy.dictionaries[column].encode(dictionary.decode(ints[column][checkRow(rows[i])]));
+                    }
+                    break;
+                }
+                case 'T':
+                    for (int i = 0; i < rows.length; i++) {
+                        copy.texts[column][i] = texts[column][checkRow(rows[i])];
+                    }
+                    break;
+                case 'I':
+                    for (int i = 0; i < rows.length; i++) {
+                        copy.ints[column][i] = ints[column][checkRow(rows[i])];
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < rows.length; i++) {
+                        copy.doubles[column][i] = doubles[column][checkRow(rows[i])];
+                    }
+                    break;
+            }
+        }
+        copy.size = rows.length;
+        return copy;
+    }
+
+    /** The row numbers 0 .. size-1. */
+    public int[] allRows() {
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    //
+    // Adding rows
+    //
+
+    /** Add an empty row (missing values) and return its row number. */
+    public int addRow() {
+        if (immutable) {
+            throw new UnsupportedOperationException("Tracks cannot be added to the empty track store");
+        }
+        ensureCapacity(size + 1);
+        int row = size++;
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S':
+                    ints[column][row] = dictionaries[column].encode("");
+                    break;
+                case 'T':
+                    texts[column][row] = "";
+                    break;
+                case 'I':
+                    ints[column][row] = MISSING_INT;
+                    break;
+                default:
+                    doubles[column][row] = Double.NaN;
+                    break;
+            }
+        }
+        return row;
+    }
+
+    public int addTrack(Track track) {
+        int row = addRow();
+        setString(UNIQUE_KEY, row, track.getUniqueKey());
+        setString(RECORDING_NAME, row, track.getRecordingName());
+        setInt(TRACK_ID, row, track.getTrackId());
+        setString(TRACK_LABEL, row, track.getTrackLabel());
+        setInt(NUMBER_OF_SPOTS, row, track.getNumberOfSpots());
+        setInt(NUMBER_OF_GAPS, row, track.getNumberOfGaps());
+        setInt(LONGEST_GAP, row, track.getLongestGap());
+        setDouble(TRACK_DURATION, row, track.getTrackDuration());
+        setDouble(TRACK_X_LOCATION, row, track.getTrackXLocation());
+        setDouble(TRACK_Y_LOCATION, row, track.getTrackYLocation());
+        setDouble(TRACK_DISPLACEMENT, row, track.getTrackDisplacement());
+        setDouble(TRACK_MAX_SPEED, row, track.getTrackMaxSpeed());
+        setDouble(TRACK_MEDIAN_SPEED, row, track.getTrackMedianSpeed());
+        setDouble(TRACK_MEAN_SPEED, row, track.getTrackMeanSpeed());
+        setDouble(TRACK_MAX_SPEED_CALC, row, track.getTrackMaxSpeedCalc());
+        setDouble(TRACK_MEDIAN_SPEED_CALC, row, track.getTrackMedianSpeedCalc());
+        setDouble(TRACK_MEAN_SPEED_CALC, row, track.getTrackMeanSpeedCalc());
+        setDouble(DIFFUSION_COEFFICIENT, row, track.getDiffusionCoefficient());
+        setDouble(DIFFUSION_COEFFICIENT_EXT, row, track.getDiffusionCoefficientExt());
+        setDouble(TOTAL_DISTANCE, row, track.getTotalDistance());
+        setDouble(CONFINEMENT_RATIO, row, track.getConfinementRatio());
+        setInt(SQUARE_NUMBER, row, track.getSquareNumber());
+        setInt(LABEL_NUMBER, row, track.getLabelNumber());
+        return row;
+    }
+
+    private void ensureCapacity(int capacity) {
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            if (ints[column] != null && ints[column].length < capacity) {
+                ints[column] = Arrays.copyOf(ints[column], Math.max(capacity, ints[column].length * 3 / 2 + 1));
+            }
+            else if (doubles[column] != null && doubles[column].length < capacity) {
+                doubles[column] = Arrays.copyOf(doubles[column], Math.max(capacity, doubles[column].length * 3 / 2 + 1));
+            }
+            else if (texts[column] != null && texts[column].length < capacity) {
+                texts[column] = Arrays.copyOf(texts[column], Math.max(capacity, texts[column].length * 3 / 2 + 1));
+            }
+        }
+    }
+
+    //
+    // Cell access
+    //
+
+    public double getDouble(int column, int row) {
+        checkKind(column, 'D');
+        return doubles[column][checkRow(row)];
+    }
+
+    public void setDouble(int column, int row, double value) {
+        checkKind(column, 'D');
+        doubles[column][checkRow(row)] = value;
+    }
+
+    public int getInt(int column, int row) {
+        checkKind(column, 'I');
+        return ints[column][checkRow(row)];
+    }
+
+    public void setInt(int column, int row, int value) {
+        checkKind(column, 'I');
+        ints[column][checkRow(row)] = value;
+    }
+
+    public String getString(int column, int row) {
+        if (KINDS.charAt(column) == 'T') {
+            return texts[column][checkRow(row)];
+        }
+        checkKind(column, 'S');
+        return dictionaries[column].decode(ints[column][checkRow(row)]);
+    }
+
+    public void setString(int column, int row, String value) {
+        if (KINDS.charAt(column) == 'T') {
+            texts[column][checkRow(row)] = value == null ? "" : value;
+            return;
+        }
+        checkKind(column, 'S');
+        ints[column][checkRow(row)] = dictionaries[column].encode(value == null ? "" : value);
+    }
+
+    public double getTrackDuration(int row)   { return getDouble(TRACK_DURATION, row); }
+    public double getTrackXLocation(int row)  { return getDouble(TRACK_X_LOCATION, row); }
+    public double getTrackYLocation(int row)  { return getDouble(TRACK_Y_LOCATION, row); }
+    public String getRecordingName(int row)   { return getString(RECORDING_NAME, row); }
+
+    /**
+     * Direct access to a double column. The array may be longer than size() and must not be modified,
+     * it is meant for tight loops over many rows.
+     */
+    public double[] doubleColumn(int column) {
+        checkKind(column, 'D');
+        return doubles[column];
+    }
+
+    /** Direct access to an int column, with the same restrictions as doubleColumn(). */
+    public int[] intColumn(int column) {
+        checkKind(column, 'I');
+        return ints[column];
+    }
+
+    /** Direct access to a string column that is not dictionary encoded, with the same restrictions as doubleColumn(). */
+    public String[] textColumn(int column) {
+        checkKind(column, 'T');
+        return texts[column];
+    }
+
+    /** Direct access to the codes of a dictionary column, with the same restrictions as doubleColumn(). */
+    public int[] codeColumn(int column) {
+        checkKind(column, 'S');
+        return ints[column];
+    }
+
+    /** The distinct values of a dictionary column, indexed by code. */
+    public String[] dictionaryValues(int column) {
+        checkKind(column, 'S');
+        return dictionaries[column].values.toArray(new String[0]);
+    }
+
+    /** Copy the values of a double column for the given rows. */
+    public double[] gather(int column, int[] rows) {
+        double[] source = doubleColumn(column);
+        double[] values = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            values[i] = source[rows[i]];
+        }
+        return values;
+    }
+
+    //
+    // Materialisation
+    //
+
+    /** Create a Track object for a row. */
+    public Track getTrack(int row) {
+        checkRow(row);
+        return new Track(
+                getString(UNIQUE_KEY, row),
+                getString(RECORDING_NAME, row),
+                ints[TRACK_ID][row],
+                getString(TRACK_LABEL, row),
+                ints[NUMBER_OF_SPOTS][row],
+                ints[NUMBER_OF_GAPS][row],
+                ints[LONGEST_GAP][row],
+                doubles[TRACK_DURATION][row],
+                doubles[TRACK_X_LOCATION][row],
+                doubles[TRACK_Y_LOCATION][row],
+                doubles[TRACK_DISPLACEMENT][row],
+                doubles[TRACK_MAX_SPEED][row],
+                doubles[TRACK_MEDIAN_SPEED][row],
+                doubles[TRACK_MEAN_SPEED][row],
+                doubles[TRACK_MAX_SPEED_CALC][row],
+                doubles[TRACK_MEDIAN_SPEED_CALC][row],
+                doubles[TRACK_MEAN_SPEED_CALC][row],
+                doubles[DIFFUSION_COEFFICIENT][row],
+                doubles[DIFFUSION_COEFFICIENT_EXT][row],
+                doubles[TOTAL_DISTANCE][row],
+                doubles[CONFINEMENT_RATIO][row],
+                ints[SQUARE_NUMBER][row],
+                ints[LABEL_NUMBER][row]);
+    }
+
+    /**
+     * A read-only list view of the tracks in the given rows. Track objects are created when an element
+     * is requested and are not retained, so changes to them are not written back to the store.
+     */
+    public List<Track> tracksOf(int[] rows) {
+        return new TrackListView(this, rows);
+    }
+
+    /** Build a Tablesaw table with the All Tracks schema for the given rows (null for all rows). */
+    public Table toTable(int[] rows) {
+        if (rows == null) {
+            rows = allRows();
+        }
+        int nrOfRows = rows.length;
+        List<Column<?>> columns = new ArrayList<>(TRACK_COLS.length);
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            switch (KINDS.charAt(column)) {
+                case 'S': {
+                    String[] values = new String[nrOfRows];
+                    for (int i = 0; i < nrOfRows; i++) {
+                        values[i] = dictionaries[column].decode(ints[column][rows[i]]);
+                    }
+                    columns.add(StringColumn.create(TRACK_COLS[column], values));
+                    break;
+                }
+                case 'T': {
+                    String[] values = new String[nrOfRows];
+                    for (int i = 0; i < nrOfRows; i++) {
+                        values[i] = texts[column][rows[i]];
+                    }
+                    columns.add(StringColumn.create(TRACK_COLS[column], values));
+                    break;
+                }
+                case 'I': {
+                    int[] values = new int[nrOfRows];
+                    for (int i = 0; i < nrOfRows; i++) {
+                        values[i] = ints[column][rows[i]];
+                    }
+                    columns.add(IntColumn.create(TRACK_COLS[column], values));
+                    break;
+                }
+                default: {
+                    double[] values = new double[nrOfRows];
+                    for (int i = 0; i < nrOfRows; i++) {
+                        values[i] = doubles[column][rows[i]];
+                    }
+                    columns.add(DoubleColumn.create(TRACK_COLS[column], values));
+                    break;
+                }
+            }
+        }
+        return Table.create("tracks", columns.toArray(new Column<?>[0]));
+    }
+
+    /** Rough heap size of the store in bytes, used for cache accounting. */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (int column = 0; column < TRACK_COLS.length; column++) {
+            if (texts[column] != null) {
+                bytes += 8L * texts[column].length;
+                for (int row = 0; row < size; row++) {
+                    bytes += 40 + 2L * texts[column][row].length();     // String and its characters
+                }
+            } else if (ints[column] != null) {
+                bytes += 4L * ints[column].length;
+            } else {
+                bytes += 8L * doubles[column].length;
+            }
+            if (dictionaries[column] != null) {
+                bytes += dictionaries[column].estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside track store of size " + size);
+        }
+        return row;
+    }
+
+    private static void checkKind(int column, char kind) {
+        if (KINDS.charAt(column) != kind) {
+            throw new IllegalArgumentException("Column '" + TRACK_COLS[column] + "' is not of the requested type");
+        }
+    }
+
+    /** Distinct strings of a column, with their codes. */
+    private static final class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        long estimatedBytes() {
+            long bytes = 0;
+            for (String value : values) {
+                bytes += 40 + 2L * value.length() + 48;     // String plus map entry
+            }
+            return bytes;
+        }
+    }
+
+    private static final class TrackListView extends AbstractList<Track> implements RandomAccess {
+        private final TrackStore store;
+        private final int[] rows;
+
+        TrackListView(TrackStore store, int[] rows) {
+            this.store = store;
+            this.rows = rows;
+        }
+
+        public Track get(int index) {
+            return store.getTrack(rows[index]);
+        }
+
+        public int size() {
+            return rows.length;
+        }
+    }
+}
@@ -7,7 +7,8 @@ import java.util.logging.*;
 
 public class AppLogger {
 
-    private static Logger logger;
+    // Until init() is called, messages go to the plain 'Paint' logger (e.g. in tests and benchmarks)
+    private static Logger logger = Logger.getLogger("Paint");
 
     public static void init(String logFileName) {
         setupLogger(logFileName);
@@ -71,6 +71,8 @@ public class JsonConfig {
         generateSquares.put("Min Required Density Ratio", 2.0);
         generateSquares.put("Plot Max", 5);
         generateSquares.put("Neighbour Mode", "Free");
+        generateSquares.put("Number of Threads", 1);
+        generateSquares.put("Number of Workers", 1);
         generateSquares.put("Last Used Directory", "");
         configData.put("Generate Squares", generateSquares);
 
@@ -94,6 +96,7 @@ public class JsonConfig {
         trackMate.put("MIN_NR_SPOTS_IN_TRACK", 3);
         trackMate.put("LINKING_MAX_DISTANCE", 0.6);
         trackMate.put("MAX_NR_SPOTS_IN_IMAGE", 2000000);
+        trackMate.put("ADAPTIVE_THRESHOLD", false);
         trackMate.put("GAP_CLOSING_MAX_DISTANCE", 1.2);
         trackMate.put("TARGET_CHANNEL", 1);
         trackMate.put("SPLITTING_MAX_DISTANCE", 15.0);
@@ -0,0 +1,310 @@
+package trackMatePaint;
+
+import paint.io.ColumnarCache;
+import paint.loaders.ExperimentCache;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static paint.constants.PaintConstants.TRACKS_CSV;
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Merges the per-recording track files of an experiment into its 'All Tracks.csv'.
+ *
+ * Recordings that run concurrently each write their own '<recording>-tracks.csv', so they never share a writer.
+ * Once all recordings are done the rows are copied, recording by recording in the order of the Experiment Info
+ * file, without parsing more than the recording name. Rows of the existing 'All Tracks.csv' are kept for recordings
+ * that were not run again; rows of recordings that were run are replaced, or dropped when the recording failed.
+ * The merged file is written next to 'All Tracks.csv' and moved into place at the end, so a reader never sees a
+ * half-written file.
+ */
+
+public final class AllTracksMerger {
+
+    public static final String TRACKS_FILE_SUFFIX = "-tracks.csv";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String HEADER = String.join(",", TRACK_COLS);
+
+    private AllTracksMerger() {
+    }
+
+    /**
+     * Merge the track files of the recordings that were run into the 'All Tracks.csv' of the experiment and delete
+     * them. The recordings are written in the given order; recordings of the existing file that are not in it follow
+     * at the end. Returns the number of tracks per recording, for the recordings that had a track file.
+     */
+    public static Map<String, Long> merge(Path experimentPath, List<String> recordingOrder,
+                                          Collection<String> recordingsRun) throws IOException {
+        Path allTracksPath = experimentPath.resolve(TRACKS_CSV);
+        Path mergingPath = experimentPath.resolve(TRACKS_CSV + ".merging");
+        Set<String> replaced = new HashSet<>(recordingsRun);
+        Map<String, Long> tracksPerRecording = new LinkedHashMap<>();
+
+        // Recordings that were run but are missing from the order go after the ordered ones
+        List<String> order = new ArrayList<>(recordingOrder);
+        Set<String> ordered = new HashSet<>(recordingOrder);
+        for (String recordingName : recordingsRun) {
+            if (ordered.add(recordingName)) {
+                order.add(recordingName);
+            }
+        }
+
+        Map<String, LineRanges> keptRows = Files.exists(allTracksPath)
+                ? indexKeptRows(allTracksPath, replaced) : Collections.<String, LineRanges>emptyMap();
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(mergingPath), BUFFER_SIZE);
+             FileChannel allTracks = keptRows.isEmpty() ? null : FileChannel.open(allTracksPath, StandardOpenOption.READ)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            out.write((HEADER + '\n').getBytes(StandardCharsets.UTF_8));
+            Set<String> written = new HashSet<>();
+            for (String recordingName : order) {
+                if (!written.add(recordingName)) {
+                    continue;
+                }
+                if (replaced.contains(recordingName)) {
+                    Path tracksPath = tracksPathOf(experimentPath, recordingName);
+                    if (Files.exists(tracksPath)) {
+                        tracksPerRecording.put(recordingName, copyRows(tracksPath, out));
+                    }
+                } else {
+                    LineRanges ranges = keptRows.remove(recordingName);
+                    if (ranges != null) {
+                        copyRanges(allTracks, allTracksPath, ranges, out, buffer);
+                    }
+                }
+            }
+            for (LineRanges ranges : keptRows.values()) {
+                copyRanges(allTracks, allTracksPath, ranges, out, buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(mergingPath);
+            throw e;
+        }
+
+        try {
+            Files.move(mergingPath, allTracksPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(mergingPath, allTracksPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        ColumnarCache.invalidate(allTracksPath);
+        ExperimentCache.invalidateShared(experimentPath);
+
+        for (String recordingName : tracksPerRecording.keySet()) {
+            Files.deleteIfExists(tracksPathOf(experimentPath, recordingName));
+        }
+        return tracksPerRecording;
+    }
+
+    /** The track file of one recording, written while the recording is processed. */
+    public static Path tracksPathOf(Path experimentPath, String recordingName) {
+        return experimentPath.resolve(recordingName + TRACKS_FILE_SUFFIX);
+    }
+
+    /* Find the rows of the existing file whose recording is not replaced, per recording in the order of the file. */
+
+    private static Map<String, LineRanges> indexKeptRows(Path allTracksPath, Set<String> replaced) throws IOException {
+        RowIndex index = new RowIndex(allTracksPath, replaced);
+        byte[] chunk = new byte[BUFFER_SIZE];
+        long position = 0;
+        try (InputStream in = Files.newInputStream(allTracksPath)) {
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    position++;
+                    if (chunk[i] == '\n') {
+                        index.endLine(position);
+                    } else {
+                        index.append(chunk[i]);
+                    }
+                }
+            }
+        }
+        if (index.lineLength > 0) {
+            index.endLine(position);
+        }
+        if (!index.headerRead) {
+            throw new IOException("Unexpected header in " + allTracksPath + ": null");
+        }
+        return index.keptRows;
+    }
+
+    /* Copy the byte ranges of whole lines from the existing file, ending the last line if the file did not. */
+
+    private static void copyRanges(FileChannel source, Path sourcePath, LineRanges ranges, OutputStream out,
+                                   byte[] buffer) throws IOException {
+        for (int r = 0; r < ranges.size; r++) {
+            long position = ranges.starts[r];
+            long end = ranges.ends[r];
+            byte last = '\n';
+            while (position < end) {
+                ByteBuffer target = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+                int read = source.read(target, position);
+                if (read <= 0) {
+                    throw new IOException("Unexpected end of " + sourcePath);
+                }
+                out.write(buffer, 0, read);
+                last = buffer[read - 1];
+                position += read;
+            }
+            if (last != '\n') {
+                out.write('\n');
+            }
+        }
+    }
+
+    /* Copy all rows after the header and count them. */
+
+    private static long copyRows(Path tracksPath, OutputStream out) throws IOException {
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(tracksPath, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (!HEADER.equals(header)) {
+                throw new IOException("Unexpected header in " + tracksPath + ": " + header);
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    out.write('\n');
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /* Splits the existing file into lines and records where the kept rows of each recording are. */
+
+    private static final class RowIndex {
+        final Map<String, LineRanges> keptRows = new LinkedHashMap<>();
+        final Path path;
+        final Set<String> replaced;
+        byte[] line = new byte[512];
+        int lineLength = 0;
+        long lineStart = 0;
+        boolean headerRead = false;
+
+        RowIndex(Path path, Set<String> replaced) {
+            this.path = path;
+            this.replaced = replaced;
+        }
+
+        void append(byte b) {
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, 2 * line.length);
+            }
+            line[lineLength++] = b;
+        }
+
+        void endLine(long end) throws IOException {
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+            if (!headerRead) {
+                if (!HEADER.equals(text)) {
+                    throw new IOException("Unexpected header in " + path + ": " + text);
+                }
+                headerRead = true;
+            } else if (!text.isEmpty()) {
+                String recordingName = recordingNameOf(text);
+                if (!replaced.contains(recordingName)) {
+                    LineRanges ranges = keptRows.get(recordingName);
+                    if (ranges == null) {
+                        ranges = new LineRanges();
+                        keptRows.put(recordingName, ranges);
+                    }
+                    ranges.add(lineStart, end);
+                }
+            }
+            lineLength = 0;
+            lineStart = end;
+        }
+    }
+
+    /* The lines of one recording in the existing file, as byte ranges; adjacent lines share a range. */
+
+    private static final class LineRanges {
+        long[] starts = new long[4];
+        long[] ends = new long[4];
+        int size = 0;
+
+        void add(long start, long end) {
+            if (size > 0 && ends[size - 1] == start) {
+                ends[size - 1] = end;
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    /* The 'Recording Name' of a row: its second field, which may be quoted. */
+
+    private static String recordingNameOf(String line) {
+        int i = skipField(line, 0);
+        if (i >= line.length()) {
+            return "";
+        }
+        int start = i + 1;
+        if (start < line.length() && line.charAt(start) == '"') {
+            StringBuilder name = new StringBuilder();
+            for (int j = start + 1; j < line.length(); j++) {
+                char ch = line.charAt(j);
+                if (ch == '"') {
+                    if (j + 1 < line.length() && line.charAt(j + 1) == '"') {
+                        name.append('"');
+                        j++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    name.append(ch);
+                }
+            }
+            return name.toString();
+        }
+        int end = line.indexOf(',', start);
+        return end < 0 ? line.substring(start) : line.substring(start, end);
+    }
+
+    /* The position of the comma that ends the field starting at 'from', or the length of the line. */
+
+    private static int skipField(String line, int from) {
+        boolean quoted = false;
+        for (int i = from; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+            } else if (ch == ',' && !quoted) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+}
@@ -0,0 +1,593 @@
+package trackMatePaint;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackMate;
+import fiji.plugin.trackmate.detection.LogDetectorFactory;
+import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.tracking.jaqaman.SparseLAPTrackerFactory;
+import ij.ImagePlus;
+import loci.formats.FormatException;
+import loci.plugins.in.ImagePlusReader;
+import loci.plugins.in.ImportProcess;
+import loci.plugins.in.ImporterOptions;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs TrackMate on one image without any display, releasing everything it allocated before it returns.
+ *
+ * Repeated runs in one JVM slow down when images stay reachable: a shown ImagePlus is registered with the
+ * WindowManager, a HyperStackDisplayer keeps its image and model, the IJ logger keeps growing the Log window and a
+ * Bio-Formats reader that is not closed keeps its file and buffers. This runner never shows the image, logs to
+ * TrackMate's void logger, closes the Bio-Formats reader itself and, after the caller has consumed the model,
+ * clears the model and flushes the image stack. A runner holds no state between runs and can be reused.
+ *
+ * The image is either read into memory as a whole or, in VIRTUAL mode, opened as a Bio-Formats virtual stack behind
+ * a PlaneCacheStack, so that detection reads the recording frame by frame and only a bounded number of planes is
+ * in memory at any time. The mode and the size of the plane cache can be set with the system properties
+ * paint.trackmate.virtualStack and paint.trackmate.planeCacheMB.
+ *
+ * Every result reports the peak heap use of the run, the sum of the peaks of the heap memory pools since the
+ * start of the run. It is exact when one recording runs per JVM, as in the worker JVMs; recordings that run
+ * concurrently in one JVM each see the peak of all of them.
+ *
+ * Detection runs in chunks of frames, so that the number of spots per frame is known while it runs. A run is
+ * aborted as soon as the spots found so far, or the total projected from them, pass MAX_NR_SPOTS_IN_IMAGE; a bad
+ * threshold then costs a tenth of the detection rather than all of it. With ADAPTIVE_THRESHOLD the detection is
+ * first run on a sample of frames, and the threshold is raised when needed to keep the projected number of spots
+ * within the budget. The threshold that was used is part of the result.
+ *
+ * runCases detects an image once and tracks it for several cases that differ only in tracker settings, as a
+ * parameter sweep does. Detection is by far the expensive half, so a sweep over the tracker costs little more
+ * than one run.
+ *
+ * The parameters use the keys of the 'TrackMate' section of the Paint configuration.
+ */
+
+public class HeadlessTrackMateRunner {
+
+    /** Receives the model of a successful run, before it is released. */
+    public interface ModelConsumer {
+        void accept(Model model, Settings settings) throws IOException;
+    }
+
+    /** Receives the model of every successful case of runCases, before it is released. */
+    public interface CaseConsumer {
+        void accept(int caseIndex, Model model, Settings settings) throws IOException;
+    }
+
+    /** Receives the progress of the detection after every chunk of frames. */
+    public interface DetectionListener {
+        void framesDetected(int framesDone, int totalFrames, long spotsSoFar, long projectedTotal);
+    }
+
+    /** How the image is brought into memory. */
+    public enum Loading {
+        IN_MEMORY,
+        VIRTUAL;
+
+        public static Loading fromSystemProperties() {
+            return Boolean.getBoolean("paint.trackmate.virtualStack") ? VIRTUAL : IN_MEMORY;
+        }
+    }
+
+    private static final long MB = 1024L * 1024L;
+
+    // Detection runs in about this many chunks, and the adaptive threshold is chosen on this many frames
+    private static final int DETECTION_CHUNKS = 20;
+    private static final int SAMPLE_FRAMES = 5;
+
+    // The start of the error of a detection stopped by the spot budget
+    private static final String TOO_MANY_SPOTS = "Too many spots detected";
+
+    // The adaptive threshold aims below the limit, as the sample is only an estimate
+    private static final double ADAPTIVE_TARGET_FRACTION = 0.8;
+
+    /** The settings of the sparse LAP tracker, which are the settings that cases of runCases may vary. */
+    public static final String[] TRACKER_KEYS = {
+            "LINKING_MAX_DISTANCE", "ALTERNATIVE_LINKING_COST_FACTOR", "ALLOW_GAP_CLOSING", "GAP_CLOSING_MAX_DISTANCE",
+            "MAX_FRAME_GAP", "ALLOW_TRACK_SPLITTING", "SPLITTING_MAX_DISTANCE", "ALLOW_TRACK_MERGING", "MERGING_MAX_DISTANCE"};
+
+    /** The size of the plane cache of a virtual stack, from paint.trackmate.planeCacheMB (256 MB by default). */
+    public static final long DEFAULT_PLANE_CACHE_BYTES = Long.getLong("paint.trackmate.planeCacheMB", 256L) * MB;
+
+    /** What happened during a run. A run that stopped because of the spot budget is over the spot budget. */
+    public static final class Result {
+        public final boolean succeeded;
+        public final boolean overSpotBudget;
+        public final String error;
+        public final int numberOfSpots;
+        public final int numberOfTracks;
+        public final Duration readTime;
+        public final Duration trackMateTime;
+        public final long peakHeapBytes;
+        public final double threshold;
+        public final int[] spotsPerFrame;
+
+        Result(boolean succeeded, String error, int numberOfSpots, int numberOfTracks, Duration readTime, Duration trackMateTime,
+               long peakHeapBytes, double threshold, int[] spotsPerFrame) {
+            this(succeeded, false, error, numberOfSpots, numberOfTracks, readTime, trackMateTime, peakHeapBytes, threshold,
+                 spotsPerFrame);
+        }
+
+        Result(boolean succeeded, boolean overSpotBudget, String error, int numberOfSpots, int numberOfTracks,
+               Duration readTime, Duration trackMateTime, long peakHeapBytes, double threshold, int[] spotsPerFrame) {
+            this.succeeded = succeeded;
+            this.overSpotBudget = overSpotBudget;
+            this.error = error;
+            this.numberOfSpots = numberOfSpots;
+            this.numberOfTracks = numberOfTracks;
+            this.readTime = readTime;
+            this.trackMateTime = trackMateTime;
+            this.peakHeapBytes = peakHeapBytes;
+            this.threshold = threshold;
+            this.spotsPerFrame = spotsPerFrame;
+        }
+    }
+
+    private final Map<String, Object> parameters;
+    private final int numberOfThreads;
+    private final Loading loading;
+    private final long planeCacheBytes;
+    private DetectionListener detectionListener;
+
+    /** A runner that loads images as the system properties say. */
+    public HeadlessTrackMateRunner(Map<String, Object> parameters, int numberOfThreads) {
+        this(parameters, numberOfThreads, Loading.fromSystemProperties(), DEFAULT_PLANE_CACHE_BYTES);
+    }
+
+    public HeadlessTrackMateRunner(Map<String, Object> parameters, int numberOfThreads, Loading loading, long planeCacheBytes) {
+        if (planeCacheBytes < 1) {
+            throw new IllegalArgumentException("The plane cache size must be positive: " + planeCacheBytes);
+        }
+        this.parameters = new HashMap<>(defaultParameters());
+        this.parameters.putAll(parameters);
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.loading = loading;
+        this.planeCacheBytes = planeCacheBytes;
+    }
+
+    /** The defaults of the 'TrackMate' section of the configuration. */
+    public static Map<String, Object> defaultParameters() {
+        Map<String, Object> defaults = new HashMap<>();
+        defaults.put("TARGET_CHANNEL", 1);
+        defaults.put("RADIUS", 0.5);
+        defaults.put("DO_SUBPIXEL_LOCALIZATION", false);
+        defaults.put("DO_MEDIAN_FILTERING", false);
+        defaults.put("LINKING_MAX_DISTANCE", 0.6);
+        defaults.put("ALTERNATIVE_LINKING_COST_FACTOR", 1.05);
+        defaults.put("ALLOW_GAP_CLOSING", true);
+        defaults.put("GAP_CLOSING_MAX_DISTANCE", 1.2);
+        defaults.put("MAX_FRAME_GAP", 3);
+        defaults.put("ALLOW_TRACK_SPLITTING", false);
+        defaults.put("SPLITTING_MAX_DISTANCE", 15.0);
+        defaults.put("ALLOW_TRACK_MERGING", false);
+        defaults.put("MERGING_MAX_DISTANCE", 15.0);
+        defaults.put("MIN_NR_SPOTS_IN_TRACK", 3);
+        defaults.put("MAX_NR_SPOTS_IN_IMAGE", 2000000);
+        defaults.put("ADAPTIVE_THRESHOLD", false);
+        return defaults;
+    }
+
+    /**
+     * Detect and track the spots of an image with the given detection threshold.
+     * The consumer, if any, is called with the model of a successful run.
+     */
+    public Result run(Path imagePath, double threshold, ModelConsumer consumer) throws IOException, FormatException {
+        List<Map<String, Object>> oneCase = Collections.singletonList(Collections.<String, Object>emptyMap());
+        return runCases(imagePath, threshold, oneCase, 1,
+                        consumer == null ? null : (caseIndex, model, settings) -> consumer.accept(model, settings)).get(0);
+    }
+
+    /**
+     * Detect the spots of an image once and track them once for every case. A case holds tracker settings that
+     * replace those of the runner; up to 'parallelCases' cases are tracked at the same time, each in its own model
+     * that shares the detected spots. The consumer, if any, is called with the model of every successful case.
+     * The results are in the order of the cases; when detection fails, every case fails.
+     */
+    public List<Result> runCases(Path imagePath, double threshold, List<Map<String, Object>> trackerCases, int parallelCases,
+                                 CaseConsumer consumer) throws IOException, FormatException {
+        for (Map<String, Object> trackerCase : trackerCases) {
+            for (String key : trackerCase.keySet()) {
+                if (!Arrays.asList(TRACKER_KEYS).contains(key)) {
+                    throw new IllegalArgumentException("Not a tracker setting: " + key);
+                }
+            }
+        }
+        resetPeakHeap();
+        Instant start = Instant.now();
+        OpenImage image = openImage(imagePath);
+        ImagePlus imp = image.imp;
+        Duration readTime = Duration.between(start, Instant.now());
+
+        Model model = new Model();
+        model.setLogger(Logger.VOID_LOGGER);
+        Settings settings = null;
+        int numberOfCases = trackerCases.size();
+        try {
+            settings = createSettings(imp, threshold);
+            TrackMate trackmate = new TrackMate(model, settings);
+            trackmate.setNumThreads(numberOfThreads);
+
+            Instant trackMateStart = Instant.now();
+            if (!trackmate.checkInput()) {
+                return failedCases(numberOfCases, false, trackmate.getErrorMessage(), model, readTime, trackMateStart, threshold,
+                                   null);
+            }
+
+            long maxNumberOfSpots = ((Number) parameters.get("MAX_NR_SPOTS_IN_IMAGE")).longValue();
+            double usedThreshold = threshold;
+            if (Boolean.TRUE.equals(parameters.get("ADAPTIVE_THRESHOLD"))) {
+                usedThreshold = adaptThreshold(trackmate, model, settings, threshold, maxNumberOfSpots);
+                if (Double.isNaN(usedThreshold)) {
+                    return failedCases(numberOfCases, false, trackmate.getErrorMessage(), model, readTime, trackMateStart, threshold,
+                                       null);
+                }
+            }
+
+            // Stop the detection early when it finds, or is projected to find, an unreasonable number of spots
+            int[] spotsPerFrame = new int[settings.tend - settings.tstart + 1];
+            String detectionError = detectInChunks(trackmate, model, settings, spotsPerFrame, maxNumberOfSpots);
+            if (detectionError != null) {
+                return failedCases(numberOfCases, detectionError.startsWith(TOO_MANY_SPOTS), detectionError, model, readTime,
+                                   trackMateStart, usedThreshold, spotsPerFrame);
+            }
+
+            // The spot steps of TrackMate.process(), shared by all cases
+            if (!trackmate.execInitialSpotFiltering()
+                    || !trackmate.computeSpotFeatures(true)
+                    || !trackmate.execSpotFiltering(true)) {
+                return failedCases(numberOfCases, false, trackmate.getErrorMessage(), model, readTime, trackMateStart, usedThreshold,
+                                   spotsPerFrame);
+            }
+            Duration detectionTime = Duration.between(trackMateStart, Instant.now());
+            Detection detection = new Detection(imp, usedThreshold, spotsPerFrame, readTime, detectionTime);
+
+            // A single case is tracked in the detection model itself
+            if (numberOfCases == 1) {
+                return Collections.singletonList(
+                        track(trackmate, model, settings, trackerCases.get(0), 0, detection, consumer));
+            }
+            return trackCases(model, trackerCases, parallelCases, detection, consumer);
+        } finally {
+            release(model, settings, image);
+        }
+    }
+
+    public Loading getLoading() {
+        return loading;
+    }
+
+    public void setDetectionListener(DetectionListener detectionListener) {
+        this.detectionListener = detectionListener;
+    }
+
+    /* What the cases of a run share: the image and the outcome of its detection. */
+
+    private static final class Detection {
+        final ImagePlus imp;
+        final double threshold;
+        final int[] spotsPerFrame;
+        final Duration readTime;
+        final Duration detectionTime;
+
+        Detection(ImagePlus imp, double threshold, int[] spotsPerFrame, Duration readTime, Duration detectionTime) {
+            this.imp = imp;
+            this.threshold = threshold;
+            this.spotsPerFrame = spotsPerFrame;
+            this.readTime = readTime;
+            this.detectionTime = detectionTime;
+        }
+    }
+
+    /* Track the spots of the model with the tracker settings of one case. */
+
+    private Result track(TrackMate trackmate, Model model, Settings settings, Map<String, Object> trackerCase, int caseIndex,
+                         Detection detection, CaseConsumer consumer) throws IOException {
+        Instant trackingStart = Instant.now();
+        settings.trackerSettings.putAll(trackerCase);
+        if (!trackmate.execTracking()
+                || !trackmate.computeEdgeFeatures(true)
+                || !trackmate.computeTrackFeatures(true)
+                || !trackmate.execTrackFiltering(true)) {
+            return new Result(false, trackmate.getErrorMessage(), model.getSpots().getNSpots(true), 0, detection.readTime,
+                              detection.detectionTime.plus(Duration.between(trackingStart, Instant.now())),
+                              peakHeap(), detection.threshold, detection.spotsPerFrame);
+        }
+        Duration trackMateTime = detection.detectionTime.plus(Duration.between(trackingStart, Instant.now()));
+
+        if (consumer != null) {
+            consumer.accept(caseIndex, model, settings);
+        }
+        return new Result(true, null, model.getSpots().getNSpots(true), model.getTrackModel().nTracks(true),
+                          detection.readTime, trackMateTime, peakHeap(), detection.threshold, detection.spotsPerFrame);
+    }
+
+    /*
+     * Track the cases in parallel. Every case gets its own settings, with fresh analyzers, and its own model on the
+     * shared spots; tracking and the edge and track features only read the spots.
+     */
+
+    private List<Result> trackCases(Model detectionModel, List<Map<String, Object>> trackerCases, int parallelCases,
+                                    Detection detection, CaseConsumer consumer) throws IOException {
+        int parallel = Math.max(1, Math.min(parallelCases, trackerCases.size()));
+        int threadsPerCase = Math.max(1, numberOfThreads / parallel);
+        ExecutorService executor = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < trackerCases.size(); i++) {
+                int caseIndex = i;
+                futures.add(executor.submit(() -> {
+                    Model caseModel = new Model();
+                    caseModel.setLogger(Logger.VOID_LOGGER);
+                    caseModel.setSpots(detectionModel.getSpots(), false);
+                    Settings caseSettings = createSettings(detection.imp, detection.threshold);
+                    TrackMate caseTrackMate = new TrackMate(caseModel, caseSettings);
+                    caseTrackMate.setNumThreads(threadsPerCase);
+                    try {
+                        return track(caseTrackMate, caseModel, caseSettings, trackerCases.get(caseIndex), caseIndex, detection, consumer);
+                    } finally {
+                        caseModel.clearTracks(true);
+                        caseSettings.imp = null;
+                    }
+                }));
+            }
+            List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Tracking a case failed: " + e.getCause(), e.getCause());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while tracking the cases", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Detect the frames in chunks and collect their spots. Returns an error when the detection fails or is
+     * aborted, otherwise leaves all spots in the model.
+     */
+
+    private String detectInChunks(TrackMate trackmate, Model model, Settings settings, int[] spotsPerFrame, long maxNumberOfSpots) {
+        int firstFrame = settings.tstart;
+        int lastFrame = settings.tend;
+        int totalFrames = lastFrame - firstFrame + 1;
+        int chunkSize = Math.max(numberOfThreads, (totalFrames + DETECTION_CHUNKS - 1) / DETECTION_CHUNKS);
+
+        SpotCollection detected = new SpotCollection();
+        long spotsSoFar = 0;
+        try {
+            for (int from = firstFrame; from <= lastFrame; from += chunkSize) {
+                int to = Math.min(lastFrame, from + chunkSize - 1);
+                settings.tstart = from;
+                settings.tend = to;
+                if (!trackmate.execDetection()) {
+                    return trackmate.getErrorMessage();
+                }
+                SpotCollection spots = model.getSpots();
+                for (int frame = from; frame <= to; frame++) {
+                    List<Spot> frameSpots = new ArrayList<>();
+                    if (spots.keySet().contains(frame)) {
+                        for (Spot spot : spots.iterable(frame, false)) {
+                            frameSpots.add(spot);
+                        }
+                    }
+                    detected.put(frame, frameSpots);
+                    spotsPerFrame[frame - firstFrame] = frameSpots.size();
+                    spotsSoFar += frameSpots.size();
+                }
+
+                int framesDone = to - firstFrame + 1;
+                long projected = SpotBudget.projectTotal(spotsSoFar, framesDone, totalFrames);
+                if (detectionListener != null) {
+                    detectionListener.framesDetected(framesDone, totalFrames, spotsSoFar, projected);
+                }
+                if (SpotBudget.shouldAbort(spotsSoFar, framesDone, totalFrames, maxNumberOfSpots)) {
+                    return String.format(TOO_MANY_SPOTS + ": %d in %d of %d frames, %d projected, the maximum is %d",
+                                         spotsSoFar, framesDone, totalFrames, projected, maxNumberOfSpots);
+                }
+            }
+        } finally {
+            settings.tstart = firstFrame;
+            settings.tend = lastFrame;
+        }
+        model.setSpots(detected, false);
+        return null;
+    }
+
+    /*
+     * Detect a sample of frames at the given threshold and raise the threshold when the projected number of spots
+     * is over the target. Returns the threshold to use, or NaN when the detection fails.
+     */
+
+    private double adaptThreshold(TrackMate trackmate, Model model, Settings settings, double threshold, long maxNumberOfSpots) {
+        int firstFrame = settings.tstart;
+        int lastFrame = settings.tend;
+        int totalFrames = lastFrame - firstFrame + 1;
+        int sampleFrames = Math.min(SAMPLE_FRAMES, totalFrames);
+
+        List<Double> qualities = new ArrayList<>();
+        try {
+            for (int i = 0; i < sampleFrames; i++) {
+                int frame = firstFrame + (int) ((long) i * (totalFrames - 1) / Math.max(1, sampleFrames - 1));
+                settings.tstart = frame;
+                settings.tend = frame;
+                if (!trackmate.execDetection()) {
+                    return Double.NaN;
+                }
+                for (Spot spot : model.getSpots().iterable(false)) {
+                    qualities.add(spot.getFeature(Spot.QUALITY));
+                }
+            }
+        } finally {
+            settings.tstart = firstFrame;
+            settings.tend = lastFrame;
+        }
+
+        double[] sample = new double[qualities.size()];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = qualities.get(i);
+        }
+        long target = (long) (maxNumberOfSpots * ADAPTIVE_TARGET_FRACTION);
+        double chosen = SpotBudget.chooseThreshold(sample, sampleFrames, totalFrames, target, threshold);
+        settings.detectorSettings.put("THRESHOLD", chosen);
+        return chosen;
+    }
+
+    /* An opened image and, for a virtual stack, the import process whose reader must stay open while it is used. */
+
+    private static final class OpenImage {
+        final ImagePlus imp;
+        final ImportProcess process;
+
+        OpenImage(ImagePlus imp, ImportProcess process) {
+            this.imp = imp;
+            this.process = process;
+        }
+    }
+
+    private OpenImage openImage(Path imagePath) throws IOException, FormatException {
+        ImporterOptions options = new ImporterOptions();
+        options.setId(imagePath.toString());
+        options.setQuiet(true);
+        options.setWindowless(true);
+        options.setVirtual(loading == Loading.VIRTUAL);
+        options.setSplitChannels(false);
+        options.setSplitTimepoints(false);
+        options.setSplitFocalPlanes(false);
+
+        // Open through the import process rather than BF.openImagePlus, so that the reader is closed on every path
+        ImportProcess process = new ImportProcess(options);
+        OpenImage image = null;
+        try {
+            if (!process.execute()) {
+                throw new IOException("Bio-Formats import was cancelled for " + imagePath);
+            }
+            ImagePlus[] imps = new ImagePlusReader(process).openImagePlus();
+            if (imps.length == 0) {
+                throw new IOException("No image found in " + imagePath);
+            }
+            for (int i = 1; i < imps.length; i++) {
+                imps[i].flush();
+            }
+            if (loading == Loading.IN_MEMORY) {
+                image = new OpenImage(imps[0], null);
+            } else {
+                // The planes are read when TrackMate needs them, so the reader stays open until the run is released
+                imps[0].setStack(new PlaneCacheStack(imps[0].getStack(), planeCacheBytes));
+                image = new OpenImage(imps[0], process);
+            }
+            return image;
+        } finally {
+            if (image == null || image.process == null) {
+                closeReader(process);
+            }
+        }
+    }
+
+    private static void closeReader(ImportProcess process) throws IOException {
+        if (process.getReader() != null) {
+            process.getReader().close();
+        }
+    }
+
+    private Settings createSettings(ImagePlus imp, double threshold) {
+        Settings settings = new Settings(imp);
+
+        settings.detectorFactory = new LogDetectorFactory();
+        Map<String, Object> detectorSettings = new HashMap<>();
+        detectorSettings.put("TARGET_CHANNEL", parameters.get("TARGET_CHANNEL"));
+        detectorSettings.put("RADIUS", parameters.get("RADIUS"));
+        detectorSettings.put("DO_SUBPIXEL_LOCALIZATION", parameters.get("DO_SUBPIXEL_LOCALIZATION"));
+        detectorSettings.put("THRESHOLD", threshold);
+        detectorSettings.put("DO_MEDIAN_FILTERING", parameters.get("DO_MEDIAN_FILTERING"));
+        settings.detectorSettings = detectorSettings;
+        settings.addSpotFilter(new FeatureFilter(Spot.QUALITY, 0.0, true));
+
+        settings.trackerFactory = new SparseLAPTrackerFactory();
+        Map<String, Object> trackerSettings = settings.trackerFactory.getDefaultSettings();
+        for (String key : TRACKER_KEYS) {
+            trackerSettings.put(key, parameters.get(key));
+        }
+        settings.trackerSettings = trackerSettings;
+
+        settings.addAllAnalyzers();
+        double minSpotsInTrack = ((Number) parameters.get("MIN_NR_SPOTS_IN_TRACK")).doubleValue();
+        settings.addTrackFilter(new FeatureFilter("NUMBER_SPOTS", minSpotsInTrack, true));
+        return settings;
+    }
+
+    private static List<Result> failedCases(int numberOfCases, boolean overSpotBudget, String error, Model model, Duration readTime,
+                                            Instant trackMateStart, double threshold, int[] spotsPerFrame) {
+        Result failed = new Result(false, overSpotBudget, error, model.getSpots().getNSpots(false), 0, readTime,
+                                   Duration.between(trackMateStart, Instant.now()), peakHeap(), threshold, spotsPerFrame);
+        return Collections.nCopies(numberOfCases, failed);
+    }
+
+    /* The peak of every heap pool is reset at the start of a run; their sum bounds the heap the run needed. */
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /* Drop everything the run allocated; nothing of the image or the model may stay reachable. */
+
+    private static void release(Model model, Settings settings, OpenImage image) throws IOException {
+        model.clearTracks(true);
+        model.clearSpots(true);
+        if (settings != null) {
+            settings.imp = null;
+        }
+        if (image.imp.getStack() instanceof PlaneCacheStack) {
+            ((PlaneCacheStack) image.imp.getStack()).clear();
+        }
+        image.imp.flush();
+        image.imp.close();
+        if (image.process != null) {
+            closeReader(image.process);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package trackMatePaint;
+
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A virtual stack that keeps a bounded number of recently used planes of another virtual stack in memory.
+ *
+ * Bio-Formats virtual stacks read a plane from the file every time it is asked for. TrackMate asks for every frame
+ * during detection and again when it computes the spot features, from several threads at once. This stack reads
+ * each plane under a lock, because a Bio-Formats reader may only be used by one thread at a time, and keeps the
+ * planes in a least recently used cache that is bounded in bytes. Callers get a copy of a cached plane, so they
+ * may change it freely.
+ */
+
+public final class PlaneCacheStack extends VirtualStack {
+
+    private final ImageStack source;
+    private final int maxPlanes;
+    private final Map<Integer, ImageProcessor> planes;
+    private long reads = 0;
+    private long hits = 0;
+
+    public PlaneCacheStack(ImageStack source, long maxBytes) {
+        super(source.getWidth(), source.getHeight(), null, null);
+        this.source = source;
+        int bytesPerPixel = source.getBitDepth() == 24 ? 4 : Math.max(1, source.getBitDepth() / 8);
+        long planeBytes = Math.max(1L, (long) source.getWidth() * source.getHeight() * bytesPerPixel);
+        this.maxPlanes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / planeBytes));
+        this.planes = new LinkedHashMap<Integer, ImageProcessor>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ImageProcessor> eldest) {
+                return size() > maxPlanes;
+            }
+        };
+    }
+
+    @Override
+    public ImageProcessor getProcessor(int n) {
+        ImageProcessor plane;
+        synchronized (this) {
+            plane = planes.get(n);
+            if (plane == null) {
+                plane = source.getProcessor(n);
+                planes.put(n, plane);
+                reads++;
+            } else {
+                hits++;
+            }
+        }
+        return plane.duplicate();
+    }
+
+    @Override
+    public Object getPixels(int n) {
+        return getProcessor(n).getPixels();
+    }
+
+    @Override
+    public int getSize() {
+        return source.getSize();
+    }
+
+    @Override
+    public String getSliceLabel(int n) {
+        return source.getSliceLabel(n);
+    }
+
+    @Override
+    public int getBitDepth() {
+        return source.getBitDepth();
+    }
+
+    /** The number of planes read from the source, and the number of requests served from the cache. */
+    public synchronized long getReads() {
+        return reads;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public int getMaxPlanes() {
+        return maxPlanes;
+    }
+
+    /** Drop all cached planes. */
+    synchronized void clear() {
+        planes.clear();
+    }
+}
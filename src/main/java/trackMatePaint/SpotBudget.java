@@ -0,0 +1,62 @@
+package trackMatePaint;
+
+import java.util.Arrays;
+
+/**
+ * The arithmetic of the spot-count guard: projecting the number of spots of a recording from the frames detected
+ * so far, deciding when to abort, and choosing a detection threshold that keeps the count within the budget.
+ */
+
+public final class SpotBudget {
+
+    /** The part of the frames that must be detected before a projection may abort the detection. */
+    public static final double MIN_FRACTION_FOR_PROJECTION = 0.1;
+
+    private SpotBudget() {
+    }
+
+    /** The number of spots in all frames, extrapolated from the spots in the frames detected so far. */
+    public static long projectTotal(long spotsSoFar, int framesDone, int totalFrames) {
+        if (framesDone <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil((double) spotsSoFar * totalFrames / framesDone);
+    }
+
+    /**
+     * True when the detection should stop: the limit has been passed, or enough frames have been detected for the
+     * projected total to be trusted and it passes the limit.
+     */
+    public static boolean shouldAbort(long spotsSoFar, int framesDone, int totalFrames, long limit) {
+        if (spotsSoFar > limit) {
+            return true;
+        }
+        int minFrames = (int) Math.max(1, Math.ceil(totalFrames * MIN_FRACTION_FOR_PROJECTION));
+        return framesDone >= minFrames && projectTotal(spotsSoFar, framesDone, totalFrames) > limit;
+    }
+
+    /**
+     * The lowest threshold, not below the current one, at which the recording is projected to have at most
+     * 'targetSpots' spots, given the qualities of the spots detected in a sample of frames at the current
+     * threshold. A LoG spot survives a higher threshold exactly when its quality is above it, so the sample
+     * does not have to be detected again.
+     */
+    public static double chooseThreshold(double[] sampleQualities, int sampleFrames, int totalFrames, long targetSpots,
+                                         double currentThreshold) {
+        if (sampleFrames <= 0 || totalFrames <= 0) {
+            throw new IllegalArgumentException("The sample and the recording must have frames");
+        }
+        long allowed = (long) Math.floor((double) targetSpots * sampleFrames / totalFrames);
+        if (sampleQualities.length <= allowed) {
+            return currentThreshold;
+        }
+        double[] sorted = sampleQualities.clone();
+        Arrays.sort(sorted);
+
+        // Keep the 'allowed' best spots: the threshold goes just above the best spot that is dropped, rounded up
+        // to one decimal as thresholds are written in the Experiment Info file
+        double firstDropped = sorted[sorted.length - 1 - (int) allowed];
+        double threshold = Math.ceil(Math.nextUp(firstDropped) * 10) / 10;
+        return Math.max(currentThreshold, threshold);
+    }
+}
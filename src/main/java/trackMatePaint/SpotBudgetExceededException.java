@@ -0,0 +1,15 @@
+package trackMatePaint;
+
+import java.io.IOException;
+
+/**
+ * Thrown when TrackMate stops on a recording because it finds, or is projected to find, more spots than the spot
+ * budget allows. Running the recording again gives the same result, so the scheduler does not retry it.
+ */
+
+public class SpotBudgetExceededException extends IOException {
+
+    public SpotBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,178 @@
+package trackMatePaint;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+/**
+ * Writes the tracks of a TrackMate model straight to a CSV file in the 'All Tracks' format (TRACK_COLS).
+ *
+ * Every track is rendered from the feature model into one line and written through a buffered writer; no Track
+ * objects or tables are built, so the export needs no memory beyond the model itself. Values are rendered as the
+ * Tablesaw CSV writer renders them, so the file reads back like one written by TrackTableIO.
+ *
+ * The lines go to '<file>.part' first. Only commit() moves that file into place, so a run that fails or is killed
+ * never leaves a partial file under the real name. Square Number and Label Number are written as 0; Generate
+ * Squares assigns them.
+ */
+
+public final class TrackCsvExporter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String PART_EXTENSION = ".part";
+    private static final String LINE_END = System.lineSeparator();     // The default of Tablesaw's CsvWriteOptions
+
+    private final Path filePath;
+    private final Path partPath;
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(512);
+    private long tracksWritten = 0;
+    private long spotsWritten = 0;
+    private boolean closed = false;
+
+    public TrackCsvExporter(Path filePath) throws IOException {
+        this.filePath = filePath;
+        this.partPath = filePath.resolveSibling(filePath.getFileName() + PART_EXTENSION);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(partPath), StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write(String.join(",", TRACK_COLS));
+        writer.write(LINE_END);
+    }
+
+    /** Write the filtered tracks of the model, in track id order. */
+    public void export(Model model, String recordingName) throws IOException {
+        FeatureModel features = model.getFeatureModel();
+        TrackModel trackModel = model.getTrackModel();
+        List<Integer> trackIds = new ArrayList<>(trackModel.trackIDs(true));
+        trackIds.sort(null);
+
+        for (Integer trackId : trackIds) {
+            appendField(recordingName + "-" + trackId);
+            appendField(recordingName);
+            appendInt(trackId);
+            appendField(trackModel.name(trackId));
+            appendInt(feature(features, trackId, "NUMBER_SPOTS"));
+            appendInt(feature(features, trackId, "NUMBER_GAPS"));
+            appendInt(feature(features, trackId, "LONGEST_GAP"));
+            appendDouble(feature(features, trackId, "TRACK_DURATION"));
+            appendDouble(feature(features, trackId, "TRACK_X_LOCATION"));
+            appendDouble(feature(features, trackId, "TRACK_Y_LOCATION"));
+            appendDouble(feature(features, trackId, "TRACK_DISPLACEMENT"));
+            appendDouble(feature(features, trackId, "TRACK_MAX_SPEED"));
+            appendDouble(feature(features, trackId, "TRACK_MEDIAN_SPEED"));
+            appendDouble(feature(features, trackId, "TRACK_MEAN_SPEED"));
+            for (double value : calculatedColumns(trackModel, trackId)) {
+                appendDouble(value);
+            }
+            appendDouble(feature(features, trackId, "TOTAL_DISTANCE_TRAVELED"));
+            appendDouble(feature(features, trackId, "CONFINEMENT_RATIO"));
+            line.append("0,0").append(LINE_END);                    // Square Number and Label Number
+            writer.append(line);
+            line.setLength(0);
+            tracksWritten++;
+        }
+    }
+
+    /** Finish the file and move it into place, replacing an existing file. */
+    public void commit() throws IOException {
+        if (closed) {
+            throw new IOException("The export to " + filePath + " is already closed");
+        }
+        closed = true;
+        writer.close();
+        try {
+            Files.move(partPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public long getTracksWritten() {
+        return tracksWritten;
+    }
+
+    public long getSpotsWritten() {
+        return spotsWritten;
+    }
+
+    /** Close the export; without a commit the partial file is removed. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.close();
+        } finally {
+            Files.deleteIfExists(partPath);
+        }
+    }
+
+    /* The speeds and diffusion coefficients, from the spots of the track in time order. */
+
+    private double[] calculatedColumns(TrackModel trackModel, Integer trackId) {
+        List<Spot> spots = new ArrayList<>(trackModel.trackSpots(trackId));
+        spots.sort(Comparator.comparingDouble(spot -> spot.getFeature(Spot.POSITION_T)));
+        int n = spots.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] t = new double[n];
+        for (int i = 0; i < n; i++) {
+            Spot spot = spots.get(i);
+            x[i] = spot.getDoublePosition(0);
+            y[i] = spot.getDoublePosition(1);
+            t[i] = spot.getFeature(Spot.POSITION_T);
+        }
+        spotsWritten += n;
+        return TrackMateRecordingEngine.calculatedColumns(x, y, t);
+    }
+
+    private static double feature(FeatureModel features, Integer trackId, String key) {
+        Double value = features.getTrackFeature(trackId, key);
+        return value == null ? Double.NaN : value;
+    }
+
+    private void appendInt(double value) {
+        if (!Double.isNaN(value)) {
+            line.append((int) value);
+        }
+        line.append(',');
+    }
+
+    private void appendDouble(double value) {
+        if (!Double.isNaN(value)) {
+            line.append(value);
+        }
+        line.append(',');
+    }
+
+    private void appendField(String value) {
+        if (value != null && !value.isEmpty()) {
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (quote) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        line.append(',');
+    }
+}
@@ -11,6 +11,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.time.Duration;
 import java.time.Instant;
@@ -134,9 +138,13 @@ public class TrackMateBatch {
             //log.info("");
         }
 
-        // Then do the actual processing
+        // Then do the actual processing: the experiments run side by side and share one scheduler,
+        // which limits how many recordings run at the same time
         int rowIndex = 1;
         Instant start = Instant.now();
+        TrackMateScheduler scheduler = TrackMateScheduler.fromSystemProperties();
+        ExecutorService experimentExecutor = Executors.newCachedThreadPool();
+        List<Future<?>> experimentsRunning = new ArrayList<>();
         for (Map<String, String> experiment : experiments) {
 
             Path projectPath = Paths.get(experiment.get("Project"));
@@ -157,8 +165,8 @@ public class TrackMateBatch {
                     //log.info("");
                     log.info(String.format("✅ Row %2d: Project='%s', Image='%s', Experiment='%s', Process='%s'",
                             rowIndex, projectPath, omeroPath, experimentName, processFlag));
-                    new TrackMateExperiment(experimentPath, omeroExperimentPath, false, "");
-                    nrExperimentsProcessed += 1;
+                    experimentsRunning.add(experimentExecutor.submit(() ->
+                            new TrackMateExperiment(experimentPath, omeroExperimentPath, false, "", scheduler)));
                 }
                 else {
                     log.warning(String.format("🚫️ Row %2d: Skipped because of invalid directories.", rowIndex));
@@ -169,6 +177,21 @@ public class TrackMateBatch {
 
             rowIndex++;
         }
+
+        for (Future<?> experimentRunning : experimentsRunning) {
+            try {
+                experimentRunning.get();
+                nrExperimentsProcessed += 1;
+            } catch (ExecutionException e) {
+                log.severe("🚫 Error processing experiment: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warning("⚠️ Interrupted while waiting for the experiments.");
+                break;
+            }
+        }
+        experimentExecutor.shutdownNow();
+        scheduler.close();
         Instant end = Instant.now();
         Duration duration = Duration.between(start, end);
 
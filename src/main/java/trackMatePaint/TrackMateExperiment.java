@@ -14,6 +14,7 @@ import java.time.Instant;
 import java.util.*;
 
 import java.util.logging.Logger;
+import paint.loaders.ExperimentCache;
 import paint.utilities.AppLoggerOld;
 
 import static paint.utilities.Miscellaneous.deleteAssociatedFiles;
@@ -23,17 +24,27 @@ public class TrackMateExperiment {
 
     private static final Logger log = AppLoggerOld.getLogger();
 
+    private static final Set<String> YES_VALUES = new HashSet<>(Arrays.asList("y", "yes"));
+
     public TrackMateExperiment(Path experimentPath, Path omeroExperimentPath, boolean convert, String sweepCaseName) {
-        go(experimentPath, omeroExperimentPath, convert, sweepCaseName);
+        try (TrackMateScheduler scheduler = TrackMateScheduler.fromSystemProperties()) {
+            go(experimentPath, omeroExperimentPath, convert, sweepCaseName, scheduler);
+        }
     }
 
-    void go(Path experimentPath, Path omeroExperimentPath, boolean convertFlag, String caseName) {
+    /** Process the experiment with a scheduler that may be shared with other experiments. */
+    public TrackMateExperiment(Path experimentPath, Path omeroExperimentPath, boolean convert, String sweepCaseName,
+                               TrackMateScheduler scheduler) {
+        go(experimentPath, omeroExperimentPath, convert, sweepCaseName, scheduler);
+    }
+
+    void go(Path experimentPath, Path omeroExperimentPath, boolean convertFlag, String caseName, TrackMateScheduler scheduler) {
         Path experimentInfoFilePath = experimentPath.resolve("Experiment Info.csv");
 
         log.info(String.format("Experiment path: %s", experimentPath));
         log.info(String.format("Omero Experiment path: %s", omeroExperimentPath));
         log.info(String.format("Experiment Info Path : %s", experimentInfoFilePath));
-        processExperimentInfoFile(experimentInfoFilePath, omeroExperimentPath, experimentPath);
+        processExperimentInfoFile(experimentInfoFilePath, omeroExperimentPath, experimentPath, caseName, scheduler);
     }
 
     private static boolean checkDirectory(Path path, String label, int rowIndex) {
@@ -66,7 +77,9 @@ public class TrackMateExperiment {
 
     private static void processExperimentInfoFile(Path experimentInfoFile,
                                                   Path omeroExperimentPath,
-                                                  Path experimentPath) {
+                                                  Path experimentPath,
+                                                  String caseName,
+                                                  TrackMateScheduler scheduler) {
 
         int nrRecordingsInBatchFile = 0;
         int nrRecordingsToProcess = 0;
@@ -77,16 +90,12 @@ public class TrackMateExperiment {
                 "Condition Nr", "Replicate Nr", "Probe", "Probe Type", "Cell Type", "Adjuvant",
                 "Concentration", "Threshold", "Process"};
 
-        Set<String> yesValues = new HashSet<>(Arrays.asList("y", "yes"));
         List<Map<String, String>> recordings = new ArrayList<>();
 
         // Read in the batch file into 'records'
         // You can then cycle through it later twice
-        try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(new FileReader(experimentInfoFile.toFile()))) {
-            Map<String, String> recording;
-            while ((recording = reader.readMap()) != null) {
-                recordings.add(new HashMap<>(recording)); // Defensive copy
-            }
+        try {
+            recordings = readExperimentInfo(experimentInfoFile);
         } catch (IOException | CsvValidationException e) {
             log.severe("🚫 Error reading CSV file: " + e.getMessage());
             e.printStackTrace();
@@ -101,8 +110,7 @@ public class TrackMateExperiment {
 
         // Determine how many recordings need to be processed
         for (Map<String, String> recording : recordings) {
-            String process = recording.get("Process");
-            if (process != null && yesValues.contains(process.trim().toLowerCase())) {
+            if (isSelected(recording)) {
                 nrRecordingsToProcess += 1;
             }
             nrRecordingsInBatchFile += 1;
@@ -126,34 +134,106 @@ public class TrackMateExperiment {
 
         // Extend the Experiment Info file with new columns to bring it into All Recordings format
         recordings = addOrderedColumns(recordings);
+        if (caseName != null && !caseName.isEmpty()) {
+            for (Map<String, String> row : recordings) {
+                row.put("Case", caseName);
+            }
+        }
 
-        // Now cycle through again and fand do the work
+        // Carry over the peak memory measured in the previous run, from which the scheduler estimates the memory
+        Path outputFile = experimentInfoFile.getParent().resolve("All Recordings.csv");
+        Map<String, String> previousPeakMemory = readPeakMemory(outputFile);
         for (Map<String, String> row : recordings) {
-            String processFlag = row.get("Process");
+            String peakMemory = previousPeakMemory.get(row.get("Recording Name"));
+            if (peakMemory != null) {
+                row.put("Peak Memory", peakMemory);
+            }
+        }
 
-            if (processFlag != null && yesValues.contains(processFlag.trim().toLowerCase())) {
+        // Now cycle through again and collect the recordings to run TrackMate on
+        List<Map<String, String>> rowsToProcess = new ArrayList<>();
+        List<TrackMateScheduler.Job> jobs = new ArrayList<>();
+        for (Map<String, String> row : recordings) {
+            if (isSelected(row)) {
                 String recordingName = row.get("Recording Name");
-                new TrackMateRecording(experimentPath, omeroExperimentPath, recordingName);
+                // A missing Threshold cell is reported like an unparsable one
+                String thresholdText = row.get("Threshold");
+                double threshold = Double.NaN;
+                if (thresholdText != null) {
+                    try {
+                        threshold = Double.parseDouble(thresholdText.trim());
+                    } catch (NumberFormatException e) {
+                        threshold = Double.NaN;
+                    }
+                }
+                if (Double.isNaN(threshold)) {
+                    log.warning(String.format("🚫 Recording %s skipped: invalid Threshold '%s'.", recordingName,
+                            thresholdText == null ? "" : thresholdText));
+                    continue;
+                }
+                Path imagePath = omeroExperimentPath.resolve(recordingName + TrackMateRecording.IMAGE_FILE_EXTENSION);
+                long estimatedBytes = scheduler.estimateMemory(row.get("Recording Size"), row.get("Peak Memory"), imagePath);
+                jobs.add(new TrackMateScheduler.Job(experimentPath, omeroExperimentPath, recordingName, threshold, estimatedBytes,
+                                                    scheduler.getThreadsPerJob()));
+                rowsToProcess.add(row);
             }
         }
 
-        // Now write thw All Recordings.csv file
-        Path outputFile = experimentInfoFile.getParent().resolve("All Recordings.csv");
-        try (CSVWriter writer = new CSVWriter(new FileWriter(outputFile.toFile()))) {
-            // Use headers from the first row (original plus new)
-            Set<String> headers = recordings.get(0).keySet();
-            writer.writeNext(headers.toArray(new String[0]));
-
-            for (Map<String, String> row : recordings) {
-                List<String> values = new ArrayList<>();
-                for (String header : headers) {
-                    values.add(row.getOrDefault(header, ""));
+        // The scheduler runs them concurrently; record the run time of every recording that succeeded
+        try {
+            List<TrackMateScheduler.Result> results = scheduler.runAll(jobs);
+            long largestPeakMemory = -1;
+            for (int i = 0; i < results.size(); i++) {
+                TrackMateScheduler.Result result = results.get(i);
+                if (result.isSucceeded()) {
+                    rowsToProcess.get(i).put("Run Time", String.format(Locale.US, "%.1f", result.runTime.toMillis() / 1000.0));
+                    largestPeakMemory = Math.max(largestPeakMemory, result.peakMemoryBytes);
+                    if (result.peakMemoryBytes > 0) {
+                        rowsToProcess.get(i).put("Peak Memory", String.valueOf(result.peakMemoryBytes));
+                    }
+
+                    // An adaptive threshold may have been raised; record the one that was used
+                    if (!Double.isNaN(result.threshold) && result.threshold != result.job.threshold) {
+                        rowsToProcess.get(i).put("Threshold", String.format(Locale.US, "%.1f", result.threshold));
+                    }
+                    nrRecordingsProcessed += 1;
                 }
-                writer.writeNext(values.toArray(new String[0]));
             }
+            if (largestPeakMemory > 0) {
+                log.info(String.format("✅ Largest peak memory of a recording: %d MB; %d such recordings fit in the %d MB budget.",
+                        largestPeakMemory >> 20, scheduler.getMemoryBudgetBytes() / largestPeakMemory,
+                        scheduler.getMemoryBudgetBytes() >> 20));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warning("⚠️ Interrupted while running TrackMate; the run times are incomplete.");
+        }
 
-            // log.info("✅ All Recordings.csv written to: " + outputFile);
+        // Merge the track files of the recordings into All Tracks.csv, in the order of the Experiment Info file
+        List<String> recordingOrder = new ArrayList<>();
+        for (Map<String, String> row : recordings) {
+            recordingOrder.add(row.get("Recording Name"));
+        }
+        List<String> recordingsRun = new ArrayList<>();
+        for (TrackMateScheduler.Job job : jobs) {
+            recordingsRun.add(job.recordingName);
+        }
+        try {
+            Map<String, Long> tracksPerRecording = AllTracksMerger.merge(experimentPath, recordingOrder, recordingsRun);
+            for (Map<String, String> row : rowsToProcess) {
+                Long nrTracks = tracksPerRecording.get(row.get("Recording Name"));
+                if (nrTracks != null) {
+                    row.put("Nr Tracks", String.valueOf(nrTracks));
+                }
+            }
+        } catch (IOException e) {
+            log.severe("🚫 Failed to write All Tracks.csv, the track files of the recordings are kept: " + e.getMessage());
+        }
 
+        // Now write thw All Recordings.csv file
+        try {
+            writeAllRecordings(outputFile, recordings);
+            ExperimentCache.invalidateShared(experimentPath);
         } catch (IOException e) {
             log.severe("🚫 Failed to write All Recordings.csv: " + e.getMessage());
         }
@@ -166,11 +246,65 @@ public class TrackMateExperiment {
         log.info("");
     }
 
+    /** The rows of an Experiment Info file, as maps from column name to value. */
+    static List<Map<String, String>> readExperimentInfo(Path experimentInfoFile) throws IOException, CsvValidationException {
+        List<Map<String, String>> recordings = new ArrayList<>();
+        try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(new FileReader(experimentInfoFile.toFile()))) {
+            Map<String, String> recording;
+            while ((recording = reader.readMap()) != null) {
+                recordings.add(new HashMap<>(recording)); // Defensive copy
+            }
+        }
+        return recordings;
+    }
+
+    /** The 'Peak Memory' per recording in an All Recordings file, empty when there is none yet. */
+    static Map<String, String> readPeakMemory(Path allRecordingsFile) {
+        Map<String, String> peakMemory = new HashMap<>();
+        if (!Files.exists(allRecordingsFile)) {
+            return peakMemory;
+        }
+        try {
+            for (Map<String, String> row : readExperimentInfo(allRecordingsFile)) {
+                String value = row.get("Peak Memory");
+                if (value != null && !value.trim().isEmpty()) {
+                    peakMemory.put(row.get("Recording Name"), value.trim());
+                }
+            }
+        } catch (IOException | CsvValidationException e) {
+            log.warning("⚠️ Cannot read the peak memory of the previous run: " + e.getMessage());
+        }
+        return peakMemory;
+    }
+
+    /** True when the 'Process' column of the row asks for the recording to be processed. */
+    static boolean isSelected(Map<String, String> row) {
+        String process = row.get("Process");
+        return process != null && YES_VALUES.contains(process.trim().toLowerCase());
+    }
+
+    /** Write the rows in All Recordings format, with the columns of the first row. */
+    static void writeAllRecordings(Path outputFile, List<Map<String, String>> recordings) throws IOException {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(outputFile.toFile()))) {
+            // Use headers from the first row (original plus new)
+            Set<String> headers = recordings.get(0).keySet();
+            writer.writeNext(headers.toArray(new String[0]));
+
+            for (Map<String, String> row : recordings) {
+                List<String> values = new ArrayList<>();
+                for (String header : headers) {
+                    values.add(row.getOrDefault(header, ""));
+                }
+                writer.writeNext(values.toArray(new String[0]));
+            }
+        }
+    }
+
     public static List<Map<String, String>> addOrderedColumns(List<Map<String, String>> records) {
 
         // Define new columns to add
         String[] newColumns = {
-                "Nr Spots", "Nr Tracks", "Run Time", "Ext Recording Name", "Recording Size", "Time Stamp",
+                "Nr Spots", "Nr Tracks", "Run Time", "Ext Recording Name", "Recording Size", "Peak Memory", "Time Stamp",
                 "Max Frame Gap", "Gap Closing Max Distance", "Linking Max Distance", "Median Filtering",
                 "Nr Spots in All Tracks", "Min Spots in Track", "Case"
         };
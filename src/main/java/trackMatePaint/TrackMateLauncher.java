@@ -25,6 +25,7 @@ public class TrackMateLauncher {
     public static void main(String[] args) throws IOException, FormatException {
 
         // Process the same image 10 times and see how it starts well, but ends slowly
+        // (paint.benchmarks.TrackMateSoakBenchmark does the same with HeadlessTrackMateRunner, which does not slow down)
         for (int i=1; i < 10; i++) {
             Instant start = Instant.now();
             runTrackMate();
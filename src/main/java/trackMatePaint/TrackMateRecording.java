@@ -1,21 +1,73 @@
 package trackMatePaint;
 
+import loci.formats.FormatException;
+import paint.objects.Context;
 import paint.utilities.AppLoggerOld;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.logging.Logger;
 
+import static paint.loaders.ProjectDataLoader.loadBareProject;
+
 public class TrackMateRecording {
 
     private static final Logger log = AppLoggerOld.getLogger();
 
-    public TrackMateRecording(Path experimentPath, Path omeroExperimentPath, String recording) {
+    public static final String IMAGE_FILE_EXTENSION = ".nd2";
+
+    private HeadlessTrackMateRunner.Result result;
+
+    public TrackMateRecording(Path experimentPath, Path omeroExperimentPath, String recording, double threshold) throws IOException {
+        this(experimentPath, omeroExperimentPath, recording, threshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Run TrackMate on the recording with the given number of threads, for a recording that runs next to others. */
+    public TrackMateRecording(Path experimentPath, Path omeroExperimentPath, String recording, double threshold,
+                              int numberOfThreads) throws IOException {
         log.info(String.format("Ready to start TrackMate on a recording: %s.", recording));
-        go(experimentPath, omeroExperimentPath, recording);
+        go(experimentPath, omeroExperimentPath, recording, threshold, numberOfThreads);
     }
 
-    public void go(Path experimentPath, Path omeroExperimentPath, String recording) {
+    /**
+     * Run TrackMate on the recording with the tracking parameters of the project and write its tracks to
+     * '<recording>-tracks.csv' in the experiment directory, to be merged into 'All Tracks.csv'. Throws when TrackMate does not succeed.
+     */
+    public void go(Path experimentPath, Path omeroExperimentPath, String recording, double threshold, int numberOfThreads) throws IOException {
+        Context context = loadBareProject(experimentPath.getParent()).getContext();
+        TrackMateRecordingEngine engine = new TrackMateRecordingEngine(context, Math.max(1, numberOfThreads));
+        engine.setDetectionListener((framesDone, totalFrames, spotsSoFar, projectedTotal) ->
+                log.info(String.format("%s: %d spots in %d of %d frames, %d projected.",
+                        recording, spotsSoFar, framesDone, totalFrames, projectedTotal)));
+
+        Path imagePath = omeroExperimentPath.resolve(recording + IMAGE_FILE_EXTENSION);
+        Path tracksPath = AllTracksMerger.tracksPathOf(experimentPath, recording);
 
+        // Never leave the tracks of an earlier run behind when this one fails
+        Files.deleteIfExists(tracksPath);
+        try {
+            result = engine.process(imagePath, recording, threshold, tracksPath);
+        } catch (FormatException e) {
+            throw new IOException("Cannot read " + imagePath + ": " + e.getMessage(), e);
+        }
+        if (result.overSpotBudget) {
+            throw new SpotBudgetExceededException(String.format("TrackMate stopped on %s: %s", recording, result.error));
+        }
+        if (!result.succeeded) {
+            throw new IOException(String.format("TrackMate failed on %s: %s", recording, result.error));
+        }
+        if (result.threshold != threshold) {
+            log.info(String.format("✅ %s: threshold raised from %.1f to %.1f to stay within %d spots.",
+                    recording, threshold, result.threshold, context.getMaxNumberOfSpotsInImage()));
+        }
+        log.info(String.format("✅ %s: %d spots, %d tracks (reading %.1f s, TrackMate %.1f s, peak heap %d MB).",
+                recording, result.numberOfSpots, result.numberOfTracks,
+                result.readTime.toMillis() / 1000.0, result.trackMateTime.toMillis() / 1000.0,
+                result.peakHeapBytes / (1024 * 1024)));
+    }
 
+    public HeadlessTrackMateRunner.Result getResult() {
+        return result;
     }
 }
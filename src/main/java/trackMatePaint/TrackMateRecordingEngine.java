@@ -0,0 +1,113 @@
+package trackMatePaint;
+
+import loci.formats.FormatException;
+import paint.objects.Context;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs TrackMate on one recording and writes its tracks in the 'All Tracks' format (TRACK_COLS).
+ *
+ * The image is opened with Bio-Formats and processed by the LoG detector and the sparse LAP tracker through
+ * HeadlessTrackMateRunner, with the tracking parameters of the project Context: maximum frame gap, linking
+ * and gap closing distances, median filtering, minimum number of spots in a track, the spot budget and the
+ * adaptive threshold. No GUI objects are created. While the model is still alive, TrackCsvExporter streams
+ * its tracks to the CSV file line by line.
+ *
+ * Most columns are TrackMate track features. The calculated columns are derived from the spots of a track,
+ * ordered in time: the speeds of the steps between consecutive spots (max, median, mean), the 'Diffusion
+ * Coefficient' as the mean of |dr|^2 / (4 dt) over these steps, and the 'Diffusion Coefficient Ext' as the
+ * mean of |r(t) - r(0)|^2 / (4 t) over all spots after the first. Square Number and Label Number are assigned
+ * later by Generate Squares.
+ */
+
+public class TrackMateRecordingEngine {
+
+    private final HeadlessTrackMateRunner runner;
+
+    public TrackMateRecordingEngine(Context context, int numberOfThreads) {
+        this.runner = new HeadlessTrackMateRunner(parametersOf(context), numberOfThreads);
+    }
+
+    /** The TrackMate parameters that the project Context defines, keyed as in the 'TrackMate' configuration section. */
+    public static Map<String, Object> parametersOf(Context context) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("MAX_FRAME_GAP", context.getMaxFrameGap());
+        parameters.put("LINKING_MAX_DISTANCE", context.getLinkingMaxDistance());
+        parameters.put("GAP_CLOSING_MAX_DISTANCE", context.getGapClosingMaxDistance());
+        parameters.put("DO_MEDIAN_FILTERING", context.isMedianFiltering());
+        parameters.put("MIN_NR_SPOTS_IN_TRACK", context.getMinNumberOfSpotsInTrack());
+        parameters.put("MAX_NR_SPOTS_IN_IMAGE", context.getMaxNumberOfSpotsInImage());
+        parameters.put("ADAPTIVE_THRESHOLD", context.isAdaptiveThreshold());
+        return parameters;
+    }
+
+    public void setDetectionListener(HeadlessTrackMateRunner.DetectionListener detectionListener) {
+        runner.setDetectionListener(detectionListener);
+    }
+
+    /** Detect and track the recording and write its tracks to 'tracksPath'. The file is only written when TrackMate succeeds. */
+    public HeadlessTrackMateRunner.Result process(Path imagePath, String recordingName, double threshold, Path tracksPath)
+            throws IOException, FormatException {
+        return runner.run(imagePath, threshold, (model, settings) -> {
+            try (TrackCsvExporter exporter = new TrackCsvExporter(tracksPath)) {
+                exporter.export(model, recordingName);
+                exporter.commit();
+            }
+        });
+    }
+
+    /**
+     * Detect the recording once and track it for every case of tracker settings, writing the tracks of case i to
+     * 'tracksPaths[i]'. A file is only written for a case that succeeds.
+     */
+    public List<HeadlessTrackMateRunner.Result> processCases(Path imagePath, String recordingName, double threshold,
+                                                             List<Map<String, Object>> trackerCases, int parallelCases,
+                                                             List<Path> tracksPaths) throws IOException, FormatException {
+        if (tracksPaths.size() != trackerCases.size()) {
+            throw new IllegalArgumentException("Every case needs a tracks file");
+        }
+        return runner.runCases(imagePath, threshold, trackerCases, parallelCases, (caseIndex, model, settings) -> {
+            try (TrackCsvExporter exporter = new TrackCsvExporter(tracksPaths.get(caseIndex))) {
+                exporter.export(model, recordingName);
+                exporter.commit();
+            }
+        });
+    }
+
+    /** Max, median and mean speed, Diffusion Coefficient and Diffusion Coefficient Ext, in TRACK_COLS order. */
+    static double[] calculatedColumns(double[] x, double[] y, double[] t) {
+        int n = x.length;
+        if (n < 2) {
+            return new double[] {Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        }
+        double[] speeds = new double[n - 1];
+        double speedSum = 0;
+        double stepDiffusionSum = 0;
+        double originDiffusionSum = 0;
+        for (int i = 1; i < n; i++) {
+            double dx = x[i] - x[i - 1];
+            double dy = y[i] - y[i - 1];
+            double dt = t[i] - t[i - 1];
+            double squaredStep = dx * dx + dy * dy;
+            speeds[i - 1] = Math.sqrt(squaredStep) / dt;
+            speedSum += speeds[i - 1];
+            stepDiffusionSum += squaredStep / (4 * dt);
+
+            double ox = x[i] - x[0];
+            double oy = y[i] - y[0];
+            originDiffusionSum += (ox * ox + oy * oy) / (4 * (t[i] - t[0]));
+        }
+
+        Arrays.sort(speeds);
+        int middle = speeds.length / 2;
+        double median = speeds.length % 2 == 1 ? speeds[middle] : (speeds[middle - 1] + speeds[middle]) / 2;
+        return new double[] {speeds[speeds.length - 1], median, speedSum / speeds.length,
+                             stepDiffusionSum / speeds.length, originDiffusionSum / speeds.length};
+    }
+}
@@ -0,0 +1,383 @@
+package trackMatePaint;
+
+import paint.utilities.AppLoggerOld;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Runs TrackMate on recordings concurrently, bounded by the number of cores and by memory.
+ *
+ * Every recording gets a memory estimate, derived from the peak memory measured when it was last run, or else
+ * from its 'Recording Size' (or the size of the image file when that is not known yet). A recording only starts
+ * when its estimate fits in the memory budget next to the recordings that are running, so fewer large recordings
+ * than small ones run side by side.
+ * Each recording is given its share of the cores as TrackMate threads, so that the recordings side by side
+ * together use about as many threads as there are cores.
+ * Recordings run either in this JVM or, by default, each in its own worker JVM, which is given a heap of the
+ * estimated size and returns all its memory when it exits. A failed recording is retried up to a maximum
+ * number of attempts, unless it failed because it has more spots than the spot budget allows. An attempt that
+ * ran out of memory is retried with twice the memory, up to the whole budget, and not retried when the whole
+ * budget was not enough. Every result reports the peak memory the recording needed, which the experiment keeps
+ * as the 'Peak Memory' of the recording for the next estimate, and the detection threshold that was used.
+ *
+ * One scheduler can be shared by several experiments: all their recordings then compete for the same
+ * workers and memory. The settings can be changed with system properties:
+ * paint.trackmate.workers (maximum number of concurrent recordings), paint.trackmate.inProcess (true to run
+ * in this JVM), paint.trackmate.maxAttempts and paint.trackmate.workerJvmOptions (extra options for the
+ * worker JVMs, separated by spaces). The other paint.trackmate properties, such as paint.trackmate.virtualStack,
+ * are passed on to the worker JVMs.
+ */
+
+public class TrackMateScheduler implements AutoCloseable {
+
+    private static final Logger log = AppLoggerOld.getLogger();
+
+    private static final long MB = 1024L * 1024L;
+
+    // The image is held in memory together with the TrackMate model; a worker JVM also needs room for Fiji itself
+    private static final double MEMORY_PER_IMAGE_BYTE = 2.0;
+    private static final long WORKER_JVM_OVERHEAD = 512 * MB;
+    private static final long DEFAULT_RECORDING_SIZE = 1024 * MB;
+
+    // With a virtual stack only the plane cache holds image data; the rest is the model and the detector's working copies
+    private static final double VIRTUAL_MEMORY_PER_IMAGE_BYTE = 0.25;
+
+    // A measured peak varies a little from run to run, with the garbage collector's timing
+    private static final double PEAK_MEMORY_MARGIN = 1.25;
+
+    // Part of the physical memory that worker JVMs may use together
+    private static final double PHYSICAL_MEMORY_FRACTION = 0.8;
+
+    /** One recording to process, with the number of threads TrackMate may use for it. */
+    public static final class Job {
+        public final Path experimentPath;
+        public final Path omeroExperimentPath;
+        public final String recordingName;
+        public final double threshold;
+        public final long estimatedBytes;
+        public final int numberOfThreads;
+
+        public Job(Path experimentPath, Path omeroExperimentPath, String recordingName, double threshold, long estimatedBytes,
+                   int numberOfThreads) {
+            this.experimentPath = experimentPath;
+            this.omeroExperimentPath = omeroExperimentPath;
+            this.recordingName = recordingName;
+            this.threshold = threshold;
+            this.estimatedBytes = estimatedBytes;
+            this.numberOfThreads = Math.max(1, numberOfThreads);
+        }
+    }
+
+    /** What a worker reports about a recording it processed: -1 and NaN when a value is not known. */
+    public static final class Outcome {
+        public static final Outcome UNKNOWN = new Outcome(-1, Double.NaN);
+
+        public final long peakMemoryBytes;
+        public final double threshold;
+
+        public Outcome(long peakMemoryBytes, double threshold) {
+            this.peakMemoryBytes = peakMemoryBytes;
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * The outcome of a job. The run time is that of the successful attempt, or null when all attempts failed.
+     * The peak memory and threshold are those of the successful attempt, or -1 and NaN when they are not known.
+     */
+    public static final class Result {
+        public final Job job;
+        public final int attempts;
+        public final Duration runTime;
+        public final String error;
+        public final long peakMemoryBytes;
+        public final double threshold;
+
+        Result(Job job, int attempts, Duration runTime, String error, Outcome outcome) {
+            this.job = job;
+            this.attempts = attempts;
+            this.runTime = runTime;
+            this.error = error;
+            this.peakMemoryBytes = outcome.peakMemoryBytes;
+            this.threshold = outcome.threshold;
+        }
+
+        public boolean isSucceeded() {
+            return runTime != null;
+        }
+    }
+
+    /**
+     * Processes one recording and reports on it; a failure is signalled by throwing. A SpotBudgetExceededException
+     * is not retried.
+     */
+    public interface Worker {
+        Outcome run(Job job) throws Exception;
+    }
+
+    private final Worker worker;
+    private final boolean inProcess;
+    private final int maxConcurrent;
+    private final int maxAttempts;
+    private final long memoryBudgetMB;
+    private final Semaphore memory;
+    private final ExecutorService executor;
+
+    public TrackMateScheduler(Worker worker, boolean inProcess, int maxConcurrent, long memoryBudgetBytes, int maxAttempts) {
+        if (maxConcurrent < 1 || maxAttempts < 1 || memoryBudgetBytes < MB) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid scheduler settings: %d workers, %d attempts, %d bytes of memory",
+                    maxConcurrent, maxAttempts, memoryBudgetBytes));
+        }
+        this.worker = worker;
+        this.inProcess = inProcess;
+        this.maxConcurrent = maxConcurrent;
+        this.maxAttempts = maxAttempts;
+        this.memoryBudgetMB = memoryBudgetBytes / MB;
+        this.memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, memoryBudgetMB), true);
+        this.executor = Executors.newFixedThreadPool(maxConcurrent);
+    }
+
+    /** A scheduler configured from the system properties, with as many workers as there are cores. */
+    public static TrackMateScheduler fromSystemProperties() {
+        boolean inProcess = Boolean.getBoolean("paint.trackmate.inProcess");
+        int workers = Integer.getInteger("paint.trackmate.workers", Runtime.getRuntime().availableProcessors());
+        int maxAttempts = Integer.getInteger("paint.trackmate.maxAttempts", 3);
+        String jvmOptions = System.getProperty("paint.trackmate.workerJvmOptions", "").trim();
+
+        Worker worker = inProcess ? inProcessWorker()
+                                  : workerJvm(jvmOptions.isEmpty() ? new ArrayList<>() : Arrays.asList(jvmOptions.split("\\s+")));
+        TrackMateScheduler scheduler = new TrackMateScheduler(worker, inProcess, Math.max(1, workers),
+                                                              defaultMemoryBudget(inProcess), Math.max(1, maxAttempts));
+        log.info(String.format("✅ TrackMate scheduler: up to %d recordings at a time in %s, %d MB of memory, %d attempts per recording.",
+                scheduler.maxConcurrent, inProcess ? "this JVM" : "worker JVMs", scheduler.memoryBudgetMB, scheduler.maxAttempts));
+        return scheduler;
+    }
+
+    /**
+     * The memory estimate of a recording. The 'Peak Memory' measured in an earlier run is used when there is one,
+     * with some margin. Otherwise the estimate follows from the 'Recording Size' of an earlier run, or from the
+     * size of the image file.
+     */
+    public long estimateMemory(String recordingSize, String peakMemory, Path imagePath) {
+        long peak = 0;
+        if (peakMemory != null && !peakMemory.trim().isEmpty()) {
+            try {
+                peak = (long) Double.parseDouble(peakMemory.trim());
+            } catch (NumberFormatException e) {
+                log.warning(String.format("⚠️ Invalid Peak Memory '%s' for %s.", peakMemory, imagePath.getFileName()));
+            }
+        }
+        if (peak > 0) {
+            long estimate = (long) (peak * PEAK_MEMORY_MARGIN);
+            return inProcess ? estimate : estimate + WORKER_JVM_OVERHEAD;
+        }
+
+        long size = 0;
+        if (recordingSize != null && !recordingSize.trim().isEmpty()) {
+            try {
+                size = (long) Double.parseDouble(recordingSize.trim());
+            } catch (NumberFormatException e) {
+                log.warning(String.format("⚠️ Invalid Recording Size '%s' for %s.", recordingSize, imagePath.getFileName()));
+            }
+        }
+        if (size <= 0) {
+            try {
+                size = Files.size(imagePath);
+            } catch (IOException e) {
+                size = DEFAULT_RECORDING_SIZE;
+            }
+        }
+        long estimate = (long) (size * MEMORY_PER_IMAGE_BYTE);
+        if (HeadlessTrackMateRunner.Loading.fromSystemProperties() == HeadlessTrackMateRunner.Loading.VIRTUAL) {
+            estimate = Math.min(estimate, HeadlessTrackMateRunner.DEFAULT_PLANE_CACHE_BYTES + (long) (size * VIRTUAL_MEMORY_PER_IMAGE_BYTE));
+        }
+        return inProcess ? estimate : estimate + WORKER_JVM_OVERHEAD;
+    }
+
+    /**
+     * The number of threads a recording should use, so that the recordings running side by side together use
+     * about as many threads as there are cores.
+     */
+    public int getThreadsPerJob() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / maxConcurrent);
+    }
+
+    /** Run the jobs and wait until all are done. The results are in the order of the jobs. */
+    public List<Result> runAll(List<Job> jobs) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            futures.add(executor.submit(() -> runWithRetries(job)));
+        }
+        List<Result> results = new ArrayList<>(jobs.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                results.add(new Result(jobs.get(i), 0, null, String.valueOf(e.getCause()), Outcome.UNKNOWN));
+            }
+        }
+        return results;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetMB * MB;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Result runWithRetries(Job job) throws InterruptedException {
+        Job attemptJob = job;
+        String error = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+
+            // A recording larger than the whole budget runs on its own
+            int permits = (int) Math.max(1, Math.min(memoryBudgetMB, (attemptJob.estimatedBytes + MB - 1) / MB));
+            memory.acquire(permits);
+            Instant start = Instant.now();
+            try {
+                log.info(String.format("Starting TrackMate on %s (attempt %d, %d MB).", job.recordingName, attempt, permits));
+                Outcome outcome = worker.run(attemptJob);
+                if (outcome == null) {
+                    outcome = Outcome.UNKNOWN;
+                }
+                Duration runTime = Duration.between(start, Instant.now());
+                log.info(String.format("✅ TrackMate finished %s in %.1f seconds%s.", job.recordingName, runTime.toMillis() / 1000.0,
+                        outcome.peakMemoryBytes < 0 ? ""
+                                : String.format(", peak memory %d MB of %d MB estimated", outcome.peakMemoryBytes / MB, permits)));
+                return new Result(job, attempt, runTime, null, outcome);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (SpotBudgetExceededException e) {
+                log.warning(String.format("🚫 TrackMate stopped on %s, not retried: %s", job.recordingName, e.getMessage()));
+                return new Result(job, attempt, null, e.toString(), Outcome.UNKNOWN);
+            } catch (OutOfMemoryError e) {
+                error = e.toString();
+
+                // The same memory would run out again: the next attempt gets twice as much, up to the whole budget
+                if (permits >= memoryBudgetMB) {
+                    log.severe(String.format("🚫 TrackMate ran out of memory on %s with the whole budget of %d MB, not retried.",
+                            job.recordingName, permits));
+                    return new Result(job, attempt, null, error, Outcome.UNKNOWN);
+                }
+                attemptJob = withEstimatedBytes(attemptJob, Math.min(memoryBudgetMB * MB, 2 * (long) permits * MB));
+                log.warning(String.format("⚠️ TrackMate ran out of memory on %s (attempt %d of %d) with %d MB, next attempt with %d MB.",
+                        job.recordingName, attempt, maxAttempts, permits, attemptJob.estimatedBytes / MB));
+            } catch (Exception e) {
+                error = e.toString();
+                log.warning(String.format("⚠️ TrackMate failed on %s (attempt %d of %d): %s",
+                        job.recordingName, attempt, maxAttempts, error));
+            } finally {
+                memory.release(permits);
+            }
+        }
+        log.severe(String.format("🚫 TrackMate gave up on %s after %d attempts.", job.recordingName, maxAttempts));
+        return new Result(job, maxAttempts, null, error, Outcome.UNKNOWN);
+    }
+
+    private static Job withEstimatedBytes(Job job, long estimatedBytes) {
+        return new Job(job.experimentPath, job.omeroExperimentPath, job.recordingName, job.threshold, estimatedBytes,
+                       job.numberOfThreads);
+    }
+
+    //
+    // Workers
+    //
+
+    public static Worker inProcessWorker() {
+        return job -> {
+            HeadlessTrackMateRunner.Result result =
+                    new TrackMateRecording(job.experimentPath, job.omeroExperimentPath, job.recordingName, job.threshold,
+                                           job.numberOfThreads).getResult();
+            return new Outcome(result.peakHeapBytes, result.threshold);
+        };
+    }
+
+    /** Runs each recording in a new JVM with this JVM's class path, with a heap of the estimated size. */
+    public static Worker workerJvm(List<String> jvmOptions) {
+        return job -> {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-Xmx" + Math.max(256, job.estimatedBytes / MB) + "m");
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("paint.trackmate.") && !name.equals("paint.trackmate.workerJvmOptions")) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            command.addAll(jvmOptions);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(TrackMateWorker.class.getName());
+            command.add(job.experimentPath.toString());
+            command.add(job.omeroExperimentPath.toString());
+            command.add(job.recordingName);
+            command.add(Double.toString(job.threshold));
+            command.add(Integer.toString(job.numberOfThreads));
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            long peakMemory = -1;
+            double threshold = Double.NaN;
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith(TrackMateWorker.PEAK_MEMORY_PREFIX)) {
+                        peakMemory = Long.parseLong(line.substring(TrackMateWorker.PEAK_MEMORY_PREFIX.length()).trim());
+                        continue;
+                    }
+                    if (line.startsWith(TrackMateWorker.THRESHOLD_PREFIX)) {
+                        threshold = Double.parseDouble(line.substring(TrackMateWorker.THRESHOLD_PREFIX.length()).trim());
+                        continue;
+                    }
+                    log.info(String.format("[%s] %s", job.recordingName, line));
+                }
+                int exitCode = process.waitFor();
+                if (exitCode == TrackMateWorker.EXIT_OVER_SPOT_BUDGET) {
+                    throw new SpotBudgetExceededException("TrackMate stopped on " + job.recordingName + ": too many spots");
+                }
+                if (exitCode == TrackMateWorker.EXIT_OUT_OF_MEMORY) {
+                    throw new OutOfMemoryError("Worker JVM ran out of its heap of " + Math.max(256, job.estimatedBytes / MB) + " MB");
+                }
+                if (exitCode != 0) {
+                    throw new IOException("Worker JVM exited with code " + exitCode);
+                }
+                return new Outcome(peakMemory, threshold);
+            } finally {
+                process.destroy();
+            }
+        };
+    }
+
+    private static long defaultMemoryBudget(boolean inProcess) {
+        Runtime runtime = Runtime.getRuntime();
+        if (inProcess) {
+            return runtime.maxMemory();
+        }
+        try {
+            long physical = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalPhysicalMemorySize();
+            return Math.max(MB, (long) (physical * PHYSICAL_MEMORY_FRACTION) - runtime.maxMemory());
+        } catch (ClassCastException | LinkageError e) {
+            return runtime.maxMemory();
+        }
+    }
+}
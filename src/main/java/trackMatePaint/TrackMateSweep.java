@@ -0,0 +1,253 @@
+package trackMatePaint;
+
+import com.opencsv.exceptions.CsvValidationException;
+import loci.formats.FormatException;
+import paint.objects.Context;
+import paint.utilities.AppLoggerOld;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static paint.constants.PaintConstants.TRACKS_CSV;
+import static paint.loaders.ProjectDataLoader.loadBareProject;
+
+/**
+ * Runs TrackMate on the recordings of an experiment for every case of a grid of tracker settings.
+ *
+ * A grid gives one or more values for tracker settings such as LINKING_MAX_DISTANCE, GAP_CLOSING_MAX_DISTANCE and
+ * MAX_FRAME_GAP; every combination is a case. Cases only differ in tracker settings, so every recording is detected
+ * once and then tracked for all cases, several cases in parallel (paint.trackmate.parallelCases, by default as many
+ * as there are cores). Each case writes its own output to 'Sweep/<case>' in the experiment directory: an
+ * 'All Tracks.csv' and an 'All Recordings.csv' in which the Case column and the tracker columns describe the case.
+ *
+ * Usage: TrackMateSweep <experimentPath> <omeroExperimentPath> <grid>
+ * with a grid such as "LINKING_MAX_DISTANCE=0.5,0.6;GAP_CLOSING_MAX_DISTANCE=1.0,1.2;MAX_FRAME_GAP=2,3".
+ */
+
+public class TrackMateSweep {
+
+    public static final String SWEEP_DIRECTORY = "Sweep";
+
+    /** One combination of tracker settings. */
+    public static final class Case {
+        public final String name;
+        public final Map<String, Object> trackerSettings;
+
+        public Case(String name, Map<String, Object> trackerSettings) {
+            this.name = name;
+            this.trackerSettings = Collections.unmodifiableMap(new LinkedHashMap<>(trackerSettings));
+        }
+    }
+
+    private final Logger log = AppLoggerOld.getLogger();
+    private final int parallelCases;
+
+    public TrackMateSweep(int parallelCases) {
+        if (parallelCases < 1) {
+            throw new IllegalArgumentException("At least one case must run at a time: " + parallelCases);
+        }
+        this.parallelCases = parallelCases;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: java TrackMateSweep <experimentPath> <omeroExperimentPath> <grid>");
+            System.exit(2);
+        }
+        net.imagej.patcher.LegacyInjector.preinit();
+        AppLoggerOld.init("TrackMate Sweep.log", false);
+
+        List<Case> cases = expand(parseGrid(args[2]));
+        int parallelCases = Integer.getInteger("paint.trackmate.parallelCases",
+                                               Math.min(cases.size(), Runtime.getRuntime().availableProcessors()));
+        new TrackMateSweep(Math.max(1, parallelCases)).run(Paths.get(args[0]), Paths.get(args[1]), cases);
+    }
+
+    /**
+     * Parse a grid of the form "KEY=value,value;KEY=value". The keys must be tracker settings; the values get the
+     * type of the default of their setting.
+     */
+    public static Map<String, List<Object>> parseGrid(String grid) {
+        Map<String, Object> defaults = HeadlessTrackMateRunner.defaultParameters();
+        List<String> trackerKeys = Arrays.asList(HeadlessTrackMateRunner.TRACKER_KEYS);
+        Map<String, List<Object>> parsed = new LinkedHashMap<>();
+        for (String entry : grid.split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] keyAndValues = entry.split("=", 2);
+            String key = keyAndValues[0].trim();
+            if (keyAndValues.length != 2 || !trackerKeys.contains(key)) {
+                throw new IllegalArgumentException("Not a tracker setting with values: '" + entry.trim() + "'");
+            }
+            List<Object> values = new ArrayList<>();
+            for (String value : keyAndValues[1].split(",")) {
+                values.add(parseValue(key, value.trim(), defaults.get(key)));
+            }
+            parsed.put(key, values);
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("The grid is empty");
+        }
+        return parsed;
+    }
+
+    private static Object parseValue(String key, String value, Object defaultValue) {
+        try {
+            if (defaultValue instanceof Integer) {
+                return Integer.parseInt(value);
+            }
+            if (defaultValue instanceof Boolean) {
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                    throw new IllegalArgumentException(String.format("Invalid value for %s: '%s'", key, value));
+                }
+                return Boolean.parseBoolean(value);
+            }
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: '%s'", key, value), e);
+        }
+    }
+
+    /** All combinations of the grid, the last setting varying fastest, named 'Case 1', 'Case 2', ... */
+    public static List<Case> expand(Map<String, List<Object>> grid) {
+        List<Map<String, Object>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<String, List<Object>> setting : grid.entrySet()) {
+            List<Map<String, Object>> extended = new ArrayList<>();
+            for (Map<String, Object> combination : combinations) {
+                for (Object value : setting.getValue()) {
+                    Map<String, Object> next = new LinkedHashMap<>(combination);
+                    next.put(setting.getKey(), value);
+                    extended.add(next);
+                }
+            }
+            combinations = extended;
+        }
+
+        int width = String.valueOf(combinations.size()).length();
+        List<Case> cases = new ArrayList<>(combinations.size());
+        for (int i = 0; i < combinations.size(); i++) {
+            cases.add(new Case(String.format("Case %0" + width + "d", i + 1), combinations.get(i)));
+        }
+        return cases;
+    }
+
+    public static Path caseDirectory(Path experimentPath, Case sweepCase) {
+        return experimentPath.resolve(SWEEP_DIRECTORY).resolve(sweepCase.name);
+    }
+
+    /** Run all cases on the recordings of the experiment that are selected in its Experiment Info file. */
+    public void run(Path experimentPath, Path omeroExperimentPath, List<Case> cases) throws IOException {
+        Context context = loadBareProject(experimentPath.getParent()).getContext();
+        TrackMateRecordingEngine engine = new TrackMateRecordingEngine(context, Runtime.getRuntime().availableProcessors());
+
+        List<Map<String, String>> recordings;
+        try {
+            recordings = TrackMateExperiment.addOrderedColumns(
+                    TrackMateExperiment.readExperimentInfo(experimentPath.resolve("Experiment Info.csv")));
+        } catch (CsvValidationException e) {
+            throw new IOException("Cannot read the Experiment Info file: " + e.getMessage(), e);
+        }
+
+        // Every case gets its own copy of the rows, describing the case
+        List<List<Map<String, String>>> caseRows = new ArrayList<>();
+        List<Map<String, Object>> trackerCases = new ArrayList<>();
+        for (Case sweepCase : cases) {
+            Files.createDirectories(caseDirectory(experimentPath, sweepCase));
+            trackerCases.add(sweepCase.trackerSettings);
+            List<Map<String, String>> rows = new ArrayList<>();
+            for (Map<String, String> recording : recordings) {
+                Map<String, String> row = new LinkedHashMap<>(recording);
+                row.put("Case", sweepCase.name);
+                row.put("Max Frame Gap", String.valueOf(sweepCase.trackerSettings.getOrDefault("MAX_FRAME_GAP", context.getMaxFrameGap())));
+                row.put("Gap Closing Max Distance", String.valueOf(
+                        sweepCase.trackerSettings.getOrDefault("GAP_CLOSING_MAX_DISTANCE", context.getGapClosingMaxDistance())));
+                row.put("Linking Max Distance", String.valueOf(
+                        sweepCase.trackerSettings.getOrDefault("LINKING_MAX_DISTANCE", context.getLinkingMaxDistance())));
+                rows.add(row);
+            }
+            caseRows.add(rows);
+        }
+        log.info(String.format("✅ Sweeping %d cases over %s, %d at a time.", cases.size(), experimentPath, parallelCases));
+
+        List<String> recordingsRun = new ArrayList<>();
+        for (int r = 0; r < recordings.size(); r++) {
+            Map<String, String> recording = recordings.get(r);
+            if (!TrackMateExperiment.isSelected(recording)) {
+                continue;
+            }
+            String recordingName = recording.get("Recording Name");
+            double threshold;
+            try {
+                threshold = Double.parseDouble(recording.get("Threshold").trim());
+            } catch (NumberFormatException | NullPointerException e) {
+                log.warning(String.format("🚫 Recording %s skipped: invalid Threshold '%s'.", recordingName, recording.get("Threshold")));
+                continue;
+            }
+
+            List<Path> tracksPaths = new ArrayList<>();
+            for (Case sweepCase : cases) {
+                Path tracksPath = AllTracksMerger.tracksPathOf(caseDirectory(experimentPath, sweepCase), recordingName);
+                Files.deleteIfExists(tracksPath);
+                tracksPaths.add(tracksPath);
+            }
+            recordingsRun.add(recordingName);
+
+            List<HeadlessTrackMateRunner.Result> results;
+            try {
+                results = engine.processCases(omeroExperimentPath.resolve(recordingName + TrackMateRecording.IMAGE_FILE_EXTENSION),
+                                              recordingName, threshold, trackerCases, parallelCases, tracksPaths);
+            } catch (IOException | FormatException e) {
+                log.warning(String.format("🚫 TrackMate failed on %s: %s", recordingName, e.getMessage()));
+                continue;
+            }
+
+            for (int c = 0; c < cases.size(); c++) {
+                HeadlessTrackMateRunner.Result result = results.get(c);
+                if (!result.succeeded) {
+                    log.warning(String.format("🚫 TrackMate failed on %s in %s: %s", recordingName, cases.get(c).name, result.error));
+                    continue;
+                }
+                Map<String, String> row = caseRows.get(c).get(r);
+                row.put("Nr Spots", String.valueOf(result.numberOfSpots));
+                row.put("Run Time", String.format(Locale.US, "%.1f", result.trackMateTime.toMillis() / 1000.0));
+                if (result.threshold != threshold) {
+                    row.put("Threshold", String.format(Locale.US, "%.1f", result.threshold));
+                }
+            }
+            log.info(String.format("✅ %s: detected once, tracked for %d cases in %.1f seconds.", recordingName, cases.size(),
+                    results.get(0).trackMateTime.toMillis() / 1000.0));
+        }
+
+        // Every case gets its own All Tracks and All Recordings, in the order of the Experiment Info file
+        List<String> recordingOrder = new ArrayList<>();
+        for (Map<String, String> recording : recordings) {
+            recordingOrder.add(recording.get("Recording Name"));
+        }
+        for (int c = 0; c < cases.size(); c++) {
+            Path caseDirectory = caseDirectory(experimentPath, cases.get(c));
+            Map<String, Long> tracksPerRecording = AllTracksMerger.merge(caseDirectory, recordingOrder, recordingsRun);
+            for (Map<String, String> row : caseRows.get(c)) {
+                Long nrTracks = tracksPerRecording.get(row.get("Recording Name"));
+                if (nrTracks != null) {
+                    row.put("Nr Tracks", String.valueOf(nrTracks));
+                }
+            }
+            if (!caseRows.get(c).isEmpty()) {
+                TrackMateExperiment.writeAllRecordings(caseDirectory.resolve("All Recordings.csv"), caseRows.get(c));
+            }
+            log.info(String.format("✅ %s written to %s.", TRACKS_CSV, caseDirectory));
+        }
+    }
+}
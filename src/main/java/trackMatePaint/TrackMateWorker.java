@@ -0,0 +1,51 @@
+package trackMatePaint;
+
+import paint.utilities.AppLoggerOld;
+
+import java.nio.file.Paths;
+
+/**
+ * Entry point of a worker JVM started by TrackMateScheduler: runs TrackMate on one recording.
+ * Exits with 0 on success and 1 on failure, so that the scheduler can retry the recording, with 3 when the
+ * recording is over the spot budget, which a retry does not change, or with 4 when it ran out of memory, so
+ * that the retry gets more.
+ * On success the peak heap use and the threshold used are printed on lines of their own, for the scheduler.
+ */
+
+public class TrackMateWorker {
+
+    static final String PEAK_MEMORY_PREFIX = "Peak memory (bytes): ";
+    static final String THRESHOLD_PREFIX = "Threshold used: ";
+    static final int EXIT_OVER_SPOT_BUDGET = 3;
+    static final int EXIT_OUT_OF_MEMORY = 4;
+
+    static {
+        net.imagej.patcher.LegacyInjector.preinit();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 4 && args.length != 5) {
+            System.err.println("Usage: java TrackMateWorker <experimentPath> <omeroExperimentPath> <recordingName> <threshold> [numberOfThreads]");
+            System.exit(2);
+        }
+        AppLoggerOld.init("TrackMate Worker.log", true);
+        try {
+            int numberOfThreads = args.length == 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            TrackMateRecording recording = new TrackMateRecording(Paths.get(args[0]), Paths.get(args[1]), args[2],
+                                                                  Double.parseDouble(args[3]), numberOfThreads);
+            System.out.println(PEAK_MEMORY_PREFIX + recording.getResult().peakHeapBytes);
+            System.out.println(THRESHOLD_PREFIX + recording.getResult().threshold);
+        } catch (SpotBudgetExceededException e) {
+            AppLoggerOld.getLogger().warning(String.format("🚫 %s", e.getMessage()));
+            System.exit(EXIT_OVER_SPOT_BUDGET);
+        } catch (OutOfMemoryError e) {
+            AppLoggerOld.getLogger().severe(String.format("🚫 TrackMate ran out of memory on %s: %s", args[2], e));
+            System.exit(EXIT_OUT_OF_MEMORY);
+        } catch (Exception e) {
+            AppLoggerOld.getLogger().severe(String.format("🚫 TrackMate failed on %s: %s", args[2], e));
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.io.ColumnarCache;
+import trackMatePaint.AllTracksMerger;
+
+import static paint.constants.PaintConstants.TRACKS_CSV;
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+public class AllTracksMergerTest {
+
+    private static final String HEADER = String.join(",", TRACK_COLS);
+
+    @TempDir
+    Path tempDir;
+
+    private static String row(String recordingName, int trackId, String quotedName) {
+        String[] fields = new String[TRACK_COLS.length];
+        Arrays.fill(fields, "1.5");
+        fields[0] = quotedName == null ? recordingName + "-" + trackId : "\"" + quotedName + "-" + trackId + "\"";
+        fields[1] = quotedName == null ? recordingName : "\"" + quotedName + "\"";
+        fields[2] = String.valueOf(trackId);
+        fields[3] = "Track_" + trackId;
+        return String.join(",", fields);
+    }
+
+    private void writeTracks(Path path, String... rows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.addAll(Arrays.asList(rows));
+        Files.write(path, lines);
+    }
+
+    @Test
+    void merge_replacesRunRecordingsAndKeepsTheOthers() throws IOException {
+        Path allTracks = tempDir.resolve(TRACKS_CSV);
+        writeTracks(allTracks,
+                    row("A", 0, null), row("B", 0, null), row("B", 1, null),
+                    row("B,x", 0, "B,x"));
+        writeTracks(AllTracksMerger.tracksPathOf(tempDir, "B"), row("B", 7, null));
+        writeTracks(AllTracksMerger.tracksPathOf(tempDir, "C"), row("C", 0, null), row("C", 1, null));
+        Files.write(ColumnarCache.cachePathFor(allTracks), new byte[] {1, 2, 3});
+
+        // 'D' was run but failed: it has no track file and its old rows, if any, are dropped
+        Map<String, Long> tracks = AllTracksMerger.merge(tempDir, Arrays.asList("A", "B", "B,x", "C", "D"),
+                                                         Arrays.asList("B", "C", "D"));
+
+        assertEquals(Long.valueOf(1), tracks.get("B"));
+        assertEquals(Long.valueOf(2), tracks.get("C"));
+        assertFalse(tracks.containsKey("D"));
+        assertEquals(Arrays.asList(HEADER, row("A", 0, null), row("B", 7, null), row("B,x", 0, "B,x"),
+                                   row("C", 0, null), row("C", 1, null)),
+                     Files.readAllLines(allTracks));
+
+        assertFalse(Files.exists(AllTracksMerger.tracksPathOf(tempDir, "B")));
+        assertFalse(Files.exists(AllTracksMerger.tracksPathOf(tempDir, "C")));
+        assertFalse(Files.exists(ColumnarCache.cachePathFor(allTracks)));
+    }
+
+    @Test
+    void merge_withoutExistingFile_writesOnlyTheNewRows() throws IOException {
+        writeTracks(AllTracksMerger.tracksPathOf(tempDir, "A"), row("A", 3, null));
+
+        AllTracksMerger.merge(tempDir, Arrays.asList("A"), Arrays.asList("A"));
+
+        assertEquals(Arrays.asList(HEADER, row("A", 3, null)), Files.readAllLines(tempDir.resolve(TRACKS_CSV)));
+    }
+
+    @Test
+    void merge_writesTheRecordingsInExperimentInfoOrder() throws IOException {
+        // Kept rows of one recording are gathered even when they were scattered; 'X' is not in the order and goes last
+        Path allTracks = tempDir.resolve(TRACKS_CSV);
+        writeTracks(allTracks,
+                    row("C", 0, null), row("X", 0, null), row("A", 0, null), row("C", 1, null), row("A", 1, null));
+        writeTracks(AllTracksMerger.tracksPathOf(tempDir, "B"), row("B", 0, null));
+        writeTracks(AllTracksMerger.tracksPathOf(tempDir, "D"), row("D", 0, null));
+
+        AllTracksMerger.merge(tempDir, Arrays.asList("A", "B", "C"), Arrays.asList("D", "B"));
+
+        assertEquals(Arrays.asList(HEADER, row("A", 0, null), row("A", 1, null), row("B", 0, null),
+                                   row("C", 0, null), row("C", 1, null), row("D", 0, null), row("X", 0, null)),
+                     Files.readAllLines(allTracks));
+    }
+
+    @Test
+    void merge_keepsTheTrackFilesWhenAllTracksCannotBeRead() throws IOException {
+        Files.write(tempDir.resolve(TRACKS_CSV), Arrays.asList("Not,The,Header"));
+        Path tracksPath = AllTracksMerger.tracksPathOf(tempDir, "A");
+        writeTracks(tracksPath, row("A", 0, null));
+
+        assertThrows(IOException.class, () -> AllTracksMerger.merge(tempDir, Arrays.asList("A"), Arrays.asList("A")));
+        assertTrue(Files.exists(tracksPath));
+        assertEquals(Arrays.asList("Not,The,Header"), Files.readAllLines(tempDir.resolve(TRACKS_CSV)));
+    }
+}
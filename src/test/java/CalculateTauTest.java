@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.CalculateTau;
+import paint.calculations.CalculateTauResult;
+import paint.objects.Track;
+
+public class CalculateTauTest {
+
+    // The fast fitter must agree with the commons-math3 fitter within these tolerances
+    private static final double TAU_RELATIVE_TOLERANCE = 1e-3;
+    private static final double R_SQUARED_TOLERANCE = 1e-4;
+
+    @Test
+    void fastFitter_matchesCommonsMath() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            double tauSeconds = 0.1 + random.nextDouble() * 2.0;
+            int nrOfTracks = 20 + random.nextInt(3000);
+
+            // Exponentially distributed durations, rounded to a frame time of 50 ms
+            double[] durations = new double[nrOfTracks];
+            for (int i = 0; i < nrOfTracks; i++) {
+                double duration = -tauSeconds * Math.log(1.0 - random.nextDouble());
+                durations[i] = Math.round(Math.max(0.05, duration) / 0.05) * 0.05;
+            }
+
+            CalculateTauResult fast = CalculateTau.calculateTau(durations.clone(), nrOfTracks, 10, 0.0, CalculateTau.Fitter.FAST);
+            CalculateTauResult reference = CalculateTau.calculateTau(durations.clone(), nrOfTracks, 10, 0.0, CalculateTau.Fitter.COMMONS_MATH);
+
+            assertEquals(reference.getStatus(), fast.getStatus(), "Trial " + trial);
+            if (reference.getStatus() == CalculateTauResult.Status.TAU_SUCCESS) {
+                assertEquals(reference.getTau(), fast.getTau(), TAU_RELATIVE_TOLERANCE * reference.getTau(), "Trial " + trial);
+                assertEquals(reference.getRSquared(), fast.getRSquared(), R_SQUARED_TOLERANCE, "Trial " + trial);
+            }
+        }
+    }
+
+    @Test
+    void calculateTau_fromTracks_recoversTau() {
+        Random random = new Random(11);
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Track track = new Track();
+            track.setTrackDuration(Math.round(-0.5 * Math.log(1.0 - random.nextDouble()) / 0.05) * 0.05);
+            tracks.add(track);
+        }
+
+        CalculateTauResult result = CalculateTau.calculateTau(tracks, 20, 0.1);
+        assertEquals(CalculateTauResult.Status.TAU_SUCCESS, result.getStatus());
+
+        // The histogram has no empty bins, so the sparse tail pulls the fit above the 500 ms of the distribution;
+        // compare with the least squares optimum found by a scan over the decay rate instead
+        double[] durations = new double[tracks.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = tracks.get(i).getTrackDuration();
+        }
+        assertEquals(leastSquaresTauByScan(durations), result.getTau(), 1.0);
+    }
+
+    /* For y = m * exp(-t * x) + b, m and b follow from t by linear least squares; scan t for the smallest residual. */
+
+    private static double leastSquaresTauByScan(double[] durations) {
+        double[] sorted = durations.clone();
+        Arrays.sort(sorted);
+        List<double[]> histogram = new ArrayList<>();
+        for (int i = 0; i < sorted.length; ) {
+            int j = i + 1;
+            while (j < sorted.length && sorted[j] == sorted[i]) j++;
+            histogram.add(new double[] {sorted[i], j - i});
+            i = j;
+        }
+
+        int n = histogram.size();
+        double bestResidual = Double.POSITIVE_INFINITY;
+        double bestRate = Double.NaN;
+        for (double t = 0.1; t < 10.0; t += 0.0005) {
+            double see = 0, se = 0, sey = 0, sy = 0;
+            for (double[] point : histogram) {
+                double e = Math.exp(-t * point[0]);
+                see += e * e;
+                se += e;
+                sey += e * point[1];
+                sy += point[1];
+            }
+            double det = see * n - se * se;
+            double m = (sey * n - se * sy) / det;
+            double b = (see * sy - se * sey) / det;
+            double residual = 0;
+            for (double[] point : histogram) {
+                double r = point[1] - m * Math.exp(-t * point[0]) - b;
+                residual += r * r;
+            }
+            if (residual < bestResidual) {
+                bestResidual = residual;
+                bestRate = t;
+            }
+        }
+        return 1000.0 / bestRate;
+    }
+
+    @Test
+    void calculateTau_rejectsTooFewOrIdenticalDurations() {
+        double[] few = {0.1, 0.2, 0.3};
+        assertEquals(CalculateTauResult.Status.TAU_INSUFFICIENT_POINTS,
+                CalculateTau.calculateTau(few, few.length, 10, 0.5, CalculateTau.Fitter.FAST).getStatus());
+
+        double[] identical = new double[50];
+        Arrays.fill(identical, 0.25);
+        assertEquals(CalculateTauResult.Status.TAU_NO_FIT,
+                CalculateTau.calculateTau(identical, identical.length, 10, 0.5, CalculateTau.Fitter.FAST).getStatus());
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.tablesaw.api.BooleanColumn;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.LongColumn;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.io.ColumnarCache;
+import paint.io.RecordingTableIO;
+
+public class ColumnarCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    /** A recordings table with every column type, including missing values in the second row. */
+    private static Table createRecordingsTable() {
+        Table table = new RecordingTableIO().emptyTable();
+        for (int row = 0; row < 3; row++) {
+            boolean missing = (row == 1);
+            for (Column<?> column : table.columns()) {
+                if (column instanceof StringColumn) {
+                    ((StringColumn) column).append(missing ? "" : column.name() + "-" + (row % 2));
+                } else if (column instanceof IntColumn) {
+                    if (missing) ((IntColumn) column).appendMissing(); else ((IntColumn) column).append(row * 7);
+                } else if (column instanceof LongColumn) {
+                    if (missing) ((LongColumn) column).appendMissing(); else ((LongColumn) column).append(1_000_000_000_000L + row);
+                } else if (column instanceof DoubleColumn) {
+                    if (missing) ((DoubleColumn) column).appendMissing(); else ((DoubleColumn) column).append(row / 3.0);
+                } else if (column instanceof BooleanColumn) {
+                    if (missing) ((BooleanColumn) column).appendMissing(); else ((BooleanColumn) column).append(row == 2);
+                }
+            }
+        }
+        return table;
+    }
+
+    private static void assertSameContent(Table expected, Table actual) {
+        assertEquals(expected.rowCount(), actual.rowCount());
+        assertEquals(expected.columnNames(), actual.columnNames());
+        for (int column = 0; column < expected.columnCount(); column++) {
+            assertEquals(expected.column(column).type(), actual.column(column).type());
+            for (int row = 0; row < expected.rowCount(); row++) {
+                assertEquals(expected.column(column).getString(row), actual.column(column).getString(row),
+                             expected.column(column).name() + " row " + row);
+            }
+        }
+    }
+
+    @Test
+    void writeCsv_writesCacheThatReadsBackTheSameTable() throws IOException {
+        RecordingTableIO recordingTableIO = new RecordingTableIO();
+        Path csv = tempDir.resolve("All Recordings.csv");
+        Table table = createRecordingsTable();
+        recordingTableIO.writeCsv(table, csv);
+        assertTrue(Files.isRegularFile(ColumnarCache.cachePathFor(csv)));
+
+        Table cached = recordingTableIO.readCsv(csv);
+        assertSameContent(table, cached);
+
+        ColumnarCache.setEnabled(false);
+        try {
+            assertSameContent(recordingTableIO.readCsv(csv), cached);
+        } finally {
+            ColumnarCache.setEnabled(true);
+        }
+    }
+
+    @Test
+    void changedCsv_makesCacheStale() throws IOException {
+        RecordingTableIO recordingTableIO = new RecordingTableIO();
+        Path csv = tempDir.resolve("All Recordings.csv");
+        recordingTableIO.writeCsv(createRecordingsTable(), csv);
+
+        // Drop the last data line and move the modification time: the CSV must be parsed again
+        String content = new String(Files.readAllBytes(csv), StandardCharsets.UTF_8).trim();
+        Files.write(csv, content.substring(0, content.lastIndexOf('\n') + 1).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() + 2000));
+
+        assertEquals(2, recordingTableIO.readCsv(csv).rowCount());
+    }
+
+    @Test
+    void corruptCache_isIgnored() throws IOException {
+        RecordingTableIO recordingTableIO = new RecordingTableIO();
+        Path csv = tempDir.resolve("All Recordings.csv");
+        recordingTableIO.writeCsv(createRecordingsTable(), csv);
+        Files.write(ColumnarCache.cachePathFor(csv), new byte[] {1, 2, 3});
+
+        assertEquals(3, recordingTableIO.readCsv(csv).rowCount());
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.io.ColumnarCache;
+import paint.io.EntityCsvWriter;
+import paint.io.SquareTableIO;
+import paint.objects.Square;
+
+public class EntityCsvWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<Square> createSquares(String recordingName, int n) {
+        List<Square> squares = new ArrayList<>();
+        for (int i = 0; i < n * n; i++) {
+            int row = i / n;
+            int col = i % n;
+            Square square = new Square(recordingName + '-' + i, recordingName, i, row, col,
+                                       col * 10.0, row * 10.0, (col + 1) * 10.0, (row + 1) * 10.0);
+            square.setNumberOfTracks(i);
+            square.setTau(i % 3 == 0 ? Double.NaN : 100.0 + i / 7.0);
+            squares.add(square);
+        }
+        return squares;
+    }
+
+    @Test
+    void streamedFile_readsBackAsTheTableWrittenAtOnce() throws IOException {
+        SquareTableIO squareTableIO = new SquareTableIO();
+        List<Square> first = createSquares("Rec-1", 4);
+        List<Square> second = createSquares("Rec \"2\", threshold", 4);
+
+        Path streamed = tempDir.resolve("streamed.csv");
+        try (EntityCsvWriter<Square> writer = squareTableIO.openCsvWriter(streamed)) {
+            writer.write(first);
+            writer.write(second);
+            assertEquals(32, writer.getRowsWritten());
+        }
+
+        List<Square> all = new ArrayList<>(first);
+        all.addAll(second);
+        Path whole = tempDir.resolve("whole.csv");
+        squareTableIO.writeCsv(squareTableIO.toTable(all), whole);
+
+        ColumnarCache.setEnabled(false);
+        try {
+            Table expected = squareTableIO.readCsv(whole);
+            Table actual = squareTableIO.readCsv(streamed);
+            assertEquals(expected.rowCount(), actual.rowCount());
+            for (int column = 0; column < expected.columnCount(); column++) {
+                for (int row = 0; row < expected.rowCount(); row++) {
+                    assertEquals(expected.column(column).getString(row), actual.column(column).getString(row),
+                                 expected.column(column).name() + " row " + row);
+                }
+            }
+        } finally {
+            ColumnarCache.setEnabled(true);
+        }
+    }
+
+    @Test
+    void lines_endWithTheLineSeparatorTablesawWrites() throws IOException {
+        Path streamed = tempDir.resolve("streamed.csv");
+        try (EntityCsvWriter<Square> writer = new SquareTableIO().openCsvWriter(streamed)) {
+            writer.write(createSquares("Rec-1", 2));
+        }
+
+        String content = new String(Files.readAllBytes(streamed), StandardCharsets.UTF_8);
+        String[] lines = content.split(System.lineSeparator(), -1);
+        assertEquals(6, lines.length);              // Header, four squares and nothing after the last line end
+        assertEquals("", lines[5]);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(lines[i].contains("\n") || lines[i].contains("\r"), "line " + i);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.loaders.ExperimentCache;
+import paint.loaders.LazyExperiment;
+import paint.objects.Recording;
+import paint.objects.TrackStore;
+
+public class ExperimentCacheTest {
+
+    @Test
+    void get_evictsTheLeastRecentlyUsedExperimentsWhenFull() throws Exception {
+        long experimentBytes = ExperimentCache.estimateBytes(recordings(1000));
+        ExperimentCache cache = new ExperimentCache(experimentBytes * 2 + experimentBytes / 2);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("A", () -> { loads.incrementAndGet(); return recordings(1000); });
+        cache.get("B", () -> { loads.incrementAndGet(); return recordings(1000); });
+        cache.get("A", () -> { loads.incrementAndGet(); return recordings(1000); });
+        assertEquals(2, loads.get());
+
+        // B is the least recently used, so C replaces it
+        cache.get("C", () -> { loads.incrementAndGet(); return recordings(1000); });
+        assertTrue(cache.contains("A"));
+        assertFalse(cache.contains("B"));
+        assertTrue(cache.contains("C"));
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    void get_doesNotCacheExperimentsLargerThanTheCache() throws Exception {
+        ExperimentCache cache = new ExperimentCache(1024);
+        List<Recording> recordings = cache.get("A", () -> recordings(1000));
+        assertEquals(1, recordings.size());
+        assertFalse(cache.contains("A"));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void get_returnsAnExperimentThatIsStillHeldWithoutLoadingItAgain() throws Exception {
+        ExperimentCache cache = new ExperimentCache(1024);
+        AtomicInteger loads = new AtomicInteger();
+        ExperimentCache.Loader loader = () -> { loads.incrementAndGet(); return recordings(1000); };
+
+        // Too large to be cached, but the caller still holds it
+        List<Recording> held = cache.get("A", loader);
+        assertSame(held, cache.get("A", loader));
+        assertEquals(1, loads.get());
+
+        cache.invalidate("A");
+        assertNotSame(held, cache.get("A", loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_loadsAnExperimentOnceForConcurrentRequests() throws Exception {
+        ExperimentCache cache = new ExperimentCache(1L << 30);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Recording>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get("A", () -> {
+                        loads.incrementAndGet();
+                        Thread.sleep(50);
+                        return recordings(10);
+                    });
+                }));
+            }
+            start.countDown();
+            List<Recording> first = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<List<Recording>> future : futures) {
+                assertSame(first, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void lazyExperiment_loadsOnFirstUseAndAfterInvalidation() {
+        ExperimentCache cache = new ExperimentCache(1L << 30);
+        AtomicInteger loads = new AtomicInteger();
+        Recording info = new Recording();
+        info.setRecordingName("R1");
+        Path experimentPath = Paths.get("E1");
+        LazyExperiment experiment = new LazyExperiment("E1", experimentPath, Collections.singletonList(info), cache, () -> {
+            loads.incrementAndGet();
+            return recordings(10);
+        });
+
+        assertEquals("R1", experiment.getRecordingInfo().get(0).getRecordingName());
+        assertFalse(experiment.isLoaded());
+        assertEquals(0, loads.get());
+
+        experiment.loadRecordings();
+        experiment.loadRecordings();
+        assertTrue(experiment.isLoaded());
+        assertEquals(1, loads.get());
+
+        // As a writer of the files of the experiment does
+        cache.invalidate(ExperimentCache.keyOf(experimentPath));
+        assertFalse(experiment.isLoaded());
+        experiment.loadRecordings();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void lazyExperiment_reportsLoadFailures() {
+        LazyExperiment experiment = new LazyExperiment("E1", Paths.get("E1"), Collections.emptyList(),
+                new ExperimentCache(1L << 20), () -> { throw new java.io.IOException("missing file"); });
+        RuntimeException e = assertThrows(RuntimeException.class, experiment::loadRecordings);
+        assertTrue(e.getMessage().contains("missing file"));
+        assertFalse(experiment.isLoaded());
+    }
+
+    private static List<Recording> recordings(int nrOfTracks) {
+        TrackStore trackStore = new TrackStore(nrOfTracks);
+        for (int i = 0; i < nrOfTracks; i++) {
+            trackStore.addRow();
+        }
+        Recording recording = new Recording();
+        recording.setRecordingName("R1");
+        recording.setTrackStore(trackStore, trackStore.allRows());
+        List<Recording> recordings = new ArrayList<>();
+        recordings.add(recording);
+        return recordings;
+    }
+}
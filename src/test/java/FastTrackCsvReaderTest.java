@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tech.tablesaw.api.Table;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+import paint.io.ColumnarCache;
+import paint.io.FastTrackCsvReader;
+import paint.io.TrackTableIO;
+import paint.objects.TrackStore;
+
+public class FastTrackCsvReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Compare the parsers themselves, not the columnar cache they would otherwise write and use
+    @BeforeEach
+    void disableCache() {
+        ColumnarCache.setEnabled(false);
+    }
+
+    @AfterEach
+    void enableCache() {
+        ColumnarCache.setEnabled(true);
+    }
+
+    @Test
+    void read_matchesTablesawReader() throws IOException {
+        TrackTableIO trackTableIO = new TrackTableIO();
+        Path csv = tempDir.resolve("All Tracks.csv");
+        trackTableIO.writeCsv(trackTableIO.toTable(TestTracks.createRandomTracks(1000, 9)), csv);
+
+        Table expected = trackTableIO.readCsv(csv);
+        for (int nrOfThreads : new int[] {1, 4}) {
+            Table actual = FastTrackCsvReader.read(csv, nrOfThreads).toTable(null);
+            assertEquals(expected.rowCount(), actual.rowCount());
+            for (int column = 0; column < TRACK_COLS.length; column++) {
+                for (int row = 0; row < expected.rowCount(); row++) {
+                    assertEquals(expected.column(column).getString(row), actual.column(column).getString(row),
+                                 TRACK_COLS[column] + " row " + row);
+                }
+            }
+        }
+    }
+
+    @Test
+    void read_handlesQuotesMissingValuesAndCrLf() throws IOException {
+        StringBuilder csv = new StringBuilder(String.join(",", TRACK_COLS)).append("\r\n");
+        csv.append("\"K-1\",\"Rec, A\",7,T7,12.0,0,0,1.5E-2,,3,0,0,0,0,0,0,0,0,0,0,0,5,-1\r\n");
+        Path path = tempDir.resolve("tracks.csv");
+        Files.write(path, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        TrackStore store = FastTrackCsvReader.read(path);
+        assertEquals(1, store.size());
+        assertEquals("Rec, A", store.getRecordingName(0));
+        assertEquals(12, store.getInt(TrackStore.NUMBER_OF_SPOTS, 0));
+        assertEquals(0.015, store.getTrackDuration(0), 0.0);
+        assertTrue(Double.isNaN(store.getDouble(TrackStore.TRACK_X_LOCATION, 0)));
+    }
+
+    @Test
+    void read_rejectsWrongHeaderAndShortLines() throws IOException {
+        Path wrongHeader = tempDir.resolve("wrong.csv");
+        Files.write(wrongHeader, "Recording Name,Track Id\nA,1\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> FastTrackCsvReader.read(wrongHeader));
+
+        Path shortLine = tempDir.resolve("short.csv");
+        Files.write(shortLine, (String.join(",", TRACK_COLS) + "\nA,B,1\n").getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> FastTrackCsvReader.read(shortLine));
+    }
+
+    @Test
+    void read_rejectsUnparsableNumbersWithLineAndColumn() throws IOException {
+        String header = String.join(",", TRACK_COLS) + "\n";
+        String good = "K-1,A,7,T7,12,0,0,0.5,1,3,0,0,0,0,0,0,0,0,0,0,0,5,-1\n";
+        Path badDouble = tempDir.resolve("bad-double.csv");
+        Files.write(badDouble, (header + good + good.replace(",0.5,", ",0.5x,")).getBytes(StandardCharsets.UTF_8));
+        IOException e = assertThrows(IOException.class, () -> FastTrackCsvReader.read(badDouble));
+        assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        assertTrue(e.getMessage().contains("Track Duration"), e.getMessage());
+
+        Path badInt = tempDir.resolve("bad-int.csv");
+        Files.write(badInt, (header + good.replace(",12,", ",12.5,")).getBytes(StandardCharsets.UTF_8));
+        e = assertThrows(IOException.class, () -> FastTrackCsvReader.read(badInt));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+        assertTrue(e.getMessage().contains("Number of Spots"), e.getMessage());
+    }
+}
@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static paint.constants.PaintConstants.*;
+
+import paint.io.ColumnarCache;
+import paint.loaders.ParallelExperimentLoader;
+import paint.loaders.ProjectDataLoader;
+import paint.objects.Context;
+import paint.objects.Experiment;
+import paint.objects.Recording;
+import paint.objects.Square;
+
+public class ParallelExperimentLoaderTest {
+
+    private static final int SQUARES_IN_ROW = 4;
+
+    @TempDir
+    Path projectPath;
+
+    /* An experiment of two recordings, each with a full grid of squares and its tracks spread over the squares. */
+
+    private void writeExperiment(String experimentName) throws IOException {
+        writeExperiment(experimentName, 25);
+    }
+
+    private void writeExperiment(String experimentName, int tracksPerRecording) throws IOException {
+        Path experimentPath = Files.createDirectories(projectPath.resolve(experimentName));
+        List<String> recordings = new ArrayList<>();
+        List<String> squares = new ArrayList<>();
+        List<String> tracks = new ArrayList<>();
+        recordings.add(String.join(",", RECORDING_COLS));
+        squares.add(String.join(",", SQUARE_COLS));
+        tracks.add(String.join(",", TRACK_COLS));
+
+        double squareWidth = IMAGE_WIDTH / SQUARES_IN_ROW;
+        double squareHeight = IMAGE_HEIGHT / SQUARES_IN_ROW;
+        for (String recordingName : Arrays.asList("R1", "R2")) {
+            recordings.add(recordingName + ",1,1,Probe,Simple,Cell,None,1.0,true,5.0,10,2,1.0,100,t,10,false,1.0,0.9,1.0");
+            for (int square = 0; square < SQUARES_IN_ROW * SQUARES_IN_ROW; square++) {
+                int row = square / SQUARES_IN_ROW;
+                int column = square % SQUARES_IN_ROW;
+                String[] fields = new String[SQUARE_COLS.length];
+                Arrays.fill(fields, "1.0");
+                fields[0] = recordingName + "-" + square;
+                fields[1] = recordingName;
+                fields[2] = String.valueOf(square);
+                fields[3] = String.valueOf(row);
+                fields[4] = String.valueOf(column);
+                fields[5] = "0";
+                fields[6] = "0";
+                fields[7] = "true";
+                fields[8] = "false";
+                fields[9] = "false";
+                fields[10] = String.valueOf(column * squareWidth);
+                fields[11] = String.valueOf(row * squareHeight);
+                fields[12] = String.valueOf((column + 1) * squareWidth);
+                fields[13] = String.valueOf((row + 1) * squareHeight);
+                fields[14] = "0";
+                squares.add(String.join(",", fields));
+            }
+            for (int track = 0; track < tracksPerRecording; track++) {
+                String[] fields = new String[TRACK_COLS.length];
+                Arrays.fill(fields, "1");
+                fields[0] = recordingName + "-" + track;
+                fields[1] = recordingName;
+                fields[2] = String.valueOf(track);
+                fields[3] = "Track_" + track;
+                fields[8] = String.valueOf((track * 7 % 25 + 0.5) * IMAGE_WIDTH / 25);
+                fields[9] = String.valueOf((track % 25 + 0.5) * IMAGE_HEIGHT / 25);
+                tracks.add(String.join(",", fields));
+            }
+        }
+        Files.write(experimentPath.resolve(RECORDINGS_CSV), recordings);
+        Files.write(experimentPath.resolve(SQUARES_CSV), squares);
+        Files.write(experimentPath.resolve(TRACKS_CSV), tracks);
+    }
+
+    /* The recordings, their squares and the track rows of each square, as text that can be compared. */
+
+    private static List<String> describe(Experiment experiment) {
+        List<String> lines = new ArrayList<>();
+        for (Recording recording : experiment.getRecordings()) {
+            lines.add(recording.getRecordingName() + " " + recording.getSquares().size() + " squares, tracks "
+                              + Arrays.toString(recording.getTrackRows()));
+            for (Square square : recording.getSquares()) {
+                lines.add(square.getSquareNumber() + " " + Arrays.toString(square.getTrackRows()));
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    void loadAll_loadsTheSameExperimentAsTheSequentialLoader() throws Exception {
+        writeExperiment("Good");
+        writeExperiment("Bad");
+        Files.write(projectPath.resolve("Bad").resolve(TRACKS_CSV), Arrays.asList("Not,The,Header"));
+        Context context = new Context(SQUARES_IN_ROW * SQUARES_IN_ROW);
+
+        boolean cacheEnabled = ColumnarCache.isEnabled();
+        List<String> expected;
+        try {
+            ColumnarCache.setEnabled(false);
+            expected = describe(ProjectDataLoader.loadExperiment(projectPath, "Good", context, true));
+        } finally {
+            ColumnarCache.setEnabled(cacheEnabled);
+        }
+        assertEquals(2 + 2 * SQUARES_IN_ROW * SQUARES_IN_ROW, expected.size());
+
+        try (ParallelExperimentLoader loader = new ParallelExperimentLoader(2, 2)) {
+            ParallelExperimentLoader.Result<Experiment> result = loader.loadAll(projectPath, Arrays.asList("Bad", "Good"), context);
+
+            assertEquals(Arrays.asList("Good"), new ArrayList<>(result.experiments.keySet()));
+            assertEquals(expected, describe(result.experiments.get("Good")));
+            assertEquals(Arrays.asList("Bad"), new ArrayList<>(result.errors.keySet()));
+            assertTrue(result.errors.get("Bad").getMessage().contains(TRACKS_CSV));
+
+            // A second load reads the columnar cache written by the first
+            assertEquals(expected, describe(loader.load(projectPath, "Good", context)));
+        }
+    }
+
+    @Test
+    void load_parsesALargeTracksFileFromTheFileInChunks() throws Exception {
+        writeExperiment("Large", 20_000);
+        assertTrue(Files.size(projectPath.resolve("Large").resolve(TRACKS_CSV)) > 2 << 20);
+        Context context = new Context(SQUARES_IN_ROW * SQUARES_IN_ROW);
+
+        boolean cacheEnabled = ColumnarCache.isEnabled();
+        try {
+            ColumnarCache.setEnabled(false);
+            List<String> expected = describe(ProjectDataLoader.loadExperiment(projectPath, "Large", context, true));
+
+            try (ParallelExperimentLoader loader = new ParallelExperimentLoader(2, 4)) {
+                Experiment experiment = loader.load(projectPath, "Large", context);
+                assertEquals(expected, describe(experiment));
+                assertEquals(40_000, experiment.getRecordings().get(0).getTrackStore().size());
+            }
+        } finally {
+            ColumnarCache.setEnabled(cacheEnabled);
+        }
+    }
+
+    @Test
+    void loadAll_collectsTheErrorsPerExperiment() throws Exception {
+        Files.createDirectories(projectPath.resolve("Empty"));
+        try (ParallelExperimentLoader loader = new ParallelExperimentLoader(2, 1)) {
+            ParallelExperimentLoader.Result<Experiment> result = loader.loadAll(projectPath, Arrays.asList("Missing", "Empty"), new Context());
+
+            assertTrue(result.hasErrors());
+            assertTrue(result.experiments.isEmpty());
+            assertEquals(Arrays.asList("Missing", "Empty"), Arrays.asList(result.errors.keySet().toArray()));
+            for (Exception error : result.errors.values()) {
+                assertTrue(error instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    void load_throwsAnIOExceptionForAMissingExperiment() {
+        try (ParallelExperimentLoader loader = new ParallelExperimentLoader(1, 1)) {
+            assertThrows(IOException.class, () -> loader.load(projectPath, "Missing", new Context()));
+        }
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveThreadCounts() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelExperimentLoader(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelExperimentLoader(1, 0));
+    }
+}
@@ -0,0 +1,93 @@
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import trackMatePaint.PlaneCacheStack;
+
+public class PlaneCacheStackTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final long PLANE_BYTES = WIDTH * HEIGHT * 2L;
+
+    // A 16-bit source that counts how often each plane is read
+    private static final class CountingStack extends ImageStack {
+        final int[] reads;
+
+        CountingStack(int size) {
+            super(WIDTH, HEIGHT);
+            reads = new int[size + 1];
+        }
+
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public int getSize() {
+            return reads.length - 1;
+        }
+
+        @Override
+        public int getBitDepth() {
+            return 16;
+        }
+
+        @Override
+        public ImageProcessor getProcessor(int n) {
+            reads[n]++;
+            return new ShortProcessor(WIDTH, HEIGHT);
+        }
+    }
+
+    @Test
+    void maxPlanes_followFromTheByteBound() {
+        CountingStack source = new CountingStack(10);
+        assertEquals(3, new PlaneCacheStack(source, 3 * PLANE_BYTES + PLANE_BYTES / 2).getMaxPlanes());
+        assertEquals(10, new PlaneCacheStack(source, 10 * PLANE_BYTES).getMaxPlanes());
+
+        // Less than one plane still caches the plane in use
+        assertEquals(1, new PlaneCacheStack(source, PLANE_BYTES / 2).getMaxPlanes());
+    }
+
+    @Test
+    void getProcessor_evictsTheLeastRecentlyUsedPlane() {
+        CountingStack source = new CountingStack(10);
+        PlaneCacheStack stack = new PlaneCacheStack(source, 3 * PLANE_BYTES);
+
+        stack.getProcessor(1);
+        stack.getProcessor(2);
+        stack.getProcessor(3);
+        stack.getProcessor(1);              // Plane 2 is now the least recently used
+        stack.getProcessor(4);              // and is evicted
+        stack.getProcessor(1);
+        stack.getProcessor(3);
+        stack.getProcessor(2);              // Read again, evicting plane 4
+
+        assertArrayEquals(new int[] {0, 1, 2, 1, 1, 0, 0, 0, 0, 0, 0}, source.reads);
+        assertEquals(5, stack.getReads());
+        assertEquals(3, stack.getHits());
+
+        stack.getProcessor(4);
+        assertEquals(2, source.reads[4]);
+    }
+
+    @Test
+    void getProcessor_returnsACopyOfTheCachedPlane() {
+        PlaneCacheStack stack = new PlaneCacheStack(new CountingStack(2), 2 * PLANE_BYTES);
+
+        ImageProcessor first = stack.getProcessor(1);
+        ImageProcessor second = stack.getProcessor(1);
+        assertNotSame(first, second);
+        assertEquals(1, stack.getReads());
+    }
+}
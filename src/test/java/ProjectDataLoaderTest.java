@@ -34,6 +34,8 @@ public class ProjectDataLoaderTest {
         assertNotNull(project.getContext());
         assertNotNull(project.getExperiments());
         assertEquals(0, project.getExperiments().size());
+        assertEquals(0, project.getLazyExperiments().size());
+        assertTrue(project.getLoadErrors().isEmpty());
     }
 
     @Test
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.StringColumn;
+import tech.tablesaw.api.Table;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.loaders.RecordingNameIndex;
+
+public class RecordingNameIndexTest {
+
+    private static final String[] NAMES = {
+            "221012-Exp-1-A1-1",
+            "221012-Exp-1-A1-1-threshold-5",
+            "221012-Exp-1-A1-2",
+            "221012-Exp-1-A1-1-threshold-120",
+            "221012-Exp-1-A1-10",
+            "221012-Exp-1-A1-1-threshold-1234",
+            "221012-Exp-1-A1-2-threshold-",
+            "221012-Exp-1-A1-1",
+    };
+
+    @Test
+    void rowsOf_matchesThresholdRegex() {
+        Table table = Table.create("tracks", StringColumn.create("Recording Name", NAMES));
+        RecordingNameIndex index = RecordingNameIndex.of(table);
+
+        String[] recordings = {"221012-Exp-1-A1-1", "221012-Exp-1-A1-2", "221012-Exp-1-A1-10",
+                "221012-Exp-1-A1-1-threshold-5", "221012-Exp-1-A1-3"};
+        for (String recording : recordings) {
+            Table expected = table.where(table.stringColumn("Recording Name")
+                    .matchesRegex("^" + recording + "(?:-threshold-\\d{1,3})?$"));
+            Table actual = index.tableOf(table, recording);
+            assertEquals(expected.rowCount(), actual.rowCount(), recording);
+            for (int i = 0; i < expected.rowCount(); i++) {
+                assertEquals(expected.stringColumn(0).get(i), actual.stringColumn(0).get(i), recording);
+            }
+        }
+        assertArrayEquals(new int[] {0, 1, 3, 7}, index.rowsOf("221012-Exp-1-A1-1"));
+    }
+
+    @Test
+    void normalize_stripsOnlyValidThresholdSuffix() {
+        assertEquals("A1-1", RecordingNameIndex.normalize("A1-1-threshold-5"));
+        assertEquals("A1-1", RecordingNameIndex.normalize("A1-1-threshold-999"));
+        assertEquals("A1-1-threshold-1000", RecordingNameIndex.normalize("A1-1-threshold-1000"));
+        assertEquals("A1-1-threshold-", RecordingNameIndex.normalize("A1-1-threshold-"));
+        assertEquals("A1-1-threshold-5a", RecordingNameIndex.normalize("A1-1-threshold-5a"));
+        assertEquals("A1-1", RecordingNameIndex.normalize("A1-1"));
+    }
+}
@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import trackMatePaint.SpotBudget;
+
+public class SpotBudgetTest {
+
+    @Test
+    void projectTotal_extrapolatesFromTheFramesDone() {
+        assertEquals(1000, SpotBudget.projectTotal(100, 10, 100));
+        assertEquals(0, SpotBudget.projectTotal(0, 0, 100));
+        assertEquals(334, SpotBudget.projectTotal(100, 3, 10));
+    }
+
+    @Test
+    void shouldAbort_onlyTrustsAProjectionAfterATenthOfTheFrames() {
+        // 50 spots in 5 of 100 frames projects to 1000, but 5 frames are too few to go by
+        assertFalse(SpotBudget.shouldAbort(50, 5, 100, 500));
+        assertTrue(SpotBudget.shouldAbort(100, 10, 100, 500));
+        assertFalse(SpotBudget.shouldAbort(40, 10, 100, 500));
+
+        // Passing the limit itself always aborts
+        assertTrue(SpotBudget.shouldAbort(501, 1, 100, 500));
+    }
+
+    @Test
+    void chooseThreshold_keepsTheProjectedCountWithinTheTarget() {
+        // 10 spots in 2 of 20 frames project to 100; a target of 50 allows the 5 best spots of the sample
+        double[] qualities = {21.0, 25.0, 30.0, 22.0, 40.0, 35.0, 28.0, 23.0, 50.0, 26.0};
+        double threshold = SpotBudget.chooseThreshold(qualities, 2, 20, 50, 20.0);
+
+        int kept = 0;
+        for (double quality : qualities) {
+            if (quality >= threshold) {
+                kept++;
+            }
+        }
+        assertEquals(5, kept);
+        assertEquals(26.1, threshold, 1e-9);
+    }
+
+    @Test
+    void chooseThreshold_neverLowersTheThreshold() {
+        double[] qualities = {21.0, 25.0, 30.0};
+        assertEquals(20.0, SpotBudget.chooseThreshold(qualities, 3, 30, 1000, 20.0), 0.0);
+        assertEquals(20.0, SpotBudget.chooseThreshold(new double[0], 3, 30, 0, 20.0), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> SpotBudget.chooseThreshold(qualities, 0, 30, 10, 20.0));
+    }
+}
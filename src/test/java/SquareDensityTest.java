@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.SquareDensity;
+import paint.calculations.SquareGrid;
+
+public class SquareDensityTest {
+
+    @Test
+    void squareCounts_matchTheGridAssignment_includingBorders() {
+        int n = 5;
+        double imageSize = 82.0864;
+        double squareSize = imageSize / n;
+        Random random = new Random(7);
+        int nrOfTracks = 3000;
+        double[] xs = new double[nrOfTracks];
+        double[] ys = new double[nrOfTracks];
+        for (int i = 0; i < nrOfTracks; i++) {
+            if (i % 5 == 0) {
+                xs[i] = random.nextInt(n + 1) * squareSize;
+                ys[i] = random.nextInt(n + 1) * squareSize;
+            } else {
+                xs[i] = random.nextDouble() * imageSize * 1.02 - 0.01;
+                ys[i] = random.nextDouble() * imageSize * 1.02 - 0.01;
+            }
+        }
+
+        SquareGrid grid = new SquareGrid(n, imageSize, imageSize);
+        SquareDensity density = new SquareDensity(grid, 10);
+        int[] counts = density.squareCounts(density.countCells(xs, ys, null));
+        int[][] rowsPerSquare = grid.assignRows(xs, ys);
+        for (int squareNumber = 0; squareNumber < n * n; squareNumber++) {
+            assertEquals(rowsPerSquare[squareNumber].length, counts[squareNumber], "Square " + squareNumber);
+        }
+    }
+
+    @Test
+    void variability_isTheCoefficientOfVariationOfTheCells() {
+        SquareDensity density = new SquareDensity(new SquareGrid(2, 20.0, 20.0), 2);
+
+        // Square 3 (bottom right, cells of 5 x 5): counts 3, 1, 0, 0 in its four cells
+        double[] xs = {11, 12, 13, 16, 1};
+        double[] ys = {11, 12, 13, 11, 1};
+        int[] cells = density.countCells(xs, ys, null);
+
+        double mean = 1.0;
+        double std = Math.sqrt(((3 - mean) * (3 - mean) + 0 + 1 + 1) / 4.0);
+        assertEquals(std / mean, density.variability(cells, 3), 1e-12);
+        assertEquals(0.0, density.variability(cells, 1));
+
+        // A single track in a square of four cells
+        assertEquals(Math.sqrt(3.0), density.variability(cells, 0), 1e-12);
+    }
+
+    @Test
+    void averageOfBackground_matchesASortOfTheNonZeroCounts() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 50; trial++) {
+            int[] counts = new int[1 + random.nextInt(400)];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(30);
+            }
+            int k = 1 + random.nextInt(80);
+
+            List<Integer> nonZero = new ArrayList<>();
+            for (int count : counts) {
+                if (count != 0) {
+                    nonZero.add(count);
+                }
+            }
+            Collections.sort(nonZero);
+            double expected = 0.0;
+            if (!nonZero.isEmpty()) {
+                int m = Math.min(k, nonZero.size());
+                long total = 0;
+                for (int i = 0; i < m; i++) {
+                    total += nonZero.get(i);
+                }
+                expected = (double) total / m;
+            }
+
+            int[] copy = counts.clone();
+            assertEquals(expected, SquareDensity.averageOfBackground(counts, k), 1e-12);
+            assertArrayEquals(copy, counts);
+        }
+        assertEquals(0.0, SquareDensity.averageOfBackground(new int[] {0, 0, 0}, 60));
+    }
+
+    @Test
+    void density_scalesTracksByAreaTimeAndConcentration() {
+        assertEquals(10.0 / 4.0 / 100.0 / 2.0 * 1000.0, SquareDensity.density(10, 4.0, 2.0), 1e-12);
+        assertTrue(Double.isNaN(SquareDensity.density(10, 4.0, 0.0)));
+    }
+}
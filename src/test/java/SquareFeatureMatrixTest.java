@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.SquareFeatureMatrix;
+import paint.calculations.SquareSelection;
+import paint.calculations.SquareSelection.NeighbourMode;
+import paint.objects.Square;
+
+public class SquareFeatureMatrixTest {
+
+    @Test
+    void evaluate_aggregatesTheSelectedSquares() {
+        List<Square> squares = grid(3);
+        squares.get(0).setDensityRatio(1.0);        // Below the density ratio threshold
+        squares.get(4).setTau(Double.NaN);          // Selected, without tau
+        squares.get(8).setImageExcluded(true);
+
+        SquareFeatureMatrix matrix = SquareFeatureMatrix.of("R1", squares, 3);
+        SquareFeatureMatrix.Evaluation evaluation = matrix.evaluate(0.5, 2.0, 10.0, NeighbourMode.FREE, new SquareSelection(3));
+
+        assertEquals(7, evaluation.selectedSquares);
+        assertEquals(20 + 30 + 40 + 50 + 60 + 70 + 80, evaluation.selectedTracks);
+        assertEquals(150.0, evaluation.medianTau, 1e-12);        // Taus 120..180 without 150
+        assertFalse(evaluation.selected.get(0));
+        assertFalse(evaluation.selected.get(8));
+
+        // Re-evaluating does not change the squares until the selection is applied
+        assertFalse(squares.get(1).isSelected());
+        matrix.applyTo(squares, evaluation.selected);
+        assertTrue(squares.get(1).isSelected());
+        assertFalse(squares.get(0).isSelected());
+    }
+
+    @Test
+    void evaluate_matchesSquareSelection() {
+        List<Square> squares = grid(4);
+        for (int i = 0; i < squares.size(); i++) {
+            squares.get(i).setVariability(i % 3 == 0 ? 12.0 : 4.0);
+            squares.get(i).setRSquared(i % 5 == 0 ? 0.2 : 0.9);
+        }
+        SquareSelection selection = new SquareSelection(4);
+        SquareFeatureMatrix matrix = SquareFeatureMatrix.of("R1", squares, 4);
+        for (NeighbourMode mode : NeighbourMode.values()) {
+            int selected = selection.apply(squares, 2.0, 10.0, 0.5, mode);
+            SquareFeatureMatrix.Evaluation evaluation = matrix.evaluate(0.5, 2.0, 10.0, mode, selection);
+            assertEquals(selected, evaluation.selectedSquares, mode.toString());
+            for (Square square : squares) {
+                assertEquals(square.isSelected(), evaluation.selected.get(square.getSquareNumber()), mode.toString());
+            }
+        }
+    }
+
+    @Test
+    void of_rejectsSquaresOutsideTheGrid() {
+        List<Square> squares = grid(2);
+        assertThrows(IllegalArgumentException.class, () -> SquareFeatureMatrix.of("R1", squares, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> SquareFeatureMatrix.of("R1", squares, 2).evaluate(0.5, 2.0, 10.0, NeighbourMode.FREE, new SquareSelection(3)));
+    }
+
+    private static List<Square> grid(int n) {
+        List<Square> squares = new ArrayList<>();
+        for (int i = 0; i < n * n; i++) {
+            Square square = new Square();
+            square.setSquareNumber(i);
+            square.setNumberOfTracks(10 * (i + 1));
+            square.setTau(100.0 + 10 * (i + 1));
+            square.setRSquared(0.9);
+            square.setDensityRatio(3.0);
+            square.setVariability(1.0);
+            squares.add(square);
+        }
+        return squares;
+    }
+}
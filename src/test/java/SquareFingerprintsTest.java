@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.generateSquares.SquareFingerprints;
+import paint.objects.Context;
+import paint.objects.Recording;
+import paint.objects.Track;
+import paint.objects.TrackStore;
+
+public class SquareFingerprintsTest {
+
+    private static TrackStore createStore() {
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Track track = new Track();
+            track.setUniqueKey("Rec-" + (i % 2) + "-" + i);
+            track.setRecordingName("Rec-" + (i % 2));
+            track.setTrackId(i);
+            track.setTrackDuration(0.05 * (i + 1));
+            track.setTrackXLocation(i * 1.5);
+            track.setTrackYLocation(i * 0.75);
+            tracks.add(track);
+        }
+        return TrackStore.fromTracks(tracks);
+    }
+
+    private static Recording recording(TrackStore store, String name, int parity) {
+        int[] rows = new int[store.size() / 2];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = 2 * i + parity;
+        }
+        Recording recording = new Recording();
+        recording.setRecordingName(name);
+        recording.setTrackStore(store, rows);
+        return recording;
+    }
+
+    private static Context context() {
+        Context context = new Context(100);
+        context.setMinTracksForTau(20);
+        context.setMinRequiredRSquared(0.1);
+        return context;
+    }
+
+    @Test
+    void fingerprint_isStableForSameInput() {
+        assertEquals(SquareFingerprints.of(recording(createStore(), "Rec-0", 0), context()),
+                     SquareFingerprints.of(recording(createStore(), "Rec-0", 0), context()));
+    }
+
+    @Test
+    void fingerprint_changesWithOwnTracksOnly() {
+        TrackStore store = createStore();
+        String before0 = SquareFingerprints.of(recording(store, "Rec-0", 0), context());
+        String before1 = SquareFingerprints.of(recording(store, "Rec-1", 1), context());
+
+        // Row 3 belongs to Rec-1
+        store.setDouble(TrackStore.TRACK_DURATION, 3, 9.0);
+        assertEquals(before0, SquareFingerprints.of(recording(store, "Rec-0", 0), context()));
+        assertNotEquals(before1, SquareFingerprints.of(recording(store, "Rec-1", 1), context()));
+    }
+
+    @Test
+    void fingerprint_changesWithSquareParameters() {
+        Recording recording = recording(createStore(), "Rec-0", 0);
+        String fingerprint = SquareFingerprints.of(recording, context());
+
+        Context grid = context();
+        grid.setNumberOfSquaresInRecording(400);
+        assertNotEquals(fingerprint, SquareFingerprints.of(recording, grid));
+
+        Context tau = context();
+        tau.setMinTracksForTau(21);
+        assertNotEquals(fingerprint, SquareFingerprints.of(recording, tau));
+
+        Context rSquared = context();
+        rSquared.setMinRequiredRSquared(0.2);
+        assertNotEquals(fingerprint, SquareFingerprints.of(recording, rSquared));
+
+        // Selection thresholds do not affect the calculated squares
+        Context density = context();
+        density.setMinRequiredDensityRatio(5.0);
+        assertEquals(fingerprint, SquareFingerprints.of(recording, density));
+    }
+}
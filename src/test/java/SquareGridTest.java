@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.SquareGrid;
+import paint.loaders.ProjectDataLoader;
+import paint.objects.Square;
+
+public class SquareGridTest {
+
+    @Test
+    void assignRows_matchesFilterTracksInSquare_includingBorders() {
+        int n = 5;
+        double imageSize = 82.0864;
+        double squareSize = imageSize / n;
+
+        // Random locations plus locations exactly on the square borders and just outside the image
+        Random random = new Random(42);
+        int nrOfTracks = 2000;
+        double[] xs = new double[nrOfTracks];
+        double[] ys = new double[nrOfTracks];
+        for (int i = 0; i < nrOfTracks; i++) {
+            if (i % 4 == 0) {
+                xs[i] = random.nextInt(n + 1) * squareSize;
+                ys[i] = random.nextInt(n + 1) * squareSize;
+            } else {
+                xs[i] = random.nextDouble() * imageSize * 1.02 - 0.01;
+                ys[i] = random.nextDouble() * imageSize * 1.02 - 0.01;
+            }
+        }
+        Table tracks = Table.create("tracks",
+                DoubleColumn.create("Track X Location", xs),
+                DoubleColumn.create("Track Y Location", ys));
+
+        SquareGrid grid = new SquareGrid(n, imageSize, imageSize);
+        int[][] rowsPerSquare = grid.assignRows(xs, ys);
+
+        for (int squareNumber = 0; squareNumber < n * n; squareNumber++) {
+            int rowNumber = squareNumber / n;
+            int colNumber = squareNumber % n;
+            Square sq = new Square();
+            sq.setX0(colNumber * squareSize);
+            sq.setY0(rowNumber * squareSize);
+            sq.setX1((colNumber + 1) * squareSize);
+            sq.setY1((rowNumber + 1) * squareSize);
+            sq.setColNumber(colNumber);
+            sq.setRowNumber(rowNumber);
+
+            Table inside = ProjectDataLoader.filterTracksInSquare(tracks, sq, n - 1);
+            assertEquals(inside.rowCount(), rowsPerSquare[squareNumber].length, "Square " + squareNumber);
+        }
+    }
+
+    @Test
+    void squareNumberOf_excludesLocationsOutsideTheImage() {
+        SquareGrid grid = new SquareGrid(10, 100.0, 100.0);
+
+        assertEquals(0, grid.squareNumberOf(0.0, 0.0));
+        assertEquals(1, grid.squareNumberOf(10.0, 0.0));       // Left border belongs to the square
+        assertEquals(99, grid.squareNumberOf(100.0, 100.0));   // Last row and column include the far border
+        assertEquals(-1, grid.squareNumberOf(-0.001, 5.0));
+        assertEquals(-1, grid.squareNumberOf(5.0, 100.001));
+        assertEquals(-1, grid.squareNumberOf(Double.NaN, 5.0));
+    }
+}
@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.SquareSelection;
+import paint.calculations.SquareSelection.NeighbourMode;
+import paint.objects.Square;
+
+public class SquareSelectionTest {
+
+    // A 4 x 4 grid with candidates 0, 1 (a pair), 6 (diagonal to 1), 11 and 15 (a pair) and 8 (isolated)
+    private static final String GRID =
+            "XX.." +
+            "..X." +
+            "X..X" +
+            "...X";
+
+    @Test
+    void neighbourRule_followsTheMode() {
+        SquareSelection selection = new SquareSelection(4);
+        BitSet candidates = bits(GRID);
+
+        assertEquals(candidates, selection.applyNeighbourRule(candidates, NeighbourMode.FREE));
+        assertEquals(bits("XX......" + "...X...X"), selection.applyNeighbourRule(candidates, NeighbourMode.STRICT));
+        assertEquals(bits("XX....X." + "...X...X"), selection.applyNeighbourRule(candidates, NeighbourMode.RELAXED));
+    }
+
+    @Test
+    void neighbourRule_matchesADirectNeighbourCheck() {
+        Random random = new Random(11);
+        int n = 30;
+        SquareSelection selection = new SquareSelection(n);
+        for (int trial = 0; trial < 20; trial++) {
+            BitSet candidates = new BitSet(n * n);
+            for (int i = 0; i < n * n; i++) {
+                if (random.nextDouble() < 0.3) {
+                    candidates.set(i);
+                }
+            }
+            for (NeighbourMode mode : new NeighbourMode[] {NeighbourMode.STRICT, NeighbourMode.RELAXED}) {
+                BitSet expected = new BitSet(n * n);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    if (hasNeighbour(candidates, n, i, mode == NeighbourMode.RELAXED)) {
+                        expected.set(i);
+                    }
+                }
+                assertEquals(expected, selection.applyNeighbourRule(candidates, mode), mode + " trial " + trial);
+            }
+        }
+    }
+
+    @Test
+    void apply_appliesTheThresholdsAndExclusions() {
+        List<Square> squares = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Square square = new Square();
+            square.setSquareNumber(i);
+            square.setDensityRatio(3.0);
+            square.setVariability(1.0);
+            square.setRSquared(0.9);
+            squares.add(square);
+        }
+        squares.get(1).setVariability(20.0);
+        squares.get(2).setRSquared(Double.NaN);
+        squares.get(3).setSquareManuallyExcluded(true);
+
+        SquareSelection selection = new SquareSelection(2);
+        assertEquals(1, selection.apply(squares, 2.0, 10.0, 0.5, NeighbourMode.FREE));
+        assertTrue(squares.get(0).isSelected());
+        assertFalse(squares.get(1).isSelected());
+        assertFalse(squares.get(2).isSelected());
+        assertFalse(squares.get(3).isSelected());
+
+        // Relaxing the variability makes square 1 a neighbour of square 0
+        assertEquals(2, selection.apply(squares, 2.0, 30.0, 0.5, NeighbourMode.STRICT));
+        assertTrue(squares.get(0).isSelected());
+        assertTrue(squares.get(1).isSelected());
+        assertEquals(0, selection.apply(squares, 2.0, 10.0, 0.5, NeighbourMode.STRICT));
+        assertFalse(squares.get(0).isSelected());
+    }
+
+    @Test
+    void neighbourMode_parsesConfigurationValues() {
+        assertEquals(NeighbourMode.FREE, NeighbourMode.of("Free"));
+        assertEquals(NeighbourMode.STRICT, NeighbourMode.of("strict"));
+        assertEquals(NeighbourMode.RELAXED, NeighbourMode.of(" Relaxed "));
+        assertEquals(NeighbourMode.FREE, NeighbourMode.of(null));
+        assertEquals(NeighbourMode.FREE, NeighbourMode.of("Loose"));
+    }
+
+    private static BitSet bits(String grid) {
+        BitSet bits = new BitSet(grid.length());
+        for (int i = 0; i < grid.length(); i++) {
+            if (grid.charAt(i) == 'X') {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private static boolean hasNeighbour(BitSet candidates, int n, int square, boolean diagonals) {
+        int row = square / n;
+        int column = square % n;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if ((dr == 0 && dc == 0) || (!diagonals && dr != 0 && dc != 0)) {
+                    continue;
+                }
+                int r = row + dr;
+                int c = column + dc;
+                if (r >= 0 && r < n && c >= 0 && c < n && candidates.get(r * n + c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.calculations.SquareStatistics;
+
+public class SquareStatisticsTest {
+
+    private static double sortedMedian(double[] v) {
+        double[] s = v.clone();
+        Arrays.sort(s);
+        int n = s.length;
+        return (n % 2 == 1) ? s[n / 2] : (s[n / 2 - 1] + s[n / 2]) / 2.0;
+    }
+
+    @Test
+    void median_matchesSortedMedian_withDuplicatesAndMissingValues() {
+        Random random = new Random(5);
+        SquareStatistics stats = new SquareStatistics();
+        for (int trial = 0; trial < 2000; trial++) {
+            int n = 1 + random.nextInt(80);
+            double[] column = new double[n];
+            int[] rows = new int[n];
+            for (int i = 0; i < n; i++) {
+                rows[i] = i;
+                column[i] = (i % 9 == 8) ? Double.NaN : random.nextInt(6) + (random.nextBoolean() ? 0.0 : random.nextDouble());
+            }
+            double[] present = Arrays.stream(column).filter(v -> !Double.isNaN(v)).toArray();
+
+            stats.load(column, rows);
+            assertEquals(present.length, stats.count());
+            assertEquals(Arrays.stream(present).max().getAsDouble(), stats.max(), 0.0);
+            assertEquals(Arrays.stream(present).min().getAsDouble(), stats.min(), 0.0);
+            assertEquals(Arrays.stream(present).sum(), stats.sum(), 1e-9);
+            assertEquals(sortedMedian(present), stats.median(), 0.0, "Trial " + trial);
+
+            assertEquals(sortedMedian(present), stats.load(column, rows).sort().median(), 0.0, "Trial " + trial);
+        }
+    }
+
+    @Test
+    void longAndShortMedians_useFractionOfSortedValues() {
+        double[] sorted = new double[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        // 10% of 100 values: the last 10 (90..99) and the first 10 (0..9)
+        assertEquals(94.5, SquareStatistics.medianOfLongest(sorted, 100, 0.1), 0.0);
+        assertEquals(4.5, SquareStatistics.medianOfShortest(sorted, 100, 0.1), 0.0);
+
+        // At least one value is used
+        assertEquals(2.0, SquareStatistics.medianOfLongest(new double[] {1.0, 2.0}, 2, 0.1), 0.0);
+        assertEquals(0.0, SquareStatistics.medianOfShortest(new double[0], 0, 0.1), 0.0);
+    }
+
+    @Test
+    void statistics_areNaN_withoutValues() {
+        SquareStatistics stats = new SquareStatistics().load(new double[] {Double.NaN}, new int[] {0});
+        assertEquals(0, stats.count());
+        assertTrue(Double.isNaN(stats.median()));
+        assertTrue(Double.isNaN(stats.max()));
+        assertTrue(Double.isNaN(stats.mean()));
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.io.SquareTableIO;
+import paint.io.TrackTableIO;
+import paint.objects.Square;
+import paint.objects.Track;
+
+public class TableIOTest {
+
+    // Large enough to be split over several parallel tasks
+    private static final int NR_OF_ROWS = 50_000;
+
+    private static void assertTablesEqual(Table expected, Table actual) {
+        assertEquals(expected.columnNames(), actual.columnNames());
+        assertEquals(expected.rowCount(), actual.rowCount());
+        for (int column = 0; column < expected.columnCount(); column++) {
+            for (int row = 0; row < expected.rowCount(); row++) {
+                assertEquals(expected.column(column).getString(row), actual.column(column).getString(row),
+                             expected.column(column).name() + " row " + row);
+            }
+        }
+    }
+
+    @Test
+    void tracks_parallelConversionMatchesSerial() {
+        List<Track> tracks = TestTracks.createTracks(NR_OF_ROWS);
+
+        TrackTableIO serial = new TrackTableIO();
+        serial.setParallelThreshold(Integer.MAX_VALUE);
+        TrackTableIO parallel = new TrackTableIO();
+        parallel.setParallelThreshold(1);
+
+        Table serialTable = serial.toTable(tracks);
+        assertTablesEqual(serialTable, parallel.toTable(tracks));
+
+        List<Track> serialTracks = serial.toEntities(serialTable);
+        List<Track> parallelTracks = parallel.toEntities(serialTable);
+        assertEquals(NR_OF_ROWS, parallelTracks.size());
+        for (int i = 0; i < NR_OF_ROWS; i += 997) {
+            assertEquals(tracks.get(i).getUniqueKey(), parallelTracks.get(i).getUniqueKey());
+            assertEquals(serialTracks.get(i).getTrackId(), parallelTracks.get(i).getTrackId());
+            assertEquals(serialTracks.get(i).getTrackDuration(), parallelTracks.get(i).getTrackDuration());
+            assertEquals(serialTracks.get(i).getDiffusionCoefficient(), parallelTracks.get(i).getDiffusionCoefficient());
+        }
+    }
+
+    @Test
+    void squares_roundTripPreservesAllColumns() {
+        List<Square> squares = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Square square = new Square("Rec-" + i, "Rec", i, i / 10, i % 10, i, i, i + 1, i + 1);
+            square.setSelected(i % 2 == 0);
+            square.setNumberOfTracks(i * 3);
+            square.setTau(i % 3 == 0 ? Double.NaN : 100.0 + i);
+            squares.add(square);
+        }
+
+        SquareTableIO squareTableIO = new SquareTableIO();
+        Table table = squareTableIO.toTable(squares);
+        assertTablesEqual(table, squareTableIO.toTable(squareTableIO.toEntities(table)));
+    }
+
+    @Test
+    void parallelThreshold_mustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new TrackTableIO().setParallelThreshold(0));
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import paint.objects.Track;
+
+/** Track fixtures shared by the tests of the track tables, stores and readers. */
+final class TestTracks {
+
+    private TestTracks() {
+    }
+
+    /**
+     * Tracks with values derived from their index, spread over the recordings Rec-0, Rec-1 and Rec-2 in turn.
+     * Every fifth track has no diffusion coefficient.
+     */
+    static List<Track> createTracks(int nrOfTracks) {
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < nrOfTracks; i++) {
+            Track track = new Track();
+            track.setUniqueKey("Rec-" + (i % 3) + "-" + i);
+            track.setRecordingName("Rec-" + (i % 3));
+            track.setTrackId(i);
+            track.setTrackLabel("Track_" + i);
+            track.setNumberOfSpots(3 + i);
+            track.setTrackDuration(0.05 * (i + 1));
+            track.setTrackXLocation(i * 0.5);
+            track.setTrackYLocation(i * 0.25);
+            track.setDiffusionCoefficient(i % 5 == 0 ? Double.NaN : i / 10.0);
+            track.setSquareNumber(i % 4);
+            track.setLabelNumber(-1);
+            tracks.add(track);
+        }
+        return tracks;
+    }
+
+    /** Tracks with random values in realistic ranges, in blocks of 100 per recording. */
+    static List<Track> createRandomTracks(int nrOfTracks, long seed) {
+        Random random = new Random(seed);
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < nrOfTracks; i++) {
+            Track track = new Track();
+            track.setUniqueKey("Rec-" + (i / 100) + "-" + i);
+            track.setRecordingName("Rec-" + (i / 100));
+            track.setTrackId(i);
+            track.setTrackLabel("Track_" + i);
+            track.setNumberOfSpots(3 + random.nextInt(50));
+            track.setTrackDuration(0.05 * (1 + random.nextInt(40)));
+            track.setTrackXLocation(random.nextDouble() * 82.0864);
+            track.setTrackYLocation(random.nextDouble() * 82.0864);
+            track.setDiffusionCoefficient(random.nextGaussian() * 1e-3);
+            track.setSquareNumber(random.nextInt(400));
+            track.setLabelNumber(-1);
+            tracks.add(track);
+        }
+        return tracks;
+    }
+}
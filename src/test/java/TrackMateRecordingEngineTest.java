@@ -0,0 +1,145 @@
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotBase;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.process.ShortProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.objects.Context;
+import trackMatePaint.HeadlessTrackMateRunner;
+import trackMatePaint.TrackCsvExporter;
+import trackMatePaint.TrackMateRecordingEngine;
+
+import static paint.constants.PaintConstants.TRACK_COLS;
+
+public class TrackMateRecordingEngineTest {
+
+    private static final int SIZE = 64;
+    private static final int FRAMES = 20;
+    private static final double PIXEL_SIZE = 0.1;       // micron
+    private static final double FRAME_INTERVAL = 0.05;  // seconds
+
+    @TempDir
+    Path tempDir;
+
+    /* Three bright spots on a dark background, each moving half a pixel (0.05 micron) per frame in its own direction. */
+
+    private Path createSyntheticStack() {
+        int[][] starts = {{12, 12}, {40, 16}, {20, 44}};
+        int[][] steps = {{1, 0}, {0, 1}, {1, 1}};
+        ImageStack stack = new ImageStack(SIZE, SIZE);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            ShortProcessor processor = new ShortProcessor(SIZE, SIZE);
+            for (int s = 0; s < starts.length; s++) {
+                double cx = starts[s][0] + steps[s][0] * frame * 0.5;
+                double cy = starts[s][1] + steps[s][1] * frame * 0.5;
+                for (int y = 0; y < SIZE; y++) {
+                    for (int x = 0; x < SIZE; x++) {
+                        double r2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+                        int value = processor.get(x, y) + (int) (4000 * Math.exp(-r2 / (2 * 2.0 * 2.0)));
+                        processor.set(x, y, Math.min(65535, value + 100));
+                    }
+                }
+            }
+            stack.addSlice("t" + frame, processor);
+        }
+        ImagePlus imp = new ImagePlus("synthetic", stack);
+        imp.setDimensions(1, 1, FRAMES);
+        imp.getCalibration().pixelWidth = PIXEL_SIZE;
+        imp.getCalibration().pixelHeight = PIXEL_SIZE;
+        imp.getCalibration().setUnit("micron");
+        imp.getCalibration().frameInterval = FRAME_INTERVAL;
+
+        Path path = tempDir.resolve("synthetic.tif");
+        assertTrue(new FileSaver(imp).saveAsTiffStack(path.toString()));
+        return path;
+    }
+
+    private static Context context() {
+        Context context = new Context();
+        context.setMaxFrameGap(3);
+        context.setLinkingMaxDistance(0.6);
+        context.setGapClosingMaxDistance(1.2);
+        context.setMedianFiltering(false);
+        context.setMinNumberOfSpotsInTrack(3);
+        return context;
+    }
+
+    @Test
+    void syntheticStack_producesOneTrackPerSpot() throws Exception {
+        Path imagePath = createSyntheticStack();
+        Path tracksPath = tempDir.resolve("synthetic-tracks.csv");
+
+        HeadlessTrackMateRunner.Result result = new TrackMateRecordingEngine(context(), 2)
+                .process(imagePath, "synthetic", 20.0, tracksPath);
+        assertTrue(result.succeeded, result.error);
+        assertEquals(3, result.numberOfTracks);
+
+        List<String> lines = Files.readAllLines(tracksPath);
+        assertEquals(String.join(",", TRACK_COLS), lines.get(0));
+        assertEquals(4, lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",", -1);
+            assertEquals(TRACK_COLS.length, fields.length);
+            assertEquals("synthetic", fields[1]);
+            assertEquals(String.valueOf(FRAMES), fields[4]);
+            assertEquals((FRAMES - 1) * FRAME_INTERVAL, Double.parseDouble(fields[7]), 1e-6);
+        }
+    }
+
+    @Test
+    void export_calculatesSpeedsAndDiffusionFromTheSpotsInTimeOrder() throws Exception {
+        // Steps of 0.3 and 0.4 micron in 0.05 s, then a step of 0.5 micron over a gap of 0.1 s
+        double[] x = {0.0, 0.3, 0.3, 0.6};
+        double[] y = {0.0, 0.0, 0.4, 0.8};
+        double[] t = {0.0, 0.05, 0.10, 0.20};
+        int[] frames = {0, 1, 2, 4};
+
+        // The spots are added in reverse, the exporter orders them in time
+        Model model = new Model();
+        Spot[] spots = new Spot[x.length];
+        model.beginUpdate();
+        try {
+            for (int i = x.length - 1; i >= 0; i--) {
+                spots[i] = new SpotBase(x[i], y[i], 0.0, 0.5, 100.0);
+                spots[i].putFeature(Spot.POSITION_T, t[i]);
+                model.addSpotTo(spots[i], frames[i]);
+            }
+            for (int i = 1; i < spots.length; i++) {
+                model.addEdge(spots[i - 1], spots[i], 1.0);
+            }
+        } finally {
+            model.endUpdate();
+        }
+
+        Path tracksPath = tempDir.resolve("calculated-tracks.csv");
+        try (TrackCsvExporter exporter = new TrackCsvExporter(tracksPath)) {
+            exporter.export(model, "calculated");
+            exporter.commit();
+            assertEquals(1, exporter.getTracksWritten());
+            assertEquals(4, exporter.getSpotsWritten());
+        }
+
+        List<String> lines = Files.readAllLines(tracksPath);
+        assertEquals(2, lines.size());
+        String[] fields = lines.get(1).split(",", -1);
+        List<String> columns = Arrays.asList(TRACK_COLS);
+        assertEquals(8.0, Double.parseDouble(fields[columns.indexOf("Track Max Speed Calc")]), 1e-9);
+        assertEquals(6.0, Double.parseDouble(fields[columns.indexOf("Track Median Speed Calc")]), 1e-9);
+        assertEquals(19.0 / 3, Double.parseDouble(fields[columns.indexOf("Track Mean Speed Calc")]), 1e-9);
+        assertEquals((0.09 / 0.2 + 0.16 / 0.2 + 0.25 / 0.4) / 3,
+                     Double.parseDouble(fields[columns.indexOf("Diffusion Coefficient")]), 1e-9);
+        assertEquals((0.09 / 0.2 + 0.25 / 0.4 + 1.0 / 0.8) / 3,
+                     Double.parseDouble(fields[columns.indexOf("Diffusion Coefficient Ext")]), 1e-9);
+    }
+}
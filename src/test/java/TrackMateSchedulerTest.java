@@ -0,0 +1,174 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.utilities.AppLoggerOld;
+import trackMatePaint.SpotBudgetExceededException;
+import trackMatePaint.TrackMateScheduler;
+import trackMatePaint.TrackMateScheduler.Job;
+import trackMatePaint.TrackMateScheduler.Outcome;
+import trackMatePaint.TrackMateScheduler.Result;
+
+public class TrackMateSchedulerTest {
+
+    private static final long MB = 1024L * 1024L;
+    private static final Path EXPERIMENT = Paths.get("Experiment");
+
+    @TempDir
+    Path tempDir;
+
+    // The scheduler logs every attempt
+    @BeforeEach
+    void initLogger() {
+        AppLoggerOld.init(tempDir.resolve("TrackMateSchedulerTest.log").toString(), false);
+    }
+
+    private static Job job(String recordingName, long estimatedMB) {
+        return new Job(EXPERIMENT, EXPERIMENT, recordingName, 10.0, estimatedMB * MB, 1);
+    }
+
+    @Test
+    void runAll_neverRunsMoreThanTheMemoryBudgetAtOnce() throws InterruptedException {
+        AtomicLong running = new AtomicLong();
+        AtomicLong peak = new AtomicLong();
+        TrackMateScheduler.Worker worker = job -> {
+            long now = running.addAndGet(job.estimatedBytes);
+            peak.accumulateAndGet(now, Math::max);
+            Thread.sleep(50);
+            running.addAndGet(-job.estimatedBytes);
+            return Outcome.UNKNOWN;
+        };
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            jobs.add(job("Rec-" + i, i % 3 == 0 ? 600 : 300));
+        }
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 8, 1000 * MB, 1)) {
+            for (Result result : scheduler.runAll(jobs)) {
+                assertTrue(result.isSucceeded(), result.job.recordingName);
+            }
+        }
+        assertTrue(peak.get() <= 1000 * MB, "peak " + peak.get() / MB + " MB");
+        assertTrue(peak.get() > 600 * MB, "recordings that fit together should run together");
+    }
+
+    @Test
+    void runAll_retriesAFailingRecordingExactlyMaxAttemptsTimes() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        TrackMateScheduler.Worker worker = job -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("TrackMate failed");
+        };
+
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 2, 1000 * MB, 3)) {
+            Result result = scheduler.runAll(Collections.singletonList(job("Rec-0", 100))).get(0);
+            assertFalse(result.isSucceeded());
+            assertEquals(3, result.attempts);
+            assertTrue(result.error.contains("TrackMate failed"), result.error);
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void runAll_doesNotRetryARecordingOverTheSpotBudget() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        TrackMateScheduler.Worker worker = job -> {
+            calls.incrementAndGet();
+            throw new SpotBudgetExceededException("Too many spots detected");
+        };
+
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 2, 1000 * MB, 3)) {
+            Result result = scheduler.runAll(Collections.singletonList(job("Rec-0", 100))).get(0);
+            assertFalse(result.isSucceeded());
+            assertEquals(1, result.attempts);
+            assertTrue(result.error.contains("Too many spots"), result.error);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void runAll_retriesARecordingThatRanOutOfMemoryWithTwiceTheMemoryUpToTheBudget() throws InterruptedException {
+        List<Long> estimates = Collections.synchronizedList(new ArrayList<>());
+        TrackMateScheduler.Worker worker = job -> {
+            estimates.add(job.estimatedBytes / MB);
+            if (job.estimatedBytes < 800 * MB) {
+                throw new OutOfMemoryError("Java heap space");
+            }
+            return Outcome.UNKNOWN;
+        };
+
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 2, 1000 * MB, 5)) {
+            Result result = scheduler.runAll(Collections.singletonList(job("Rec-0", 150))).get(0);
+            assertTrue(result.isSucceeded());
+            assertEquals(4, result.attempts);
+        }
+        assertEquals(Arrays.asList(150L, 300L, 600L, 1000L), estimates);
+
+        // Once the whole budget was not enough, the recording is not retried
+        estimates.clear();
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 2, 500 * MB, 5)) {
+            Result result = scheduler.runAll(Collections.singletonList(job("Rec-0", 150))).get(0);
+            assertFalse(result.isSucceeded());
+            assertEquals(3, result.attempts);
+            assertTrue(result.error.contains("OutOfMemoryError"), result.error);
+        }
+        assertEquals(Arrays.asList(150L, 300L, 500L), estimates);
+    }
+
+    @Test
+    void runAll_returnsTheResultsInJobOrder() throws InterruptedException {
+        // Later jobs finish first
+        TrackMateScheduler.Worker worker = job -> {
+            Thread.sleep(10L * (10 - Integer.parseInt(job.recordingName.substring(4))));
+            return new Outcome(job.estimatedBytes, job.threshold);
+        };
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(job("Rec-" + i, 10));
+        }
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(worker, true, 4, 1000 * MB, 1)) {
+            List<Result> results = scheduler.runAll(jobs);
+            assertEquals(jobs.size(), results.size());
+            for (int i = 0; i < jobs.size(); i++) {
+                assertSame(jobs.get(i), results.get(i).job);
+                assertEquals(10 * MB, results.get(i).peakMemoryBytes);
+            }
+        }
+    }
+
+    @Test
+    void estimateMemory_followsThePeakMemoryOfThePreviousRun() {
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(job -> Outcome.UNKNOWN, true, 1, 1000 * MB, 1)) {
+            Path image = tempDir.resolve("Rec-0.nd2");
+            assertEquals(500 * MB, scheduler.estimateMemory(String.valueOf(1000 * MB), String.valueOf(400 * MB), image));
+
+            // Without a peak the estimate follows from the recording size
+            assertEquals(scheduler.estimateMemory(String.valueOf(1000 * MB), "", image),
+                         scheduler.estimateMemory(String.valueOf(1000 * MB), null, image));
+            assertNotEquals(500 * MB, scheduler.estimateMemory(String.valueOf(1000 * MB), null, image));
+        }
+    }
+
+    @Test
+    void threadsPerJob_shareTheCores() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(job -> Outcome.UNKNOWN, true, cores, 1000 * MB, 1)) {
+            assertEquals(1, scheduler.getThreadsPerJob());
+        }
+        try (TrackMateScheduler scheduler = new TrackMateScheduler(job -> Outcome.UNKNOWN, true, 1, 1000 * MB, 1)) {
+            assertEquals(cores, scheduler.getThreadsPerJob());
+        }
+    }
+}
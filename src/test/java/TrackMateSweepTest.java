@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import trackMatePaint.TrackMateSweep;
+
+public class TrackMateSweepTest {
+
+    @Test
+    void parseGrid_typesValuesLikeTheirDefaults() {
+        Map<String, List<Object>> grid = TrackMateSweep.parseGrid("LINKING_MAX_DISTANCE=0.5, 0.6; MAX_FRAME_GAP=2,3;ALLOW_GAP_CLOSING=false");
+
+        assertEquals(Arrays.asList("LINKING_MAX_DISTANCE", "MAX_FRAME_GAP", "ALLOW_GAP_CLOSING"), Arrays.asList(grid.keySet().toArray()));
+        assertEquals(Arrays.asList(0.5, 0.6), grid.get("LINKING_MAX_DISTANCE"));
+        assertEquals(Arrays.asList(2, 3), grid.get("MAX_FRAME_GAP"));
+        assertEquals(Arrays.asList(false), grid.get("ALLOW_GAP_CLOSING"));
+    }
+
+    @Test
+    void parseGrid_rejectsDetectorSettingsAndBadValues() {
+        assertThrows(IllegalArgumentException.class, () -> TrackMateSweep.parseGrid("RADIUS=0.5,0.6"));
+        assertThrows(IllegalArgumentException.class, () -> TrackMateSweep.parseGrid("MAX_FRAME_GAP=2.5"));
+        assertThrows(IllegalArgumentException.class, () -> TrackMateSweep.parseGrid("ALLOW_GAP_CLOSING=maybe"));
+        assertThrows(IllegalArgumentException.class, () -> TrackMateSweep.parseGrid("LINKING_MAX_DISTANCE"));
+        assertThrows(IllegalArgumentException.class, () -> TrackMateSweep.parseGrid(" ; "));
+    }
+
+    @Test
+    void expand_givesEveryCombinationWithTheLastSettingFastest() {
+        List<TrackMateSweep.Case> cases = TrackMateSweep.expand(
+                TrackMateSweep.parseGrid("LINKING_MAX_DISTANCE=0.5,0.6;MAX_FRAME_GAP=1,2,3;ALLOW_GAP_CLOSING=true,false"));
+
+        assertEquals(12, cases.size());
+        assertEquals("Case 01", cases.get(0).name);
+        assertEquals("Case 12", cases.get(11).name);
+        assertEquals(0.5, cases.get(0).trackerSettings.get("LINKING_MAX_DISTANCE"));
+        assertEquals(1, cases.get(0).trackerSettings.get("MAX_FRAME_GAP"));
+        assertEquals(false, cases.get(1).trackerSettings.get("ALLOW_GAP_CLOSING"));
+        assertEquals(2, cases.get(2).trackerSettings.get("MAX_FRAME_GAP"));
+        assertEquals(0.6, cases.get(6).trackerSettings.get("LINKING_MAX_DISTANCE"));
+    }
+}
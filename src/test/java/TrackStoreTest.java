@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.Table;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import paint.io.TrackTableIO;
+import paint.objects.Recording;
+import paint.objects.Square;
+import paint.objects.Track;
+import paint.objects.TrackStore;
+
+public class TrackStoreTest {
+
+    @Test
+    void tableRoundTrip_preservesAllColumns() {
+        TrackTableIO trackTableIO = new TrackTableIO();
+        Table table = trackTableIO.toTable(TestTracks.createTracks(50));
+
+        TrackStore store = TrackStore.fromTable(table);
+        assertEquals(50, store.size());
+
+        Table copy = store.toTable(null);
+        assertEquals(table.rowCount(), copy.rowCount());
+        assertEquals(table.columnCount(), copy.columnCount());
+        for (int column = 0; column < table.columnCount(); column++) {
+            assertEquals(table.column(column).name(), copy.column(column).name());
+            for (int row = 0; row < table.rowCount(); row++) {
+                assertEquals(table.column(column).getString(row), copy.column(column).getString(row));
+            }
+        }
+    }
+
+    @Test
+    void views_materialiseTracksOnDemand() {
+        TrackStore store = TrackStore.fromTracks(TestTracks.createTracks(20));
+        int[] rows = {2, 5, 11};
+
+        List<Track> view = store.tracksOf(rows);
+        assertEquals(3, view.size());
+        assertEquals(5, view.get(1).getTrackId());
+        assertEquals("Rec-2", view.get(1).getRecordingName());
+        assertEquals("Track_11", view.get(2).getTrackLabel());
+
+        double[] durations = store.gather(TrackStore.TRACK_DURATION, rows);
+        assertArrayEquals(new double[] {0.15, 0.30, 0.60}, durations, 1e-12);
+
+        Table table = store.toTable(rows);
+        assertEquals(3, table.rowCount());
+        assertEquals(11, table.intColumn("Track Id").getInt(2));
+    }
+
+    @Test
+    void addRow_growsAndUsesMissingValues() {
+        TrackStore store = new TrackStore(0);
+        for (int i = 0; i < 100; i++) {
+            store.addRow();
+        }
+        assertEquals(100, store.size());
+        assertTrue(Double.isNaN(store.getTrackDuration(99)));
+        assertEquals(Integer.MIN_VALUE, store.getInt(TrackStore.TRACK_ID, 99));
+        assertEquals("", store.getRecordingName(99));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getTrackDuration(100));
+        assertThrows(IllegalArgumentException.class, () -> store.getInt(TrackStore.TRACK_DURATION, 0));
+    }
+
+    @Test
+    void fromTracks_keepsPerRowStringsAndEncodesRecordingNames() {
+        TrackStore store = TrackStore.fromTracks(TestTracks.createTracks(9));
+        assertEquals("Rec-2-5", store.getString(TrackStore.UNIQUE_KEY, 5));
+        assertEquals("Track_5", store.getString(TrackStore.TRACK_LABEL, 5));
+        assertEquals("Rec-2", store.getRecordingName(5));
+        int[] codes = store.codeColumn(TrackStore.RECORDING_NAME);
+        assertEquals(codes[2], codes[5]);
+        assertNotEquals(codes[2], codes[3]);
+        assertThrows(IllegalArgumentException.class, () -> store.codeColumn(TrackStore.UNIQUE_KEY));
+    }
+
+    @Test
+    void empty_isSharedAndCannotBeAddedTo() {
+        assertSame(TrackStore.EMPTY, new Recording().getTrackStore());
+        assertSame(TrackStore.EMPTY, new Square().getTrackStore());
+        assertThrows(UnsupportedOperationException.class, TrackStore.EMPTY::addRow);
+    }
+
+    @Test
+    void addTrack_copiesASharedStoreFirst() {
+        List<Track> tracks = TestTracks.createTracks(6);
+        TrackStore shared = TrackStore.fromTracks(tracks);
+        Square square = new Square();
+        square.setTrackStore(shared, new int[] {1, 4});
+
+        square.addTrack(tracks.get(0));
+
+        assertEquals(6, shared.size());
+        assertNotSame(shared, square.getTrackStore());
+        assertEquals(3, square.getTracks().size());
+        assertEquals("Track_1", square.getTracks().get(0).getTrackLabel());
+        assertEquals("Track_4", square.getTracks().get(1).getTrackLabel());
+        assertEquals("Track_0", square.getTracks().get(2).getTrackLabel());
+
+        Recording recording = new Recording();
+        recording.addTrack(tracks.get(2));
+        assertNotSame(TrackStore.EMPTY, recording.getTrackStore());
+        assertEquals(0, TrackStore.EMPTY.size());
+        assertEquals(1, recording.getTracks().size());
+    }
+}